@@ -0,0 +1,113 @@
+package id.uniflo.uniedc.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import id.uniflo.uniedc.security.DatabaseKeyManager;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Open time of an encrypted database with the passphrase against the raw key.
+ * SQLCipher only runs on a device, so this is an instrumented test; the medians are
+ * written to logcat under {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseOpenBenchmark {
+
+    private static final String TAG = "DatabaseOpenBenchmark";
+    private static final int RUNS = 9;
+    private static final int ROWS = 500;
+
+    private Context context;
+    private String passphrase;
+    private File passphraseFile;
+    private File rawFile;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase.loadLibs(context);
+        passphrase = DatabaseKeyManager.getInstance(context).getDatabaseKey();
+        passphraseFile = context.getDatabasePath("open_benchmark_passphrase.db");
+        rawFile = context.getDatabasePath("open_benchmark_raw.db");
+        passphraseFile.getParentFile().mkdirs();
+        delete(passphraseFile);
+        delete(rawFile);
+    }
+
+    @After
+    public void tearDown() {
+        delete(passphraseFile);
+        delete(rawFile);
+    }
+
+    @Test
+    public void rawKeyOpensFaster() {
+        String rawKey = DatabaseKeyManager.toRawKey(passphrase);
+        create(passphraseFile, passphrase);
+        create(rawFile, rawKey);
+
+        long passphraseNanos = medianOpen(passphraseFile, passphrase);
+        long rawNanos = medianOpen(rawFile, rawKey);
+        Log.i(TAG, "open + first read, median of " + RUNS + ": passphrase "
+            + passphraseNanos / 1000 + " us, raw key " + rawNanos / 1000 + " us");
+
+        assertTrue("raw key open not faster: " + rawNanos + " ns vs " + passphraseNanos + " ns",
+            rawNanos < passphraseNanos);
+    }
+
+    private void create(File file, String key) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, key, null);
+        try {
+            db.execSQL("CREATE TABLE transactions (_id INTEGER PRIMARY KEY, amount INTEGER, stan TEXT)");
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < ROWS; i++) {
+                    db.execSQL("INSERT INTO transactions (amount, stan) VALUES (?, ?)",
+                        new Object[]{i * 1000L, String.format("%06d", i)});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private long medianOpen(File file, String key) {
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), key, null,
+                SQLiteDatabase.OPEN_READWRITE);
+            // The key is only checked on the first page read
+            db.rawQuery("SELECT COUNT(*) FROM transactions", null).close();
+            times[i] = System.nanoTime() - start;
+            db.close();
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private static void delete(File file) {
+        file.delete();
+        new File(file.getPath() + "-journal").delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+    }
+}
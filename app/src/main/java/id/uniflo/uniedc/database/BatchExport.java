@@ -0,0 +1,627 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the transactions of one batch to a file as CSV, JSON lines or the fixed-width
+ * settlement format.
+ * <p>
+ * The rows are read once, in the order of the batch index, and each is encoded and
+ * written before the next is read; nothing is collected, so memory stays at one
+ * cursor window and the write buffer whatever the size of the batch. Payload columns
+ * are not exported and card numbers are written masked. The file is written under a
+ * temporary name, synced and renamed when complete; a cancelled or failed export
+ * leaves no file behind.
+ * <pre>
+ * BatchExport.Result result = new BatchExport(dbHelper, BatchExport.Format.CSV)
+ *     .setDeflate(true)
+ *     .setListener((rows, total) -&gt; !cancelled)
+ *     .run(batchNumber, file);
+ * </pre>
+ */
+public class BatchExport {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    // Rows between two progress callbacks
+    public static final int PROGRESS_INTERVAL = 100;
+
+    /**
+     * Exported columns, in the order of the column indexes below
+     */
+    public static final String[] EXPORT_COLUMNS = {
+        TransactionDatabaseHelper.COLUMN_ID,
+        TransactionDatabaseHelper.COLUMN_TERMINAL_ID,
+        TransactionDatabaseHelper.COLUMN_MERCHANT_ID,
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER,
+        TransactionDatabaseHelper.COLUMN_TRACE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE,
+        TransactionDatabaseHelper.COLUMN_STATUS,
+        TransactionDatabaseHelper.COLUMN_AMOUNT,
+        TransactionDatabaseHelper.COLUMN_CARD_NUMBER,
+        TransactionDatabaseHelper.COLUMN_CARD_TYPE,
+        TransactionDatabaseHelper.COLUMN_ENTRY_MODE,
+        TransactionDatabaseHelper.COLUMN_APPROVAL_CODE,
+        TransactionDatabaseHelper.COLUMN_RESPONSE_CODE,
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE,
+        TransactionDatabaseHelper.COLUMN_IS_VOIDED
+    };
+
+    public static final int COL_ID = 0;
+    public static final int COL_TERMINAL_ID = 1;
+    public static final int COL_MERCHANT_ID = 2;
+    public static final int COL_BATCH_NUMBER = 3;
+    public static final int COL_TRACE_NUMBER = 4;
+    public static final int COL_REFERENCE_NUMBER = 5;
+    public static final int COL_TRANSACTION_TYPE = 6;
+    public static final int COL_STATUS = 7;
+    public static final int COL_AMOUNT = 8;
+    public static final int COL_CARD_NUMBER = 9;
+    public static final int COL_CARD_TYPE = 10;
+    public static final int COL_ENTRY_MODE = 11;
+    public static final int COL_APPROVAL_CODE = 12;
+    public static final int COL_RESPONSE_CODE = 13;
+    public static final int COL_TRANSACTION_DATE = 14;
+    public static final int COL_IS_VOIDED = 15;
+
+    private static final String EXPORT_QUERY =
+        "SELECT " + TextUtils.join(", ", EXPORT_COLUMNS) + " FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS +
+        " WHERE " + TransactionQueries.BY_BATCH + " ORDER BY " + TransactionQueries.BATCH_ORDER;
+
+    public enum Format {
+        /** RFC 4180, header line first */
+        CSV,
+        /** One JSON object per line */
+        JSON_LINES,
+        /** Header, detail and trailer records of {@value FixedWidthEncoder#RECORD_LENGTH} characters */
+        FIXED_WIDTH;
+
+        RowEncoder newEncoder() {
+            switch (this) {
+                case CSV:
+                    return new CsvEncoder();
+                case JSON_LINES:
+                    return new JsonLinesEncoder();
+                default:
+                    return new FixedWidthEncoder();
+            }
+        }
+    }
+
+    /**
+     * Turns rows into text. One encoder writes one file, it may keep totals across rows.
+     */
+    public interface RowEncoder {
+        void begin(Writer out, String batchNumber) throws IOException;
+
+        /**
+         * @param row cursor on the current row, columns as in {@link #EXPORT_COLUMNS}
+         */
+        void encode(Cursor row, Writer out) throws IOException;
+
+        void end(Writer out) throws IOException;
+    }
+
+    public interface ProgressListener {
+        /**
+         * @param total rows of the batch when the export started
+         * @return false to cancel the export
+         */
+        boolean onProgress(long rows, long total);
+    }
+
+    private final TransactionDatabaseHelper dbHelper;
+    private final RowEncoder encoder;
+    private boolean deflate;
+    private ProgressListener listener;
+
+    public BatchExport(TransactionDatabaseHelper dbHelper, Format format) {
+        this(dbHelper, format.newEncoder());
+    }
+
+    public BatchExport(TransactionDatabaseHelper dbHelper, RowEncoder encoder) {
+        if (dbHelper == null || encoder == null) {
+            throw new IllegalArgumentException("Database helper and encoder are required");
+        }
+        this.dbHelper = dbHelper;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Compress the file with Deflate (zlib format)
+     */
+    public BatchExport setDeflate(boolean deflate) {
+        this.deflate = deflate;
+        return this;
+    }
+
+    public BatchExport setListener(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Export the batch on the calling thread. Stops at the next row when the listener
+     * returns false or the thread is interrupted.
+     */
+    public Result run(String batchNumber, File file) throws IOException {
+        if (batchNumber == null || file == null) {
+            throw new IllegalArgumentException("Batch number and file are required");
+        }
+        Result result = new Result();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String[] args = {batchNumber};
+        long total = count(db, args);
+
+        File part = new File(file.getPath() + ".part");
+        boolean complete = false;
+        Deflater deflater = deflate ? new Deflater() : null;
+        try (FileOutputStream stream = new FileOutputStream(part)) {
+            FileChannel channel = stream.getChannel();
+            ChannelOutputStream channelOut = new ChannelOutputStream(channel, BUFFER_SIZE);
+            DeflaterOutputStream deflaterOut = deflater != null
+                ? new DeflaterOutputStream(channelOut, deflater, BUFFER_SIZE) : null;
+            // The writer only converts, the buffering is done below it. Nothing below the
+            // file holds a resource, closing the file is enough.
+            Writer writer = new OutputStreamWriter(deflaterOut != null ? deflaterOut : channelOut,
+                StandardCharsets.UTF_8);
+            boolean cancelled = false;
+            encoder.begin(writer, batchNumber);
+            Cursor cursor = db.rawQuery(EXPORT_QUERY, args);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        encoder.encode(cursor, writer);
+                        result.rows++;
+                        if (result.rows % PROGRESS_INTERVAL == 0 && !proceed(result.rows, total)) {
+                            cancelled = true;
+                            break;
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            if (!cancelled && (result.rows == 0 || result.rows % PROGRESS_INTERVAL != 0)) {
+                cancelled = !proceed(result.rows, total);
+            }
+            if (cancelled) {
+                return result;
+            }
+
+            encoder.end(writer);
+            writer.flush();
+            if (deflaterOut != null) {
+                deflaterOut.finish();
+            }
+            channelOut.flush();
+            channel.force(true);
+            complete = true;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (!complete) {
+                part.delete();
+            }
+        }
+
+        if (!part.renameTo(file)) {
+            part.delete();
+            throw new IOException("Cannot rename export to " + file);
+        }
+        result.bytes = file.length();
+        result.complete = true;
+        return result;
+    }
+
+    private boolean proceed(long rows, long total) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        return listener == null || listener.onProgress(rows, total);
+    }
+
+    private static long count(SQLiteDatabase db, String[] args) {
+        Cursor cursor = db.rawQuery(TransactionQueries.BATCH_COUNT_QUERY, args);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The card number as a receipt shows it, first six and last four digits in clear
+     */
+    static String maskPan(String cardNumber) {
+        if (cardNumber == null) {
+            return null;
+        }
+        StringBuilder masked = new StringBuilder(cardNumber.length());
+        int digits = 0;
+        for (int i = 0; i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c != ' ' && c != '-') {
+                masked.append(c);
+                digits++;
+            }
+        }
+        for (int i = 6; i < digits - 4; i++) {
+            masked.setCharAt(i, '*');
+        }
+        if (digits < 10) {
+            // Too short to show both ends, keep the last four at most
+            for (int i = 0; i < digits - 4; i++) {
+                masked.setCharAt(i, '*');
+            }
+        }
+        return masked.toString();
+    }
+
+    /**
+     * Buffers writes in one byte buffer and hands it to the channel when full
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        ChannelOutputStream(FileChannel channel, int size) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Column names as the header line, values quoted only where needed
+     */
+    static final class CsvEncoder implements RowEncoder {
+        private final StringBuilder line = new StringBuilder(256);
+        private final Date date = new Date();
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+
+        @Override
+        public void begin(Writer out, String batchNumber) throws IOException {
+            line.setLength(0);
+            for (int i = 0; i < EXPORT_COLUMNS.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(EXPORT_COLUMNS[i]);
+            }
+            out.append(line).append("\r\n");
+        }
+
+        @Override
+        public void encode(Cursor row, Writer out) throws IOException {
+            line.setLength(0);
+            for (int i = 0; i < EXPORT_COLUMNS.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                if (row.isNull(i)) {
+                    continue;
+                }
+                switch (i) {
+                    case COL_ID:
+                    case COL_AMOUNT:
+                    case COL_IS_VOIDED:
+                        line.append(row.getLong(i));
+                        break;
+                    case COL_TRANSACTION_DATE:
+                        date.setTime(row.getLong(i));
+                        line.append(dateFormat.format(date));
+                        break;
+                    case COL_CARD_NUMBER:
+                        appendField(maskPan(row.getString(i)));
+                        break;
+                    default:
+                        appendField(row.getString(i));
+                        break;
+                }
+            }
+            out.append(line).append("\r\n");
+        }
+
+        @Override
+        public void end(Writer out) {
+        }
+
+        private void appendField(String value) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (!quote) {
+                line.append(value);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        }
+    }
+
+    /**
+     * One object per row keyed by column name, nulls left out
+     */
+    static final class JsonLinesEncoder implements RowEncoder {
+        private final StringBuilder line = new StringBuilder(512);
+        private final Date date = new Date();
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+
+        @Override
+        public void begin(Writer out, String batchNumber) {
+        }
+
+        @Override
+        public void encode(Cursor row, Writer out) throws IOException {
+            line.setLength(0);
+            line.append('{');
+            boolean first = true;
+            for (int i = 0; i < EXPORT_COLUMNS.length; i++) {
+                if (row.isNull(i)) {
+                    continue;
+                }
+                if (!first) {
+                    line.append(',');
+                }
+                first = false;
+                line.append('"').append(EXPORT_COLUMNS[i]).append("\":");
+                switch (i) {
+                    case COL_ID:
+                    case COL_AMOUNT:
+                        line.append(row.getLong(i));
+                        break;
+                    case COL_IS_VOIDED:
+                        line.append(row.getInt(i) != 0);
+                        break;
+                    case COL_TRANSACTION_DATE:
+                        date.setTime(row.getLong(i));
+                        appendString(dateFormat.format(date));
+                        break;
+                    case COL_CARD_NUMBER:
+                        appendString(maskPan(row.getString(i)));
+                        break;
+                    default:
+                        appendString(row.getString(i));
+                        break;
+                }
+            }
+            line.append("}\n");
+            out.append(line);
+        }
+
+        @Override
+        public void end(Writer out) {
+        }
+
+        private void appendString(String value) {
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        line.append("\\\"");
+                        break;
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            line.append(String.format(Locale.US, "\\u%04x", (int) c));
+                        } else {
+                            line.append(c);
+                        }
+                        break;
+                }
+            }
+            line.append('"');
+        }
+    }
+
+    /**
+     * Settlement file of fixed length records, CRLF terminated:
+     * <pre>
+     * H batch(6) created(14, yyyyMMddHHmmss)
+     * D terminal(8) merchant(15) batch(6) trace(6) reference(12) type(12) status(10)
+     *   amount(12) card(19) approval(6) response(2) date(14) voided(1)
+     * T records(8) amount of the approved sales and transfers not voided(15)
+     * </pre>
+     * Numbers are zero filled on the left, text space filled on the right and cut to
+     * the field; every record is padded to the same length.
+     */
+    static final class FixedWidthEncoder implements RowEncoder {
+        static final int RECORD_LENGTH = 124;
+
+        private final StringBuilder record = new StringBuilder(RECORD_LENGTH + 2);
+        private final Date date = new Date();
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss", Locale.US);
+        private long records;
+        private long approvedAmount;
+
+        @Override
+        public void begin(Writer out, String batchNumber) throws IOException {
+            records = 0;
+            approvedAmount = 0;
+            record.setLength(0);
+            record.append('H');
+            text(batchNumber, 6);
+            date.setTime(System.currentTimeMillis());
+            text(dateFormat.format(date), 14);
+            finish(out);
+        }
+
+        @Override
+        public void encode(Cursor row, Writer out) throws IOException {
+            record.setLength(0);
+            record.append('D');
+            text(row.getString(COL_TERMINAL_ID), 8);
+            text(row.getString(COL_MERCHANT_ID), 15);
+            text(row.getString(COL_BATCH_NUMBER), 6);
+            text(row.getString(COL_TRACE_NUMBER), 6);
+            text(row.getString(COL_REFERENCE_NUMBER), 12);
+            text(row.getString(COL_TRANSACTION_TYPE), 12);
+            text(row.getString(COL_STATUS), 10);
+            long amount = row.getLong(COL_AMOUNT);
+            number(amount, 12);
+            text(maskPan(row.getString(COL_CARD_NUMBER)), 19);
+            text(row.getString(COL_APPROVAL_CODE), 6);
+            text(row.getString(COL_RESPONSE_CODE), 2);
+            if (row.isNull(COL_TRANSACTION_DATE)) {
+                text(null, 14);
+            } else {
+                date.setTime(row.getLong(COL_TRANSACTION_DATE));
+                text(dateFormat.format(date), 14);
+            }
+            boolean voided = row.getInt(COL_IS_VOIDED) != 0;
+            record.append(voided ? 'Y' : 'N');
+            finish(out);
+
+            records++;
+            String type = row.getString(COL_TRANSACTION_TYPE);
+            if (!voided && Transaction.STATUS_SUCCESS.equals(row.getString(COL_STATUS))
+                    && (Transaction.TYPE_SALE.equals(type) || Transaction.TYPE_TRANSFER.equals(type))) {
+                approvedAmount += amount;
+            }
+        }
+
+        @Override
+        public void end(Writer out) throws IOException {
+            record.setLength(0);
+            record.append('T');
+            number(records, 8);
+            number(approvedAmount, 15);
+            finish(out);
+        }
+
+        private void text(String value, int width) {
+            int length = value == null ? 0 : Math.min(value.length(), width);
+            if (length > 0) {
+                record.append(value, 0, length);
+            }
+            for (int i = length; i < width; i++) {
+                record.append(' ');
+            }
+        }
+
+        private void number(long value, int width) {
+            String digits = Long.toString(value);
+            if (value < 0 || digits.length() > width) {
+                throw new IllegalArgumentException(value + " does not fit " + width + " digits");
+            }
+            for (int i = digits.length(); i < width; i++) {
+                record.append('0');
+            }
+            record.append(digits);
+        }
+
+        private void finish(Writer out) throws IOException {
+            while (record.length() < RECORD_LENGTH) {
+                record.append(' ');
+            }
+            record.append("\r\n");
+            out.append(record);
+        }
+    }
+
+    public static class Result {
+        private long rows;
+        private long bytes;
+        private boolean complete;
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return size of the written file, compressed if Deflate was on
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return false if the export was cancelled, no file was written then
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package id.uniflo.uniedc.database;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteDatabaseHook;
+import net.sqlcipher.database.SQLiteException;
+
+import java.io.File;
+import java.util.List;
+
+import id.uniflo.uniedc.security.DatabaseKeyManager;
+
+/**
+ * Converts an encrypted database file to the encryption settings of its
+ * {@link DatabaseConfig} before the helper opens it.
+ * <p>
+ * The settings a file was written with are kept in shared preferences; files from
+ * before are passphrase-keyed with the SQLCipher defaults. When they differ from the
+ * config the file is exported with {@code sqlcipher_export} into a new file under the
+ * new key and settings, which then replaces the old one. The new file is created in
+ * incremental auto-vacuum mode if the config asks for it. A crash before the rename
+ * leaves the old file in use and the conversion is redone on the next start; a crash
+ * after it is detected by the old settings no longer opening the file.
+ * <p>
+ * If the conversion fails the database is opened with its current settings, so the
+ * terminal keeps working with a slower open.
+ */
+final class CipherMigration {
+
+    private static final String TAG = "CipherMigration";
+    private static final String PREFS_NAME = "database_cipher_prefs";
+    private static final String LEGACY_FORMAT = DatabaseConfig.cipherFormat(false,
+        DatabaseConfig.DEFAULT_CIPHER_PAGE_SIZE, DatabaseConfig.DEFAULT_KDF_ITERATIONS);
+    private static final String EXPORT_SCHEMA = "migrated";
+
+    /**
+     * Key and settings to open a database with
+     */
+    static final class OpenParams {
+        final String key;
+        final DatabaseConfig config;
+
+        OpenParams(String key, DatabaseConfig config) {
+            this.key = key;
+            this.config = config;
+        }
+    }
+
+    private CipherMigration() {
+    }
+
+    /**
+     * Load SQLCipher, fetch the key and convert the file if its settings changed
+     */
+    static OpenParams prepare(Context context, String name, DatabaseConfig config) {
+        SQLiteDatabase.loadLibs(context);
+        String passphrase = DatabaseKeyManager.getInstance(context).getDatabaseKey();
+        String rawKey = DatabaseKeyManager.toRawKey(passphrase);
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String target = config.getCipherFormat();
+        File file = context.getDatabasePath(name);
+        if (!file.exists()) {
+            // Created by the helper with the new settings
+            prefs.edit().putString(name, target).commit();
+            return new OpenParams(config.isRawKey() ? rawKey : passphrase, config);
+        }
+
+        String stored = prefs.getString(name, LEGACY_FORMAT);
+        if (stored.equals(target)) {
+            return new OpenParams(config.isRawKey() ? rawKey : passphrase, config);
+        }
+
+        DatabaseConfig source = config.withCipherFormat(stored);
+        String sourceKey = source.isRawKey() ? rawKey : passphrase;
+        String targetKey = config.isRawKey() ? rawKey : passphrase;
+        try {
+            long start = System.currentTimeMillis();
+            export(file, sourceKey, source, targetKey, config);
+            prefs.edit().putString(name, target).commit();
+            Log.i(TAG, name + " converted from " + stored + " to " + target
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+            return new OpenParams(targetKey, config);
+        } catch (SQLiteException e) {
+            if (opens(file, targetKey, config)) {
+                // Converted before, the preference write was lost
+                prefs.edit().putString(name, target).commit();
+                return new OpenParams(targetKey, config);
+            }
+            Log.e(TAG, name + " not converted, kept as " + stored, e);
+            return new OpenParams(sourceKey, source);
+        } catch (RuntimeException e) {
+            Log.e(TAG, name + " not converted, kept as " + stored, e);
+            return new OpenParams(sourceKey, source);
+        }
+    }
+
+    private static void export(File file, String sourceKey, DatabaseConfig source,
+                               String targetKey, DatabaseConfig target) {
+        File exported = new File(file.getPath() + ".migrating");
+        deleteWithJournals(exported);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), sourceKey, null,
+            SQLiteDatabase.OPEN_READWRITE, hook(source.cipherPragmas()));
+        try {
+            int version = db.getVersion();
+            db.rawExecSQL("ATTACH DATABASE '" + exported.getPath().replace("'", "''") + "' AS " + EXPORT_SCHEMA +
+                " KEY " + keyLiteral(targetKey));
+            for (String pragma : target.cipherPragmas(EXPORT_SCHEMA)) {
+                db.rawExecSQL(pragma);
+            }
+            if (target.isIncrementalVacuum()) {
+                // Has to be set while the new file is empty, a later switch needs a full VACUUM
+                db.rawExecSQL("PRAGMA " + EXPORT_SCHEMA + ".auto_vacuum = INCREMENTAL");
+            }
+            db.rawExecSQL("SELECT sqlcipher_export('" + EXPORT_SCHEMA + "')");
+            // Not copied by the export, the helper needs it to skip onCreate
+            db.rawExecSQL("PRAGMA " + EXPORT_SCHEMA + ".user_version = " + version);
+            db.rawExecSQL("DETACH DATABASE " + EXPORT_SCHEMA);
+        } finally {
+            db.close();
+        }
+
+        // The old log and index belong to the old file
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        if (!exported.renameTo(file)) {
+            deleteWithJournals(exported);
+            throw new IllegalStateException("Converted database not moved into place: " + file);
+        }
+    }
+
+    private static boolean opens(File file, String key, DatabaseConfig config) {
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), key, null,
+                SQLiteDatabase.OPEN_READONLY, hook(config.cipherPragmas()));
+            try {
+                db.rawQuery("SELECT COUNT(*) FROM sqlite_master", null).close();
+                return true;
+            } finally {
+                db.close();
+            }
+        } catch (SQLiteException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A raw key literal is passed as it is, a passphrase as a quoted string
+     */
+    private static String keyLiteral(String key) {
+        if (key.startsWith("x'")) {
+            return "\"" + key + "\"";
+        }
+        return "'" + key.replace("'", "''") + "'";
+    }
+
+    private static SQLiteDatabaseHook hook(List<String> pragmas) {
+        return new SQLiteDatabaseHook() {
+            @Override
+            public void preKey(SQLiteDatabase db) {
+            }
+
+            @Override
+            public void postKey(SQLiteDatabase db) {
+                for (String pragma : pragmas) {
+                    db.rawExecSQL(pragma);
+                }
+            }
+        };
+    }
+
+    private static void deleteWithJournals(File file) {
+        file.delete();
+        new File(file.getPath() + "-journal").delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+    }
+}
@@ -0,0 +1,301 @@
+package id.uniflo.uniedc.database;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteDatabaseHook;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection settings of one database file: encryption, journal mode, page cache and
+ * the read connections opened next to the writer.
+ * <p>
+ * With {@link #isRawKey()} the SQLCipher stores are opened with the 256 bit key itself
+ * ({@code x'...'}) instead of the passphrase it is stored as, which skips the PBKDF2
+ * run that otherwise takes most of the open time. Existing files are converted once
+ * by {@link CipherMigration} when the encryption settings of their config change.
+ * <p>
+ * All stores run in write-ahead-log mode so a reader sees the last commit without
+ * waiting for a write in progress. Automatic checkpoints are off on the SQLCipher
+ * stores, since SQLite would run them inside the commit that crosses the threshold,
+ * on the thread storing the sale; {@link WalCheckpointer} runs them in the background
+ * once the database is idle instead. Commits keep {@code synchronous = FULL}: an
+ * approved sale must survive a power cut right after the receipt is printed.
+ */
+public final class DatabaseConfig {
+
+    // SQLCipher 4 defaults, what the existing files were created with
+    public static final int DEFAULT_CIPHER_PAGE_SIZE = 4096;
+    public static final int DEFAULT_KDF_ITERATIONS = 256000;
+
+    public static final DatabaseConfig TRANSACTIONS = builder()
+        .cacheSizeKb(2048)
+        .readCacheSizeKb(1024)
+        .readConnections(2)
+        .incrementalVacuum(true)
+        .maxWalBytes(4L * 1024 * 1024)
+        .rawKey(true)
+        .build();
+    public static final DatabaseConfig SECURE_SETTINGS = builder()
+        .cacheSizeKb(256)
+        .readCacheSizeKb(256)
+        .readConnections(1)
+        .maxWalBytes(1024L * 1024)
+        .rawKey(true)
+        .build();
+    // Plain SQLite, the framework pools its own read connections in WAL mode
+    public static final DatabaseConfig SETTINGS = builder()
+        .cacheSizeKb(256)
+        .build();
+
+    private final int cacheSizeKb;
+    private final int readCacheSizeKb;
+    private final int readConnections;
+    private final boolean incrementalVacuum;
+    private final long maxWalBytes;
+    private final boolean rawKey;
+    private final int cipherPageSize;
+    private final int kdfIterations;
+
+    private DatabaseConfig(Builder builder) {
+        this.cacheSizeKb = builder.cacheSizeKb;
+        this.readCacheSizeKb = builder.readCacheSizeKb;
+        this.readConnections = builder.readConnections;
+        this.incrementalVacuum = builder.incrementalVacuum;
+        this.maxWalBytes = builder.maxWalBytes;
+        this.rawKey = builder.rawKey;
+        this.cipherPageSize = builder.cipherPageSize;
+        this.kdfIterations = builder.kdfIterations;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return this config with the encryption settings of a {@link #getCipherFormat()} string
+     */
+    DatabaseConfig withCipherFormat(String format) {
+        String[] parts = format.split(":");
+        Builder builder = builder()
+            .cacheSizeKb(cacheSizeKb)
+            .readCacheSizeKb(readCacheSizeKb)
+            .readConnections(readConnections)
+            .incrementalVacuum(incrementalVacuum)
+            .maxWalBytes(maxWalBytes);
+        try {
+            if (parts.length == 2 && "raw".equals(parts[0])) {
+                builder.rawKey(true).cipherPageSize(Integer.parseInt(parts[1]));
+            } else if (parts.length == 3 && "passphrase".equals(parts[0])) {
+                builder.rawKey(false).cipherPageSize(Integer.parseInt(parts[1]))
+                    .kdfIterations(Integer.parseInt(parts[2]));
+            } else {
+                throw new IllegalArgumentException("Unknown cipher format " + format);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown cipher format " + format, e);
+        }
+        return builder.build();
+    }
+
+    public int getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    public int getReadCacheSizeKb() {
+        return readCacheSizeKb;
+    }
+
+    public int getReadConnections() {
+        return readConnections;
+    }
+
+    public boolean isIncrementalVacuum() {
+        return incrementalVacuum;
+    }
+
+    public long getMaxWalBytes() {
+        return maxWalBytes;
+    }
+
+    /**
+     * @return true to open with the raw 256 bit key instead of the passphrase
+     */
+    public boolean isRawKey() {
+        return rawKey;
+    }
+
+    public int getCipherPageSize() {
+        return cipherPageSize;
+    }
+
+    public int getKdfIterations() {
+        return kdfIterations;
+    }
+
+    /**
+     * Encryption settings of the file as a string, stored to tell whether an existing
+     * file still has to be converted to this config
+     */
+    public String getCipherFormat() {
+        return cipherFormat(rawKey, cipherPageSize, kdfIterations);
+    }
+
+    static String cipherFormat(boolean rawKey, int cipherPageSize, int kdfIterations) {
+        // The KDF is not run for a raw key
+        return rawKey ? "raw:" + cipherPageSize : "passphrase:" + cipherPageSize + ":" + kdfIterations;
+    }
+
+    /**
+     * Encryption settings to apply right after the key, before the first page is read
+     */
+    public List<String> cipherPragmas() {
+        return cipherPragmas(null);
+    }
+
+    /**
+     * @param schema attached database name, null for the main one
+     */
+    List<String> cipherPragmas(String schema) {
+        String prefix = schema != null ? schema + "." : "";
+        List<String> pragmas = new ArrayList<>();
+        if (cipherPageSize != DEFAULT_CIPHER_PAGE_SIZE) {
+            pragmas.add("PRAGMA " + prefix + "cipher_page_size = " + cipherPageSize);
+        }
+        if (!rawKey && kdfIterations != DEFAULT_KDF_ITERATIONS) {
+            pragmas.add("PRAGMA " + prefix + "kdf_iter = " + kdfIterations);
+        }
+        return pragmas;
+    }
+
+    /**
+     * Statements to run on a SQLCipher connection right after the key is set, in order,
+     * the cipher settings first
+     */
+    public List<String> connectionPragmas(boolean reader) {
+        List<String> pragmas = cipherPragmas();
+        if (!reader && incrementalVacuum) {
+            // Only takes effect on a new file, and only before it is switched to WAL
+            pragmas.add("PRAGMA auto_vacuum = INCREMENTAL");
+        }
+        pragmas.add("PRAGMA journal_mode = WAL");
+        pragmas.add("PRAGMA synchronous = FULL");
+        // Negative cache_size is in KiB rather than pages
+        pragmas.add("PRAGMA cache_size = -" + (reader ? readCacheSizeKb : cacheSizeKb));
+        if (reader) {
+            pragmas.add("PRAGMA query_only = 1");
+        } else {
+            pragmas.add("PRAGMA wal_autocheckpoint = 0");
+            pragmas.add("PRAGMA journal_size_limit = " + maxWalBytes);
+        }
+        return pragmas;
+    }
+
+    /**
+     * Hook applying {@link #connectionPragmas(boolean)} to a SQLCipher connection
+     */
+    public SQLiteDatabaseHook cipherHook(boolean reader) {
+        List<String> pragmas = connectionPragmas(reader);
+        return new SQLiteDatabaseHook() {
+            @Override
+            public void preKey(SQLiteDatabase db) {
+            }
+
+            @Override
+            public void postKey(SQLiteDatabase db) {
+                for (String pragma : pragmas) {
+                    db.rawExecSQL(pragma);
+                }
+            }
+        };
+    }
+
+    public static final class Builder {
+        private int cacheSizeKb = 2048;
+        private int readCacheSizeKb = 1024;
+        private int readConnections;
+        private boolean incrementalVacuum;
+        private long maxWalBytes = 1024L * 1024;
+        private boolean rawKey;
+        private int cipherPageSize = DEFAULT_CIPHER_PAGE_SIZE;
+        private int kdfIterations = DEFAULT_KDF_ITERATIONS;
+
+        private Builder() {
+        }
+
+        /**
+         * Page cache of the write connection
+         */
+        public Builder cacheSizeKb(int cacheSizeKb) {
+            this.cacheSizeKb = cacheSizeKb;
+            return this;
+        }
+
+        /**
+         * Page cache of each read connection
+         */
+        public Builder readCacheSizeKb(int readCacheSizeKb) {
+            this.readCacheSizeKb = readCacheSizeKb;
+            return this;
+        }
+
+        /**
+         * Read-only connections kept open next to the writer
+         */
+        public Builder readConnections(int readConnections) {
+            this.readConnections = readConnections;
+            return this;
+        }
+
+        /**
+         * Create the file in incremental auto-vacuum mode
+         */
+        public Builder incrementalVacuum(boolean incrementalVacuum) {
+            this.incrementalVacuum = incrementalVacuum;
+            return this;
+        }
+
+        /**
+         * Log size that triggers a checkpoint without waiting for idle
+         */
+        public Builder maxWalBytes(long maxWalBytes) {
+            this.maxWalBytes = maxWalBytes;
+            return this;
+        }
+
+        /**
+         * Open with the raw key, skipping the PBKDF2 derivation of the passphrase
+         */
+        public Builder rawKey(boolean rawKey) {
+            this.rawKey = rawKey;
+            return this;
+        }
+
+        /**
+         * SQLCipher page size, a power of two from 512 to 65536
+         */
+        public Builder cipherPageSize(int cipherPageSize) {
+            this.cipherPageSize = cipherPageSize;
+            return this;
+        }
+
+        /**
+         * PBKDF2 iterations of the passphrase, unused with a raw key
+         */
+        public Builder kdfIterations(int kdfIterations) {
+            this.kdfIterations = kdfIterations;
+            return this;
+        }
+
+        public DatabaseConfig build() {
+            if (cacheSizeKb <= 0 || readCacheSizeKb <= 0 || readConnections < 0 || maxWalBytes <= 0
+                    || kdfIterations <= 0) {
+                throw new IllegalArgumentException("Invalid database config");
+            }
+            if (cipherPageSize < 512 || cipherPageSize > 65536 || Integer.bitCount(cipherPageSize) != 1) {
+                throw new IllegalArgumentException("Invalid cipher page size " + cipherPageSize);
+            }
+            return new DatabaseConfig(this);
+        }
+    }
+}
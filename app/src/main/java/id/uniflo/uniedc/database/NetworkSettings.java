@@ -16,6 +16,22 @@ public class NetworkSettings {
         // Default constructor
     }
     
+    /**
+     * Copy of another instance
+     */
+    public NetworkSettings(NetworkSettings other) {
+        this.connectionType = other.connectionType;
+        this.primaryHost = other.primaryHost;
+        this.primaryPort = other.primaryPort;
+        this.secondaryHost = other.secondaryHost;
+        this.secondaryPort = other.secondaryPort;
+        this.timeout = other.timeout;
+        this.retryCount = other.retryCount;
+        this.useSsl = other.useSsl;
+        this.keepAlive = other.keepAlive;
+        this.protocol = other.protocol;
+    }
+    
     // Getters and Setters
     public String getConnectionType() {
         return connectionType;
@@ -0,0 +1,223 @@
+package id.uniflo.uniedc.database;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * Storage format of the payload columns: the raw host messages, EMV data and PIN
+ * block of a transaction.
+ * <p>
+ * Every value is stored as a BLOB starting with one format byte:
+ * <ul>
+ * <li>{@link #FORMAT_BINARY} - upper case hex such as the TLV data or the PIN block,
+ * stored as the bytes it encodes, half the size of the text</li>
+ * <li>{@link #FORMAT_DEFLATE} - the length of the text as a varint followed by a zlib
+ * stream compressed against {@link #DICTIONARY}, used for the JSON messages when it is
+ * smaller than the text</li>
+ * <li>{@link #FORMAT_TEXT} - UTF-8 text, everything else</li>
+ * </ul>
+ * The host messages are a few hundred bytes, too short for Deflate to find much to
+ * reference within one message. The preset dictionary is a typical /api/purchase
+ * request and response, so the keys and the fixed values are matched against it from
+ * the first byte on.
+ * <p>
+ * Values written before this format are TEXT, callers pass those through unchanged
+ * and hand BLOBs to {@link #decode(byte[])}. The dictionary is part of the format:
+ * changing it makes stored values unreadable, add a new format byte instead.
+ */
+public final class PayloadCodec {
+
+    public static final byte FORMAT_TEXT = 0;
+    public static final byte FORMAT_BINARY = 1;
+    public static final byte FORMAT_DEFLATE = 2;
+
+    // Shorter text rarely compresses below its own size
+    private static final int MIN_DEFLATE_LENGTH = 48;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Sample purchase request and host response. Deflate prefers the nearest match, so
+     * the parts every message has are at the end.
+     */
+    static final byte[] DICTIONARY = (
+        "{\"status\":\"success\",\"data\":{\"transactionId\":\"\",\"timestamp\":\"\"," +
+        "\"referenceNumber\":\"000000000000\",\"approvalCode\":\"000000\"," +
+        "\"balance\":\"000000000000\",\"message\":\"Approved\",\"responseCode\":\"00\"}}" +
+        "{\"9F1E\":\"3132333435363738\",\"9F16\":\"000000000012345\",\"9F1C\":\"12345678\"," +
+        "\"9F03\":\"000000000000\",\"9F35\":\"22\",\"9F33\":\"E0F8C8\",\"9F34\":\"420300\"," +
+        "\"9F10\":\"06010A03A4A002\",\"9F27\":\"80\",\"9F37\":\"\",\"9F36\":\"00\",\"9F26\":\"\"," +
+        "\"95\":\"0000000000\",\"82\":\"3C00\",\"9A\":\"\",\"9C\":\"00\"," +
+        "\"5F2A\":\"0360\",\"9F1A\":\"0360\",\"9F02\":\"000000000000\"," +
+        "\"CardType\":\"CHIP\",\"AcquiringInstitutionCode\":\"\",\"TransmissionDateTime\":\"\"," +
+        "\"LocalDate\":\"\",\"LocalTime\":\"\",\"PINBlock\":\"\",\"IAD\":\"\",\"AIP\":\"\"," +
+        "\"TVR\":\"\",\"ATC\":\"\",\"ARQC\":\"\",\"STAN\":\"000000\",\"TerminalID\":\"\"," +
+        "\"MerchantID\":\"\",\"ProcessingCode\":\"000000\",\"Amount\":\"000000000000\"," +
+        "\"MTI\":\"0200\",\"").getBytes(UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_COMPRESSION);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * @return the stored form of a value, null for null
+     */
+    public static byte[] encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (isUpperHex(value)) {
+            byte[] bytes = HexUtil.decode(value);
+            byte[] out = new byte[bytes.length + 1];
+            out[0] = FORMAT_BINARY;
+            System.arraycopy(bytes, 0, out, 1, bytes.length);
+            return out;
+        }
+        byte[] text = value.getBytes(UTF_8);
+        if (text.length >= MIN_DEFLATE_LENGTH) {
+            byte[] compressed = deflate(text);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        byte[] out = new byte[text.length + 1];
+        out[0] = FORMAT_TEXT;
+        System.arraycopy(text, 0, out, 1, text.length);
+        return out;
+    }
+
+    /**
+     * @return the value a stored BLOB was encoded from, null for null
+     * @throws IllegalArgumentException if the BLOB is not in this format
+     */
+    public static String decode(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        if (stored.length == 0) {
+            throw new IllegalArgumentException("Empty payload value");
+        }
+        switch (stored[0]) {
+            case FORMAT_TEXT:
+                return new String(stored, 1, stored.length - 1, UTF_8);
+            case FORMAT_BINARY:
+                return HexUtil.encode(stored, 1, stored.length - 1);
+            case FORMAT_DEFLATE:
+                return new String(inflate(stored), UTF_8);
+            default:
+                throw new IllegalArgumentException("Unknown payload format " + stored[0]);
+        }
+    }
+
+    /**
+     * Hex that decodes back to the same text; lower case or odd length hex stays text
+     */
+    static boolean isUpperHex(String value) {
+        int length = value.length();
+        if (length == 0 || (length & 1) != 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'A' || c > 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return format byte, varint length and zlib stream, null if not smaller than text
+     */
+    private static byte[] deflate(byte[] text) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(text);
+        deflater.finish();
+
+        // Worth storing only if it beats the text with its format byte
+        byte[] out = new byte[text.length + 1];
+        out[0] = FORMAT_DEFLATE;
+        int position = writeVarint(out, 1, text.length);
+        while (!deflater.finished()) {
+            if (position == out.length) {
+                return null;
+            }
+            position += deflater.deflate(out, position, out.length - position);
+        }
+        return Arrays.copyOf(out, position);
+    }
+
+    private static byte[] inflate(byte[] stored) {
+        int[] position = {1};
+        int length = readVarint(stored, position);
+        byte[] text = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(stored, position[0], stored.length - position[0]);
+        try {
+            int read = 0;
+            while (read < length) {
+                int n = inflater.inflate(text, read, length - read);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IllegalArgumentException("Truncated payload value");
+                    }
+                }
+                read += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt payload value", e);
+        }
+        return text;
+    }
+
+    private static int writeVarint(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarint(byte[] in, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= in.length) {
+                break;
+            }
+            byte b = in[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                // A fifth byte can reach the sign bit, no text is that long
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupt payload length");
+    }
+}
@@ -14,6 +14,20 @@ public class PrinterSettings {
         // Default constructor
     }
     
+    /**
+     * Copy of another instance
+     */
+    public PrinterSettings(PrinterSettings other) {
+        this.printDensity = other.printDensity;
+        this.printLogo = other.printLogo;
+        this.printMerchantCopy = other.printMerchantCopy;
+        this.printCustomerCopy = other.printCustomerCopy;
+        this.headerLine1 = other.headerLine1;
+        this.headerLine2 = other.headerLine2;
+        this.footerLine1 = other.footerLine1;
+        this.footerLine2 = other.footerLine2;
+    }
+    
     // Getters and Setters
     public int getPrintDensity() {
         return printDensity;
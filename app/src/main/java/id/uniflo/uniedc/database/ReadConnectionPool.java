@@ -0,0 +1,87 @@
+package id.uniflo.uniedc.database;
+
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteDatabaseHook;
+
+import id.uniflo.uniedc.util.ThreadPoolManager;
+
+/**
+ * Read-only SQLCipher connections next to the write connection of a helper.
+ * <p>
+ * A SQLCipher {@link SQLiteDatabase} serializes every call on one lock, so a report
+ * query on the write connection waits for the sale being stored and the other way
+ * round. In WAL mode a second connection reads the last commit without that wait.
+ * Each thread keeps to one connection of the pool, picked by thread id; two threads
+ * on the same connection only wait for each other, never for the writer.
+ * <p>
+ * Connections are opened in the background after the write connection, because
+ * SQLCipher derives the key again for each. Until they are open {@link #get()}
+ * returns null and the helper reads on the write connection as before.
+ */
+final class ReadConnectionPool {
+
+    private static final String TAG = "ReadConnectionPool";
+
+    private final String path;
+    private final String key;
+    private final SQLiteDatabaseHook hook;
+    private final SQLiteDatabase[] connections;
+    private boolean opening;
+    private volatile boolean open;
+
+    /**
+     * @param hook sets the reader pragmas after the key
+     */
+    ReadConnectionPool(String path, String key, int size, SQLiteDatabaseHook hook) {
+        this.path = path;
+        this.key = key;
+        this.hook = hook;
+        this.connections = new SQLiteDatabase[size];
+    }
+
+    /**
+     * @return a read connection for the calling thread, null if not open yet
+     */
+    SQLiteDatabase get() {
+        if (!open) {
+            return null;
+        }
+        return connections[(int) (Thread.currentThread().getId() % connections.length)];
+    }
+
+    /**
+     * Open the connections on the background pool, once the schema is up to date
+     */
+    synchronized void openAsync() {
+        if (opening || connections.length == 0) {
+            return;
+        }
+        opening = true;
+        ThreadPoolManager.getInstance().execute(() -> {
+            try {
+                for (int i = 0; i < connections.length; i++) {
+                    connections[i] = SQLiteDatabase.openDatabase(path, key, null,
+                        SQLiteDatabase.OPEN_READWRITE, hook);
+                }
+                open = true;
+            } catch (Exception e) {
+                // Reads stay on the write connection
+                Log.w(TAG, "Read connections not opened for " + path, e);
+                close();
+            }
+        });
+    }
+
+    synchronized void close() {
+        open = false;
+        for (int i = 0; i < connections.length; i++) {
+            if (connections[i] != null) {
+                connections[i].close();
+                connections[i] = null;
+            }
+        }
+        opening = false;
+    }
+}
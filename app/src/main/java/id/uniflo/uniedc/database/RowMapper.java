@@ -0,0 +1,211 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Maps cursor rows to objects through a fixed list of column bindings.
+ * <p>
+ * Column names are resolved to indices once per cursor in {@link #bind(Cursor)},
+ * not once per column per row, and the result is cached for the last projection
+ * seen, so repeated single-row reads with the same projection skip the lookup too.
+ * Columns missing from the projection are left out of the bound mapper and keep the
+ * default value of the created object.
+ * <pre>
+ * RowMapper.Bound&lt;Transaction&gt; mapper = TRANSACTION_MAPPER.bind(cursor);
+ * while (cursor.moveToNext()) {
+ *     transactions.add(mapper.map(cursor));
+ * }
+ * </pre>
+ * Mappers are immutable and safe to share between threads.
+ */
+public final class RowMapper<T> {
+
+    public interface Factory<T> {
+        T create();
+    }
+
+    public interface StringSetter<T> {
+        void set(T target, String value);
+    }
+
+    public interface LongSetter<T> {
+        void set(T target, long value);
+    }
+
+    public interface IntSetter<T> {
+        void set(T target, int value);
+    }
+
+    public interface BooleanSetter<T> {
+        void set(T target, boolean value);
+    }
+
+    public interface DateSetter<T> {
+        void set(T target, Date value);
+    }
+
+    public interface BlobSetter<T> {
+        void set(T target, byte[] value);
+    }
+
+    /**
+     * Reads one column of the current row into the target
+     */
+    private interface Column<T> {
+        void read(T target, Cursor cursor, int index);
+    }
+
+    private final Factory<T> factory;
+    private final String[] names;
+    private final Column<T>[] columns;
+    private volatile Bound<T> lastBound;
+
+    private RowMapper(Factory<T> factory, String[] names, Column<T>[] columns) {
+        this.factory = factory;
+        this.names = names;
+        this.columns = columns;
+    }
+
+    public static <T> Builder<T> builder(Factory<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    /**
+     * Resolve the column indices of a cursor
+     *
+     * @param cursor the cursor, its position is not changed
+     * @return a mapper bound to the projection of this cursor
+     */
+    public Bound<T> bind(Cursor cursor) {
+        String[] cursorColumns = cursor.getColumnNames();
+        Bound<T> bound = lastBound;
+        if (bound != null && Arrays.equals(bound.cursorColumns, cursorColumns)) {
+            return bound;
+        }
+
+        int[] indices = new int[columns.length];
+        Column<T>[] present = newColumns(columns.length);
+        int count = 0;
+        for (int i = 0; i < columns.length; i++) {
+            int index = cursor.getColumnIndex(names[i]);
+            if (index != -1) {
+                indices[count] = index;
+                present[count++] = columns[i];
+            }
+        }
+        bound = new Bound<>(factory, cursorColumns, Arrays.copyOf(present, count), Arrays.copyOf(indices, count));
+        lastBound = bound;
+        return bound;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Column<T>[] newColumns(int length) {
+        return (Column<T>[]) new Column<?>[length];
+    }
+
+    /**
+     * Map the current row of a cursor, binding it first. Use {@link #bind(Cursor)}
+     * when reading more than one row.
+     */
+    public T map(Cursor cursor) {
+        return bind(cursor).map(cursor);
+    }
+
+    /**
+     * A mapper with its column indices resolved for one projection
+     */
+    public static final class Bound<T> {
+        private final Factory<T> factory;
+        private final String[] cursorColumns;
+        private final Column<T>[] columns;
+        private final int[] indices;
+
+        private Bound(Factory<T> factory, String[] cursorColumns, Column<T>[] columns, int[] indices) {
+            this.factory = factory;
+            this.cursorColumns = cursorColumns;
+            this.columns = columns;
+            this.indices = indices;
+        }
+
+        /**
+         * Map the current row
+         */
+        public T map(Cursor cursor) {
+            T row = factory.create();
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].read(row, cursor, indices[i]);
+            }
+            return row;
+        }
+
+        /**
+         * Map all remaining rows
+         */
+        public List<T> mapAll(Cursor cursor) {
+            List<T> rows = new ArrayList<>(Math.max(cursor.getCount(), 0));
+            while (cursor.moveToNext()) {
+                rows.add(map(cursor));
+            }
+            return rows;
+        }
+    }
+
+    public static final class Builder<T> {
+        private final Factory<T> factory;
+        private final List<String> names = new ArrayList<>();
+        private final List<Column<T>> columns = new ArrayList<>();
+
+        private Builder(Factory<T> factory) {
+            this.factory = factory;
+        }
+
+        public Builder<T> string(String column, StringSetter<T> setter) {
+            return add(column, (target, cursor, index) -> setter.set(target, cursor.getString(index)));
+        }
+
+        public Builder<T> longValue(String column, LongSetter<T> setter) {
+            return add(column, (target, cursor, index) -> setter.set(target, cursor.getLong(index)));
+        }
+
+        public Builder<T> intValue(String column, IntSetter<T> setter) {
+            return add(column, (target, cursor, index) -> setter.set(target, cursor.getInt(index)));
+        }
+
+        /**
+         * Integer column where 1 means true
+         */
+        public Builder<T> bool(String column, BooleanSetter<T> setter) {
+            return add(column, (target, cursor, index) -> setter.set(target, cursor.getInt(index) == 1));
+        }
+
+        /**
+         * Epoch millis column, NULL leaves the date unset
+         */
+        public Builder<T> date(String column, DateSetter<T> setter) {
+            return add(column, (target, cursor, index) -> {
+                if (!cursor.isNull(index)) {
+                    setter.set(target, new Date(cursor.getLong(index)));
+                }
+            });
+        }
+
+        public Builder<T> blob(String column, BlobSetter<T> setter) {
+            return add(column, (target, cursor, index) -> setter.set(target, cursor.getBlob(index)));
+        }
+
+        private Builder<T> add(String column, Column<T> reader) {
+            names.add(column);
+            columns.add(reader);
+            return this;
+        }
+
+        public RowMapper<T> build() {
+            return new RowMapper<>(factory, names.toArray(new String[0]), columns.toArray(RowMapper.<T>newColumns(0)));
+        }
+    }
+}
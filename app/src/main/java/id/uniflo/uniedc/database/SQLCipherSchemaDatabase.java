@@ -0,0 +1,76 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import id.uniflo.uniedc.database.migration.SchemaDatabase;
+
+/**
+ * {@link SchemaDatabase} on an open SQLCipher connection
+ */
+class SQLCipherSchemaDatabase implements SchemaDatabase {
+    
+    private final SQLiteDatabase db;
+    
+    SQLCipherSchemaDatabase(SQLiteDatabase db) {
+        this.db = db;
+    }
+    
+    @Override
+    public void execSQL(String sql) {
+        db.execSQL(sql);
+    }
+    
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) {
+        db.execSQL(sql, bindArgs);
+    }
+    
+    @Override
+    public long longForQuery(String sql, String[] selectionArgs) {
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    @Override
+    public List<String> stringsForQuery(String sql, String[] selectionArgs) {
+        List<String> values = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    values.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return values;
+    }
+    
+    @Override
+    public void beginTransaction() {
+        db.beginTransaction();
+    }
+    
+    @Override
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
+    }
+    
+    @Override
+    public void endTransaction() {
+        db.endTransaction();
+    }
+}
@@ -6,13 +6,17 @@ import android.content.Context;
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteOpenHelper;
 
+import java.io.File;
+
 import id.uniflo.uniedc.security.DatabaseKeyManager;
+import id.uniflo.uniedc.util.HexUtil;
 
 public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
     
     // Database Information
     private static final String DATABASE_NAME = "uniflo_edc_settings.db";
     private static final int DATABASE_VERSION = 2; // Incremented for new column
+    private static final DatabaseConfig CONFIG = DatabaseConfig.SECURE_SETTINGS;
     
     // Table Names
     public static final String TABLE_NETWORK_SETTINGS = "network_settings";
@@ -96,6 +100,9 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
     private static SecureSettingsDatabaseHelper instance;
     private final Context context;
     private final String databaseKey;
+    private final DatabaseConfig config;
+    private final ReadConnectionPool readPool;
+    private final WalCheckpointer checkpointer;
     
     // Create table SQL statements
     private static final String CREATE_NETWORK_SETTINGS_TABLE = 
@@ -182,14 +189,21 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
         COLUMN_UPDATED_AT + " INTEGER)";
     
     private SecureSettingsDatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Loads SQLCipher, fetches the key and converts the file to CONFIG if needed
+        this(context, CipherMigration.prepare(context, DATABASE_NAME, CONFIG));
+    }
+    
+    private SecureSettingsDatabaseHelper(Context context, CipherMigration.OpenParams params) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION, params.config.cipherHook(false));
         this.context = context.getApplicationContext();
+        this.databaseKey = params.key;
+        this.config = params.config;
         
-        // Load SQLCipher native libraries
-        SQLiteDatabase.loadLibs(context);
-        
-        // Get database encryption key
-        this.databaseKey = DatabaseKeyManager.getInstance(context).getDatabaseKey();
+        File databaseFile = this.context.getDatabasePath(DATABASE_NAME);
+        this.readPool = new ReadConnectionPool(databaseFile.getPath(), databaseKey,
+            config.getReadConnections(), config.cipherHook(true));
+        this.checkpointer = new WalCheckpointer(databaseFile, config.getMaxWalBytes(),
+            () -> WalCheckpointer.passiveCheckpoint(super.getWritableDatabase(databaseKey)));
     }
     
     public static synchronized SecureSettingsDatabaseHelper getInstance(Context context) {
@@ -212,6 +226,14 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
         insertDefaultValues(db);
     }
     
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            readPool.openAsync();
+        }
+    }
+    
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // Handle database upgrades
@@ -234,6 +256,7 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
     }
     
     public SQLiteDatabase getWritableDatabase() {
+        checkpointer.onWrite();
         try {
             return super.getWritableDatabase(databaseKey);
         } catch (net.sqlcipher.database.SQLiteException e) {
@@ -246,7 +269,14 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
         }
     }
     
+    /**
+     * A read connection of the pool once it is open, not for writes
+     */
     public SQLiteDatabase getReadableDatabase() {
+        SQLiteDatabase reader = readPool.get();
+        if (reader != null) {
+            return reader;
+        }
         try {
             return super.getReadableDatabase(databaseKey);
         } catch (net.sqlcipher.database.SQLiteException e) {
@@ -262,6 +292,7 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
     private SQLiteDatabase recoverDatabase() {
         try {
             // Close any existing connections
+            readPool.close();
             close();
             
             // Delete corrupted database file
@@ -371,13 +402,7 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
         try {
             java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
             byte[] hash = md.digest(pin.getBytes());
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
+            return HexUtil.encodeLower(hash);
         } catch (Exception e) {
             return pin; // Fallback to plain text if hashing fails
         }
@@ -404,7 +429,13 @@ public class SecureSettingsDatabaseHelper extends SQLiteOpenHelper {
      * Re-encrypt database with new key
      */
     public void reEncryptDatabase(String newKey) {
+        // Readers hold the old key
+        readPool.close();
         SQLiteDatabase db = getWritableDatabase();
-        db.rawExecSQL("PRAGMA rekey = '" + newKey + "'");
+        if (config.isRawKey()) {
+            db.rawExecSQL("PRAGMA rekey = \"" + DatabaseKeyManager.toRawKey(newKey) + "\"");
+        } else {
+            db.rawExecSQL("PRAGMA rekey = '" + newKey + "'");
+        }
     }
 }
\ No newline at end of file
@@ -14,6 +14,20 @@ public class SecuritySettings {
         // Default constructor
     }
     
+    /**
+     * Copy of another instance
+     */
+    public SecuritySettings(SecuritySettings other) {
+        this.pinVerification = other.pinVerification;
+        this.adminPin = other.adminPin;
+        this.maxPinAttempts = other.maxPinAttempts;
+        this.voidPassword = other.voidPassword;
+        this.settlementPassword = other.settlementPassword;
+        this.refundPassword = other.refundPassword;
+        this.keyStatus = other.keyStatus;
+        this.lastKeyDownload = other.lastKeyDownload;
+    }
+    
     // Getters and Setters
     public boolean isPinVerification() {
         return pinVerification;
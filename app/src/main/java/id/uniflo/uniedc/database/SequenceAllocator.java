@@ -0,0 +1,151 @@
+package id.uniflo.uniedc.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out six digit sequence numbers (STAN, invoice) from blocks reserved in a
+ * durable store.
+ * <p>
+ * The store keeps the last number of the latest reserved block. A block is written
+ * there before any number of it is handed out, and numbers within a block come from
+ * an atomic counter without touching the store. After a crash the numbers left in the
+ * current block are skipped, never reused. Reservation is a read-modify-write of the
+ * store in one transaction, so two processes sharing the store get disjoint blocks.
+ * <p>
+ * Numbers run from {@value #MIN} to {@value #MAX} and then start over at {@value #MIN},
+ * as ISO 8583 field 11 does; 000000 is never issued.
+ */
+public final class SequenceAllocator {
+
+    public static final int MIN = 1;
+    public static final int MAX = 999999;
+
+    /**
+     * Durable part of a sequence
+     */
+    public interface Store {
+        /**
+         * Atomically advance the stored last number by {@code count}, wrapping past
+         * {@link #MAX}, and make the change durable
+         *
+         * @return the last number stored before, 0 if none was
+         */
+        int reserve(int count);
+
+        /**
+         * Atomically store {@code last} if it is above the stored last number, in the
+         * same kind of transaction as {@link #reserve(int)}, and make it durable
+         */
+        void raise(int last);
+    }
+
+    private final Store store;
+    private final int blockSize;
+    private volatile Block block;
+
+    public SequenceAllocator(Store store, int blockSize) {
+        if (blockSize < 1 || blockSize >= MAX) {
+            throw new IllegalArgumentException("Invalid block size " + blockSize);
+        }
+        this.store = store;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return the next number, formatted to six digits
+     */
+    public String nextFormatted() {
+        return format(next());
+    }
+
+    /**
+     * @return the next number, between {@link #MIN} and {@link #MAX}
+     */
+    public int next() {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long value = current.next.getAndIncrement();
+                if (value <= current.last) {
+                    return wrap(value);
+                }
+            }
+            refill(current);
+        }
+    }
+
+    /**
+     * Continue after {@code last}, a number set by hand. A number at or below the
+     * stored one is ignored, so numbers already handed out are never issued again.
+     *
+     * @throws IllegalArgumentException if {@code last} is outside {@link #MIN} to {@link #MAX}
+     */
+    public synchronized void raiseTo(int last) {
+        if (last < MIN || last > MAX) {
+            throw new IllegalArgumentException("Invalid sequence number " + last);
+        }
+        store.raise(last);
+        block = null;
+    }
+
+    /**
+     * Forget the rest of the current block, the next number continues from the store.
+     * Called after the stored value was changed by hand.
+     */
+    public synchronized void invalidate() {
+        block = null;
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (block != exhausted) {
+            // Another thread reserved the next block meanwhile
+            return;
+        }
+        int previous = store.reserve(blockSize);
+        if (previous < 0 || previous > MAX) {
+            throw new IllegalStateException("Invalid stored sequence number " + previous);
+        }
+        // Counted on from the stored number and wrapped on the way out
+        block = new Block(previous + 1L, (long) previous + blockSize);
+    }
+
+    /**
+     * @return the stored last number advanced by {@code count}, wrapped to the range
+     */
+    public static int advance(int last, int count) {
+        return wrap((long) last + count);
+    }
+
+    public static String format(int value) {
+        return String.format("%06d", value);
+    }
+
+    /**
+     * Parse a stored value, 0 for a missing or unreadable one
+     */
+    public static int parse(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed >= MIN && parsed <= MAX ? parsed : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int wrap(long value) {
+        return (int) ((value - MIN) % MAX) + MIN;
+    }
+
+    private static final class Block {
+        final AtomicLong next;
+        final long last;
+
+        Block(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package id.uniflo.uniedc.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import id.uniflo.uniedc.util.ThreadPoolManager;
+
+/**
+ * Trace (STAN) and invoice numbers of the terminal, the one place that hands them out.
+ * <p>
+ * Both are kept in {@code terminal_config} of the secure settings database, which now
+ * holds the last number reserved rather than the last one used; see
+ * {@link SequenceAllocator}. A block costs one encrypted write per
+ * {@value #BLOCK_SIZE} transactions instead of one per transaction.
+ */
+public final class SequenceService {
+
+    // Numbers skipped at most by a crash, small against the 999999 cycle
+    static final int BLOCK_SIZE = 50;
+
+    private static SequenceService instance;
+
+    private final SequenceAllocator traceNumbers;
+    private final SequenceAllocator invoiceNumbers;
+
+    private SequenceService(Context context) {
+        SecureSettingsDatabaseHelper dbHelper = SecureSettingsDatabaseHelper.getInstance(context);
+        SettingsRepository repository = SettingsRepository.getInstance(context);
+        this.traceNumbers = new SequenceAllocator(
+            new ColumnStore(dbHelper, repository, SecureSettingsDatabaseHelper.COLUMN_TRACE_NUMBER), BLOCK_SIZE);
+        this.invoiceNumbers = new SequenceAllocator(
+            new ColumnStore(dbHelper, repository, SecureSettingsDatabaseHelper.COLUMN_INVOICE_NUMBER), BLOCK_SIZE);
+    }
+
+    public static synchronized SequenceService getInstance(Context context) {
+        if (instance == null) {
+            instance = new SequenceService(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the STAN of a new message, six digits
+     */
+    public String nextTraceNumber() {
+        return traceNumbers.nextFormatted();
+    }
+
+    /**
+     * @return the invoice number of a new sale, six digits
+     */
+    public String nextInvoiceNumber() {
+        return invoiceNumbers.nextFormatted();
+    }
+
+    /**
+     * Continue the STANs after a number entered in the settings, if it is above the
+     * last one reserved
+     *
+     * @throws IllegalArgumentException if the value is not a number from 000001 to 999999
+     */
+    public void raiseTraceNumber(String last) {
+        traceNumbers.raiseTo(parseEntered(last));
+    }
+
+    /**
+     * Continue the invoice numbers after a number entered in the settings, if it is
+     * above the last one reserved
+     *
+     * @throws IllegalArgumentException if the value is not a number from 000001 to 999999
+     */
+    public void raiseInvoiceNumber(String last) {
+        invoiceNumbers.raiseTo(parseEntered(last));
+    }
+
+    /**
+     * Continue from the stored values, after they were reset in the settings
+     */
+    public void invalidate() {
+        traceNumbers.invalidate();
+        invoiceNumbers.invalidate();
+    }
+
+    private static int parseEntered(String value) {
+        int parsed = SequenceAllocator.parse(value);
+        if (parsed == 0) {
+            throw new IllegalArgumentException("Invalid sequence number " + value);
+        }
+        return parsed;
+    }
+
+    /**
+     * One column of the single {@code terminal_config} row
+     */
+    private static final class ColumnStore implements SequenceAllocator.Store {
+        private final SecureSettingsDatabaseHelper dbHelper;
+        private final SettingsRepository repository;
+        private final String column;
+
+        ColumnStore(SecureSettingsDatabaseHelper dbHelper, SettingsRepository repository, String column) {
+            this.dbHelper = dbHelper;
+            this.repository = repository;
+            this.column = column;
+        }
+
+        @Override
+        public int reserve(int count) {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            int last;
+            // Exclusive, so another process reads the value only after this write
+            db.beginTransaction();
+            try {
+                last = read(db);
+                write(db, SequenceAllocator.advance(last, count));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            // The settings snapshot shows the reserved value, a config saved from it must not
+            // move the sequence back. Off the sale, once per block.
+            ThreadPoolManager.getInstance().execute(repository::reload);
+            return last;
+        }
+
+        @Override
+        public void raise(int last) {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if (last > read(db)) {
+                    write(db, last);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            repository.reload();
+        }
+
+        private int read(SQLiteDatabase db) {
+            int last = 0;
+            Cursor cursor = db.query(SecureSettingsDatabaseHelper.TABLE_TERMINAL_CONFIG,
+                new String[]{column}, null, null, null, null, null, "1");
+            if (cursor != null) {
+                if (cursor.moveToFirst()) {
+                    last = SequenceAllocator.parse(cursor.getString(0));
+                }
+                cursor.close();
+            }
+            return last;
+        }
+
+        private void write(SQLiteDatabase db, int last) {
+            ContentValues values = new ContentValues();
+            values.put(column, SequenceAllocator.format(last));
+            values.put(SecureSettingsDatabaseHelper.COLUMN_UPDATED_AT, System.currentTimeMillis());
+            if (db.update(SecureSettingsDatabaseHelper.TABLE_TERMINAL_CONFIG, values, null, null) == 0) {
+                throw new IllegalStateException("No terminal configuration to store " + column);
+            }
+        }
+    }
+}
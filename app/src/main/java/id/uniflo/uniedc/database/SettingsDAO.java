@@ -23,17 +23,7 @@ public class SettingsDAO {
         
         NetworkSettings settings = null;
         if (cursor != null && cursor.moveToFirst()) {
-            settings = new NetworkSettings();
-            settings.setConnectionType(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_CONNECTION_TYPE)));
-            settings.setPrimaryHost(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PRIMARY_HOST)));
-            settings.setPrimaryPort(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PRIMARY_PORT)));
-            settings.setSecondaryHost(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_SECONDARY_HOST)));
-            settings.setSecondaryPort(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_SECONDARY_PORT)));
-            settings.setTimeout(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TIMEOUT)));
-            settings.setRetryCount(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_RETRY_COUNT)));
-            settings.setUseSsl(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_USE_SSL)) == 1);
-            settings.setKeepAlive(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_KEEP_ALIVE)) == 1);
-            settings.setProtocol(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PROTOCOL)));
+            settings = SettingsMappers.NETWORK_SETTINGS.map(cursor);
             cursor.close();
         }
         
@@ -68,15 +58,7 @@ public class SettingsDAO {
         
         PrinterSettings settings = null;
         if (cursor != null && cursor.moveToFirst()) {
-            settings = new PrinterSettings();
-            settings.setPrintDensity(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PRINT_DENSITY)));
-            settings.setPrintLogo(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PRINT_LOGO)) == 1);
-            settings.setPrintMerchantCopy(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PRINT_MERCHANT_COPY)) == 1);
-            settings.setPrintCustomerCopy(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PRINT_CUSTOMER_COPY)) == 1);
-            settings.setHeaderLine1(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_HEADER_LINE1)));
-            settings.setHeaderLine2(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_HEADER_LINE2)));
-            settings.setFooterLine1(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_FOOTER_LINE1)));
-            settings.setFooterLine2(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_FOOTER_LINE2)));
+            settings = SettingsMappers.PRINTER_SETTINGS.map(cursor);
             cursor.close();
         }
         
@@ -109,15 +91,7 @@ public class SettingsDAO {
         
         SecuritySettings settings = null;
         if (cursor != null && cursor.moveToFirst()) {
-            settings = new SecuritySettings();
-            settings.setPinVerification(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PIN_VERIFICATION)) == 1);
-            settings.setAdminPin(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_ADMIN_PIN)));
-            settings.setMaxPinAttempts(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_MAX_PIN_ATTEMPTS)));
-            settings.setVoidPassword(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_VOID_PASSWORD)) == 1);
-            settings.setSettlementPassword(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_SETTLEMENT_PASSWORD)) == 1);
-            settings.setRefundPassword(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_REFUND_PASSWORD)) == 1);
-            settings.setKeyStatus(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_KEY_STATUS)));
-            settings.setLastKeyDownload(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_LAST_KEY_DOWNLOAD)));
+            settings = SettingsMappers.SECURITY_SETTINGS.map(cursor);
             cursor.close();
         }
         
@@ -150,23 +124,7 @@ public class SettingsDAO {
         
         TransactionLimits limits = null;
         if (cursor != null && cursor.moveToFirst()) {
-            limits = new TransactionLimits();
-            limits.setPurchaseLimitEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PURCHASE_LIMIT_ENABLED)) == 1);
-            limits.setPurchaseMin(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PURCHASE_MIN)));
-            limits.setPurchaseMax(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_PURCHASE_MAX)));
-            limits.setWithdrawalLimitEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_WITHDRAWAL_LIMIT_ENABLED)) == 1);
-            limits.setWithdrawalMin(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_WITHDRAWAL_MIN)));
-            limits.setWithdrawalMax(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_WITHDRAWAL_MAX)));
-            limits.setTransferLimitEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TRANSFER_LIMIT_ENABLED)) == 1);
-            limits.setTransferMin(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TRANSFER_MIN)));
-            limits.setTransferMax(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TRANSFER_MAX)));
-            limits.setRefundLimitEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_REFUND_LIMIT_ENABLED)) == 1);
-            limits.setRefundMax(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_REFUND_MAX)));
-            limits.setCashBackLimitEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_CASH_BACK_LIMIT_ENABLED)) == 1);
-            limits.setCashBackMax(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_CASH_BACK_MAX)));
-            limits.setDailyLimitEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_DAILY_LIMIT_ENABLED)) == 1);
-            limits.setDailyTransactionLimit(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_DAILY_TRANSACTION_LIMIT)));
-            limits.setDailyAmountLimit(cursor.getLong(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_DAILY_AMOUNT_LIMIT)));
+            limits = SettingsMappers.TRANSACTION_LIMITS.map(cursor);
             cursor.close();
         }
         
@@ -207,22 +165,7 @@ public class SettingsDAO {
         
         TerminalConfig config = null;
         if (cursor != null && cursor.moveToFirst()) {
-            config = new TerminalConfig();
-            config.setTerminalId(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TERMINAL_ID)));
-            config.setMerchantId(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_MERCHANT_ID)));
-            config.setMerchantName(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_MERCHANT_NAME)));
-            config.setMerchantAddress(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_MERCHANT_ADDRESS)));
-            config.setMerchantCity(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_MERCHANT_CITY)));
-            config.setMerchantPhone(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_MERCHANT_PHONE)));
-            config.setCurrency(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_CURRENCY)));
-            config.setLanguage(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_LANGUAGE)));
-            config.setDateFormat(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_DATE_FORMAT)));
-            config.setTipEnabled(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TIP_ENABLED)) == 1);
-            config.setSignatureRequired(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_SIGNATURE_REQUIRED)) == 1);
-            config.setOfflineMode(cursor.getInt(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_OFFLINE_MODE)) == 1);
-            config.setBatchNumber(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_BATCH_NUMBER)));
-            config.setTraceNumber(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_TRACE_NUMBER)));
-            config.setInvoiceNumber(cursor.getString(cursor.getColumnIndex(SettingsDatabaseHelper.COLUMN_INVOICE_NUMBER)));
+            config = SettingsMappers.TERMINAL_CONFIG.map(cursor);
             cursor.close();
         }
         
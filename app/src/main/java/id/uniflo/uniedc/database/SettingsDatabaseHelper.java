@@ -196,6 +196,15 @@ public class SettingsDatabaseHelper extends SQLiteOpenHelper {
     
     private SettingsDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // The framework keeps a pool of read connections next to the writer in WAL mode
+        setWriteAheadLoggingEnabled(true);
+    }
+    
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Negative cache_size is in KiB rather than pages
+        db.execSQL("PRAGMA cache_size = -" + DatabaseConfig.SETTINGS.getCacheSizeKb());
     }
     
     @Override
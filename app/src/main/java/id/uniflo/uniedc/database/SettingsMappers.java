@@ -0,0 +1,85 @@
+package id.uniflo.uniedc.database;
+
+/**
+ * Row mappers for the settings tables. SettingsDatabaseHelper and
+ * SecureSettingsDatabaseHelper use the same column names, so both DAOs share these.
+ */
+final class SettingsMappers {
+
+    static final RowMapper<NetworkSettings> NETWORK_SETTINGS = RowMapper.builder(NetworkSettings::new)
+        .string(SecureSettingsDatabaseHelper.COLUMN_CONNECTION_TYPE, NetworkSettings::setConnectionType)
+        .string(SecureSettingsDatabaseHelper.COLUMN_PRIMARY_HOST, NetworkSettings::setPrimaryHost)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_PRIMARY_PORT, NetworkSettings::setPrimaryPort)
+        .string(SecureSettingsDatabaseHelper.COLUMN_SECONDARY_HOST, NetworkSettings::setSecondaryHost)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_SECONDARY_PORT, NetworkSettings::setSecondaryPort)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_TIMEOUT, NetworkSettings::setTimeout)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_RETRY_COUNT, NetworkSettings::setRetryCount)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_USE_SSL, NetworkSettings::setUseSsl)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_KEEP_ALIVE, NetworkSettings::setKeepAlive)
+        .string(SecureSettingsDatabaseHelper.COLUMN_PROTOCOL, NetworkSettings::setProtocol)
+        .build();
+
+    static final RowMapper<PrinterSettings> PRINTER_SETTINGS = RowMapper.builder(PrinterSettings::new)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_PRINT_DENSITY, PrinterSettings::setPrintDensity)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_PRINT_LOGO, PrinterSettings::setPrintLogo)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_PRINT_MERCHANT_COPY, PrinterSettings::setPrintMerchantCopy)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_PRINT_CUSTOMER_COPY, PrinterSettings::setPrintCustomerCopy)
+        .string(SecureSettingsDatabaseHelper.COLUMN_HEADER_LINE1, PrinterSettings::setHeaderLine1)
+        .string(SecureSettingsDatabaseHelper.COLUMN_HEADER_LINE2, PrinterSettings::setHeaderLine2)
+        .string(SecureSettingsDatabaseHelper.COLUMN_FOOTER_LINE1, PrinterSettings::setFooterLine1)
+        .string(SecureSettingsDatabaseHelper.COLUMN_FOOTER_LINE2, PrinterSettings::setFooterLine2)
+        .build();
+
+    static final RowMapper<SecuritySettings> SECURITY_SETTINGS = RowMapper.builder(SecuritySettings::new)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_PIN_VERIFICATION, SecuritySettings::setPinVerification)
+        .string(SecureSettingsDatabaseHelper.COLUMN_ADMIN_PIN, SecuritySettings::setAdminPin)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_MAX_PIN_ATTEMPTS, SecuritySettings::setMaxPinAttempts)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_VOID_PASSWORD, SecuritySettings::setVoidPassword)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_SETTLEMENT_PASSWORD, SecuritySettings::setSettlementPassword)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_REFUND_PASSWORD, SecuritySettings::setRefundPassword)
+        .string(SecureSettingsDatabaseHelper.COLUMN_KEY_STATUS, SecuritySettings::setKeyStatus)
+        .string(SecureSettingsDatabaseHelper.COLUMN_LAST_KEY_DOWNLOAD, SecuritySettings::setLastKeyDownload)
+        .build();
+
+    static final RowMapper<TransactionLimits> TRANSACTION_LIMITS = RowMapper.builder(TransactionLimits::new)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_PURCHASE_LIMIT_ENABLED, TransactionLimits::setPurchaseLimitEnabled)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_PURCHASE_MIN, TransactionLimits::setPurchaseMin)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_PURCHASE_MAX, TransactionLimits::setPurchaseMax)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_WITHDRAWAL_LIMIT_ENABLED, TransactionLimits::setWithdrawalLimitEnabled)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_WITHDRAWAL_MIN, TransactionLimits::setWithdrawalMin)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_WITHDRAWAL_MAX, TransactionLimits::setWithdrawalMax)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_TRANSFER_LIMIT_ENABLED, TransactionLimits::setTransferLimitEnabled)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_TRANSFER_MIN, TransactionLimits::setTransferMin)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_TRANSFER_MAX, TransactionLimits::setTransferMax)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_REFUND_LIMIT_ENABLED, TransactionLimits::setRefundLimitEnabled)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_REFUND_MAX, TransactionLimits::setRefundMax)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_CASH_BACK_LIMIT_ENABLED, TransactionLimits::setCashBackLimitEnabled)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_CASH_BACK_MAX, TransactionLimits::setCashBackMax)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_DAILY_LIMIT_ENABLED, TransactionLimits::setDailyLimitEnabled)
+        .intValue(SecureSettingsDatabaseHelper.COLUMN_DAILY_TRANSACTION_LIMIT, TransactionLimits::setDailyTransactionLimit)
+        .longValue(SecureSettingsDatabaseHelper.COLUMN_DAILY_AMOUNT_LIMIT, TransactionLimits::setDailyAmountLimit)
+        .build();
+
+    // acquiring_institution_code only exists in the secure database, the plain one skips it
+    static final RowMapper<TerminalConfig> TERMINAL_CONFIG = RowMapper.builder(TerminalConfig::new)
+        .string(SecureSettingsDatabaseHelper.COLUMN_TERMINAL_ID, TerminalConfig::setTerminalId)
+        .string(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_ID, TerminalConfig::setMerchantId)
+        .string(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_NAME, TerminalConfig::setMerchantName)
+        .string(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_ADDRESS, TerminalConfig::setMerchantAddress)
+        .string(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_CITY, TerminalConfig::setMerchantCity)
+        .string(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_PHONE, TerminalConfig::setMerchantPhone)
+        .string(SecureSettingsDatabaseHelper.COLUMN_CURRENCY, TerminalConfig::setCurrency)
+        .string(SecureSettingsDatabaseHelper.COLUMN_LANGUAGE, TerminalConfig::setLanguage)
+        .string(SecureSettingsDatabaseHelper.COLUMN_DATE_FORMAT, TerminalConfig::setDateFormat)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_TIP_ENABLED, TerminalConfig::setTipEnabled)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_SIGNATURE_REQUIRED, TerminalConfig::setSignatureRequired)
+        .bool(SecureSettingsDatabaseHelper.COLUMN_OFFLINE_MODE, TerminalConfig::setOfflineMode)
+        .string(SecureSettingsDatabaseHelper.COLUMN_BATCH_NUMBER, TerminalConfig::setBatchNumber)
+        .string(SecureSettingsDatabaseHelper.COLUMN_TRACE_NUMBER, TerminalConfig::setTraceNumber)
+        .string(SecureSettingsDatabaseHelper.COLUMN_INVOICE_NUMBER, TerminalConfig::setInvoiceNumber)
+        .string(SecureSettingsDatabaseHelper.COLUMN_ACQUIRING_INSTITUTION_CODE, TerminalConfig::setAcquiringInstitutionCode)
+        .build();
+
+    private SettingsMappers() {
+    }
+}
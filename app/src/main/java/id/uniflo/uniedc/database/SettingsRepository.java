@@ -0,0 +1,121 @@
+package id.uniflo.uniedc.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory copy of the secure settings database.
+ * <p>
+ * The settings tables are read once into a {@link SettingsSnapshot}. Reads during a
+ * transaction take the current snapshot from a volatile field instead of running
+ * a SQLCipher query. {@link SecureSettingsDAO} reloads the snapshot after each save
+ * and swaps it in whole, so a reader sees either all of the old settings or all of
+ * the new ones. Listeners are called after every swap on the thread that saved.
+ */
+public final class SettingsRepository {
+
+    private static final String TAG = "SettingsRepository";
+
+    /**
+     * Notified when the settings change
+     */
+    public interface Listener {
+        void onSettingsChanged(SettingsSnapshot previous, SettingsSnapshot current);
+    }
+
+    private static SettingsRepository instance;
+
+    private final SecureSettingsDatabaseHelper dbHelper;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile SettingsSnapshot snapshot;
+    private long version;
+
+    private SettingsRepository(Context context) {
+        this.dbHelper = SecureSettingsDatabaseHelper.getInstance(context);
+    }
+
+    public static synchronized SettingsRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new SettingsRepository(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the current settings, read from the database on the first call only
+     */
+    public SettingsSnapshot get() {
+        SettingsSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Read the settings again and swap them in, after a write to the settings tables
+     */
+    public void reload() {
+        SettingsSnapshot previous;
+        SettingsSnapshot current;
+        synchronized (this) {
+            previous = snapshot;
+            current = load();
+            snapshot = current;
+        }
+        if (previous == null) {
+            // Nobody has seen settings yet, nothing changed for them
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onSettingsChanged(previous, current);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Settings listener failed", e);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Callers hold the lock, so versions increase in the order snapshots are swapped in
+    private SettingsSnapshot load() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return new SettingsSnapshot(++version,
+            readRow(db, SecureSettingsDatabaseHelper.TABLE_NETWORK_SETTINGS, SettingsMappers.NETWORK_SETTINGS),
+            readRow(db, SecureSettingsDatabaseHelper.TABLE_PRINTER_SETTINGS, SettingsMappers.PRINTER_SETTINGS),
+            readRow(db, SecureSettingsDatabaseHelper.TABLE_SECURITY_SETTINGS, SettingsMappers.SECURITY_SETTINGS),
+            readRow(db, SecureSettingsDatabaseHelper.TABLE_TRANSACTION_LIMITS, SettingsMappers.TRANSACTION_LIMITS),
+            readRow(db, SecureSettingsDatabaseHelper.TABLE_TERMINAL_CONFIG, SettingsMappers.TERMINAL_CONFIG));
+    }
+
+    private static <T> T readRow(SQLiteDatabase db, String table, RowMapper<T> mapper) {
+        Cursor cursor = db.query(table, null, null, null, null, null, null, "1");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? mapper.map(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
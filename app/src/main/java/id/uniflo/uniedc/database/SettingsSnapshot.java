@@ -0,0 +1,59 @@
+package id.uniflo.uniedc.database;
+
+/**
+ * All settings of the secure settings database as read at one point in time.
+ * <p>
+ * A snapshot never changes; a save produces a new one. The getters return a copy the
+ * caller may modify and save, or null if the table has no row.
+ */
+public final class SettingsSnapshot {
+
+    private final long version;
+    private final NetworkSettings networkSettings;
+    private final PrinterSettings printerSettings;
+    private final SecuritySettings securitySettings;
+    private final TransactionLimits transactionLimits;
+    private final TerminalConfig terminalConfig;
+
+    SettingsSnapshot(long version, NetworkSettings networkSettings, PrinterSettings printerSettings,
+                     SecuritySettings securitySettings, TransactionLimits transactionLimits,
+                     TerminalConfig terminalConfig) {
+        this.version = version;
+        this.networkSettings = networkSettings;
+        this.printerSettings = printerSettings;
+        this.securitySettings = securitySettings;
+        this.transactionLimits = transactionLimits;
+        this.terminalConfig = terminalConfig;
+    }
+
+    /**
+     * @return increases with every reload
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public NetworkSettings getNetworkSettings() {
+        return networkSettings != null ? new NetworkSettings(networkSettings) : null;
+    }
+
+    public PrinterSettings getPrinterSettings() {
+        return printerSettings != null ? new PrinterSettings(printerSettings) : null;
+    }
+
+    public SecuritySettings getSecuritySettings() {
+        return securitySettings != null ? new SecuritySettings(securitySettings) : null;
+    }
+
+    public TransactionLimits getTransactionLimits() {
+        return transactionLimits != null ? new TransactionLimits(transactionLimits) : null;
+    }
+
+    /**
+     * The trace and invoice numbers in here are the reserved ones as of the snapshot,
+     * take new numbers from {@link SequenceService}
+     */
+    public TerminalConfig getTerminalConfig() {
+        return terminalConfig != null ? new TerminalConfig(terminalConfig) : null;
+    }
+}
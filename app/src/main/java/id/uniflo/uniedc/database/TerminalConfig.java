@@ -22,6 +22,28 @@ public class TerminalConfig {
         // Default constructor
     }
     
+    /**
+     * Copy of another instance
+     */
+    public TerminalConfig(TerminalConfig other) {
+        this.terminalId = other.terminalId;
+        this.merchantId = other.merchantId;
+        this.merchantName = other.merchantName;
+        this.merchantAddress = other.merchantAddress;
+        this.merchantCity = other.merchantCity;
+        this.merchantPhone = other.merchantPhone;
+        this.currency = other.currency;
+        this.language = other.language;
+        this.dateFormat = other.dateFormat;
+        this.tipEnabled = other.tipEnabled;
+        this.signatureRequired = other.signatureRequired;
+        this.offlineMode = other.offlineMode;
+        this.batchNumber = other.batchNumber;
+        this.traceNumber = other.traceNumber;
+        this.invoiceNumber = other.invoiceNumber;
+        this.acquiringInstitutionCode = other.acquiringInstitutionCode;
+    }
+    
     // Getters and Setters
     public String getTerminalId() {
         return terminalId;
@@ -35,8 +35,6 @@ public class Transaction {
     private String approvalCode;
     private String responseCode;
     private String responseMessage;
-    private String emvData;
-    private String pinBlock;
     private String arqc;
     private String atc;
     private String tvr;
@@ -47,11 +45,23 @@ public class Transaction {
     private boolean isVoided;
     private String voidReferenceNumber;
     private Date voidDate;
-    private String rawRequest;
-    private String rawResponse;
     private long createdAt;
     private long updatedAt;
     
+    // Raw messages, EMV data and PIN block, loaded on first access
+    private TransactionPayload payload;
+    private PayloadLoader payloadLoader;
+    
+    /**
+     * Reads the payload of a stored transaction
+     */
+    public interface PayloadLoader {
+        /**
+         * @return the payload, or null if the transaction has none
+         */
+        TransactionPayload loadPayload(long transactionId);
+    }
+    
     // Constructor
     public Transaction() {
         this.createdAt = System.currentTimeMillis();
@@ -188,19 +198,19 @@ public class Transaction {
     }
     
     public String getEmvData() {
-        return emvData;
+        return payload().getEmvData();
     }
     
     public void setEmvData(String emvData) {
-        this.emvData = emvData;
+        payload().setEmvData(emvData);
     }
     
     public String getPinBlock() {
-        return pinBlock;
+        return payload().getPinBlock();
     }
     
     public void setPinBlock(String pinBlock) {
-        this.pinBlock = pinBlock;
+        payload().setPinBlock(pinBlock);
     }
     
     public String getArqc() {
@@ -284,19 +294,19 @@ public class Transaction {
     }
     
     public String getRawRequest() {
-        return rawRequest;
+        return payload().getRawRequest();
     }
     
     public void setRawRequest(String rawRequest) {
-        this.rawRequest = rawRequest;
+        payload().setRawRequest(rawRequest);
     }
     
     public String getRawResponse() {
-        return rawResponse;
+        return payload().getRawResponse();
     }
     
     public void setRawResponse(String rawResponse) {
-        this.rawResponse = rawResponse;
+        payload().setRawResponse(rawResponse);
     }
     
     public long getCreatedAt() {
@@ -315,6 +325,34 @@ public class Transaction {
         this.updatedAt = updatedAt;
     }
     
+    /**
+     * Load the payload through the loader set by {@link TransactionDAO} the first time it
+     * is needed; a new transaction starts with an empty one
+     */
+    private TransactionPayload payload() {
+        if (payload == null) {
+            if (payloadLoader != null && id > 0) {
+                payload = payloadLoader.loadPayload(id);
+            }
+            if (payload == null) {
+                payload = new TransactionPayload();
+            }
+            payloadLoader = null;
+        }
+        return payload;
+    }
+    
+    void setPayloadLoader(PayloadLoader payloadLoader) {
+        this.payloadLoader = payloadLoader;
+    }
+    
+    /**
+     * @return the payload if it was set or loaded, null if it was never touched
+     */
+    TransactionPayload getLoadedPayload() {
+        return payload;
+    }
+    
     // Helper method to mask card number
     public String getMaskedCardNumber() {
         if (cardNumber == null || cardNumber.length() < 8) {
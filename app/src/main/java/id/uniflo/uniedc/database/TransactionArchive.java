@@ -0,0 +1,265 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Append-only encrypted file of purged transaction rows, written by
+ * {@link TransactionRetention} before it deletes a chunk.
+ * <p>
+ * The file starts with an 8 byte header, followed by one frame per chunk: the frame
+ * length, a 12 byte IV and the AES/GCM encryption of the Deflate compressed rows. A
+ * frame holds the column names once and then the typed values of every row, payload
+ * columns in their stored {@link PayloadCodec} form. Each frame is synced to disk
+ * before the chunk is deleted, so a row is never gone from both the database and the
+ * archive. A chunk whose delete did not commit is archived again by the next run;
+ * readers keep the last copy of each _id.
+ */
+public class TransactionArchive {
+
+    private static final byte[] HEADER = {'U', 'E', 'D', 'C', 'A', 'R', 'C', 1};
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BLOB = 4;
+
+    public interface RowVisitor {
+        /**
+         * @param row column name to Long, Double, String, byte[] or null
+         */
+        void onRow(Map<String, Object> row);
+    }
+
+    private final File file;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param key AES key, 128 or 256 bit
+     */
+    public TransactionArchive(File file, SecretKey key) {
+        if (file == null || key == null) {
+            throw new IllegalArgumentException("Archive file and key are required");
+        }
+        this.file = file;
+        this.key = key;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Append the remaining rows of a cursor as one frame and sync it to disk
+     *
+     * @return number of rows written
+     */
+    public int append(Cursor cursor) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        int rows = 0;
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(plain))) {
+            String[] names = cursor.getColumnNames();
+            out.writeInt(names.length);
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            while (cursor.moveToNext()) {
+                out.writeBoolean(true);
+                for (int i = 0; i < names.length; i++) {
+                    writeValue(out, cursor, i);
+                }
+                rows++;
+            }
+            out.writeBoolean(false);
+        }
+        if (rows == 0) {
+            return 0;
+        }
+
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        byte[] sealed;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(HEADER);
+            sealed = cipher.doFinal(plain.toByteArray());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Archive encryption failed", e);
+        }
+
+        long validLength = completeLength();
+        try (FileOutputStream stream = new FileOutputStream(file, true)) {
+            if (validLength < file.length()) {
+                // Drop a frame cut off by a crash, it would hide everything after it
+                stream.getChannel().truncate(validLength);
+            }
+            DataOutputStream out = new DataOutputStream(stream);
+            if (validLength == 0) {
+                out.write(HEADER);
+            }
+            out.writeInt(IV_LENGTH + sealed.length);
+            out.write(iv);
+            out.write(sealed);
+            out.flush();
+            stream.getFD().sync();
+        }
+        return rows;
+    }
+
+    /**
+     * @return length of the header and the complete frames, 0 for a missing file
+     */
+    private long completeLength() throws IOException {
+        if (!file.exists() || file.length() < HEADER.length) {
+            return 0;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            long position = HEADER.length;
+            while (position + 4 <= length) {
+                in.seek(position);
+                long next = position + 4 + (in.readInt() & 0xFFFFFFFFL);
+                if (next > length) {
+                    break;
+                }
+                position = next;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Read every row of an archive in the order written
+     *
+     * @return number of rows read
+     * @throws IOException if the file is not an archive, the key is wrong or a frame
+     *                     is damaged; a frame cut off by a crash while appending ends
+     *                     the read without error
+     */
+    public static int read(File file, SecretKey key, RowVisitor visitor) throws IOException {
+        int rows = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] header = new byte[HEADER.length];
+            in.readFully(header);
+            if (!Arrays.equals(header, HEADER)) {
+                throw new IOException("Not a transaction archive: " + file);
+            }
+            while (true) {
+                byte[] frame;
+                try {
+                    frame = new byte[in.readInt()];
+                    in.readFully(frame);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (frame.length <= IV_LENGTH) {
+                    throw new IOException("Damaged archive frame");
+                }
+                byte[] plain;
+                try {
+                    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, frame, 0, IV_LENGTH));
+                    cipher.updateAAD(HEADER);
+                    plain = cipher.doFinal(frame, IV_LENGTH, frame.length - IV_LENGTH);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Archive frame does not decrypt", e);
+                }
+                rows += readFrame(new InflaterInputStream(new ByteArrayInputStream(plain)), visitor);
+            }
+        }
+        return rows;
+    }
+
+    private static int readFrame(InputStream stream, RowVisitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        int rows = 0;
+        while (in.readBoolean()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String name : names) {
+                row.put(name, readValue(in));
+            }
+            visitor.onRow(row);
+            rows++;
+        }
+        return rows;
+    }
+
+    private static void writeValue(DataOutputStream out, Cursor cursor, int index) throws IOException {
+        switch (cursor.getType(index)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                out.writeByte(TYPE_LONG);
+                out.writeLong(cursor.getLong(index));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(cursor.getDouble(index));
+                break;
+            case Cursor.FIELD_TYPE_STRING:
+                // writeUTF is limited to 64 KB, the raw messages can be longer
+                byte[] text = cursor.getString(index).getBytes("UTF-8");
+                out.writeByte(TYPE_STRING);
+                out.writeInt(text.length);
+                out.write(text);
+                break;
+            case Cursor.FIELD_TYPE_BLOB:
+                byte[] blob = cursor.getBlob(index);
+                out.writeByte(TYPE_BLOB);
+                out.writeInt(blob.length);
+                out.write(blob);
+                break;
+            default:
+                out.writeByte(TYPE_NULL);
+                break;
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+            case TYPE_BLOB:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return type == TYPE_STRING ? new String(bytes, "UTF-8") : bytes;
+            default:
+                throw new IOException("Damaged archive value type " + type);
+        }
+    }
+}
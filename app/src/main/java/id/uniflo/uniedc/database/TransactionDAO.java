@@ -1,21 +1,84 @@
 package id.uniflo.uniedc.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.util.Log;
 
 import net.sqlcipher.database.SQLiteDatabase;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
+import id.uniflo.uniedc.util.ThreadPoolManager;
+
 public class TransactionDAO {
     
+    private static final String TAG = "TransactionDAO";
+    
+    /**
+     * Columns shown by list screens; leaves out the raw messages, EMV data and PIN block
+     */
+    public static final String[] SUMMARY_COLUMNS = {
+        TransactionDatabaseHelper.COLUMN_ID,
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE,
+        TransactionDatabaseHelper.COLUMN_STATUS,
+        TransactionDatabaseHelper.COLUMN_AMOUNT,
+        TransactionDatabaseHelper.COLUMN_CARD_NUMBER,
+        TransactionDatabaseHelper.COLUMN_CARD_TYPE,
+        TransactionDatabaseHelper.COLUMN_ENTRY_MODE,
+        TransactionDatabaseHelper.COLUMN_TRACE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_APPROVAL_CODE,
+        TransactionDatabaseHelper.COLUMN_RESPONSE_CODE,
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE,
+        TransactionDatabaseHelper.COLUMN_IS_VOIDED
+    };
+    
+    /**
+     * Maps transaction rows; columns left out of a projection keep their default value.
+     * The payload is not part of the row, it is loaded on first access.
+     */
+    private static final RowMapper<Transaction> TRANSACTION_MAPPER = RowMapper.builder(Transaction::new)
+        .longValue(TransactionDatabaseHelper.COLUMN_ID, Transaction::setId)
+        .string(TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE, Transaction::setTransactionType)
+        .string(TransactionDatabaseHelper.COLUMN_STATUS, Transaction::setStatus)
+        .longValue(TransactionDatabaseHelper.COLUMN_AMOUNT, Transaction::setAmount)
+        .string(TransactionDatabaseHelper.COLUMN_CARD_NUMBER, Transaction::setCardNumber)
+        .string(TransactionDatabaseHelper.COLUMN_CARD_HOLDER_NAME, Transaction::setCardHolderName)
+        .string(TransactionDatabaseHelper.COLUMN_CARD_TYPE, Transaction::setCardType)
+        .string(TransactionDatabaseHelper.COLUMN_ENTRY_MODE, Transaction::setEntryMode)
+        .string(TransactionDatabaseHelper.COLUMN_TERMINAL_ID, Transaction::setTerminalId)
+        .string(TransactionDatabaseHelper.COLUMN_MERCHANT_ID, Transaction::setMerchantId)
+        .string(TransactionDatabaseHelper.COLUMN_BATCH_NUMBER, Transaction::setBatchNumber)
+        .string(TransactionDatabaseHelper.COLUMN_TRACE_NUMBER, Transaction::setTraceNumber)
+        .string(TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER, Transaction::setReferenceNumber)
+        .string(TransactionDatabaseHelper.COLUMN_APPROVAL_CODE, Transaction::setApprovalCode)
+        .string(TransactionDatabaseHelper.COLUMN_RESPONSE_CODE, Transaction::setResponseCode)
+        .string(TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE, Transaction::setResponseMessage)
+        .string(TransactionDatabaseHelper.COLUMN_ARQC, Transaction::setArqc)
+        .string(TransactionDatabaseHelper.COLUMN_ATC, Transaction::setAtc)
+        .string(TransactionDatabaseHelper.COLUMN_TVR, Transaction::setTvr)
+        .string(TransactionDatabaseHelper.COLUMN_TSI, Transaction::setTsi)
+        .string(TransactionDatabaseHelper.COLUMN_AID, Transaction::setAid)
+        .string(TransactionDatabaseHelper.COLUMN_APPLICATION_LABEL, Transaction::setApplicationLabel)
+        .date(TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE, Transaction::setTransactionDate)
+        .bool(TransactionDatabaseHelper.COLUMN_IS_VOIDED, Transaction::setVoided)
+        .string(TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER, Transaction::setVoidReferenceNumber)
+        .date(TransactionDatabaseHelper.COLUMN_VOID_DATE, Transaction::setVoidDate)
+        .longValue(TransactionDatabaseHelper.COLUMN_CREATED_AT, Transaction::setCreatedAt)
+        .longValue(TransactionDatabaseHelper.COLUMN_UPDATED_AT, Transaction::setUpdatedAt)
+        .build();
+    
     private TransactionDatabaseHelper dbHelper;
     private Context context;
+    private final Transaction.PayloadLoader payloadLoader = this::getPayload;
     
     public TransactionDAO(Context context) {
         this.context = context;
@@ -26,71 +89,58 @@ public class TransactionDAO {
      * Insert a new transaction
      */
     public long insertTransaction(Transaction transaction) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        
-        values.put(TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE, transaction.getTransactionType());
-        values.put(TransactionDatabaseHelper.COLUMN_STATUS, transaction.getStatus());
-        values.put(TransactionDatabaseHelper.COLUMN_AMOUNT, transaction.getAmount());
-        values.put(TransactionDatabaseHelper.COLUMN_CARD_NUMBER, transaction.getCardNumber());
-        values.put(TransactionDatabaseHelper.COLUMN_CARD_HOLDER_NAME, transaction.getCardHolderName());
-        values.put(TransactionDatabaseHelper.COLUMN_CARD_TYPE, transaction.getCardType());
-        values.put(TransactionDatabaseHelper.COLUMN_ENTRY_MODE, transaction.getEntryMode());
-        values.put(TransactionDatabaseHelper.COLUMN_TERMINAL_ID, transaction.getTerminalId());
-        values.put(TransactionDatabaseHelper.COLUMN_MERCHANT_ID, transaction.getMerchantId());
-        values.put(TransactionDatabaseHelper.COLUMN_BATCH_NUMBER, transaction.getBatchNumber());
-        values.put(TransactionDatabaseHelper.COLUMN_TRACE_NUMBER, transaction.getTraceNumber());
-        values.put(TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER, transaction.getReferenceNumber());
-        values.put(TransactionDatabaseHelper.COLUMN_APPROVAL_CODE, transaction.getApprovalCode());
-        values.put(TransactionDatabaseHelper.COLUMN_RESPONSE_CODE, transaction.getResponseCode());
-        values.put(TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE, transaction.getResponseMessage());
-        values.put(TransactionDatabaseHelper.COLUMN_EMV_DATA, transaction.getEmvData());
-        values.put(TransactionDatabaseHelper.COLUMN_PIN_BLOCK, transaction.getPinBlock());
-        values.put(TransactionDatabaseHelper.COLUMN_ARQC, transaction.getArqc());
-        values.put(TransactionDatabaseHelper.COLUMN_ATC, transaction.getAtc());
-        values.put(TransactionDatabaseHelper.COLUMN_TVR, transaction.getTvr());
-        values.put(TransactionDatabaseHelper.COLUMN_TSI, transaction.getTsi());
-        values.put(TransactionDatabaseHelper.COLUMN_AID, transaction.getAid());
-        values.put(TransactionDatabaseHelper.COLUMN_APPLICATION_LABEL, transaction.getApplicationLabel());
-        values.put(TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE, 
-            transaction.getTransactionDate() != null ? transaction.getTransactionDate().getTime() : System.currentTimeMillis());
-        values.put(TransactionDatabaseHelper.COLUMN_IS_VOIDED, transaction.isVoided() ? 1 : 0);
-        values.put(TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER, transaction.getVoidReferenceNumber());
-        values.put(TransactionDatabaseHelper.COLUMN_VOID_DATE, 
-            transaction.getVoidDate() != null ? transaction.getVoidDate().getTime() : null);
-        values.put(TransactionDatabaseHelper.COLUMN_RAW_REQUEST, transaction.getRawRequest());
-        values.put(TransactionDatabaseHelper.COLUMN_RAW_RESPONSE, transaction.getRawResponse());
-        values.put(TransactionDatabaseHelper.COLUMN_CREATED_AT, System.currentTimeMillis());
-        values.put(TransactionDatabaseHelper.COLUMN_UPDATED_AT, System.currentTimeMillis());
-        
-        long id = db.insert(TransactionDatabaseHelper.TABLE_TRANSACTIONS, null, values);
-        transaction.setId(id);
-        return id;
+        return dbHelper.getTransactionWriter().insert(transaction);
     }
     
     /**
      * Update an existing transaction
      */
     public boolean updateTransaction(Transaction transaction) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        
-        values.put(TransactionDatabaseHelper.COLUMN_STATUS, transaction.getStatus());
-        values.put(TransactionDatabaseHelper.COLUMN_RESPONSE_CODE, transaction.getResponseCode());
-        values.put(TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE, transaction.getResponseMessage());
-        values.put(TransactionDatabaseHelper.COLUMN_APPROVAL_CODE, transaction.getApprovalCode());
-        values.put(TransactionDatabaseHelper.COLUMN_IS_VOIDED, transaction.isVoided() ? 1 : 0);
-        values.put(TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER, transaction.getVoidReferenceNumber());
-        values.put(TransactionDatabaseHelper.COLUMN_VOID_DATE, 
-            transaction.getVoidDate() != null ? transaction.getVoidDate().getTime() : null);
-        values.put(TransactionDatabaseHelper.COLUMN_RAW_RESPONSE, transaction.getRawResponse());
-        values.put(TransactionDatabaseHelper.COLUMN_UPDATED_AT, System.currentTimeMillis());
-        
-        int rows = db.update(TransactionDatabaseHelper.TABLE_TRANSACTIONS, values, 
-            TransactionDatabaseHelper.COLUMN_ID + " = ?", 
-            new String[]{String.valueOf(transaction.getId())});
-        
-        return rows > 0;
+        return dbHelper.getTransactionWriter().update(transaction);
+    }
+    
+    /**
+     * Store a void and mark the original transaction voided in one commit
+     *
+     * @param original the voided sale, must already be stored
+     * @param voidTransaction the void record to insert
+     * @return id of the void record
+     */
+    public long insertVoid(Transaction original, Transaction voidTransaction) {
+        final long[] id = new long[1];
+        dbHelper.getTransactionWriter().runInTransaction((writer, db) -> {
+            id[0] = writer.insert(voidTransaction);
+            if (id[0] == -1) {
+                throw new IllegalStateException("Void record not stored: " + voidTransaction.getReferenceNumber());
+            }
+            original.setVoided(true);
+            original.setVoidReferenceNumber(voidTransaction.getReferenceNumber());
+            original.setVoidDate(voidTransaction.getTransactionDate() != null
+                ? voidTransaction.getTransactionDate() : new Date());
+            if (!writer.update(original)) {
+                throw new IllegalStateException("Original transaction not found: " + original.getId());
+            }
+        });
+        return id[0];
+    }
+    
+    /**
+     * Run several writes in one transaction, e.g. a transaction row together with its
+     * reversal record and counter update
+     */
+    public void runInTransaction(TransactionWriter.Batch batch) {
+        dbHelper.getTransactionWriter().runInTransaction(batch);
+    }
+    
+    /**
+     * Bulk insert for replays and test data seeding; rows with a reference number
+     * already stored are skipped
+     *
+     * @return number of rows inserted
+     */
+    public int importTransactions(Iterable<Transaction> transactions, TransactionWriter.ImportListener listener) {
+        return dbHelper.getTransactionWriter().importTransactions(transactions,
+            TransactionWriter.DEFAULT_IMPORT_CHUNK, listener);
     }
     
     /**
@@ -100,13 +150,13 @@ public class TransactionDAO {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = db.query(TransactionDatabaseHelper.TABLE_TRANSACTIONS,
             null,
-            TransactionDatabaseHelper.COLUMN_ID + " = ?",
+            TransactionQueries.BY_ID,
             new String[]{String.valueOf(id)},
             null, null, null);
         
         Transaction transaction = null;
         if (cursor != null && cursor.moveToFirst()) {
-            transaction = cursorToTransaction(cursor);
+            transaction = attach(TRANSACTION_MAPPER.map(cursor));
             cursor.close();
         }
         
@@ -120,13 +170,13 @@ public class TransactionDAO {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = db.query(TransactionDatabaseHelper.TABLE_TRANSACTIONS,
             null,
-            TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER + " = ?",
+            TransactionQueries.BY_REFERENCE_NUMBER,
             new String[]{referenceNumber},
             null, null, null);
         
         Transaction transaction = null;
         if (cursor != null && cursor.moveToFirst()) {
-            transaction = cursorToTransaction(cursor);
+            transaction = attach(TRANSACTION_MAPPER.map(cursor));
             cursor.close();
         }
         
@@ -134,20 +184,177 @@ public class TransactionDAO {
     }
     
     /**
-     * Get all transactions
+     * Get the raw messages, EMV data and PIN block of a transaction, for detail and
+     * reprint screens. Transactions returned by this DAO load it on first access.
+     *
+     * @return the payload, or null if the transaction does not exist
+     */
+    public TransactionPayload getPayload(long transactionId) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        TransactionPayload payload = null;
+        
+        // Rows not yet moved by the version 3 migration still hold it inline
+        Cursor cursor = db.rawQuery(TransactionQueries.PAYLOAD_QUERY, new String[]{String.valueOf(transactionId)});
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                payload = new TransactionPayload();
+                payload.setRawRequest(readPayloadValue(cursor, 0));
+                payload.setRawResponse(readPayloadValue(cursor, 1));
+                payload.setEmvData(readPayloadValue(cursor, 2));
+                payload.setPinBlock(readPayloadValue(cursor, 3));
+            }
+            cursor.close();
+        }
+        
+        return payload;
+    }
+    
+    /**
+     * Values written by {@link TransactionWriter} are {@link PayloadCodec} BLOBs, older
+     * rows hold plain text
+     */
+    private static String readPayloadValue(Cursor cursor, int index) {
+        if (cursor.getType(index) == Cursor.FIELD_TYPE_BLOB) {
+            return PayloadCodec.decode(cursor.getBlob(index));
+        }
+        return cursor.getString(index);
+    }
+    
+    /**
+     * Get all transactions. Loads every row with all columns, list screens should
+     * use {@link #getTransactionPage(String[], TransactionPage.Key, int)} instead.
      */
     public List<Transaction> getAllTransactions() {
         return getTransactions(null, null, TransactionDatabaseHelper.COLUMN_CREATED_AT + " DESC");
     }
     
+    /**
+     * Get one page of transactions, newest first
+     * @param columns columns to load, e.g. {@link #SUMMARY_COLUMNS}, or null for all
+     * @param after key of the last row of the previous page, null for the first page
+     * @param pageSize maximum number of rows on the page
+     */
+    public TransactionPage getTransactionPage(String[] columns, TransactionPage.Key after, int pageSize) {
+        return queryPage(columns, null, null, after, true, pageSize);
+    }
+    
+    /**
+     * Get one page of transactions matching a selection, newest first
+     * @param columns columns to load, or null for all
+     * @param selection WHERE clause without the paging condition, may be null
+     * @param selectionArgs arguments of the selection
+     * @param after key of the last row of the previous page, null for the first page
+     * @param pageSize maximum number of rows on the page
+     */
+    public TransactionPage getTransactionPage(String[] columns, String selection, String[] selectionArgs,
+                                              TransactionPage.Key after, int pageSize) {
+        return queryPage(columns, selection, selectionArgs, after, true, pageSize);
+    }
+    
+    /**
+     * Get the page of transactions directly newer than a key, still ordered newest first.
+     * Used to scroll back up after older pages have been dropped from memory.
+     * @param columns columns to load, or null for all
+     * @param before key of the first row of the page below
+     * @param pageSize maximum number of rows on the page
+     */
+    public TransactionPage getTransactionPageBefore(String[] columns, TransactionPage.Key before, int pageSize) {
+        return queryPage(columns, null, null, before, false, pageSize);
+    }
+    
+    /**
+     * Keyset query on (transaction_date, _id). idx_transaction_date holds the rowid
+     * as its last column, so both directions are a range scan on that index.
+     */
+    private TransactionPage queryPage(String[] columns, String selection, String[] selectionArgs,
+                                      TransactionPage.Key key, boolean older, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        if (selection != null) {
+            where.append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                Collections.addAll(args, selectionArgs);
+            }
+        }
+        if (key != null) {
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            where.append(older ? TransactionQueries.OLDER_THAN_KEY : TransactionQueries.NEWER_THAN_KEY);
+            args.add(String.valueOf(key.getTransactionDate()));
+            args.add(String.valueOf(key.getId()));
+        }
+        
+        // One extra row tells whether another page follows
+        Cursor cursor = db.query(TransactionDatabaseHelper.TABLE_TRANSACTIONS,
+            withKeyColumns(columns),
+            where.length() > 0 ? where.toString() : null,
+            args.toArray(new String[0]),
+            null, null, older ? TransactionQueries.KEY_DESCENDING : TransactionQueries.KEY_ASCENDING,
+            String.valueOf(pageSize + 1));
+        
+        List<Transaction> transactions = new ArrayList<>(Math.min(pageSize, 64));
+        boolean hasMore = false;
+        if (cursor != null) {
+            try {
+                RowMapper.Bound<Transaction> mapper = TRANSACTION_MAPPER.bind(cursor);
+                while (cursor.moveToNext()) {
+                    if (transactions.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    transactions.add(attach(mapper.map(cursor)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if (!older) {
+            Collections.reverse(transactions);
+        }
+        
+        return new TransactionPage(transactions, hasMore);
+    }
+    
+    /**
+     * Make sure the paging key columns are part of a projection
+     */
+    private static String[] withKeyColumns(String[] columns) {
+        if (columns == null) {
+            return null;
+        }
+        boolean hasId = false;
+        boolean hasDate = false;
+        for (String column : columns) {
+            hasId |= TransactionDatabaseHelper.COLUMN_ID.equals(column);
+            hasDate |= TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE.equals(column);
+        }
+        if (hasId && hasDate) {
+            return columns;
+        }
+        List<String> projection = new ArrayList<>(Arrays.asList(columns));
+        if (!hasId) {
+            projection.add(TransactionDatabaseHelper.COLUMN_ID);
+        }
+        if (!hasDate) {
+            projection.add(TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE);
+        }
+        return projection.toArray(new String[0]);
+    }
+    
     /**
      * Get transactions by type
      */
     public List<Transaction> getTransactionsByType(String type) {
         return getTransactions(
-            TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " = ?",
+            TransactionQueries.BY_TYPE,
             new String[]{type},
-            TransactionDatabaseHelper.COLUMN_CREATED_AT + " DESC"
+            TransactionQueries.NEWEST_CREATED_FIRST
         );
     }
     
@@ -156,9 +363,9 @@ public class TransactionDAO {
      */
     public List<Transaction> getTransactionsByDateRange(Date startDate, Date endDate) {
         return getTransactions(
-            TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " BETWEEN ? AND ?",
+            TransactionQueries.BY_DATE_RANGE,
             new String[]{String.valueOf(startDate.getTime()), String.valueOf(endDate.getTime())},
-            TransactionDatabaseHelper.COLUMN_CREATED_AT + " DESC"
+            TransactionQueries.NEWEST_CREATED_FIRST
         );
     }
     
@@ -167,12 +374,106 @@ public class TransactionDAO {
      */
     public List<Transaction> getTransactionsByBatch(String batchNumber) {
         return getTransactions(
-            TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " = ?",
+            TransactionQueries.BY_BATCH,
             new String[]{batchNumber},
-            TransactionDatabaseHelper.COLUMN_CREATED_AT + " DESC"
+            TransactionQueries.NEWEST_CREATED_FIRST
         );
     }
     
+    /**
+     * Write a batch to a file without loading it, see {@link BatchExport}. Runs on the
+     * calling thread.
+     *
+     * @param listener progress and cancellation, may be null
+     */
+    public BatchExport.Result exportBatch(String batchNumber, BatchExport.Format format, boolean deflate,
+                                          File file, BatchExport.ProgressListener listener) throws IOException {
+        return new BatchExport(dbHelper, format)
+            .setDeflate(deflate)
+            .setListener(listener)
+            .run(batchNumber, file);
+    }
+
+    /**
+     * Get the transactions of a card, newest first. The PAN is only used to compute its
+     * token, the lookup is an index seek on the token.
+     *
+     * @param pan clear card number, separators allowed
+     * @return the transactions, empty for a masked or invalid PAN
+     */
+    public List<Transaction> getTransactionsForCard(String pan) {
+        String token = dbHelper.getPanTokenizer().token(pan);
+        if (token == null) {
+            return new ArrayList<>();
+        }
+        return getTransactions(
+            TransactionQueries.BY_PAN_TOKEN,
+            new String[]{token},
+            TransactionQueries.NEWEST_FIRST
+        );
+    }
+    
+    /**
+     * Get transactions by the card digits printed on a receipt, newest first
+     *
+     * @param last4 last four digits
+     * @param bin first six digits, or null for any
+     */
+    public List<Transaction> getTransactionsByCardDigits(String last4, String bin) {
+        if (bin == null) {
+            return getTransactions(
+                TransactionQueries.BY_CARD_LAST4,
+                new String[]{last4},
+                TransactionQueries.NEWEST_FIRST
+            );
+        }
+        return getTransactions(
+            TransactionQueries.BY_CARD_DIGITS,
+            new String[]{last4, bin},
+            TransactionQueries.NEWEST_FIRST
+        );
+    }
+    
+    /**
+     * Get the sales a refund on this card can be matched to: approved, not voided,
+     * since {@code sinceMillis} and at least the refund amount. Newest first.
+     */
+    public List<Transaction> getRefundCandidates(String pan, long refundAmount, long sinceMillis) {
+        String token = dbHelper.getPanTokenizer().token(pan);
+        if (token == null) {
+            return new ArrayList<>();
+        }
+        return getTransactions(
+            TransactionQueries.REFUND_CANDIDATES,
+            new String[]{token, String.valueOf(sinceMillis), Transaction.TYPE_SALE, Transaction.STATUS_SUCCESS,
+                String.valueOf(refundAmount)},
+            TransactionQueries.NEWEST_FIRST
+        );
+    }
+    
+    /**
+     * Count and total of the approved sales and transfers of a card since a time, for
+     * velocity limits. Reads only the index range of the card within the window.
+     */
+    public CardVelocity getCardVelocity(String pan, long sinceMillis) {
+        CardVelocity velocity = new CardVelocity();
+        String token = dbHelper.getPanTokenizer().token(pan);
+        if (token == null) {
+            return velocity;
+        }
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery(TransactionQueries.VELOCITY_QUERY, new String[]{token, String.valueOf(sinceMillis),
+            Transaction.STATUS_SUCCESS, Transaction.TYPE_SALE, Transaction.TYPE_TRANSFER});
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                velocity.count = cursor.getInt(0);
+                velocity.totalAmount = cursor.getLong(1);
+            }
+            cursor.close();
+        }
+        return velocity;
+    }
+    
     /**
      * Get today's transactions
      */
@@ -190,9 +491,9 @@ public class TransactionDAO {
         }
         
         return getTransactions(
-            TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " BETWEEN ? AND ?",
+            TransactionQueries.BY_DATE_RANGE,
             new String[]{String.valueOf(startOfDay), String.valueOf(endOfDay)},
-            TransactionDatabaseHelper.COLUMN_CREATED_AT + " DESC"
+            TransactionQueries.NEWEST_CREATED_FIRST
         );
     }
     
@@ -200,57 +501,38 @@ public class TransactionDAO {
      * Get transaction summary for today
      */
     public TransactionSummary getTodayTransactionSummary() {
+        return querySummary(TransactionQueries.SUMMARY_BY_DAY_QUERY,
+            String.valueOf(TransactionRollups.businessDay(System.currentTimeMillis())));
+    }
+    
+    /**
+     * Get summary of successful transactions in a batch, for settlement
+     */
+    public TransactionSummary getBatchSummary(String batchNumber) {
+        return querySummary(TransactionQueries.SUMMARY_BY_BATCH_QUERY,
+            batchNumber != null ? batchNumber : "");
+    }
+    
+    /**
+     * Sum the successful rollups of a day or batch by transaction type
+     *
+     * @param query one of the summary queries of {@link TransactionQueries}
+     */
+    private TransactionSummary querySummary(String query, String selectionArg) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         TransactionSummary summary = new TransactionSummary();
         
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String today = sdf.format(new Date());
-        long startOfDay = 0;
-        long endOfDay = 0;
-        
-        try {
-            startOfDay = sdf.parse(today).getTime();
-            endOfDay = startOfDay + (24 * 60 * 60 * 1000) - 1;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        
-        // Get total count and amount
-        String query = "SELECT COUNT(*), SUM(" + TransactionDatabaseHelper.COLUMN_AMOUNT + ") " +
-                      "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " " +
-                      "WHERE " + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " BETWEEN ? AND ? " +
-                      "AND " + TransactionDatabaseHelper.COLUMN_STATUS + " = ?";
-        
-        Cursor cursor = db.rawQuery(query, new String[]{
-            String.valueOf(startOfDay), 
-            String.valueOf(endOfDay),
-            Transaction.STATUS_SUCCESS
-        });
-        
-        if (cursor != null && cursor.moveToFirst()) {
-            summary.setTotalCount(cursor.getInt(0));
-            summary.setTotalAmount(cursor.getLong(1));
-            cursor.close();
-        }
-        
-        // Get count by type
-        String typeQuery = "SELECT " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + ", COUNT(*), SUM(" + TransactionDatabaseHelper.COLUMN_AMOUNT + ") " +
-                          "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " " +
-                          "WHERE " + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " BETWEEN ? AND ? " +
-                          "AND " + TransactionDatabaseHelper.COLUMN_STATUS + " = ? " +
-                          "GROUP BY " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE;
-        
-        Cursor typeCursor = db.rawQuery(typeQuery, new String[]{
-            String.valueOf(startOfDay), 
-            String.valueOf(endOfDay),
-            Transaction.STATUS_SUCCESS
-        });
+        Cursor cursor = db.rawQuery(query, new String[]{selectionArg, Transaction.STATUS_SUCCESS});
         
-        if (typeCursor != null) {
-            while (typeCursor.moveToNext()) {
-                String type = typeCursor.getString(0);
-                int count = typeCursor.getInt(1);
-                long amount = typeCursor.getLong(2);
+        if (cursor != null) {
+            int totalCount = 0;
+            long totalAmount = 0;
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                int count = cursor.getInt(1);
+                long amount = cursor.getLong(2);
+                totalCount += count;
+                totalAmount += amount;
                 
                 switch (type) {
                     case Transaction.TYPE_SALE:
@@ -271,22 +553,72 @@ public class TransactionDAO {
                         break;
                 }
             }
-            typeCursor.close();
+            summary.setTotalCount(totalCount);
+            summary.setTotalAmount(totalAmount);
+            cursor.close();
         }
         
         return summary;
     }
     
     /**
-     * Delete old transactions (older than days specified)
+     * Check the rollup totals against the transaction rows and optionally rebuild them
+     *
+     * @param repair rebuild the rollups if they drifted
+     * @return one line per drifted rollup, empty if they match
      */
-    public int deleteOldTransactions(int days) {
+    public List<String> verifyRollups(boolean repair) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        long cutoffTime = System.currentTimeMillis() - (days * 24 * 60 * 60 * 1000L);
-        
-        return db.delete(TransactionDatabaseHelper.TABLE_TRANSACTIONS,
-            TransactionDatabaseHelper.COLUMN_CREATED_AT + " < ?",
-            new String[]{String.valueOf(cutoffTime)});
+        List<String> drift = TransactionRollups.verify(db);
+        if (repair && !drift.isEmpty()) {
+            TransactionRollups.rebuild(db);
+        }
+        return drift;
+    }
+    
+    /**
+     * Recompute the rollup totals from the transaction rows
+     *
+     * @return number of rollup rows
+     */
+    public int rebuildRollups() {
+        return TransactionRollups.rebuild(dbHelper.getWritableDatabase());
+    }
+    
+    /**
+     * Delete transactions of batches settled more than the given days ago, and
+     * unbatched transactions older than that, in small chunks on the calling thread.
+     * Unsettled batches are kept whatever their age. See {@link TransactionRetention}.
+     */
+    public int deleteOldTransactions(int days) {
+        try {
+            return new TransactionRetention(dbHelper).run(retentionCutoff(days)).getDeletedRows();
+        } catch (IOException e) {
+            // Only thrown while writing an archive, none is set
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Run {@link #deleteOldTransactions(int)} on the background pool, archiving the
+     * removed rows first when an archive is given
+     *
+     * @param archive encrypted archive file, null to delete only
+     */
+    public void scheduleRetention(int days, TransactionArchive archive) {
+        long cutoffTime = retentionCutoff(days);
+        ThreadPoolManager.getInstance().execute(() -> {
+            try {
+                new TransactionRetention(dbHelper).setArchive(archive).run(cutoffTime);
+            } catch (Exception e) {
+                // Nothing eligible is lost, the next run retries from the failed chunk
+                Log.e(TAG, "Retention run failed", e);
+            }
+        });
+    }
+    
+    private static long retentionCutoff(int days) {
+        return System.currentTimeMillis() - (days * 24 * 60 * 60 * 1000L);
     }
     
     /**
@@ -300,9 +632,9 @@ public class TransactionDAO {
             null, selection, selectionArgs, null, null, orderBy);
         
         if (cursor != null) {
+            RowMapper.Bound<Transaction> mapper = TRANSACTION_MAPPER.bind(cursor);
             while (cursor.moveToNext()) {
-                Transaction transaction = cursorToTransaction(cursor);
-                transactions.add(transaction);
+                transactions.add(attach(mapper.map(cursor)));
             }
             cursor.close();
         }
@@ -310,54 +642,25 @@ public class TransactionDAO {
         return transactions;
     }
     
+    private Transaction attach(Transaction transaction) {
+        transaction.setPayloadLoader(payloadLoader);
+        return transaction;
+    }
+    
     /**
-     * Convert cursor to Transaction object
-     */
-    private Transaction cursorToTransaction(Cursor cursor) {
-        Transaction transaction = new Transaction();
-        
-        transaction.setId(cursor.getLong(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_ID)));
-        transaction.setTransactionType(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE)));
-        transaction.setStatus(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_STATUS)));
-        transaction.setAmount(cursor.getLong(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_AMOUNT)));
-        transaction.setCardNumber(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_CARD_NUMBER)));
-        transaction.setCardHolderName(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_CARD_HOLDER_NAME)));
-        transaction.setCardType(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_CARD_TYPE)));
-        transaction.setEntryMode(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_ENTRY_MODE)));
-        transaction.setTerminalId(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_TERMINAL_ID)));
-        transaction.setMerchantId(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_MERCHANT_ID)));
-        transaction.setBatchNumber(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_BATCH_NUMBER)));
-        transaction.setTraceNumber(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_TRACE_NUMBER)));
-        transaction.setReferenceNumber(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER)));
-        transaction.setApprovalCode(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_APPROVAL_CODE)));
-        transaction.setResponseCode(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_RESPONSE_CODE)));
-        transaction.setResponseMessage(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE)));
-        transaction.setEmvData(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_EMV_DATA)));
-        transaction.setPinBlock(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_PIN_BLOCK)));
-        transaction.setArqc(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_ARQC)));
-        transaction.setAtc(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_ATC)));
-        transaction.setTvr(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_TVR)));
-        transaction.setTsi(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_TSI)));
-        transaction.setAid(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_AID)));
-        transaction.setApplicationLabel(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_APPLICATION_LABEL)));
-        
-        long transactionDateMillis = cursor.getLong(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE));
-        transaction.setTransactionDate(new Date(transactionDateMillis));
-        
-        transaction.setVoided(cursor.getInt(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_IS_VOIDED)) == 1);
-        transaction.setVoidReferenceNumber(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER)));
-        
-        if (!cursor.isNull(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_VOID_DATE))) {
-            long voidDateMillis = cursor.getLong(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_VOID_DATE));
-            transaction.setVoidDate(new Date(voidDateMillis));
-        }
-        
-        transaction.setRawRequest(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_RAW_REQUEST)));
-        transaction.setRawResponse(cursor.getString(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_RAW_RESPONSE)));
-        transaction.setCreatedAt(cursor.getLong(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_CREATED_AT)));
-        transaction.setUpdatedAt(cursor.getLong(cursor.getColumnIndex(TransactionDatabaseHelper.COLUMN_UPDATED_AT)));
+     * Approved card spending within a time window
+     */
+    public static class CardVelocity {
+        private int count;
+        private long totalAmount;
         
-        return transaction;
+        public int getCount() {
+            return count;
+        }
+        
+        public long getTotalAmount() {
+            return totalAmount;
+        }
     }
     
     /**
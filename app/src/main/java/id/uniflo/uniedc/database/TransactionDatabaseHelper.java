@@ -1,17 +1,34 @@
 package id.uniflo.uniedc.database;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
 
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteOpenHelper;
+import net.sqlcipher.database.SQLiteStatement;
 
+import java.io.File;
+import java.util.Arrays;
+
+import id.uniflo.uniedc.database.migration.MigrationRunner;
+import id.uniflo.uniedc.database.migration.RowRangeTask;
+import id.uniflo.uniedc.database.migration.SchemaDatabase;
 import id.uniflo.uniedc.security.DatabaseKeyManager;
+import id.uniflo.uniedc.security.PanTokenizer;
+import id.uniflo.uniedc.util.ThreadPoolManager;
 
 public class TransactionDatabaseHelper extends SQLiteOpenHelper {
     
+    private static final String TAG = "TransactionDatabaseHelper";
+    
+    // Pause between deferred migration chunks so transactions are not held up
+    private static final long MIGRATION_CHUNK_PAUSE_MS = 50;
+    
     // Database Information
     private static final String DATABASE_NAME = "uniflo_edc_transactions.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = TransactionSchema.VERSION;
+    private static final DatabaseConfig CONFIG = DatabaseConfig.TRANSACTIONS;
     
     // Table Name
     public static final String TABLE_TRANSACTIONS = "transactions";
@@ -33,6 +50,7 @@ public class TransactionDatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_APPROVAL_CODE = "approval_code";
     public static final String COLUMN_RESPONSE_CODE = "response_code";
     public static final String COLUMN_RESPONSE_MESSAGE = "response_message";
+    // Moved to TABLE_PAYLOADS in version 3, kept in the transactions table but NULL
     public static final String COLUMN_EMV_DATA = "emv_data";
     public static final String COLUMN_PIN_BLOCK = "pin_block";
     public static final String COLUMN_ARQC = "arqc";
@@ -45,79 +63,69 @@ public class TransactionDatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_IS_VOIDED = "is_voided";
     public static final String COLUMN_VOID_REFERENCE_NUMBER = "void_reference_number";
     public static final String COLUMN_VOID_DATE = "void_date";
+    // Moved to TABLE_PAYLOADS in version 3, kept in the transactions table but NULL
     public static final String COLUMN_RAW_REQUEST = "raw_request";
     public static final String COLUMN_RAW_RESPONSE = "raw_response";
     public static final String COLUMN_CREATED_AT = "created_at";
     public static final String COLUMN_UPDATED_AT = "updated_at";
+    // Card lookup keys, see PanTokenizer
+    public static final String COLUMN_PAN_TOKEN = "pan_token";
+    public static final String COLUMN_CARD_LAST4 = "card_last4";
+    public static final String COLUMN_CARD_BIN = "card_bin";
+    
+    // Rollup table, one row per (business day, batch, type, status)
+    public static final String TABLE_ROLLUPS = "transaction_rollups";
+    public static final String COLUMN_BUSINESS_DAY = "business_day";
+    public static final String COLUMN_TXN_COUNT = "txn_count";
+    public static final String COLUMN_TOTAL_AMOUNT = "total_amount";
+    
+    // Payload table, raw messages, EMV data and PIN block of a transaction
+    public static final String TABLE_PAYLOADS = "transaction_payloads";
+    public static final String COLUMN_TRANSACTION_ID = "transaction_id";
     
     private static TransactionDatabaseHelper instance;
     private final Context context;
     private final String databaseKey;
-    
-    // Create table SQL statement
-    private static final String CREATE_TRANSACTIONS_TABLE = 
-        "CREATE TABLE " + TABLE_TRANSACTIONS + " (" +
-        COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-        COLUMN_TRANSACTION_TYPE + " TEXT NOT NULL, " +
-        COLUMN_STATUS + " TEXT NOT NULL, " +
-        COLUMN_AMOUNT + " INTEGER NOT NULL, " +
-        COLUMN_CARD_NUMBER + " TEXT, " +
-        COLUMN_CARD_HOLDER_NAME + " TEXT, " +
-        COLUMN_CARD_TYPE + " TEXT, " +
-        COLUMN_ENTRY_MODE + " TEXT, " +
-        COLUMN_TERMINAL_ID + " TEXT, " +
-        COLUMN_MERCHANT_ID + " TEXT, " +
-        COLUMN_BATCH_NUMBER + " TEXT, " +
-        COLUMN_TRACE_NUMBER + " TEXT, " +
-        COLUMN_REFERENCE_NUMBER + " TEXT UNIQUE, " +
-        COLUMN_APPROVAL_CODE + " TEXT, " +
-        COLUMN_RESPONSE_CODE + " TEXT, " +
-        COLUMN_RESPONSE_MESSAGE + " TEXT, " +
-        COLUMN_EMV_DATA + " TEXT, " +
-        COLUMN_PIN_BLOCK + " TEXT, " +
-        COLUMN_ARQC + " TEXT, " +
-        COLUMN_ATC + " TEXT, " +
-        COLUMN_TVR + " TEXT, " +
-        COLUMN_TSI + " TEXT, " +
-        COLUMN_AID + " TEXT, " +
-        COLUMN_APPLICATION_LABEL + " TEXT, " +
-        COLUMN_TRANSACTION_DATE + " INTEGER NOT NULL, " +
-        COLUMN_IS_VOIDED + " INTEGER DEFAULT 0, " +
-        COLUMN_VOID_REFERENCE_NUMBER + " TEXT, " +
-        COLUMN_VOID_DATE + " INTEGER, " +
-        COLUMN_RAW_REQUEST + " TEXT, " +
-        COLUMN_RAW_RESPONSE + " TEXT, " +
-        COLUMN_CREATED_AT + " INTEGER NOT NULL, " +
-        COLUMN_UPDATED_AT + " INTEGER NOT NULL)";
-    
-    // Create indexes for performance
-    private static final String CREATE_INDEX_TRANSACTION_DATE = 
-        "CREATE INDEX idx_transaction_date ON " + TABLE_TRANSACTIONS + " (" + COLUMN_TRANSACTION_DATE + ")";
-    
-    private static final String CREATE_INDEX_REFERENCE_NUMBER = 
-        "CREATE INDEX idx_reference_number ON " + TABLE_TRANSACTIONS + " (" + COLUMN_REFERENCE_NUMBER + ")";
-    
-    private static final String CREATE_INDEX_BATCH_NUMBER = 
-        "CREATE INDEX idx_batch_number ON " + TABLE_TRANSACTIONS + " (" + COLUMN_BATCH_NUMBER + ")";
-    
-    private static final String CREATE_INDEX_CARD_NUMBER = 
-        "CREATE INDEX idx_card_number ON " + TABLE_TRANSACTIONS + " (" + COLUMN_CARD_NUMBER + ")";
-    
-    private static final String CREATE_INDEX_STATUS = 
-        "CREATE INDEX idx_status ON " + TABLE_TRANSACTIONS + " (" + COLUMN_STATUS + ")";
-    
-    private static final String CREATE_INDEX_TYPE = 
-        "CREATE INDEX idx_type ON " + TABLE_TRANSACTIONS + " (" + COLUMN_TRANSACTION_TYPE + ")";
+    private final DatabaseConfig config;
+    private TransactionWriter transactionWriter;
+    private final MigrationRunner migrationRunner;
+    private boolean deferredTasksScheduled;
+    private final ReadConnectionPool readPool;
+    private final WalCheckpointer checkpointer;
+    private final PanTokenizer panTokenizer;
     
     private TransactionDatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Loads SQLCipher, fetches the key and converts the file to CONFIG if needed
+        this(context, CipherMigration.prepare(context, DATABASE_NAME, CONFIG));
+    }
+    
+    private TransactionDatabaseHelper(Context context, CipherMigration.OpenParams params) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION, params.config.cipherHook(false));
         this.context = context.getApplicationContext();
+        this.databaseKey = params.key;
+        this.config = params.config;
+        
+        File databaseFile = this.context.getDatabasePath(DATABASE_NAME);
+        this.readPool = new ReadConnectionPool(databaseFile.getPath(), databaseKey,
+            config.getReadConnections(), config.cipherHook(true));
+        this.checkpointer = new WalCheckpointer(databaseFile, config.getMaxWalBytes(),
+            () -> WalCheckpointer.passiveCheckpoint(super.getWritableDatabase(databaseKey)));
         
-        // Load SQLCipher native libraries
-        SQLiteDatabase.loadLibs(context);
+        this.panTokenizer = new PanTokenizer(DatabaseKeyManager.getInstance(context).getPanTokenKey());
         
-        // Get database encryption key
-        this.databaseKey = DatabaseKeyManager.getInstance(context).getDatabaseKey();
+        this.migrationRunner = TransactionSchema.createRunner(Arrays.asList(
+            new RowRangeTask(TransactionSchema.TASK_REBUILD_ROLLUPS, TABLE_TRANSACTIONS, TransactionSchema.ROLLUP_BACKFILL_CHUNK) {
+                @Override
+                protected void runRange(SchemaDatabase db, long after, long last) {
+                    TransactionRollups.addRange(getWritableDatabase(), after, last);
+                }
+            },
+            new RowRangeTask(TransactionSchema.TASK_TOKENIZE_PANS, TABLE_TRANSACTIONS, TransactionSchema.CARD_BACKFILL_CHUNK) {
+                @Override
+                protected void runRange(SchemaDatabase db, long after, long last) {
+                    tokenizeRange(getWritableDatabase(), after, last);
+                }
+            }), MIGRATION_CHUNK_PAUSE_MS);
     }
     
     public static synchronized TransactionDatabaseHelper getInstance(Context context) {
@@ -129,34 +137,107 @@ public class TransactionDatabaseHelper extends SQLiteOpenHelper {
     
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create transactions table
-        db.execSQL(CREATE_TRANSACTIONS_TABLE);
-        
-        // Create indexes for better performance
-        db.execSQL(CREATE_INDEX_TRANSACTION_DATE);
-        db.execSQL(CREATE_INDEX_REFERENCE_NUMBER);
-        db.execSQL(CREATE_INDEX_BATCH_NUMBER);
-        db.execSQL(CREATE_INDEX_CARD_NUMBER);
-        db.execSQL(CREATE_INDEX_STATUS);
-        db.execSQL(CREATE_INDEX_TYPE);
+        TransactionSchema.create(new SQLCipherSchemaDatabase(db));
     }
     
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Handle database upgrades here
-        // For now, we'll recreate the table
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSACTIONS);
-        onCreate(db);
+        // Ordered steps that keep the stored transactions, index builds and backfills
+        // are left to the deferred tasks started in onOpen
+        migrationRunner.migrate(new SQLCipherSchemaDatabase(db), oldVersion, newVersion);
+    }
+    
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        // The schema is current now, readers can open next to this connection
+        readPool.openAsync();
+        if (deferredTasksScheduled) {
+            return;
+        }
+        if (!migrationRunner.getPendingTasks(new SQLCipherSchemaDatabase(db)).isEmpty()) {
+            deferredTasksScheduled = true;
+            ThreadPoolManager.getInstance().execute(this::runDeferredTasks);
+        }
+    }
+    
+    /**
+     * Work through the index builds and backfills left by migrations, a chunk at a time
+     */
+    private void runDeferredTasks() {
+        try {
+            migrationRunner.runPendingTasks(new SQLCipherSchemaDatabase(getWritableDatabase()), 0);
+        } catch (Exception e) {
+            // Left pending, retried on the next start
+            Log.e(TAG, "Deferred migration task failed", e);
+        }
+    }
+    
+    /**
+     * Token of the card numbers stored before version 4, in the range of a deferred chunk
+     */
+    private void tokenizeRange(SQLiteDatabase db, long after, long last) {
+        Cursor cursor = db.query(TABLE_TRANSACTIONS, new String[]{COLUMN_ID, COLUMN_CARD_NUMBER},
+            COLUMN_ID + " > ? AND " + COLUMN_ID + " <= ? AND " + COLUMN_PAN_TOKEN + " IS NULL AND " +
+            COLUMN_CARD_NUMBER + " IS NOT NULL",
+            new String[]{String.valueOf(after), String.valueOf(last)}, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_TRANSACTIONS + " SET " +
+            COLUMN_PAN_TOKEN + " = ? WHERE " + COLUMN_ID + " = ?");
+        try {
+            while (cursor.moveToNext()) {
+                String token = panTokenizer.token(cursor.getString(1));
+                if (token != null) {
+                    update.bindString(1, token);
+                    update.bindLong(2, cursor.getLong(0));
+                    update.execute();
+                }
+            }
+        } finally {
+            update.close();
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Card tokens of this terminal, for the writer and the card lookups
+     */
+    PanTokenizer getPanTokenizer() {
+        return panTokenizer;
     }
     
     public SQLiteDatabase getWritableDatabase() {
+        checkpointer.onWrite();
         return super.getWritableDatabase(databaseKey);
     }
     
+    /**
+     * A read connection of the pool, so reads do not wait for a write in progress.
+     * Not for writes; until the pool is open this is the write connection.
+     */
     public SQLiteDatabase getReadableDatabase() {
+        SQLiteDatabase reader = readPool.get();
+        if (reader != null) {
+            return reader;
+        }
         return super.getReadableDatabase(databaseKey);
     }
     
+    /**
+     * Shared writer holding the compiled insert and update statements
+     */
+    public synchronized TransactionWriter getTransactionWriter() {
+        if (transactionWriter == null) {
+            transactionWriter = new TransactionWriter(this);
+        }
+        return transactionWriter;
+    }
+    
     /**
      * Perform database integrity check
      */
@@ -199,10 +280,12 @@ public class TransactionDatabaseHelper extends SQLiteOpenHelper {
     }
     
     /**
-     * Vacuum database to optimize storage
+     * Vacuum database to optimize storage. Also switches databases created before
+     * incremental auto-vacuum to it, which only a full VACUUM can do.
      */
     public void vacuumDatabase() {
         SQLiteDatabase db = getWritableDatabase();
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
         db.execSQL("VACUUM");
     }
     
@@ -22,6 +22,28 @@ public class TransactionLimits {
         // Default constructor
     }
     
+    /**
+     * Copy of another instance
+     */
+    public TransactionLimits(TransactionLimits other) {
+        this.purchaseLimitEnabled = other.purchaseLimitEnabled;
+        this.purchaseMin = other.purchaseMin;
+        this.purchaseMax = other.purchaseMax;
+        this.withdrawalLimitEnabled = other.withdrawalLimitEnabled;
+        this.withdrawalMin = other.withdrawalMin;
+        this.withdrawalMax = other.withdrawalMax;
+        this.transferLimitEnabled = other.transferLimitEnabled;
+        this.transferMin = other.transferMin;
+        this.transferMax = other.transferMax;
+        this.refundLimitEnabled = other.refundLimitEnabled;
+        this.refundMax = other.refundMax;
+        this.cashBackLimitEnabled = other.cashBackLimitEnabled;
+        this.cashBackMax = other.cashBackMax;
+        this.dailyLimitEnabled = other.dailyLimitEnabled;
+        this.dailyTransactionLimit = other.dailyTransactionLimit;
+        this.dailyAmountLimit = other.dailyAmountLimit;
+    }
+    
     // Getters and Setters
     public boolean isPurchaseLimitEnabled() {
         return purchaseLimitEnabled;
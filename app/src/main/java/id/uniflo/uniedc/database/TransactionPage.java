@@ -0,0 +1,100 @@
+package id.uniflo.uniedc.database;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of transaction history, newest first, as returned by
+ * {@link TransactionDAO#getTransactionPage(String[], Key, int)}.
+ * <p>
+ * Pages are keyed on (transaction_date, _id) instead of OFFSET, so fetching page
+ * 500 costs the same as page 1 and rows inserted while scrolling do not shift the
+ * pages already shown.
+ */
+public class TransactionPage {
+
+    private final List<Transaction> transactions;
+    private final boolean hasMore;
+
+    TransactionPage(List<Transaction> transactions, boolean hasMore) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.hasMore = hasMore;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    public boolean isEmpty() {
+        return transactions.isEmpty();
+    }
+
+    /**
+     * @return true if more rows exist beyond this page in the direction it was read
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * @return key of the newest row on the page, or null if the page is empty
+     */
+    public Key getFirstKey() {
+        return transactions.isEmpty() ? null : Key.of(transactions.get(0));
+    }
+
+    /**
+     * @return key of the oldest row on the page, pass it as "after" to read the next page
+     */
+    public Key getLastKey() {
+        return transactions.isEmpty() ? null : Key.of(transactions.get(transactions.size() - 1));
+    }
+
+    /**
+     * Position of a row in the (transaction_date DESC, _id DESC) order
+     */
+    public static class Key {
+        private final long transactionDate;
+        private final long id;
+
+        public Key(long transactionDate, long id) {
+            this.transactionDate = transactionDate;
+            this.id = id;
+        }
+
+        public static Key of(Transaction transaction) {
+            long date = transaction.getTransactionDate() != null ? transaction.getTransactionDate().getTime() : 0;
+            return new Key(date, transaction.getId());
+        }
+
+        public long getTransactionDate() {
+            return transactionDate;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return transactionDate == key.transactionDate && id == key.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (transactionDate ^ (transactionDate >>> 32)) + (int) (id ^ (id >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + transactionDate + ", " + id + "}";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package id.uniflo.uniedc.database;
+
+/**
+ * Large, rarely read data of a transaction, stored in transaction_payloads apart from
+ * the summary row so list scans and aggregates do not page through it
+ */
+public class TransactionPayload {
+    
+    private String rawRequest;
+    private String rawResponse;
+    private String emvData;
+    private String pinBlock;
+    
+    public String getRawRequest() {
+        return rawRequest;
+    }
+    
+    public void setRawRequest(String rawRequest) {
+        this.rawRequest = rawRequest;
+    }
+    
+    public String getRawResponse() {
+        return rawResponse;
+    }
+    
+    public void setRawResponse(String rawResponse) {
+        this.rawResponse = rawResponse;
+    }
+    
+    public String getEmvData() {
+        return emvData;
+    }
+    
+    public void setEmvData(String emvData) {
+        this.emvData = emvData;
+    }
+    
+    public String getPinBlock() {
+        return pinBlock;
+    }
+    
+    public void setPinBlock(String pinBlock) {
+        this.pinBlock = pinBlock;
+    }
+    
+    /**
+     * @return true if no field is set
+     */
+    public boolean isEmpty() {
+        return rawRequest == null && rawResponse == null && emvData == null && pinBlock == null;
+    }
+}
@@ -0,0 +1,141 @@
+package id.uniflo.uniedc.database;
+
+/**
+ * Selections, orderings and raw queries on the transaction database, with the index
+ * each one is written for.
+ * <p>
+ * Free of Android classes like {@link TransactionSchema}, so the query plans can be
+ * checked on a plain JVM against the current schema. When a query changes, check that
+ * its plan still uses the index named here.
+ */
+final class TransactionQueries {
+
+    // Integer primary key
+    static final String BY_ID = TransactionDatabaseHelper.COLUMN_ID + " = ?";
+
+    // Unique constraint index on reference_number
+    static final String BY_REFERENCE_NUMBER = TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER + " = ?";
+
+    // idx_type_created, rows come in created_at order
+    static final String BY_TYPE = TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " = ?";
+
+    // idx_batch_created, rows come in created_at order
+    static final String BY_BATCH = TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " = ?";
+
+    // idx_transaction_date; sorted by created_at afterwards, one day or range at a time
+    static final String BY_DATE_RANGE = TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " BETWEEN ? AND ?";
+
+    // idx_pan_token
+    static final String BY_PAN_TOKEN = TransactionDatabaseHelper.COLUMN_PAN_TOKEN + " = ?";
+
+    // idx_card_last4
+    static final String BY_CARD_LAST4 = TransactionDatabaseHelper.COLUMN_CARD_LAST4 + " = ?";
+
+    static final String BY_CARD_DIGITS =
+        TransactionDatabaseHelper.COLUMN_CARD_LAST4 + " = ? AND " + TransactionDatabaseHelper.COLUMN_CARD_BIN + " = ?";
+
+    // idx_pan_token, token and the start of the window
+    static final String REFUND_CANDIDATES =
+        TransactionDatabaseHelper.COLUMN_PAN_TOKEN + " = ? AND " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " >= ? AND " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " = ? AND " +
+        TransactionDatabaseHelper.COLUMN_STATUS + " = ? AND " +
+        TransactionDatabaseHelper.COLUMN_IS_VOIDED + " = 0 AND " +
+        TransactionDatabaseHelper.COLUMN_AMOUNT + " >= ?";
+
+    static final String NEWEST_CREATED_FIRST = TransactionDatabaseHelper.COLUMN_CREATED_AT + " DESC";
+
+    static final String NEWEST_FIRST = TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " DESC";
+
+    // Keyset paging on idx_transaction_date, which ends with the rowid
+    static final String OLDER_THAN_KEY =
+        "(" + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + ", " + TransactionDatabaseHelper.COLUMN_ID + ") < (?, ?)";
+
+    static final String NEWER_THAN_KEY =
+        "(" + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + ", " + TransactionDatabaseHelper.COLUMN_ID + ") > (?, ?)";
+
+    static final String KEY_DESCENDING =
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " DESC, " + TransactionDatabaseHelper.COLUMN_ID + " DESC";
+
+    static final String KEY_ASCENDING =
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " ASC, " + TransactionDatabaseHelper.COLUMN_ID + " ASC";
+
+    // Order of idx_batch_created within one batch, no sort needed
+    static final String BATCH_ORDER =
+        TransactionDatabaseHelper.COLUMN_CREATED_AT + ", " + TransactionDatabaseHelper.COLUMN_ID;
+
+    // Covering on idx_batch_created
+    static final String BATCH_COUNT_QUERY =
+        "SELECT COUNT(*) FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + BY_BATCH;
+
+    static final String PAYLOAD_QUERY =
+        "SELECT " +
+        payloadColumn(TransactionDatabaseHelper.COLUMN_RAW_REQUEST) + ", " +
+        payloadColumn(TransactionDatabaseHelper.COLUMN_RAW_RESPONSE) + ", " +
+        payloadColumn(TransactionDatabaseHelper.COLUMN_EMV_DATA) + ", " +
+        payloadColumn(TransactionDatabaseHelper.COLUMN_PIN_BLOCK) + " " +
+        "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " t " +
+        "LEFT JOIN " + TransactionDatabaseHelper.TABLE_PAYLOADS + " p " +
+        "ON p." + TransactionDatabaseHelper.COLUMN_TRANSACTION_ID + " = t." + TransactionDatabaseHelper.COLUMN_ID + " " +
+        "WHERE t." + TransactionDatabaseHelper.COLUMN_ID + " = ?";
+
+    // idx_pan_token range of the window, a few rows per card
+    static final String VELOCITY_QUERY =
+        "SELECT COUNT(*), IFNULL(SUM(" + TransactionDatabaseHelper.COLUMN_AMOUNT + "), 0) " +
+        "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " " +
+        "WHERE " + TransactionDatabaseHelper.COLUMN_PAN_TOKEN + " = ? " +
+        "AND " + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " >= ? " +
+        "AND " + TransactionDatabaseHelper.COLUMN_STATUS + " = ? " +
+        "AND " + TransactionDatabaseHelper.COLUMN_IS_VOIDED + " = 0 " +
+        "AND " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " IN (?, ?)";
+
+    // Rollup primary key prefix, a few rows per day
+    static final String SUMMARY_BY_DAY_QUERY = summaryQuery(TransactionDatabaseHelper.COLUMN_BUSINESS_DAY + " = ?");
+
+    // idx_rollup_batch
+    static final String SUMMARY_BY_BATCH_QUERY = summaryQuery(TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " = ?");
+
+    // Covering on idx_type_created: the SETTLEMENT rows before the cutoff
+    static final String SETTLED_BATCHES_QUERY =
+        "SELECT " + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + ", MAX(" + TransactionDatabaseHelper.COLUMN_CREATED_AT + ") " +
+        "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " " +
+        "WHERE " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " = '" + Transaction.TYPE_SETTLEMENT + "' " +
+        "AND " + TransactionDatabaseHelper.COLUMN_STATUS + " = '" + Transaction.STATUS_SUCCESS + "' " +
+        "AND " + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " IS NOT NULL " +
+        "AND " + TransactionDatabaseHelper.COLUMN_CREATED_AT + " < ? " +
+        "GROUP BY " + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER;
+
+    // Covering on idx_batch_created
+    static final String SETTLED_BATCH_ROWS =
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " = ? AND " + TransactionDatabaseHelper.COLUMN_CREATED_AT + " <= ?";
+
+    static final String UNBATCHED_ROWS =
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " IS NULL AND " + TransactionDatabaseHelper.COLUMN_CREATED_AT + " < ?";
+
+    private TransactionQueries() {
+    }
+
+    /**
+     * @return the last _id of the next chunk of rows matching a selection after a given _id
+     */
+    static String lastIdOfChunk(String selection, int chunkSize) {
+        return "SELECT MAX(" + TransactionDatabaseHelper.COLUMN_ID + ") FROM (" +
+            "SELECT " + TransactionDatabaseHelper.COLUMN_ID + " FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS +
+            " WHERE " + selection + " AND " + TransactionDatabaseHelper.COLUMN_ID + " > ?" +
+            " ORDER BY " + TransactionDatabaseHelper.COLUMN_ID + " LIMIT " + chunkSize + ")";
+    }
+
+    private static String summaryQuery(String selection) {
+        return "SELECT " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + ", " +
+            "SUM(" + TransactionDatabaseHelper.COLUMN_TXN_COUNT + "), " +
+            "SUM(" + TransactionDatabaseHelper.COLUMN_TOTAL_AMOUNT + ") " +
+            "FROM " + TransactionDatabaseHelper.TABLE_ROLLUPS + " " +
+            "WHERE " + selection + " " +
+            "AND " + TransactionDatabaseHelper.COLUMN_STATUS + " = ? " +
+            "GROUP BY " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE;
+    }
+
+    private static String payloadColumn(String column) {
+        return "COALESCE(p." + column + ", t." + column + ")";
+    }
+}
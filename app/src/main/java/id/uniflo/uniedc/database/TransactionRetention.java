@@ -0,0 +1,294 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes old transactions of settled batches without holding up the writers.
+ * <p>
+ * A batch is eligible once its successful SETTLEMENT record is older than the cutoff;
+ * all rows of the batch up to that record go. Rows without a batch number are never
+ * settled and go by age alone. Eligible rows are removed in short _id ranges, each in
+ * its own database transaction together with its rollups and payloads, with a pause
+ * between ranges so a sale in progress waits for one small chunk at most. An
+ * interrupted run stops after the current chunk and the next run picks up the rest.
+ * <p>
+ * With an {@link TransactionArchive} set, every chunk is appended to the archive and
+ * synced before it is deleted. Afterwards the freed pages are returned to the file
+ * system with {@code PRAGMA incremental_vacuum}, a few at a time. This needs the
+ * database in incremental auto-vacuum mode, which new databases are created in and
+ * older ones are converted to by the {@link CipherMigration} export to the raw key.
+ * <pre>
+ * TransactionRetention.Result result = new TransactionRetention(dbHelper)
+ *     .setArchive(new TransactionArchive(file, key))
+ *     .run(cutoffMillis);
+ * </pre>
+ */
+public class TransactionRetention {
+
+    private static final String TAG = "TransactionRetention";
+
+    public static final int DEFAULT_CHUNK_SIZE = 200;
+    public static final long DEFAULT_PAUSE_MS = 50;
+    // Pages released per incremental_vacuum step
+    public static final int VACUUM_STEP_PAGES = 256;
+
+    // auto_vacuum pragma value of INCREMENTAL
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final String RANGE_SELECTION =
+        " AND " + TransactionDatabaseHelper.COLUMN_ID + " > ? AND " + TransactionDatabaseHelper.COLUMN_ID + " <= ?";
+
+    // Rows as stored, with the payload of rows already moved to the payload table
+    private static final String ARCHIVE_QUERY =
+        "SELECT t.*, " +
+        "p." + TransactionDatabaseHelper.COLUMN_RAW_REQUEST + " AS payload_" + TransactionDatabaseHelper.COLUMN_RAW_REQUEST + ", " +
+        "p." + TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + " AS payload_" + TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + ", " +
+        "p." + TransactionDatabaseHelper.COLUMN_EMV_DATA + " AS payload_" + TransactionDatabaseHelper.COLUMN_EMV_DATA + ", " +
+        "p." + TransactionDatabaseHelper.COLUMN_PIN_BLOCK + " AS payload_" + TransactionDatabaseHelper.COLUMN_PIN_BLOCK + " " +
+        "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " t " +
+        "LEFT JOIN " + TransactionDatabaseHelper.TABLE_PAYLOADS + " p " +
+        "ON p." + TransactionDatabaseHelper.COLUMN_TRANSACTION_ID + " = t." + TransactionDatabaseHelper.COLUMN_ID + " " +
+        "WHERE t." + TransactionDatabaseHelper.COLUMN_ID + " IN (SELECT " + TransactionDatabaseHelper.COLUMN_ID +
+        " FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " WHERE ";
+
+    // One run at a time, two would delete the same chunks
+    private static final Object RUN_LOCK = new Object();
+
+    private final TransactionDatabaseHelper dbHelper;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private long pauseMillis = DEFAULT_PAUSE_MS;
+    private TransactionArchive archive;
+
+    public TransactionRetention(TransactionDatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * @param chunkSize rows deleted per database transaction
+     */
+    public TransactionRetention setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param pauseMillis sleep between chunks, 0 for none
+     */
+    public TransactionRetention setPauseMillis(long pauseMillis) {
+        this.pauseMillis = pauseMillis;
+        return this;
+    }
+
+    /**
+     * @param archive where removed rows are written first, null to delete only
+     */
+    public TransactionRetention setArchive(TransactionArchive archive) {
+        this.archive = archive;
+        return this;
+    }
+
+    /**
+     * Remove the eligible rows created before a point in time. Runs on the calling
+     * thread, call it from a background thread.
+     *
+     * @param cutoffMillis epoch millis, settlements and unbatched rows created before
+     *                     it are removed
+     * @throws IOException if the archive cannot be written; chunks already archived
+     *                     stay deleted, the failed chunk is left in the database
+     */
+    public Result run(long cutoffMillis) throws IOException {
+        synchronized (RUN_LOCK) {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            Result result = new Result();
+
+            for (String[] batch : settledBatches(db, cutoffMillis)) {
+                if (!purge(db, TransactionQueries.SETTLED_BATCH_ROWS, batch, result)) {
+                    return result;
+                }
+                result.batches++;
+            }
+            if (!purge(db, TransactionQueries.UNBATCHED_ROWS, new String[]{String.valueOf(cutoffMillis)}, result)) {
+                return result;
+            }
+
+            result.freedPages = vacuum(db);
+            result.complete = !Thread.currentThread().isInterrupted();
+            Log.d(TAG, "Retention removed " + result.deletedRows + " rows of " + result.batches
+                + " batches, released " + result.freedPages + " pages");
+            return result;
+        }
+    }
+
+    /**
+     * @return batch number and creation time of its last settlement, per settled batch
+     */
+    private static List<String[]> settledBatches(SQLiteDatabase db, long cutoffMillis) {
+        List<String[]> batches = new ArrayList<>();
+        Cursor cursor = db.rawQuery(TransactionQueries.SETTLED_BATCHES_QUERY, new String[]{String.valueOf(cutoffMillis)});
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    batches.add(new String[]{cursor.getString(0), String.valueOf(cursor.getLong(1))});
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Remove the rows of a selection chunk by chunk in _id order
+     *
+     * @return false if interrupted
+     */
+    private boolean purge(SQLiteDatabase db, String selection, String[] selectionArgs, Result result) throws IOException {
+        SQLCipherSchemaDatabase schemaDb = new SQLCipherSchemaDatabase(db);
+        String lastIdQuery = TransactionQueries.lastIdOfChunk(selection, chunkSize);
+        String chunkSelection = selection + RANGE_SELECTION;
+
+        long after = 0;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            long last = schemaDb.longForQuery(lastIdQuery, append(selectionArgs, String.valueOf(after)));
+            if (last == 0) {
+                return true;
+            }
+            String[] chunkArgs = append(append(selectionArgs, String.valueOf(after)), String.valueOf(last));
+            result.deletedRows += deleteChunk(db, chunkSelection, chunkArgs, result);
+            after = last;
+            pause();
+        }
+    }
+
+    /**
+     * Archive and delete one _id range with its rollups and payloads. The archive frame
+     * is compressed, encrypted and synced before the write transaction starts, so the
+     * writers only wait for the deletes; a crash in between archives the chunk again
+     * on the next run.
+     */
+    private int deleteChunk(SQLiteDatabase db, String selection, String[] selectionArgs, Result result) throws IOException {
+        if (archive != null) {
+            Cursor cursor = db.rawQuery(ARCHIVE_QUERY + selection + ")", selectionArgs);
+            try {
+                result.archivedRows += archive.append(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        db.beginTransaction();
+        try {
+            TransactionRollups.subtract(db, selection, selectionArgs);
+            db.delete(TransactionDatabaseHelper.TABLE_PAYLOADS,
+                TransactionDatabaseHelper.COLUMN_TRANSACTION_ID + " IN (SELECT " + TransactionDatabaseHelper.COLUMN_ID +
+                " FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + selection + ")",
+                selectionArgs);
+            int rows = db.delete(TransactionDatabaseHelper.TABLE_TRANSACTIONS, selection, selectionArgs);
+            db.setTransactionSuccessful();
+            return rows;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Release free pages a step at a time, pausing between steps like the deletes
+     *
+     * @return pages released, 0 if the database is not in incremental mode
+     */
+    private int vacuum(SQLiteDatabase db) {
+        SQLCipherSchemaDatabase schemaDb = new SQLCipherSchemaDatabase(db);
+        if (schemaDb.longForQuery("PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            return 0;
+        }
+        int freed = 0;
+        long free = schemaDb.longForQuery("PRAGMA freelist_count", null);
+        while (free > 0 && !Thread.currentThread().isInterrupted()) {
+            // Read as a query, the pages are released while the cursor is stepped
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")", null);
+            try {
+                while (cursor.moveToNext()) {
+                    // releases the pages
+                }
+            } finally {
+                cursor.close();
+            }
+            long remaining = schemaDb.longForQuery("PRAGMA freelist_count", null);
+            if (remaining >= free) {
+                break;
+            }
+            freed += free - remaining;
+            free = remaining;
+            pause();
+        }
+        return freed;
+    }
+
+    private void pause() {
+        if (pauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            // Stop after the current chunk, everything before it is committed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String[] append(String[] args, String value) {
+        String[] result = new String[args.length + 1];
+        System.arraycopy(args, 0, result, 0, args.length);
+        result[args.length] = value;
+        return result;
+    }
+
+    /**
+     * What a run removed
+     */
+    public static class Result {
+        private int batches;
+        private int deletedRows;
+        private int archivedRows;
+        private int freedPages;
+        private boolean complete;
+
+        /**
+         * @return settled batches fully removed
+         */
+        public int getBatches() {
+            return batches;
+        }
+
+        public int getDeletedRows() {
+            return deletedRows;
+        }
+
+        public int getArchivedRows() {
+            return archivedRows;
+        }
+
+        public int getFreedPages() {
+            return freedPages;
+        }
+
+        /**
+         * @return false if the run was interrupted before everything eligible was removed
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import id.uniflo.uniedc.database.migration.DeferredTask;
+import id.uniflo.uniedc.database.migration.MigrationRunner;
+
+/**
+ * Running count and amount per (business day, batch, type, status), kept in the
+ * transaction_rollups table so dashboard and settlement totals are a lookup of a few
+ * rows instead of an aggregate over every transaction of the day.
+ * <p>
+ * {@link TransactionWriter} applies the deltas in the same database transaction as
+ * the row it writes. Rows changed outside the writer make the rollups drift;
+ * {@link #verify(SQLiteDatabase)} reports that and {@link #rebuild(SQLiteDatabase)}
+ * recomputes them from the transactions table.
+ * <p>
+ * On a database upgraded from before the rollups, the rows already stored are added
+ * in id ranges by {@link #addRange(SQLiteDatabase, long, long)}. Until that is done,
+ * writes to rows past the last range leave the rollups alone, the range adds such a
+ * row as it is then.
+ * <p>
+ * The business day is the local calendar day of transaction_date as yyyyMMdd, the
+ * same day boundaries {@link TransactionDAO#getTodayTransactions()} uses. A missing
+ * batch number is stored as an empty string so it takes part in the primary key.
+ */
+public class TransactionRollups {
+
+    private static final String SEED_SQL =
+        "INSERT OR IGNORE INTO " + TransactionDatabaseHelper.TABLE_ROLLUPS + " (" +
+        TransactionDatabaseHelper.COLUMN_BUSINESS_DAY + ", " +
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + ", " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + ", " +
+        TransactionDatabaseHelper.COLUMN_STATUS + ") VALUES (?, ?, ?, ?)";
+
+    private static final String ADD_SQL =
+        "UPDATE " + TransactionDatabaseHelper.TABLE_ROLLUPS + " SET " +
+        TransactionDatabaseHelper.COLUMN_TXN_COUNT + " = " + TransactionDatabaseHelper.COLUMN_TXN_COUNT + " + ?, " +
+        TransactionDatabaseHelper.COLUMN_TOTAL_AMOUNT + " = " + TransactionDatabaseHelper.COLUMN_TOTAL_AMOUNT + " + ? " +
+        "WHERE " + TransactionDatabaseHelper.COLUMN_BUSINESS_DAY + " = ? " +
+        "AND " + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " = ? " +
+        "AND " + TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " = ? " +
+        "AND " + TransactionDatabaseHelper.COLUMN_STATUS + " = ?";
+
+    private static final String BACKFILL_SQL =
+        "SELECT " + MigrationRunner.COLUMN_POSITION + ", " + MigrationRunner.COLUMN_DONE +
+        " FROM " + MigrationRunner.TABLE_TASKS + " WHERE " + MigrationRunner.COLUMN_NAME + " = ?";
+
+    // Columns of a transaction row that decide its rollup
+    static final String[] KEY_COLUMNS = {
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE,
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER,
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE,
+        TransactionDatabaseHelper.COLUMN_STATUS,
+        TransactionDatabaseHelper.COLUMN_AMOUNT
+    };
+
+    // Day of the last business day lookup, most writes fall on the same day
+    private static volatile DayRange lastDay;
+
+    private final SQLiteDatabase db;
+    private final SQLiteStatement seedStatement;
+    private final SQLiteStatement addStatement;
+
+    // Set once the backfill is seen finished, it does not start again
+    private boolean backfilled;
+
+    /**
+     * Compile the update statements on a writable connection
+     */
+    TransactionRollups(SQLiteDatabase db) {
+        this.db = db;
+        seedStatement = db.compileStatement(SEED_SQL);
+        addStatement = db.compileStatement(ADD_SQL);
+    }
+
+    /**
+     * Add a transaction row to its rollup, the caller holds the database transaction
+     *
+     * @param defaultDate date stored for the row when it has none
+     */
+    void add(Transaction transaction, long defaultDate) {
+        long date = transaction.getTransactionDate() != null
+            ? transaction.getTransactionDate().getTime() : defaultDate;
+        add(businessDay(date), transaction.getBatchNumber(), transaction.getTransactionType(),
+            transaction.getStatus(), 1, transaction.getAmount());
+    }
+
+    /**
+     * Apply a count and amount delta to one rollup row, creating it if needed
+     */
+    void add(int businessDay, String batchNumber, String type, String status, int count, long amount) {
+        String batch = batchNumber != null ? batchNumber : "";
+        seedStatement.bindLong(1, businessDay);
+        seedStatement.bindString(2, batch);
+        seedStatement.bindString(3, type);
+        seedStatement.bindString(4, status);
+        seedStatement.execute();
+
+        addStatement.bindLong(1, count);
+        addStatement.bindLong(2, amount);
+        addStatement.bindLong(3, businessDay);
+        addStatement.bindString(4, batch);
+        addStatement.bindString(5, type);
+        addStatement.bindString(6, status);
+        addStatement.execute();
+    }
+
+    /**
+     * @return whether the row is part of the rollups yet and its changes must be applied;
+     * call inside the write transaction
+     */
+    boolean covers(long id) {
+        if (backfilled) {
+            return true;
+        }
+        long through = backfilledThrough(db);
+        if (through == Long.MAX_VALUE) {
+            backfilled = true;
+            return true;
+        }
+        return id <= through;
+    }
+
+    void close() {
+        seedStatement.close();
+        addStatement.close();
+    }
+
+    /**
+     * @param millis epoch millis
+     * @return local calendar day as yyyyMMdd
+     */
+    public static int businessDay(long millis) {
+        DayRange day = lastDay;
+        if (day == null || millis < day.start || millis >= day.end) {
+            day = new DayRange(millis);
+            lastDay = day;
+        }
+        return day.businessDay;
+    }
+
+    /**
+     * Subtract the rows matching a selection from their rollups, call before deleting
+     * them inside the same database transaction
+     */
+    static void subtract(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        long through = backfilledThrough(db);
+        if (through != Long.MAX_VALUE) {
+            // Rows past the backfill are not in the rollups yet
+            selection = "(" + selection + ") AND " + TransactionDatabaseHelper.COLUMN_ID + " <= ?";
+            String[] args = new String[selectionArgs != null ? selectionArgs.length + 1 : 1];
+            if (selectionArgs != null) {
+                System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+            }
+            args[args.length - 1] = String.valueOf(through);
+            selectionArgs = args;
+        }
+        apply(db, aggregate(db, selection, selectionArgs), -1);
+    }
+
+    /**
+     * Add the rows with {@code after < id <= last} to their rollups, one range of the
+     * backfill after an upgrade. Runs inside the chunk transaction of the task.
+     */
+    static void addRange(SQLiteDatabase db, long after, long last) {
+        apply(db, aggregate(db,
+            TransactionDatabaseHelper.COLUMN_ID + " > ? AND " + TransactionDatabaseHelper.COLUMN_ID + " <= ?",
+            new String[]{String.valueOf(after), String.valueOf(last)}), 1);
+    }
+
+    /**
+     * Recompute all rollups from the transactions table
+     *
+     * @return number of rollup rows written
+     */
+    public static int rebuild(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            Map<Key, long[]> totals = aggregate(db, null, null);
+            db.delete(TransactionDatabaseHelper.TABLE_ROLLUPS, null, null);
+            apply(db, totals, 1);
+            // Every row is counted now, a pending backfill would add its ranges twice
+            db.execSQL("UPDATE " + MigrationRunner.TABLE_TASKS + " SET " +
+                MigrationRunner.COLUMN_POSITION + " = ?, " + MigrationRunner.COLUMN_DONE + " = 1 " +
+                "WHERE " + MigrationRunner.COLUMN_NAME + " = ?",
+                new Object[]{DeferredTask.DONE, TransactionSchema.TASK_REBUILD_ROLLUPS});
+            db.setTransactionSuccessful();
+            return totals.size();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Compare the rollups with the transactions table
+     *
+     * @return one line per drifted rollup, empty if they match
+     */
+    public static List<String> verify(SQLiteDatabase db) {
+        List<String> drift = new ArrayList<>();
+        Map<Key, long[]> expected = aggregate(db, null, null);
+
+        Cursor cursor = db.query(TransactionDatabaseHelper.TABLE_ROLLUPS, new String[]{
+            TransactionDatabaseHelper.COLUMN_BUSINESS_DAY,
+            TransactionDatabaseHelper.COLUMN_BATCH_NUMBER,
+            TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE,
+            TransactionDatabaseHelper.COLUMN_STATUS,
+            TransactionDatabaseHelper.COLUMN_TXN_COUNT,
+            TransactionDatabaseHelper.COLUMN_TOTAL_AMOUNT
+        }, null, null, null, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    Key key = new Key(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3));
+                    long count = cursor.getLong(4);
+                    long amount = cursor.getLong(5);
+                    long[] total = expected.remove(key);
+                    if (total == null) {
+                        // Emptied rollups may remain with zero totals
+                        if (count != 0 || amount != 0) {
+                            drift.add(key + " stored " + count + "/" + amount + ", expected 0/0");
+                        }
+                    } else if (total[0] != count || total[1] != amount) {
+                        drift.add(key + " stored " + count + "/" + amount + ", expected " + total[0] + "/" + total[1]);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        for (Map.Entry<Key, long[]> entry : expected.entrySet()) {
+            long[] total = entry.getValue();
+            drift.add(entry.getKey() + " missing, expected " + total[0] + "/" + total[1]);
+        }
+        return drift;
+    }
+
+    /**
+     * @return id of the last row the backfill added, {@link Long#MAX_VALUE} if there is
+     * none pending
+     */
+    private static long backfilledThrough(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery(BACKFILL_SQL, new String[]{TransactionSchema.TASK_REBUILD_ROLLUPS});
+        try {
+            if (!cursor.moveToFirst() || cursor.getInt(1) != 0) {
+                return Long.MAX_VALUE;
+            }
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Add totals to their rollups, negated for a {@code sign} of -1
+     */
+    private static void apply(SQLiteDatabase db, Map<Key, long[]> totals, int sign) {
+        if (totals.isEmpty()) {
+            return;
+        }
+        TransactionRollups rollups = new TransactionRollups(db);
+        try {
+            for (Map.Entry<Key, long[]> entry : totals.entrySet()) {
+                Key key = entry.getKey();
+                long[] total = entry.getValue();
+                rollups.add(key.businessDay, key.batchNumber, key.type, key.status,
+                    (int) (sign * total[0]), sign * total[1]);
+            }
+        } finally {
+            rollups.close();
+        }
+    }
+
+    /**
+     * Sum the matching transaction rows per rollup key. Day boundaries follow the
+     * local time zone, so this is done here rather than in SQL.
+     */
+    private static Map<Key, long[]> aggregate(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Map<Key, long[]> totals = new HashMap<>();
+        Cursor cursor = db.query(TransactionDatabaseHelper.TABLE_TRANSACTIONS, KEY_COLUMNS,
+            selection, selectionArgs, null, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    String batch = cursor.isNull(1) ? "" : cursor.getString(1);
+                    Key key = new Key(businessDay(cursor.getLong(0)), batch, cursor.getString(2), cursor.getString(3));
+                    long[] total = totals.get(key);
+                    if (total == null) {
+                        total = new long[2];
+                        totals.put(key, total);
+                    }
+                    total[0]++;
+                    total[1] += cursor.getLong(4);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Local day containing a point in time
+     */
+    private static class DayRange {
+        final long start;
+        final long end;
+        final int businessDay;
+
+        DayRange(long millis) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(millis);
+            businessDay = calendar.get(Calendar.YEAR) * 10000
+                + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            start = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            end = calendar.getTimeInMillis();
+        }
+    }
+
+    private static class Key {
+        final int businessDay;
+        final String batchNumber;
+        final String type;
+        final String status;
+
+        Key(int businessDay, String batchNumber, String type, String status) {
+            this.businessDay = businessDay;
+            this.batchNumber = batchNumber;
+            this.type = type;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return businessDay == key.businessDay && batchNumber.equals(key.batchNumber)
+                && type.equals(key.type) && status.equals(key.status);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = businessDay;
+            result = 31 * result + batchNumber.hashCode();
+            result = 31 * result + type.hashCode();
+            result = 31 * result + status.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return businessDay + "/" + batchNumber + "/" + type + "/" + status;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package id.uniflo.uniedc.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import id.uniflo.uniedc.database.migration.BackfillTask;
+import id.uniflo.uniedc.database.migration.DeferredTask;
+import id.uniflo.uniedc.database.migration.IndexBuildTask;
+import id.uniflo.uniedc.database.migration.Migration;
+import id.uniflo.uniedc.database.migration.MigrationRunner;
+import id.uniflo.uniedc.database.migration.RowRangeTask;
+import id.uniflo.uniedc.database.migration.SchemaDatabase;
+
+/**
+ * Schema of the transaction database: the statements for a fresh install and the
+ * migration steps from every released version.
+ * <p>
+ * Free of Android classes so the migrations can be replayed on a plain JVM against
+ * stored fixtures of the old schemas. When changing the schema, bump {@link #VERSION},
+ * update the create statements and add the step from the previous version; a fresh
+ * install and an upgraded database must end up with the same tables and indexes.
+ */
+public final class TransactionSchema {
+    
+    public static final int VERSION = 5;
+    
+    /**
+     * Deferred task filling transaction_rollups from the rows stored before version 2,
+     * implemented by {@link TransactionDatabaseHelper}
+     */
+    public static final String TASK_REBUILD_ROLLUPS = "rebuild_rollups";
+    
+    /**
+     * Deferred task moving the payloads stored inline before version 3 to their table
+     */
+    public static final String TASK_MOVE_PAYLOADS = "move_payloads";
+    
+    /**
+     * Deferred task filling card_last4 and card_bin of the rows stored before version 4
+     */
+    public static final String TASK_CARD_SUFFIX = "card_suffix";
+    
+    /**
+     * Deferred task filling pan_token of the rows stored before version 4, implemented
+     * by {@link TransactionDatabaseHelper} since it needs the token key
+     */
+    public static final String TASK_TOKENIZE_PANS = "tokenize_pans";
+    
+    public static final String TASK_INDEX_PAN_TOKEN = "index_pan_token";
+    public static final String TASK_INDEX_CARD_LAST4 = "index_card_last4";
+    public static final String TASK_INDEX_TYPE_CREATED = "index_type_created";
+    public static final String TASK_INDEX_BATCH_CREATED = "index_batch_created";
+    
+    // Rows per chunk of the payload move, each chunk rewrites about as many pages
+    private static final int MOVE_PAYLOADS_CHUNK = 200;
+    
+    // Rows per chunk of the rollup backfill, one read of the rows and a few upserts
+    static final int ROLLUP_BACKFILL_CHUNK = 500;
+    
+    // Rows per chunk of the card column backfills
+    static final int CARD_BACKFILL_CHUNK = 500;
+    
+    // Create table SQL statement
+    private static final String CREATE_TRANSACTIONS_TABLE = 
+        "CREATE TABLE " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " (" +
+        TransactionDatabaseHelper.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " TEXT NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_STATUS + " TEXT NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_AMOUNT + " INTEGER NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_CARD_NUMBER + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_CARD_HOLDER_NAME + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_CARD_TYPE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_ENTRY_MODE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_TERMINAL_ID + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_MERCHANT_ID + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_TRACE_NUMBER + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER + " TEXT UNIQUE, " +
+        TransactionDatabaseHelper.COLUMN_APPROVAL_CODE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_RESPONSE_CODE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_EMV_DATA + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_PIN_BLOCK + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_ARQC + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_ATC + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_TVR + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_TSI + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_AID + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_APPLICATION_LABEL + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + " INTEGER NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_IS_VOIDED + " INTEGER DEFAULT 0, " +
+        TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_VOID_DATE + " INTEGER, " +
+        TransactionDatabaseHelper.COLUMN_RAW_REQUEST + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_CREATED_AT + " INTEGER NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_UPDATED_AT + " INTEGER NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_PAN_TOKEN + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_CARD_LAST4 + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_CARD_BIN + " TEXT)";
+    
+    // Create indexes for performance
+    private static final String CREATE_INDEX_TRANSACTION_DATE = 
+        "CREATE INDEX idx_transaction_date ON " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " (" + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + ")";
+    
+    // History of one type newest first; covers the lookup of settled batches
+    private static final String CREATE_INDEX_TYPE_CREATED = 
+        "CREATE INDEX IF NOT EXISTS idx_type_created ON " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " (" +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + ", " + TransactionDatabaseHelper.COLUMN_CREATED_AT + ", " +
+        TransactionDatabaseHelper.COLUMN_STATUS + ", " + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + ")";
+    
+    // Rows of one batch in creation order, for the batch list, export and retention
+    private static final String CREATE_INDEX_BATCH_CREATED = 
+        "CREATE INDEX IF NOT EXISTS idx_batch_created ON " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " (" +
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + ", " + TransactionDatabaseHelper.COLUMN_CREATED_AT + ")";
+    
+    // Card lookups by token, newest first or within a time window
+    private static final String CREATE_INDEX_PAN_TOKEN = 
+        "CREATE INDEX IF NOT EXISTS idx_pan_token ON " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " (" +
+        TransactionDatabaseHelper.COLUMN_PAN_TOKEN + ", " + TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE + ")";
+    
+    // Searches by the digits printed on a receipt
+    private static final String CREATE_INDEX_CARD_LAST4 = 
+        "CREATE INDEX IF NOT EXISTS idx_card_last4 ON " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " (" +
+        TransactionDatabaseHelper.COLUMN_CARD_LAST4 + ", " + TransactionDatabaseHelper.COLUMN_CARD_BIN + ")";
+    
+    // Card number without separators, the same normalisation as PanTokenizer
+    private static final String PLAIN_CARD_NUMBER = 
+        "REPLACE(REPLACE(" + TransactionDatabaseHelper.COLUMN_CARD_NUMBER + ", ' ', ''), '-', '')";
+    
+    private static final String CARD_SUFFIX_ASSIGNMENTS = 
+        TransactionDatabaseHelper.COLUMN_CARD_LAST4 + " = CASE WHEN substr(" + PLAIN_CARD_NUMBER + ", -4) " +
+        "GLOB '[0-9][0-9][0-9][0-9]' THEN substr(" + PLAIN_CARD_NUMBER + ", -4) END, " +
+        TransactionDatabaseHelper.COLUMN_CARD_BIN + " = CASE WHEN " + PLAIN_CARD_NUMBER + " " +
+        "GLOB '[0-9][0-9][0-9][0-9][0-9][0-9]*' THEN substr(" + PLAIN_CARD_NUMBER + ", 1, 6) END";
+    
+    private static final String CREATE_ROLLUPS_TABLE = 
+        "CREATE TABLE IF NOT EXISTS " + TransactionDatabaseHelper.TABLE_ROLLUPS + " (" +
+        TransactionDatabaseHelper.COLUMN_BUSINESS_DAY + " INTEGER NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + " TEXT NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + " TEXT NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_STATUS + " TEXT NOT NULL, " +
+        TransactionDatabaseHelper.COLUMN_TXN_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+        TransactionDatabaseHelper.COLUMN_TOTAL_AMOUNT + " INTEGER NOT NULL DEFAULT 0, " +
+        "PRIMARY KEY (" + TransactionDatabaseHelper.COLUMN_BUSINESS_DAY + ", " + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + ", " +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE + ", " + TransactionDatabaseHelper.COLUMN_STATUS + ")) WITHOUT ROWID";
+    
+    private static final String CREATE_INDEX_ROLLUP_BATCH = 
+        "CREATE INDEX IF NOT EXISTS idx_rollup_batch ON " + TransactionDatabaseHelper.TABLE_ROLLUPS + " (" + TransactionDatabaseHelper.COLUMN_BATCH_NUMBER + ")";
+    
+    private static final String CREATE_PAYLOADS_TABLE = 
+        "CREATE TABLE IF NOT EXISTS " + TransactionDatabaseHelper.TABLE_PAYLOADS + " (" +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_ID + " INTEGER PRIMARY KEY, " +
+        TransactionDatabaseHelper.COLUMN_RAW_REQUEST + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_EMV_DATA + " TEXT, " +
+        TransactionDatabaseHelper.COLUMN_PIN_BLOCK + " TEXT)";
+    
+    private static final String[] CREATE_STATEMENTS = {
+        CREATE_TRANSACTIONS_TABLE,
+        CREATE_INDEX_TRANSACTION_DATE,
+        CREATE_INDEX_TYPE_CREATED,
+        CREATE_INDEX_BATCH_CREATED,
+        CREATE_INDEX_PAN_TOKEN,
+        CREATE_INDEX_CARD_LAST4,
+        CREATE_ROLLUPS_TABLE,
+        CREATE_INDEX_ROLLUP_BATCH,
+        CREATE_PAYLOADS_TABLE
+    };
+    
+    private TransactionSchema() {
+    }
+    
+    /**
+     * Create the current schema on an empty database
+     */
+    public static void create(SchemaDatabase db) {
+        for (String sql : CREATE_STATEMENTS) {
+            db.execSQL(sql);
+        }
+        MigrationRunner.createTaskTable(db);
+    }
+    
+    /**
+     * @return the migration steps, one per released version
+     */
+    public static List<Migration> migrations() {
+        return Arrays.asList(new AddRollups(), new SplitPayloads(), new AddCardTokens(),
+            new CompositeIndexes());
+    }
+    
+    /**
+     * @param tasks implementations of the deferred tasks that need Android classes
+     * @param chunkPauseMillis pause between deferred chunks
+     */
+    public static MigrationRunner createRunner(List<? extends DeferredTask> tasks, long chunkPauseMillis) {
+        List<DeferredTask> all = new ArrayList<>(tasks);
+        all.add(new MovePayloads());
+        all.add(new BackfillTask(TASK_CARD_SUFFIX, TransactionDatabaseHelper.TABLE_TRANSACTIONS,
+            CARD_SUFFIX_ASSIGNMENTS, TransactionDatabaseHelper.COLUMN_CARD_NUMBER + " IS NOT NULL", CARD_BACKFILL_CHUNK));
+        all.add(new IndexBuildTask(TASK_INDEX_PAN_TOKEN, CREATE_INDEX_PAN_TOKEN));
+        all.add(new IndexBuildTask(TASK_INDEX_CARD_LAST4, CREATE_INDEX_CARD_LAST4));
+        all.add(new IndexBuildTask(TASK_INDEX_TYPE_CREATED, CREATE_INDEX_TYPE_CREATED, "idx_type"));
+        all.add(new IndexBuildTask(TASK_INDEX_BATCH_CREATED, CREATE_INDEX_BATCH_CREATED, "idx_batch_number"));
+        return new MigrationRunner(migrations(), all, chunkPauseMillis);
+    }
+    
+    /**
+     * Version 2: dashboard and settlement rollups, filled in the background
+     */
+    static class AddRollups extends Migration {
+        
+        AddRollups() {
+            super(1);
+        }
+        
+        @Override
+        public void migrate(SchemaDatabase db) {
+            db.execSQL(CREATE_ROLLUPS_TABLE);
+            db.execSQL(CREATE_INDEX_ROLLUP_BATCH);
+            MigrationRunner.enqueue(db, TASK_REBUILD_ROLLUPS);
+        }
+    }
+    
+    /**
+     * Version 3: raw messages, EMV data and PIN block move to their own table
+     */
+    static class SplitPayloads extends Migration {
+        
+        SplitPayloads() {
+            super(2);
+        }
+        
+        @Override
+        public void migrate(SchemaDatabase db) {
+            db.execSQL(CREATE_PAYLOADS_TABLE);
+            MigrationRunner.enqueue(db, TASK_MOVE_PAYLOADS);
+        }
+    }
+    
+    /**
+     * Version 4: PAN token, last four digits and BIN of the card. The stored rows are
+     * filled in the background, the indexes built once they are, so the backfill does
+     * not have to maintain them.
+     */
+    static class AddCardTokens extends Migration {
+        
+        AddCardTokens() {
+            super(3);
+        }
+        
+        @Override
+        public void migrate(SchemaDatabase db) {
+            db.execSQL("ALTER TABLE " + TransactionDatabaseHelper.TABLE_TRANSACTIONS +
+                " ADD COLUMN " + TransactionDatabaseHelper.COLUMN_PAN_TOKEN + " TEXT");
+            db.execSQL("ALTER TABLE " + TransactionDatabaseHelper.TABLE_TRANSACTIONS +
+                " ADD COLUMN " + TransactionDatabaseHelper.COLUMN_CARD_LAST4 + " TEXT");
+            db.execSQL("ALTER TABLE " + TransactionDatabaseHelper.TABLE_TRANSACTIONS +
+                " ADD COLUMN " + TransactionDatabaseHelper.COLUMN_CARD_BIN + " TEXT");
+            MigrationRunner.enqueue(db, TASK_CARD_SUFFIX);
+            MigrationRunner.enqueue(db, TASK_TOKENIZE_PANS);
+            MigrationRunner.enqueue(db, TASK_INDEX_PAN_TOKEN);
+            MigrationRunner.enqueue(db, TASK_INDEX_CARD_LAST4);
+        }
+    }
+    
+    /**
+     * Version 5: composite indexes matching the DAO queries, see {@link TransactionQueries}.
+     * Indexes no query uses go now: status alone, the clear card number, and the
+     * reference number, which its unique constraint already indexes. Type and batch
+     * keep their old index until the composite one replacing it is built.
+     */
+    static class CompositeIndexes extends Migration {
+        
+        CompositeIndexes() {
+            super(4);
+        }
+        
+        @Override
+        public void migrate(SchemaDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS idx_status");
+            db.execSQL("DROP INDEX IF EXISTS idx_card_number");
+            db.execSQL("DROP INDEX IF EXISTS idx_reference_number");
+            MigrationRunner.enqueue(db, TASK_INDEX_TYPE_CREATED);
+            MigrationRunner.enqueue(db, TASK_INDEX_BATCH_CREATED);
+        }
+    }
+    
+    /**
+     * Copies inline payloads to the payload table and clears them from the row. A
+     * payload row written by the new code in the meantime is newer and kept.
+     */
+    static class MovePayloads extends RowRangeTask {
+        
+        private static final String HAS_PAYLOAD = "(" +
+            TransactionDatabaseHelper.COLUMN_RAW_REQUEST + " IS NOT NULL OR " +
+            TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + " IS NOT NULL OR " +
+            TransactionDatabaseHelper.COLUMN_EMV_DATA + " IS NOT NULL OR " +
+            TransactionDatabaseHelper.COLUMN_PIN_BLOCK + " IS NOT NULL)";
+        
+        private static final String RANGE = TransactionDatabaseHelper.COLUMN_ID + " > ? AND " +
+            TransactionDatabaseHelper.COLUMN_ID + " <= ? AND " + HAS_PAYLOAD;
+        
+        private static final String PAYLOAD_COLUMNS = 
+            TransactionDatabaseHelper.COLUMN_RAW_REQUEST + ", " +
+            TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + ", " +
+            TransactionDatabaseHelper.COLUMN_EMV_DATA + ", " +
+            TransactionDatabaseHelper.COLUMN_PIN_BLOCK;
+        
+        MovePayloads() {
+            super(TASK_MOVE_PAYLOADS, TransactionDatabaseHelper.TABLE_TRANSACTIONS, MOVE_PAYLOADS_CHUNK);
+        }
+        
+        @Override
+        protected void runRange(SchemaDatabase db, long after, long last) {
+            Object[] range = new Object[]{after, last};
+            db.execSQL("INSERT OR IGNORE INTO " + TransactionDatabaseHelper.TABLE_PAYLOADS + " (" +
+                TransactionDatabaseHelper.COLUMN_TRANSACTION_ID + ", " + PAYLOAD_COLUMNS + ") " +
+                "SELECT " + TransactionDatabaseHelper.COLUMN_ID + ", " + PAYLOAD_COLUMNS + " " +
+                "FROM " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + RANGE, range);
+            db.execSQL("UPDATE " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " SET " +
+                TransactionDatabaseHelper.COLUMN_RAW_REQUEST + " = NULL, " +
+                TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + " = NULL, " +
+                TransactionDatabaseHelper.COLUMN_EMV_DATA + " = NULL, " +
+                TransactionDatabaseHelper.COLUMN_PIN_BLOCK + " = NULL " +
+                "WHERE " + RANGE, range);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.util.Iterator;
+
+import id.uniflo.uniedc.security.PanTokenizer;
+
+/**
+ * Write path of the transactions table.
+ * <p>
+ * Insert and update statements are compiled once per database connection and bound
+ * positionally, instead of building a ContentValues map and having the SQL parsed
+ * again for every row. Writes that belong together, such as a void record and the
+ * flag on the original sale, run in one explicit transaction through
+ * {@link #runInTransaction(Batch)}, so SQLCipher encrypts and syncs the touched
+ * pages once rather than once per statement.
+ * <p>
+ * Every write also updates {@link TransactionRollups} inside the same transaction, and
+ * the raw messages, EMV data and PIN block go to the payload table instead of the row,
+ * encoded by {@link PayloadCodec}. Inserts store the {@link PanTokenizer} lookup keys
+ * of the card next to its number.
+ * <p>
+ * Compiled statements are not thread-safe; all methods synchronize on the writer,
+ * which matches SQLite allowing a single writer anyway. Obtain the shared instance
+ * from {@link TransactionDatabaseHelper#getTransactionWriter()}.
+ */
+public class TransactionWriter {
+
+    /**
+     * Group of writes committed together
+     */
+    public interface Batch {
+        /**
+         * @param writer the writer, already inside the transaction
+         * @param db the writable database, for statements of other tables
+         */
+        void run(TransactionWriter writer, SQLiteDatabase db);
+    }
+
+    /**
+     * Progress of {@link #importTransactions(Iterable, int, ImportListener)}
+     */
+    public interface ImportListener {
+        /**
+         * Called after each committed chunk
+         *
+         * @param processed rows read so far
+         * @param inserted rows inserted so far, duplicates of an existing reference number are skipped
+         */
+        void onProgress(int processed, int inserted);
+    }
+
+    private static final String TAG = "TransactionWriter";
+
+    /**
+     * Rows committed per transaction during a bulk import
+     */
+    public static final int DEFAULT_IMPORT_CHUNK = 500;
+
+    // Insert column order, the binding in bindInsert must follow it
+    private static final String[] INSERT_COLUMNS = {
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_TYPE,
+        TransactionDatabaseHelper.COLUMN_STATUS,
+        TransactionDatabaseHelper.COLUMN_AMOUNT,
+        TransactionDatabaseHelper.COLUMN_CARD_NUMBER,
+        TransactionDatabaseHelper.COLUMN_CARD_HOLDER_NAME,
+        TransactionDatabaseHelper.COLUMN_CARD_TYPE,
+        TransactionDatabaseHelper.COLUMN_ENTRY_MODE,
+        TransactionDatabaseHelper.COLUMN_TERMINAL_ID,
+        TransactionDatabaseHelper.COLUMN_MERCHANT_ID,
+        TransactionDatabaseHelper.COLUMN_BATCH_NUMBER,
+        TransactionDatabaseHelper.COLUMN_TRACE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_REFERENCE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_APPROVAL_CODE,
+        TransactionDatabaseHelper.COLUMN_RESPONSE_CODE,
+        TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE,
+        // ARQC and TVR stay hex TEXT: at 16 and 10 characters PayloadCodec would save about
+        // 11 bytes a row, while the row mapper reads them with every row and the
+        // retention archive copies the columns as they are
+        TransactionDatabaseHelper.COLUMN_ARQC,
+        TransactionDatabaseHelper.COLUMN_ATC,
+        TransactionDatabaseHelper.COLUMN_TVR,
+        TransactionDatabaseHelper.COLUMN_TSI,
+        TransactionDatabaseHelper.COLUMN_AID,
+        TransactionDatabaseHelper.COLUMN_APPLICATION_LABEL,
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_DATE,
+        TransactionDatabaseHelper.COLUMN_IS_VOIDED,
+        TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER,
+        TransactionDatabaseHelper.COLUMN_VOID_DATE,
+        TransactionDatabaseHelper.COLUMN_CREATED_AT,
+        TransactionDatabaseHelper.COLUMN_UPDATED_AT,
+        TransactionDatabaseHelper.COLUMN_PAN_TOKEN,
+        TransactionDatabaseHelper.COLUMN_CARD_LAST4,
+        TransactionDatabaseHelper.COLUMN_CARD_BIN
+    };
+
+    private static final String INSERT_SQL = buildInsert("INSERT");
+
+    // Replays may contain rows already stored, the unique reference number skips them
+    private static final String IMPORT_SQL = buildInsert("INSERT OR IGNORE");
+
+    private static final String UPDATE_SQL =
+        "UPDATE " + TransactionDatabaseHelper.TABLE_TRANSACTIONS + " SET " +
+        TransactionDatabaseHelper.COLUMN_STATUS + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_RESPONSE_CODE + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_RESPONSE_MESSAGE + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_APPROVAL_CODE + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_IS_VOIDED + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_VOID_REFERENCE_NUMBER + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_VOID_DATE + " = ?, " +
+        TransactionDatabaseHelper.COLUMN_UPDATED_AT + " = ? " +
+        "WHERE " + TransactionDatabaseHelper.COLUMN_ID + " = ?";
+
+    private static final String PAYLOAD_SQL =
+        "INSERT OR REPLACE INTO " + TransactionDatabaseHelper.TABLE_PAYLOADS + " (" +
+        TransactionDatabaseHelper.COLUMN_TRANSACTION_ID + ", " +
+        TransactionDatabaseHelper.COLUMN_RAW_REQUEST + ", " +
+        TransactionDatabaseHelper.COLUMN_RAW_RESPONSE + ", " +
+        TransactionDatabaseHelper.COLUMN_EMV_DATA + ", " +
+        TransactionDatabaseHelper.COLUMN_PIN_BLOCK + ") VALUES (?, ?, ?, ?, ?)";
+    
+    private final TransactionDatabaseHelper dbHelper;
+
+    // Statements belong to the connection they were compiled on
+    private SQLiteDatabase db;
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement importStatement;
+    private SQLiteStatement updateStatement;
+    private SQLiteStatement payloadStatement;
+    private TransactionRollups rollups;
+
+    TransactionWriter(TransactionDatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Insert a transaction and set its id
+     *
+     * @return row id, or -1 on failure such as a duplicate reference number
+     */
+    public synchronized long insert(Transaction transaction) {
+        prepare();
+        long now = System.currentTimeMillis();
+        bindInsert(insertStatement, transaction, now, dbHelper.getPanTokenizer());
+        long id;
+        db.beginTransaction();
+        try {
+            try {
+                id = insertStatement.executeInsert();
+            } catch (SQLException e) {
+                // Same contract as SQLiteDatabase.insert
+                Log.e(TAG, "Error inserting transaction " + transaction.getReferenceNumber(), e);
+                id = -1;
+            }
+            if (id != -1) {
+                writePayload(id, transaction, true);
+                if (rollups.covers(id)) {
+                    rollups.add(transaction, now);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        transaction.setId(id);
+        return id;
+    }
+    
+    /**
+     * Update the response and void fields of a stored transaction, and its payload if
+     * it was set or loaded
+     *
+     * @return true if the row exists
+     */
+    public synchronized boolean update(Transaction transaction) {
+        prepare();
+        SQLiteStatement statement = updateStatement;
+        statement.clearBindings();
+        bindString(statement, 1, transaction.getStatus());
+        bindString(statement, 2, transaction.getResponseCode());
+        bindString(statement, 3, transaction.getResponseMessage());
+        bindString(statement, 4, transaction.getApprovalCode());
+        statement.bindLong(5, transaction.isVoided() ? 1 : 0);
+        bindString(statement, 6, transaction.getVoidReferenceNumber());
+        if (transaction.getVoidDate() != null) {
+            statement.bindLong(7, transaction.getVoidDate().getTime());
+        } else {
+            statement.bindNull(7);
+        }
+        statement.bindLong(8, System.currentTimeMillis());
+        statement.bindLong(9, transaction.getId());
+        
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(TransactionDatabaseHelper.TABLE_TRANSACTIONS, TransactionRollups.KEY_COLUMNS,
+                TransactionDatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(transaction.getId())}, null, null, null);
+            if (cursor == null) {
+                return false;
+            }
+            try {
+                if (!cursor.moveToFirst() || statement.executeUpdateDelete() == 0) {
+                    return false;
+                }
+                writePayload(transaction.getId(), transaction, false);
+                // Only the status of the rollup key can change here
+                String oldStatus = cursor.getString(3);
+                String newStatus = transaction.getStatus();
+                if (!oldStatus.equals(newStatus) && rollups.covers(transaction.getId())) {
+                    int businessDay = TransactionRollups.businessDay(cursor.getLong(0));
+                    String batch = cursor.getString(1);
+                    String type = cursor.getString(2);
+                    long amount = cursor.getLong(4);
+                    rollups.add(businessDay, batch, type, oldStatus, -1, -amount);
+                    rollups.add(businessDay, batch, type, newStatus, 1, amount);
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Run a group of writes in one transaction. Nested calls join the outer
+     * transaction; an exception thrown by the batch rolls all of it back.
+     */
+    public synchronized void runInTransaction(Batch batch) {
+        prepare();
+        db.beginTransaction();
+        try {
+            batch.run(this, db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Bulk insert for replays and test data, committing every {@code chunkSize} rows so
+     * the journal stays small and a failure only loses the current chunk. Rows whose
+     * reference number is already stored are skipped, which makes a replay safe to
+     * run twice.
+     *
+     * @param transactions rows to insert, ids are set on the inserted ones
+     * @param chunkSize rows per transaction, at least 1
+     * @param listener progress callback, may be null
+     * @return number of rows inserted
+     */
+    public synchronized int importTransactions(Iterable<Transaction> transactions, int chunkSize,
+                                               ImportListener listener) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+        }
+        prepare();
+
+        Iterator<Transaction> iterator = transactions.iterator();
+        int processed = 0;
+        int inserted = 0;
+        while (iterator.hasNext()) {
+            db.beginTransaction();
+            try {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < chunkSize && iterator.hasNext(); i++) {
+                    Transaction transaction = iterator.next();
+                    bindInsert(importStatement, transaction, now, dbHelper.getPanTokenizer());
+                    long id = importStatement.executeInsert();
+                    processed++;
+                    if (id != -1) {
+                        transaction.setId(id);
+                        writePayload(id, transaction, true);
+                        if (rollups.covers(id)) {
+                            rollups.add(transaction, now);
+                        }
+                        inserted++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (listener != null) {
+                listener.onProgress(processed, inserted);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Compile the statements on the current writable connection, again after the
+     * database was closed and reopened
+     */
+    private void prepare() {
+        SQLiteDatabase current = dbHelper.getWritableDatabase();
+        if (current == db && insertStatement != null) {
+            return;
+        }
+        close();
+        db = current;
+        insertStatement = current.compileStatement(INSERT_SQL);
+        importStatement = current.compileStatement(IMPORT_SQL);
+        updateStatement = current.compileStatement(UPDATE_SQL);
+        payloadStatement = current.compileStatement(PAYLOAD_SQL);
+        rollups = new TransactionRollups(current);
+    }
+
+    /**
+     * Release the compiled statements
+     */
+    public synchronized void close() {
+        if (insertStatement != null) {
+            insertStatement.close();
+            importStatement.close();
+            updateStatement.close();
+            payloadStatement.close();
+            rollups.close();
+            insertStatement = null;
+            importStatement = null;
+            updateStatement = null;
+            payloadStatement = null;
+            rollups = null;
+        }
+        db = null;
+    }
+
+    private static void bindInsert(SQLiteStatement statement, Transaction transaction, long now,
+                                   PanTokenizer tokenizer) {
+        statement.clearBindings();
+        bindString(statement, 1, transaction.getTransactionType());
+        bindString(statement, 2, transaction.getStatus());
+        statement.bindLong(3, transaction.getAmount());
+        bindString(statement, 4, transaction.getCardNumber());
+        bindString(statement, 5, transaction.getCardHolderName());
+        bindString(statement, 6, transaction.getCardType());
+        bindString(statement, 7, transaction.getEntryMode());
+        bindString(statement, 8, transaction.getTerminalId());
+        bindString(statement, 9, transaction.getMerchantId());
+        bindString(statement, 10, transaction.getBatchNumber());
+        bindString(statement, 11, transaction.getTraceNumber());
+        bindString(statement, 12, transaction.getReferenceNumber());
+        bindString(statement, 13, transaction.getApprovalCode());
+        bindString(statement, 14, transaction.getResponseCode());
+        bindString(statement, 15, transaction.getResponseMessage());
+        bindString(statement, 16, transaction.getArqc());
+        bindString(statement, 17, transaction.getAtc());
+        bindString(statement, 18, transaction.getTvr());
+        bindString(statement, 19, transaction.getTsi());
+        bindString(statement, 20, transaction.getAid());
+        bindString(statement, 21, transaction.getApplicationLabel());
+        statement.bindLong(22, transaction.getTransactionDate() != null
+            ? transaction.getTransactionDate().getTime() : now);
+        statement.bindLong(23, transaction.isVoided() ? 1 : 0);
+        bindString(statement, 24, transaction.getVoidReferenceNumber());
+        if (transaction.getVoidDate() != null) {
+            statement.bindLong(25, transaction.getVoidDate().getTime());
+        } else {
+            statement.bindNull(25);
+        }
+        statement.bindLong(26, now);
+        statement.bindLong(27, now);
+        String cardNumber = transaction.getCardNumber();
+        bindString(statement, 28, tokenizer.token(cardNumber));
+        bindString(statement, 29, PanTokenizer.last4(cardNumber));
+        bindString(statement, 30, PanTokenizer.bin(cardNumber));
+    }
+
+    /**
+     * Store the payload if the caller set or loaded it. An untouched payload of a row
+     * read without it is left as stored.
+     *
+     * @param newRow true for an insert, where an empty payload needs no row
+     */
+    private void writePayload(long id, Transaction transaction, boolean newRow) {
+        TransactionPayload payload = transaction.getLoadedPayload();
+        if (payload == null || (newRow && payload.isEmpty())) {
+            return;
+        }
+        SQLiteStatement statement = payloadStatement;
+        statement.clearBindings();
+        statement.bindLong(1, id);
+        bindPayload(statement, 2, payload.getRawRequest());
+        bindPayload(statement, 3, payload.getRawResponse());
+        bindPayload(statement, 4, payload.getEmvData());
+        bindPayload(statement, 5, payload.getPinBlock());
+        statement.execute();
+    }
+    
+    /**
+     * Bind a payload value in its {@link PayloadCodec} form
+     */
+    private static void bindPayload(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindBlob(index, PayloadCodec.encode(value));
+        } else {
+            statement.bindNull(index);
+        }
+    }
+    
+    /**
+     * bindString rejects null, bind NULL instead
+     */
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static String buildInsert(String verb) {
+        StringBuilder sql = new StringBuilder(verb)
+            .append(" INTO ").append(TransactionDatabaseHelper.TABLE_TRANSACTIONS).append(" (");
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(INSERT_COLUMNS[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+}
@@ -0,0 +1,92 @@
+package id.uniflo.uniedc.database;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the write-ahead-log checkpoints of a database off the write path.
+ * <p>
+ * Every write marks the database busy. A checkpoint runs on a low priority background
+ * thread once no write has happened for {@link #IDLE_MS}, which falls between sales
+ * rather than inside one, or earlier if the log has grown past the configured size.
+ * Checkpoints are PASSIVE: they copy what they can without waiting for readers and
+ * never block them.
+ */
+final class WalCheckpointer {
+
+    private static final String TAG = "WalCheckpointer";
+
+    // Quiet time before a checkpoint, longer than the gap between the writes of a sale
+    static final long IDLE_MS = 5000;
+
+    // One thread for all databases, checkpoints are short and never urgent
+    private static final ScheduledExecutorService SCHEDULER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "wal-checkpoint");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final String name;
+    private final Runnable checkpoint;
+    private final File walFile;
+    private final long maxWalBytes;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long lastWrite;
+
+    /**
+     * @param databaseFile the main database file, its log is next to it
+     * @param checkpoint runs {@code PRAGMA wal_checkpoint(PASSIVE)} on the write connection
+     */
+    WalCheckpointer(File databaseFile, long maxWalBytes, Runnable checkpoint) {
+        this.name = databaseFile.getName();
+        this.walFile = new File(databaseFile.getPath() + "-wal");
+        this.maxWalBytes = maxWalBytes;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Note a write, called before every use of the write connection
+     */
+    void onWrite() {
+        lastWrite = System.currentTimeMillis();
+        if (scheduled.compareAndSet(false, true)) {
+            SCHEDULER.schedule(this::check, IDLE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void check() {
+        long idle = System.currentTimeMillis() - lastWrite;
+        if (idle < IDLE_MS && walFile.length() < maxWalBytes) {
+            SCHEDULER.schedule(this::check, IDLE_MS - idle, TimeUnit.MILLISECONDS);
+            return;
+        }
+        // Cleared first so a write during the checkpoint schedules the next one
+        scheduled.set(false);
+        try {
+            checkpoint.run();
+        } catch (Exception e) {
+            // The log keeps growing until the next checkpoint, nothing is lost
+            Log.w(TAG, "Checkpoint of " + name + " failed", e);
+        }
+    }
+
+    /**
+     * Copy what the log holds into the database without waiting for readers
+     */
+    static void passiveCheckpoint(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        if (cursor != null) {
+            cursor.moveToFirst();
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package id.uniflo.uniedc.database.migration;
+
+/**
+ * Fills a derived column in rowid ranges of {@code chunkSize} rows.
+ * <p>
+ * Rows written by the new code before the backfill gets to them are simply updated
+ * again with the same value.
+ */
+public class BackfillTask extends RowRangeTask {
+
+    private final String table;
+    private final String assignments;
+    private final String selection;
+
+    /**
+     * @param assignments SET clause without the keyword, e.g. {@code "last4 = substr(card_number, -4)"}
+     * @param selection extra condition on the rows to update, or null
+     */
+    public BackfillTask(String name, String table, String assignments, String selection, int chunkSize) {
+        super(name, table, chunkSize);
+        this.table = table;
+        this.assignments = assignments;
+        this.selection = selection;
+    }
+
+    @Override
+    protected void runRange(SchemaDatabase db, long after, long last) {
+        String where = "rowid > ? AND rowid <= ?";
+        if (selection != null) {
+            where += " AND (" + selection + ")";
+        }
+        db.execSQL("UPDATE " + table + " SET " + assignments + " WHERE " + where, new Object[]{after, last});
+    }
+}
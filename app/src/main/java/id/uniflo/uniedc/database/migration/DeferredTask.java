@@ -0,0 +1,45 @@
+package id.uniflo.uniedc.database.migration;
+
+/**
+ * Slow part of a migration that runs in bounded chunks after the database is open.
+ * <p>
+ * Each chunk runs in its own transaction together with the update of the stored
+ * position, so a task killed half way resumes from the last committed chunk on the
+ * next start.
+ */
+public abstract class DeferredTask {
+
+    /**
+     * Position returned when the task has nothing left to do
+     */
+    public static final long DONE = -1;
+
+    private final String name;
+
+    protected DeferredTask(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Task name is empty");
+        }
+        this.name = name;
+    }
+
+    /**
+     * @return unique name, stored in the task table by {@link MigrationRunner#enqueue}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Run one chunk of work
+     *
+     * @param position value returned by the previous chunk, 0 on the first run
+     * @return the position to resume from, or {@link #DONE}
+     */
+    protected abstract long runChunk(SchemaDatabase db, long position);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
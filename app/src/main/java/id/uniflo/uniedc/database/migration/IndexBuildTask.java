@@ -0,0 +1,34 @@
+package id.uniflo.uniedc.database.migration;
+
+/**
+ * Builds an index after start-up instead of inside the upgrade transaction.
+ * <p>
+ * SQLite has no concurrent index build, the table is still locked while the index is
+ * written; running it as a deferred task keeps that out of the app start and lets the
+ * pending writes go first. Indexes the new one replaces are dropped in the same
+ * chunk, so queries keep an index to use until the new one is there.
+ */
+public class IndexBuildTask extends DeferredTask {
+
+    private final String createSql;
+    private final String[] replacedIndexes;
+
+    /**
+     * @param createSql CREATE INDEX IF NOT EXISTS statement
+     * @param replacedIndexes names of indexes to drop once it is built
+     */
+    public IndexBuildTask(String name, String createSql, String... replacedIndexes) {
+        super(name);
+        this.createSql = createSql;
+        this.replacedIndexes = replacedIndexes.clone();
+    }
+
+    @Override
+    protected long runChunk(SchemaDatabase db, long position) {
+        db.execSQL(createSql);
+        for (String index : replacedIndexes) {
+            db.execSQL("DROP INDEX IF EXISTS " + index);
+        }
+        return DONE;
+    }
+}
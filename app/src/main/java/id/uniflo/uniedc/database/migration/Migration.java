@@ -0,0 +1,53 @@
+package id.uniflo.uniedc.database.migration;
+
+/**
+ * One schema step from {@code startVersion} to {@code startVersion + 1}.
+ * <p>
+ * Steps run inside the upgrade transaction while the app is starting, so they must be
+ * quick: create tables, add columns, and {@link MigrationRunner#enqueue enqueue} the
+ * slow work such as index builds and backfills as {@link DeferredTask}s. Never drop
+ * or rewrite a table holding transactions; an unsettled batch has to survive every
+ * upgrade.
+ */
+public abstract class Migration {
+
+    private final int startVersion;
+
+    protected Migration(int startVersion) {
+        if (startVersion < 1) {
+            throw new IllegalArgumentException("Invalid start version: " + startVersion);
+        }
+        this.startVersion = startVersion;
+    }
+
+    public int getStartVersion() {
+        return startVersion;
+    }
+
+    public int getEndVersion() {
+        return startVersion + 1;
+    }
+
+    public abstract void migrate(SchemaDatabase db);
+
+    /**
+     * Add a column unless it exists, so a step interrupted after the ALTER can be
+     * run again
+     *
+     * @param definition column name followed by its type and constraints
+     */
+    protected static void addColumn(SchemaDatabase db, String table, String column, String definition) {
+        if (!hasColumn(db, table, column)) {
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    protected static boolean hasColumn(SchemaDatabase db, String table, String column) {
+        return db.stringsForQuery("SELECT name FROM pragma_table_info(?)", new String[]{table}).contains(column);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + startVersion + " -> " + getEndVersion() + ")";
+    }
+}
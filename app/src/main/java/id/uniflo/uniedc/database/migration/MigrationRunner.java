@@ -0,0 +1,179 @@
+package id.uniflo.uniedc.database.migration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs ordered {@link Migration} steps and the {@link DeferredTask}s they enqueue.
+ * <p>
+ * {@link #migrate} is called from {@code onUpgrade} and applies every step from the
+ * stored version to the new one, refusing to start if one is missing rather than
+ * falling back to dropping tables. {@link #runPendingTasks} is called on a background
+ * thread after the database is open and works through the enqueued tasks chunk by
+ * chunk; it can be interrupted at any point and picks up where it stopped.
+ * <pre>
+ * MigrationRunner runner = new MigrationRunner(
+ *     Arrays.asList(new AddRollupsMigration()),
+ *     Arrays.asList(new IndexBuildTask("idx_card", CREATE_INDEX_CARD)));
+ * </pre>
+ */
+public class MigrationRunner {
+
+    public static final String TABLE_TASKS = "schema_tasks";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_POSITION = "position";
+    public static final String COLUMN_DONE = "done";
+
+    private static final String CREATE_TASKS_TABLE =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_TASKS + " (" +
+        COLUMN_NAME + " TEXT PRIMARY KEY, " +
+        COLUMN_POSITION + " INTEGER NOT NULL DEFAULT 0, " +
+        COLUMN_DONE + " INTEGER NOT NULL DEFAULT 0)";
+
+    private final Map<Integer, Migration> migrations = new TreeMap<>();
+    private final Map<String, DeferredTask> tasks = new LinkedHashMap<>();
+    private final long chunkPauseMillis;
+
+    /**
+     * @param migrations steps, one per start version
+     * @param tasks implementations of every task name the steps enqueue
+     */
+    public MigrationRunner(List<? extends Migration> migrations, List<? extends DeferredTask> tasks) {
+        this(migrations, tasks, 0);
+    }
+
+    /**
+     * @param chunkPauseMillis sleep between chunks so other writers get the database
+     */
+    public MigrationRunner(List<? extends Migration> migrations, List<? extends DeferredTask> tasks,
+                           long chunkPauseMillis) {
+        for (Migration migration : migrations) {
+            if (this.migrations.put(migration.getStartVersion(), migration) != null) {
+                throw new IllegalArgumentException("Duplicate migration from version " + migration.getStartVersion());
+            }
+        }
+        for (DeferredTask task : tasks) {
+            if (this.tasks.put(task.getName(), task) != null) {
+                throw new IllegalArgumentException("Duplicate task " + task.getName());
+            }
+        }
+        this.chunkPauseMillis = chunkPauseMillis;
+    }
+
+    /**
+     * Create the task table, from {@code onCreate} and the first migration using tasks
+     */
+    public static void createTaskTable(SchemaDatabase db) {
+        db.execSQL(CREATE_TASKS_TABLE);
+    }
+
+    /**
+     * Record a task to run after the database is open. Call inside the migration
+     * transaction so the task is stored together with the schema change.
+     */
+    public static void enqueue(SchemaDatabase db, String taskName) {
+        createTaskTable(db);
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE_TASKS + " (" + COLUMN_NAME + ") VALUES (?)",
+            new Object[]{taskName});
+    }
+
+    /**
+     * @return the steps from {@code oldVersion} to {@code newVersion} in order
+     * @throws IllegalStateException if a step is missing
+     */
+    public List<Migration> getPath(int oldVersion, int newVersion) {
+        if (newVersion < oldVersion) {
+            throw new IllegalStateException("Downgrade from " + oldVersion + " to " + newVersion + " is not supported");
+        }
+        List<Migration> path = new ArrayList<>();
+        for (int version = oldVersion; version < newVersion; version++) {
+            Migration migration = migrations.get(version);
+            if (migration == null) {
+                throw new IllegalStateException("No migration from version " + version + " to " + (version + 1));
+            }
+            path.add(migration);
+        }
+        return path;
+    }
+
+    /**
+     * Apply all steps in one transaction, the caller's upgrade transaction if it has one
+     */
+    public void migrate(SchemaDatabase db, int oldVersion, int newVersion) {
+        List<Migration> path = getPath(oldVersion, newVersion);
+        db.beginTransaction();
+        try {
+            for (Migration migration : path) {
+                migration.migrate(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return names of the tasks not finished yet, in the order they were enqueued
+     */
+    public List<String> getPendingTasks(SchemaDatabase db) {
+        if (db.longForQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{TABLE_TASKS}) == 0) {
+            return Collections.emptyList();
+        }
+        return db.stringsForQuery("SELECT " + COLUMN_NAME + " FROM " + TABLE_TASKS +
+            " WHERE " + COLUMN_DONE + " = 0 ORDER BY rowid", null);
+    }
+
+    /**
+     * Run pending tasks until they are done, {@code maxChunks} chunks have run or the
+     * thread is interrupted. Tasks without an implementation are left pending.
+     *
+     * @param maxChunks upper bound on chunks in this call, 0 for no limit
+     * @return true if no runnable task is left
+     */
+    public boolean runPendingTasks(SchemaDatabase db, int maxChunks) {
+        int chunks = 0;
+        for (String name : getPendingTasks(db)) {
+            DeferredTask task = tasks.get(name);
+            if (task == null) {
+                continue;
+            }
+            long position = db.longForQuery("SELECT " + COLUMN_POSITION + " FROM " + TABLE_TASKS +
+                " WHERE " + COLUMN_NAME + " = ?", new String[]{name});
+            while (position != DeferredTask.DONE) {
+                if ((maxChunks > 0 && chunks >= maxChunks) || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                db.beginTransaction();
+                try {
+                    position = task.runChunk(db, position);
+                    db.execSQL("UPDATE " + TABLE_TASKS + " SET " + COLUMN_POSITION + " = ?, " + COLUMN_DONE + " = ? " +
+                        "WHERE " + COLUMN_NAME + " = ?",
+                        new Object[]{position, position == DeferredTask.DONE ? 1 : 0, name});
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                chunks++;
+                pause();
+            }
+        }
+        return true;
+    }
+
+    private void pause() {
+        if (chunkPauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(chunkPauseMillis);
+        } catch (InterruptedException e) {
+            // Stop at the next chunk, the position is already committed
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package id.uniflo.uniedc.database.migration;
+
+/**
+ * Deferred task that walks a table in rowid ranges of {@code chunkSize} rows.
+ * <p>
+ * The position is the last rowid done, so rows inserted while the task runs are
+ * reached by a later chunk.
+ */
+public abstract class RowRangeTask extends DeferredTask {
+
+    private final String table;
+    private final int chunkSize;
+
+    protected RowRangeTask(String name, String table, int chunkSize) {
+        super(name);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+        }
+        this.table = table;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected final long runChunk(SchemaDatabase db, long position) {
+        long last = db.longForQuery(
+            "SELECT IFNULL(MAX(rowid), " + DONE + ") FROM (SELECT rowid FROM " + table +
+            " WHERE rowid > ? ORDER BY rowid LIMIT " + chunkSize + ")",
+            new String[]{String.valueOf(position)});
+        if (last == DONE) {
+            return DONE;
+        }
+        runRange(db, position, last);
+        return last;
+    }
+
+    /**
+     * Process the rows with {@code after < rowid <= last}
+     */
+    protected abstract void runRange(SchemaDatabase db, long after, long last);
+}
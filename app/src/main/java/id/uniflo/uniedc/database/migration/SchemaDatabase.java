@@ -0,0 +1,35 @@
+package id.uniflo.uniedc.database.migration;
+
+import java.util.List;
+
+/**
+ * The part of a database connection that migrations need.
+ * <p>
+ * Migrations only see this interface, not the SQLCipher classes, so the same steps
+ * the terminal runs can be replayed against a plain SQLite connection in JVM tests.
+ */
+public interface SchemaDatabase {
+
+    void execSQL(String sql);
+
+    void execSQL(String sql, Object[] bindArgs);
+
+    /**
+     * @return first column of the first row as a long, 0 for NULL or no row
+     */
+    long longForQuery(String sql, String[] selectionArgs);
+
+    /**
+     * @return first column of every row
+     */
+    List<String> stringsForQuery(String sql, String[] selectionArgs);
+
+    /**
+     * Start a transaction, nested calls join the outer one
+     */
+    void beginTransaction();
+
+    void setTransactionSuccessful();
+
+    void endTransaction();
+}
@@ -148,10 +148,10 @@ public class DashboardFragment extends Fragment {
     
     private void printLastTransactionReceipt() {
         // Get last transaction from database
-        java.util.List<Transaction> transactions = transactionDAO.getAllTransactions();
+        java.util.List<Transaction> transactions = transactionDAO.getTransactionPage(null, null, 1).getTransactions();
         Transaction lastTransaction = null;
         if (!transactions.isEmpty()) {
-            lastTransaction = transactions.get(0); // Already sorted by date DESC
+            lastTransaction = transactions.get(0); // Newest first
         }
         
         final Transaction transactionToPrint = lastTransaction;
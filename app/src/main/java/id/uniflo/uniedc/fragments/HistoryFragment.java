@@ -1,21 +1,176 @@
 package id.uniflo.uniedc.fragments;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import id.uniflo.uniedc.R;
+import id.uniflo.uniedc.database.TransactionDAO;
+import id.uniflo.uniedc.database.TransactionPage;
+import id.uniflo.uniedc.util.ThreadPoolManager;
 
 public class HistoryFragment extends Fragment {
     
+    private static final String TAG = "HistoryFragment";
+    
+    private static final int PAGE_SIZE = 30;
+    // Pages held by the adapter, the one furthest from the viewport is dropped beyond this
+    private static final int MAX_PAGES = 5;
+    // Rows left before the edge of the window at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 10;
+    
+    private RecyclerView rvHistory;
+    private View layoutEmpty;
+    private LinearLayoutManager layoutManager;
+    private TransactionHistoryAdapter adapter;
+    private TransactionDAO transactionDAO;
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean loading;
+    private boolean hasOlder;
+    private boolean hasNewer;
+    // Bumped on refresh so pages still in flight for the old window are ignored
+    private int generation;
+    
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
-        return inflater.inflate(R.layout.fragment_history, container, false);
+        View view = inflater.inflate(R.layout.fragment_history, container, false);
+        
+        transactionDAO = new TransactionDAO(getContext());
+        
+        rvHistory = view.findViewById(R.id.rv_history);
+        layoutEmpty = view.findViewById(R.id.layout_empty);
+        
+        layoutManager = new LinearLayoutManager(getContext());
+        adapter = new TransactionHistoryAdapter();
+        rvHistory.setLayoutManager(layoutManager);
+        rvHistory.setAdapter(adapter);
+        rvHistory.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                checkLoadMore();
+            }
+        });
+        
+        return view;
+    }
+    
+    @Override
+    public void onResume() {
+        super.onResume();
+        refresh();
+    }
+    
+    /**
+     * Reload from the newest transaction
+     */
+    public void refresh() {
+        generation++;
+        loading = false;
+        hasOlder = true;
+        hasNewer = false;
+        adapter.clear();
+        loadOlder();
+    }
+    
+    private void checkLoadMore() {
+        if (loading) {
+            return;
+        }
+        int count = adapter.getItemCount();
+        if (hasOlder && layoutManager.findLastVisibleItemPosition() >= count - PREFETCH_DISTANCE) {
+            loadOlder();
+        } else if (hasNewer && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+            loadNewer();
+        }
+    }
+    
+    private void loadOlder() {
+        loading = true;
+        final int requestGeneration = generation;
+        final TransactionPage.Key after = adapter.getLastKey();
+        ThreadPoolManager.getInstance().execute(() -> {
+            TransactionPage page;
+            try {
+                page = transactionDAO.getTransactionPage(TransactionDAO.SUMMARY_COLUMNS, after, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                onLoadFailed(requestGeneration, e);
+                return;
+            }
+            mainHandler.post(() -> {
+                if (!isAdded() || requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                hasOlder = page.hasMore();
+                adapter.appendPage(page.getTransactions());
+                if (adapter.getPageCount() > MAX_PAGES) {
+                    adapter.dropFirstPage();
+                    hasNewer = true;
+                }
+                updateEmptyState();
+            });
+        });
+    }
+    
+    private void loadNewer() {
+        loading = true;
+        final int requestGeneration = generation;
+        final TransactionPage.Key before = adapter.getFirstKey();
+        ThreadPoolManager.getInstance().execute(() -> {
+            TransactionPage page;
+            try {
+                page = transactionDAO.getTransactionPageBefore(TransactionDAO.SUMMARY_COLUMNS, before, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                onLoadFailed(requestGeneration, e);
+                return;
+            }
+            mainHandler.post(() -> {
+                if (!isAdded() || requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                hasNewer = page.hasMore();
+                adapter.prependPage(page.getTransactions());
+                if (adapter.getPageCount() > MAX_PAGES) {
+                    adapter.dropLastPage();
+                    hasOlder = true;
+                }
+            });
+        });
+    }
+    
+    /**
+     * Called on the pool thread when a page could not be read; paging resumes on the next
+     * scroll or refresh
+     */
+    private void onLoadFailed(int requestGeneration, RuntimeException e) {
+        Log.e(TAG, "Error loading transaction history", e);
+        mainHandler.post(() -> {
+            if (!isAdded() || requestGeneration != generation) {
+                return;
+            }
+            loading = false;
+            updateEmptyState();
+            Toast.makeText(getContext(), "Failed to load transaction history", Toast.LENGTH_SHORT).show();
+        });
+    }
+    
+    private void updateEmptyState() {
+        boolean empty = adapter.getItemCount() == 0;
+        layoutEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+        rvHistory.setVisibility(empty ? View.GONE : View.VISIBLE);
     }
-}
\ No newline at end of file
+}
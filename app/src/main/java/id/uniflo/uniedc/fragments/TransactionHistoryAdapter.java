@@ -0,0 +1,190 @@
+package id.uniflo.uniedc.fragments;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import id.uniflo.uniedc.R;
+import id.uniflo.uniedc.database.Transaction;
+import id.uniflo.uniedc.database.TransactionPage;
+
+/**
+ * Adapter over a sliding window of history pages. Pages are appended at the bottom
+ * and prepended at the top as the list scrolls, and the page furthest from the
+ * viewport can be dropped, so the number of rows held stays bounded.
+ */
+public class TransactionHistoryAdapter extends RecyclerView.Adapter<TransactionHistoryAdapter.ViewHolder> {
+    
+    private final Deque<List<Transaction>> pages = new ArrayDeque<>();
+    private int itemCount;
+    
+    private final DecimalFormat amountFormat;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy HH:mm", Locale.getDefault());
+    
+    public TransactionHistoryAdapter() {
+        amountFormat = new DecimalFormat("#,###");
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols(new Locale("id", "ID"));
+        symbols.setGroupingSeparator('.');
+        amountFormat.setDecimalFormatSymbols(symbols);
+    }
+    
+    public int getPageCount() {
+        return pages.size();
+    }
+    
+    public void clear() {
+        pages.clear();
+        itemCount = 0;
+        notifyDataSetChanged();
+    }
+    
+    /**
+     * Add an older page below the current window
+     */
+    public void appendPage(List<Transaction> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        pages.addLast(page);
+        notifyItemRangeInserted(itemCount, page.size());
+        itemCount += page.size();
+    }
+    
+    /**
+     * Add a newer page above the current window
+     */
+    public void prependPage(List<Transaction> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        pages.addFirst(page);
+        itemCount += page.size();
+        notifyItemRangeInserted(0, page.size());
+    }
+    
+    /**
+     * Drop the newest page of the window
+     */
+    public void dropFirstPage() {
+        List<Transaction> page = pages.pollFirst();
+        if (page != null) {
+            itemCount -= page.size();
+            notifyItemRangeRemoved(0, page.size());
+        }
+    }
+    
+    /**
+     * Drop the oldest page of the window
+     */
+    public void dropLastPage() {
+        List<Transaction> page = pages.pollLast();
+        if (page != null) {
+            itemCount -= page.size();
+            notifyItemRangeRemoved(itemCount, page.size());
+        }
+    }
+    
+    /**
+     * @return key of the newest row held, or null if empty
+     */
+    public TransactionPage.Key getFirstKey() {
+        List<Transaction> page = pages.peekFirst();
+        return page != null ? TransactionPage.Key.of(page.get(0)) : null;
+    }
+    
+    /**
+     * @return key of the oldest row held, or null if empty
+     */
+    public TransactionPage.Key getLastKey() {
+        List<Transaction> page = pages.peekLast();
+        return page != null ? TransactionPage.Key.of(page.get(page.size() - 1)) : null;
+    }
+    
+    public Transaction getItem(int position) {
+        Iterator<List<Transaction>> it = pages.iterator();
+        while (it.hasNext()) {
+            List<Transaction> page = it.next();
+            if (position < page.size()) {
+                return page.get(position);
+            }
+            position -= page.size();
+        }
+        throw new IndexOutOfBoundsException();
+    }
+    
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+            .inflate(R.layout.item_transaction_history, parent, false);
+        return new ViewHolder(view);
+    }
+    
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Transaction transaction = getItem(position);
+        
+        holder.type.setText(formatType(transaction.getTransactionType()));
+        holder.card.setText(maskCardNumber(transaction.getCardNumber()));
+        holder.date.setText(transaction.getTransactionDate() != null ? dateFormat.format(transaction.getTransactionDate()) : "");
+        holder.amount.setText("Rp" + amountFormat.format(transaction.getAmount()));
+        
+        String status = transaction.isVoided() ? Transaction.STATUS_VOIDED : transaction.getStatus();
+        holder.status.setText(status);
+        int color = Transaction.STATUS_SUCCESS.equals(status) ? R.color.colorSuccess
+            : Transaction.STATUS_PENDING.equals(status) ? R.color.colorWarning
+            : R.color.colorDanger;
+        holder.status.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), color));
+    }
+    
+    @Override
+    public int getItemCount() {
+        return itemCount;
+    }
+    
+    private static String formatType(String type) {
+        if (type == null || type.isEmpty()) {
+            return "";
+        }
+        String label = type.replace('_', ' ').toLowerCase(Locale.US);
+        return Character.toUpperCase(label.charAt(0)) + label.substring(1);
+    }
+    
+    private static String maskCardNumber(String cardNumber) {
+        if (cardNumber == null || cardNumber.length() < 4) {
+            return "";
+        }
+        return "**** " + cardNumber.substring(cardNumber.length() - 4);
+    }
+    
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        TextView type;
+        TextView card;
+        TextView date;
+        TextView amount;
+        TextView status;
+        
+        ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            type = itemView.findViewById(R.id.tv_type);
+            card = itemView.findViewById(R.id.tv_card);
+            date = itemView.findViewById(R.id.tv_date);
+            amount = itemView.findViewById(R.id.tv_amount);
+            status = itemView.findViewById(R.id.tv_status);
+        }
+    }
+}
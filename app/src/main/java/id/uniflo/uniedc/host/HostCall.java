@@ -0,0 +1,168 @@
+package id.uniflo.uniedc.host;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import id.uniflo.uniedc.util.ThreadPoolManager;
+
+/**
+ * One request to the acquirer host, run once with {@link #execute()} or
+ * {@link #enqueue(Callback)}. The whole call, both hosts included, has one timeout;
+ * {@link #cancel()} aborts it from any thread.
+ */
+public final class HostCall {
+
+    public interface Callback {
+        /**
+         * Called on a background thread with any reply of the host, check
+         * {@link HostResponse#isSuccessful()}
+         */
+        void onResponse(HostCall call, HostResponse response);
+
+        /**
+         * Called on a background thread when no host answered in time or the call was
+         * cancelled
+         */
+        void onFailure(HostCall call, IOException e);
+    }
+
+    private final HostClient client;
+    final String method;
+    final String path;
+    final String contentType;
+    final byte[] body;
+    private int timeoutMillis;
+    HostPreconnect preconnect;
+    private boolean executed;
+    private volatile boolean canceled;
+    private volatile boolean timedOut;
+    // Connects in flight, more than one while a slow host is hedged
+    private final List<HttpURLConnection> connections = new ArrayList<>(2);
+
+    HostCall(HostClient client, String method, String path, String contentType, byte[] body) {
+        this.client = client;
+        this.method = method;
+        this.path = path;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    /**
+     * @param millis time for the whole call, instead of the timeout of the network settings
+     */
+    public HostCall timeout(int millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param preconnect host warmed up for this call ahead of time; tried first if it
+     *                   answered
+     */
+    public HostCall preconnected(HostPreconnect preconnect) {
+        this.preconnect = preconnect;
+        return this;
+    }
+
+    int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Send the request and wait for the reply on the calling thread
+     */
+    public HostResponse execute() throws IOException {
+        markExecuted();
+        return client.execute(this);
+    }
+
+    /**
+     * Send the request on the background pool
+     */
+    public void enqueue(Callback callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("Callback is required");
+        }
+        markExecuted();
+        ThreadPoolManager.getInstance().execute(() -> {
+            HostResponse response;
+            try {
+                response = client.execute(this);
+            } catch (IOException e) {
+                callback.onFailure(this, e);
+                return;
+            }
+            callback.onResponse(this, response);
+        });
+    }
+
+    /**
+     * Abort the call; a running request fails with an {@link InterruptedIOException}
+     */
+    public void cancel() {
+        canceled = true;
+        abort();
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Called by the watchdog when the timeout of the call is over
+     */
+    void expire() {
+        timedOut = true;
+        abort();
+    }
+
+    boolean isAborted() {
+        return canceled || timedOut;
+    }
+
+    /**
+     * @return the exception to fail with after {@link #cancel()} or {@link #expire()}
+     */
+    IOException abortedException() {
+        if (canceled) {
+            return new InterruptedIOException("Host call canceled");
+        }
+        return new SocketTimeoutException("No host reply within the transaction timeout");
+    }
+
+    synchronized void attach(HttpURLConnection connection) throws IOException {
+        if (isAborted()) {
+            throw abortedException();
+        }
+        connections.add(connection);
+    }
+
+    synchronized void detach(HttpURLConnection connection) {
+        connections.remove(connection);
+    }
+
+    private void abort() {
+        List<HttpURLConnection> current;
+        synchronized (this) {
+            current = new ArrayList<>(connections);
+        }
+        for (HttpURLConnection connection : current) {
+            // Closes the socket, a blocked read or connect returns with an exception
+            connection.disconnect();
+        }
+    }
+
+    private synchronized void markExecuted() {
+        if (executed) {
+            throw new IllegalStateException("Host call already executed");
+        }
+        executed = true;
+    }
+}
@@ -0,0 +1,515 @@
+package id.uniflo.uniedc.host;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import id.uniflo.uniedc.managers.SettingsManager;
+import id.uniflo.uniedc.util.ThreadPoolManager;
+
+/**
+ * The one way to the acquirer hosts of {@link SettingsManager.NetworkSettings}.
+ * <p>
+ * Connections are never disconnected after a complete reply, so they stay in the
+ * platform keep-alive pool and the next transaction to the same host skips the TCP and
+ * TLS handshakes; TLS sessions are resumed by the default socket factory. Replies are
+ * read in one piece when the host sends a Content-Length.
+ * <p>
+ * A call goes to the healthiest host by the rolling statistics of {@link HostSelector},
+ * fed by every exchange and by background HEAD probes. The other host is connected to
+ * at once when the first connect fails, and in parallel when it is slow; the request is
+ * only written on the connection that came up first, so a request that may have
+ * reached a host is never sent twice.
+ */
+public final class HostClient {
+
+    private static final String TAG = "HostClient";
+
+    public static final String PATH_PURCHASE = "/api/purchase";
+    public static final String PATH_BALANCE_INQUIRY = "/api/balance-inquiry";
+    public static final String PATH_TRANSFER = "/api/transfer";
+
+    private static final String CONTENT_TYPE_JSON = "application/json";
+
+    // Far above any authorization reply, a longer body is not a host talking to us
+    static final int MAX_RESPONSE_BYTES = 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Pooled connections are dropped after a few idle minutes; refresh well before
+    private static final long WARM_MILLIS = 30 * 1000L;
+    private static final int PROBE_TIMEOUT_MS = 5000;
+    // How often due probes are looked for; healthy hosts are probed every 30 s
+    private static final long PROBE_TICK_MILLIS = 5000;
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+    private static HostClient instance;
+
+    private final SettingsManager settingsManager;
+    private final Clock clock;
+    final HostSelector selector = new HostSelector();
+    private final ConcurrentHashMap<HostEndpoint, Boolean> probes = new ConcurrentHashMap<>();
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    /**
+     * Monotonic milliseconds, the one time base of the host statistics
+     */
+    interface Clock {
+        long elapsedMillis();
+    }
+
+    private HostClient(Context context) {
+        this(SettingsManager.getInstance(context), SystemClock::elapsedRealtime);
+    }
+
+    HostClient(SettingsManager settingsManager, Clock clock) {
+        this.settingsManager = settingsManager;
+        this.clock = clock;
+    }
+
+    public static synchronized HostClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new HostClient(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return a call posting a JSON document to a path of the host
+     */
+    public HostCall post(String path, String json) {
+        if (path == null || !path.startsWith("/") || json == null) {
+            throw new IllegalArgumentException("Path and body are required");
+        }
+        return new HostCall(this, "POST", path, CONTENT_TYPE_JSON, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Probe each host that has not been heard from lately, in the background, so the
+     * next transaction finds a connection in the pool and fresh host statistics. Cheap
+     * to call on every screen that will talk to the host; also starts the periodic
+     * probes.
+     */
+    public void warmUp() {
+        long now = clock.elapsedMillis();
+        for (HostEndpoint endpoint : endpoints(settingsManager.getNetworkSettings())) {
+            if (!selector.heardFromWithin(endpoint, WARM_MILLIS, now)) {
+                probe(endpoint);
+            }
+        }
+        if (probing.compareAndSet(false, true)) {
+            WATCHDOG.scheduleWithFixedDelay(this::probeDue, PROBE_TICK_MILLIS, PROBE_TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send a HEAD request to the healthiest host in the background, so the TCP connect
+     * and TLS handshake of a coming call run while the card is read and the PIN entered
+     * instead of after. The connection stays in the keep-alive pool; TLS sessions are
+     * resumed by the default socket factory when the host still has them. Hand the
+     * result to the call with {@link HostCall#preconnected}, which then goes to that
+     * host first.
+     */
+    public HostPreconnect preconnect() {
+        SettingsManager.NetworkSettings settings = settingsManager.getNetworkSettings();
+        HostEndpoint endpoint = selector.order(endpoints(settings), clock.elapsedMillis()).get(0);
+        int timeout = Math.max(1, settings.timeout) * 1000;
+        HostPreconnect preconnect = new HostPreconnect(endpoint);
+        ThreadPoolManager.getInstance().execute(() -> {
+            IOException failure = null;
+            long rtt = 0;
+            try {
+                rtt = head(endpoint, timeout);
+            } catch (IOException e) {
+                failure = e;
+            }
+            // Reported even when released, the host did answer or fail
+            long now = clock.elapsedMillis();
+            if (failure == null) {
+                selector.recordSuccess(endpoint, rtt, now);
+            } else {
+                selector.recordFailure(endpoint, now);
+                Log.w(TAG, "Cannot connect ahead to " + endpoint + ": " + failure.getMessage());
+            }
+            preconnect.probed(failure);
+        });
+        return preconnect;
+    }
+
+    HostResponse execute(HostCall call) throws IOException {
+        SettingsManager.NetworkSettings settings = settingsManager.getNetworkSettings();
+        int timeout = call.getTimeoutMillis() > 0 ? call.getTimeoutMillis() : Math.max(1, settings.timeout) * 1000;
+        long start = clock.elapsedMillis();
+        long deadline = start + timeout;
+        ScheduledFuture<?> watchdog = WATCHDOG.schedule(call::expire, timeout, TimeUnit.MILLISECONDS);
+        try {
+            HostEndpoint warm = awaitPreconnect(call, deadline);
+            List<HostEndpoint> endpoints = selector.order(endpoints(settings), start);
+            if (warm != null && endpoints.remove(warm)) {
+                endpoints.add(0, warm);
+            }
+            Attempt connected = connect(call, endpoints, deadline);
+            boolean preconnected = connected.endpoint.equals(warm);
+            long connectMillis = clock.elapsedMillis() - start;
+            try {
+                HostResponse response = exchange(call, connected.connection, connected.endpoint,
+                    (int) Math.max(1, deadline - clock.elapsedMillis()), start, connectMillis, preconnected);
+                if (response.getCode() >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                    selector.recordFailure(connected.endpoint, clock.elapsedMillis());
+                } else {
+                    // The elapsed time includes the authorization, it says nothing about the network
+                    selector.recordSuccess(connected.endpoint, -1, clock.elapsedMillis());
+                }
+                return response;
+            } catch (IOException e) {
+                if (!call.isCanceled()) {
+                    selector.recordFailure(connected.endpoint, clock.elapsedMillis());
+                }
+                throw e;
+            } finally {
+                call.detach(connected.connection);
+            }
+        } catch (IOException e) {
+            // A socket closed by cancel() or the watchdog fails with whatever the
+            // platform throws; report why it was closed instead
+            if (call.isAborted()) {
+                throw call.abortedException();
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+            if (call.preconnect != null) {
+                // The call failed before the host answered the HEAD request
+                call.preconnect.release();
+            }
+        }
+    }
+
+    /**
+     * @return the host warmed up by the call's {@link HostPreconnect}, null if there is
+     * none or it did not answer; a HEAD request still in progress is waited for as long
+     * as a slow connect before hedging
+     */
+    private HostEndpoint awaitPreconnect(HostCall call, long deadline) throws IOException {
+        HostPreconnect preconnect = call.preconnect;
+        if (preconnect == null) {
+            return null;
+        }
+        long now = clock.elapsedMillis();
+        if (!preconnect.await(Math.min(deadline - now, selector.hedgeDelayMillis(preconnect.getEndpoint(), now)))) {
+            Log.i(TAG, "Connection to " + preconnect.getEndpoint() + " opened ahead is not usable");
+            return null;
+        }
+        return preconnect.getEndpoint();
+    }
+
+    /**
+     * Connect to the hosts in order. The next host is tried at once when a connect
+     * fails, and in parallel when one takes longer than its hedge delay; the first
+     * connection up wins and the others are dropped. Nothing is sent before, so no
+     * request can reach two hosts.
+     */
+    private Attempt connect(HostCall call, List<HostEndpoint> endpoints, long deadline) throws IOException {
+        Race race = new Race();
+        List<Attempt> attempts = new ArrayList<>(endpoints.size());
+        Attempt winner = null;
+        IOException failure = null;
+        int running = 0;
+        long hedgeAt = 0;
+        try {
+            while (true) {
+                if (call.isAborted()) {
+                    throw call.abortedException();
+                }
+                long now = clock.elapsedMillis();
+                int remaining = (int) (deadline - now);
+                if (remaining <= 0) {
+                    throw call.abortedException();
+                }
+                if (attempts.size() < endpoints.size() && (running == 0 || now - hedgeAt >= 0)) {
+                    HostEndpoint endpoint = endpoints.get(attempts.size());
+                    if (!attempts.isEmpty()) {
+                        Log.i(TAG, (running > 0 ? "Hedging slow connect with " : "Failing over to ")
+                            + selector.describe(endpoint));
+                    }
+                    attempts.add(start(call, endpoint, remaining, race));
+                    running++;
+                    hedgeAt = now + selector.hedgeDelayMillis(endpoint, now);
+                    continue;
+                }
+                long wait = attempts.size() < endpoints.size() ? Math.min(hedgeAt - now, remaining) : remaining;
+                Attempt done;
+                try {
+                    done = race.results.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted connecting to the host");
+                }
+                if (done == null) {
+                    continue;
+                }
+                running--;
+                if (done.failure == null) {
+                    winner = done;
+                    return winner;
+                }
+                if (call.isAborted()) {
+                    throw call.abortedException();
+                }
+                Log.w(TAG, "Cannot connect to " + done.endpoint + ": " + done.failure.getMessage());
+                selector.recordFailure(done.endpoint, clock.elapsedMillis());
+                failure = done.failure;
+                if (running == 0 && attempts.size() == endpoints.size()) {
+                    throw failure;
+                }
+            }
+        } finally {
+            race.finish(call, attempts, winner);
+        }
+    }
+
+    /**
+     * Connect to one host on the background pool, the result goes to the race
+     */
+    private Attempt start(HostCall call, HostEndpoint endpoint, int connectTimeout, Race race) throws IOException {
+        HttpURLConnection conn = open(call, endpoint, connectTimeout);
+        call.attach(conn);
+        Attempt attempt = new Attempt(endpoint, conn);
+        ThreadPoolManager.getInstance().execute(() -> {
+            try {
+                // Returns at once with a pooled connection
+                conn.connect();
+            } catch (IOException e) {
+                attempt.failure = e;
+            }
+            race.report(call, attempt);
+        });
+        return attempt;
+    }
+
+    private void probeDue() {
+        long now = clock.elapsedMillis();
+        for (HostEndpoint endpoint : endpoints(settingsManager.getNetworkSettings())) {
+            if (selector.needsProbe(endpoint, now)) {
+                probe(endpoint);
+            }
+        }
+    }
+
+    /**
+     * HEAD request to a host in the background: keeps a connection in the pool and
+     * measures the round trip
+     */
+    private void probe(HostEndpoint endpoint) {
+        if (probes.putIfAbsent(endpoint, Boolean.TRUE) != null) {
+            return;
+        }
+        ThreadPoolManager.getInstance().execute(() -> {
+            try {
+                runProbe(endpoint);
+            } finally {
+                probes.remove(endpoint);
+            }
+        });
+    }
+
+    /**
+     * The probe on the calling thread, its outcome recorded with the selector
+     */
+    void runProbe(HostEndpoint endpoint) {
+        try {
+            long rtt = head(endpoint, PROBE_TIMEOUT_MS);
+            selector.recordSuccess(endpoint, rtt, clock.elapsedMillis());
+        } catch (IOException e) {
+            selector.recordFailure(endpoint, clock.elapsedMillis());
+            Log.d(TAG, "Probe of " + selector.describe(endpoint) + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * HEAD request on the calling thread
+     *
+     * @return round trip in milliseconds, the connect included unless a pooled connection was used
+     */
+    private long head(HostEndpoint endpoint, int timeout) throws IOException {
+        HostCall call = new HostCall(this, "HEAD", "/", null, null);
+        long start = clock.elapsedMillis();
+        HttpURLConnection conn = open(call, endpoint, timeout);
+        try {
+            conn.connect();
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+        exchange(call, conn, endpoint, timeout, start, clock.elapsedMillis() - start, false);
+        return clock.elapsedMillis() - start;
+    }
+
+    private static HttpURLConnection open(HostCall call, HostEndpoint endpoint, int connectTimeout) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) endpoint.url(call.path).openConnection();
+        conn.setRequestMethod(call.method);
+        conn.setConnectTimeout(connectTimeout);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Accept", CONTENT_TYPE_JSON);
+        if (call.body != null) {
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(call.body.length);
+            conn.setRequestProperty("Content-Type", call.contentType);
+        }
+        return conn;
+    }
+
+    /**
+     * Send the request on a connected connection and read the reply
+     */
+    private HostResponse exchange(HostCall call, HttpURLConnection conn, HostEndpoint endpoint,
+                                  int readTimeout, long start, long connectMillis,
+                                  boolean preconnected) throws IOException {
+        try {
+            conn.setReadTimeout(readTimeout);
+            if (call.body != null) {
+                OutputStream out = conn.getOutputStream();
+                out.write(call.body);
+                out.close();
+            }
+            int code = conn.getResponseCode();
+            byte[] body = readBody(conn, call.method, code);
+            return new HostResponse(endpoint, code, body, clock.elapsedMillis() - start,
+                connectMillis, preconnected);
+        } catch (IOException e) {
+            // Keep a half-used connection out of the pool
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the whole body, error bodies included, so the connection goes back to the pool
+     */
+    static byte[] readBody(HttpURLConnection conn, String method, int code) throws IOException {
+        InputStream in = code >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            // No body follows these, a Content-Length is the one of the resource
+            if ("HEAD".equals(method) || code == HttpURLConnection.HTTP_NO_CONTENT
+                    || code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new byte[0];
+            }
+            int length = conn.getContentLength();
+            if (length > MAX_RESPONSE_BYTES) {
+                throw new IOException("Host reply of " + length + " bytes is too large");
+            }
+            if (length >= 0) {
+                byte[] body = new byte[length];
+                int read = 0;
+                while (read < length) {
+                    int n = in.read(body, read, length - read);
+                    if (n < 0) {
+                        throw new IOException("Host reply ended after " + read + " of " + length + " bytes");
+                    }
+                    read += n;
+                }
+                return body;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                if (body.size() + n > MAX_RESPONSE_BYTES) {
+                    throw new IOException("Host reply is too large");
+                }
+                body.write(buffer, 0, n);
+            }
+            return body.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<HostEndpoint> endpoints(SettingsManager.NetworkSettings settings) {
+        List<HostEndpoint> endpoints = new ArrayList<>(2);
+        endpoints.add(HostEndpoint.primary(settings));
+        HostEndpoint secondary = HostEndpoint.secondary(settings);
+        if (secondary != null) {
+            endpoints.add(secondary);
+        }
+        return endpoints;
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "host-call-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * A connect to one host, failed when {@code failure} is set
+     */
+    private static final class Attempt {
+        final HostEndpoint endpoint;
+        final HttpURLConnection connection;
+        volatile IOException failure;
+
+        Attempt(HostEndpoint endpoint, HttpURLConnection connection) {
+            this.endpoint = endpoint;
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * The connects of one call. Once it is finished, a connect that still completes
+     * drops its connection instead of reporting it.
+     */
+    private static final class Race {
+        final BlockingQueue<Attempt> results = new LinkedBlockingQueue<>();
+        private boolean finished;
+
+        synchronized void report(HostCall call, Attempt attempt) {
+            if (finished) {
+                attempt.connection.disconnect();
+                call.detach(attempt.connection);
+            } else {
+                results.add(attempt);
+            }
+        }
+
+        /**
+         * Drop every connection but the winner's, connected or still connecting
+         */
+        void finish(HostCall call, List<Attempt> attempts, Attempt winner) {
+            synchronized (this) {
+                finished = true;
+            }
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.connection.disconnect();
+                    call.detach(attempt.connection);
+                }
+            }
+        }
+    }
+}
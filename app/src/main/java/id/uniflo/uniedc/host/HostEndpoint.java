@@ -0,0 +1,81 @@
+package id.uniflo.uniedc.host;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import id.uniflo.uniedc.managers.SettingsManager;
+
+/**
+ * Address of one acquirer host
+ */
+public final class HostEndpoint {
+
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+
+    public HostEndpoint(String host, int port, boolean ssl) {
+        if (host == null || host.isEmpty() || port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid host address " + host + ":" + port);
+        }
+        this.host = host;
+        this.port = port;
+        this.ssl = ssl;
+    }
+
+    /**
+     * @return the primary host of the settings
+     */
+    public static HostEndpoint primary(SettingsManager.NetworkSettings settings) {
+        return new HostEndpoint(settings.primaryHost, settings.primaryPort, settings.useSSL);
+    }
+
+    /**
+     * @return the secondary host of the settings, null if none is set or it is the primary
+     */
+    public static HostEndpoint secondary(SettingsManager.NetworkSettings settings) {
+        if (settings.secondaryHost == null || settings.secondaryHost.isEmpty() || settings.secondaryPort <= 0) {
+            return null;
+        }
+        HostEndpoint secondary = new HostEndpoint(settings.secondaryHost, settings.secondaryPort, settings.useSSL);
+        return secondary.equals(primary(settings)) ? null : secondary;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isSsl() {
+        return ssl;
+    }
+
+    URL url(String path) throws MalformedURLException {
+        return new URL(ssl ? "https" : "http", host, port, path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HostEndpoint)) {
+            return false;
+        }
+        HostEndpoint other = (HostEndpoint) o;
+        return port == other.port && ssl == other.ssl && host.equals(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return (host.hashCode() * 31 + port) * 2 + (ssl ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
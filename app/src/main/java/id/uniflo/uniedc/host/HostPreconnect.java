@@ -0,0 +1,104 @@
+package id.uniflo.uniedc.host;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * A HEAD request sent to the host ahead of a call, see {@link HostClient#preconnect()}.
+ * It leaves a connection with the TCP and TLS handshakes done in the platform keep-alive
+ * pool, where the call handed this through {@link HostCall#preconnected(HostPreconnect)}
+ * picks it up. Nothing of the call is written ahead: its POST goes out in fixed length
+ * streaming mode like any other, so the platform cannot silently send it twice.
+ */
+public final class HostPreconnect {
+
+    // Hosts close a connection that sends no request for long; after that the pooled
+    // one is not counted on and the call takes the hosts in their usual order
+    static final long MAX_WARM_MILLIS = 30 * 1000L;
+
+    private enum State { PROBING, READY, FAILED, RELEASED }
+
+    private final HostEndpoint endpoint;
+    private final long start;
+    private State state = State.PROBING;
+    private long readyAt;
+
+    HostPreconnect(HostEndpoint endpoint) {
+        this.endpoint = endpoint;
+        this.start = SystemClock.elapsedRealtime();
+    }
+
+    public HostEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return whether the host answered and a connection to it is in the pool
+     */
+    public synchronized boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * @return time the HEAD request took, TCP connect and TLS handshake included; about
+     * what a call on the pooled connection saves. -1 until the host answered.
+     */
+    public synchronized long getHandshakeMillis() {
+        return state == State.READY ? readyAt - start : -1;
+    }
+
+    /**
+     * Stop waiting for the host when the transaction is abandoned. Nothing is held open,
+     * a pooled connection is closed by the platform once idle.
+     */
+    public synchronized void release() {
+        if (state == State.PROBING) {
+            state = State.RELEASED;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Called on the probing thread with the outcome of the HEAD request
+     *
+     * @return false if released meanwhile, the outcome does not count
+     */
+    synchronized boolean probed(IOException failure) {
+        if (state != State.PROBING) {
+            return false;
+        }
+        if (failure == null) {
+            state = State.READY;
+            readyAt = SystemClock.elapsedRealtime();
+        } else {
+            state = State.FAILED;
+        }
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Wait up to {@code waitMillis} for a HEAD request still in progress
+     *
+     * @return whether the call should go to {@link #getEndpoint()} first: the host
+     * answered, and recently enough that its connection is likely still pooled
+     */
+    synchronized boolean await(long waitMillis) throws InterruptedIOException {
+        long until = SystemClock.elapsedRealtime() + waitMillis;
+        while (state == State.PROBING) {
+            long remaining = until - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the host connection");
+            }
+        }
+        return state == State.READY && SystemClock.elapsedRealtime() - readyAt < MAX_WARM_MILLIS;
+    }
+}
@@ -0,0 +1,70 @@
+package id.uniflo.uniedc.host;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Status and body of a host reply
+ */
+public final class HostResponse {
+
+    private final HostEndpoint endpoint;
+    private final int code;
+    private final byte[] body;
+    private final long elapsedMillis;
+    private final long connectMillis;
+    private final boolean preconnected;
+
+    HostResponse(HostEndpoint endpoint, int code, byte[] body, long elapsedMillis, long connectMillis,
+                 boolean preconnected) {
+        this.endpoint = endpoint;
+        this.code = code;
+        this.body = body;
+        this.elapsedMillis = elapsedMillis;
+        this.connectMillis = connectMillis;
+        this.preconnected = preconnected;
+    }
+
+    /**
+     * @return the host that answered
+     */
+    public HostEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    public byte[] getBody() {
+        return body.clone();
+    }
+
+    public String getBodyString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return time from the start of the call to the last byte of the reply
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return time from the start of the call until connected to the host
+     */
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    /**
+     * @return whether the call went to the host warmed up by its {@link HostPreconnect}
+     */
+    public boolean isPreconnected() {
+        return preconnected;
+    }
+}
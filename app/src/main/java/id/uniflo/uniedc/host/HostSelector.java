@@ -0,0 +1,182 @@
+package id.uniflo.uniedc.host;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling health of the acquirer hosts: round trip time of the probes and error rate of
+ * all exchanges, both as moving averages. Orders the hosts for a call, healthiest first,
+ * and tells when to probe and when to hedge a slow connect.
+ * <p>
+ * Times are passed in by the caller, in milliseconds of one monotonic clock.
+ */
+final class HostSelector {
+
+    // Probe a host that has not been heard from for this long
+    static final long PROBE_INTERVAL_MILLIS = 30 * 1000L;
+
+    // Assumed round trip of a host not probed yet
+    static final long UNKNOWN_RTT_MILLIS = 500;
+
+    static final long MIN_HEDGE_MILLIS = 200;
+    static final long MAX_HEDGE_MILLIS = 2000;
+
+    private static final double RTT_WEIGHT = 0.25;
+    private static final double ERROR_WEIGHT = 0.2;
+    // An error rate of 1 makes a host look 5 times slower
+    private static final double ERROR_PENALTY = 4;
+
+    private static final long MIN_COOLDOWN_MILLIS = 1000;
+    private static final long MAX_COOLDOWN_MILLIS = 60 * 1000L;
+
+    private final ConcurrentHashMap<HostEndpoint, Health> health = new ConcurrentHashMap<>();
+
+    /**
+     * @return the hosts, healthiest first: hosts cooling down after failures go last,
+     * the others by round trip weighted with error rate. Ties keep the given order.
+     */
+    List<HostEndpoint> order(List<HostEndpoint> endpoints, long now) {
+        // Scores are taken once, they may change while sorting
+        List<Ranked> ranked = new ArrayList<>(endpoints.size());
+        for (HostEndpoint endpoint : endpoints) {
+            Health h = health(endpoint);
+            synchronized (h) {
+                ranked.add(new Ranked(endpoint, h.isCoolingDown(now), h.score()));
+            }
+        }
+        Collections.sort(ranked, (a, b) -> a.coolingDown != b.coolingDown
+            ? (a.coolingDown ? 1 : -1)
+            : Double.compare(a.score, b.score));
+        List<HostEndpoint> ordered = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) {
+            ordered.add(r.endpoint);
+        }
+        return ordered;
+    }
+
+    /**
+     * @return how long a connect to the host may take before the next host is tried
+     * in parallel
+     */
+    long hedgeDelayMillis(HostEndpoint endpoint, long now) {
+        Health h = health(endpoint);
+        synchronized (h) {
+            if (h.isCoolingDown(now)) {
+                return MIN_HEDGE_MILLIS;
+            }
+            if (h.rttMillis < 0) {
+                return MAX_HEDGE_MILLIS / 2;
+            }
+            return Math.max(MIN_HEDGE_MILLIS, Math.min(MAX_HEDGE_MILLIS, (long) (2 * h.rttMillis)));
+        }
+    }
+
+    /**
+     * @return whether the host has not been heard from for a probe interval, or has
+     * cooled down after failures and may be back
+     */
+    boolean needsProbe(HostEndpoint endpoint, long now) {
+        Health h = health(endpoint);
+        synchronized (h) {
+            if (h.consecutiveFailures > 0) {
+                return now - h.retryAt >= 0;
+            }
+            return h.lastContact < 0 || now - h.lastContact >= PROBE_INTERVAL_MILLIS;
+        }
+    }
+
+    /**
+     * @return whether the host answered within the last {@code millis}
+     */
+    boolean heardFromWithin(HostEndpoint endpoint, long millis, long now) {
+        Health h = health(endpoint);
+        synchronized (h) {
+            return h.lastContact >= 0 && now - h.lastContact < millis;
+        }
+    }
+
+    /**
+     * @param rttMillis round trip of a probe, negative when the exchange includes host
+     *                  processing and says nothing about the network
+     */
+    void recordSuccess(HostEndpoint endpoint, long rttMillis, long now) {
+        Health h = health(endpoint);
+        synchronized (h) {
+            if (rttMillis >= 0) {
+                h.rttMillis = h.rttMillis < 0 ? rttMillis : h.rttMillis + RTT_WEIGHT * (rttMillis - h.rttMillis);
+            }
+            h.errorRate -= ERROR_WEIGHT * h.errorRate;
+            h.consecutiveFailures = 0;
+            h.lastContact = now;
+        }
+    }
+
+    /**
+     * A connect failed, timed out or the host failed the request; the host cools down
+     * for a time that doubles with each failure in a row
+     */
+    void recordFailure(HostEndpoint endpoint, long now) {
+        Health h = health(endpoint);
+        synchronized (h) {
+            h.errorRate += ERROR_WEIGHT * (1 - h.errorRate);
+            h.consecutiveFailures++;
+            long cooldown = MIN_COOLDOWN_MILLIS << Math.min(h.consecutiveFailures - 1, 16);
+            h.retryAt = now + Math.min(cooldown, MAX_COOLDOWN_MILLIS);
+        }
+    }
+
+    /**
+     * @return the statistics of a host, for the log
+     */
+    String describe(HostEndpoint endpoint) {
+        Health h = health(endpoint);
+        synchronized (h) {
+            return String.format(Locale.US, "%s rtt=%s errors=%.0f%% failures=%d", endpoint,
+                h.rttMillis < 0 ? "?" : Math.round(h.rttMillis) + "ms", h.errorRate * 100, h.consecutiveFailures);
+        }
+    }
+
+    private Health health(HostEndpoint endpoint) {
+        Health h = health.get(endpoint);
+        if (h == null) {
+            Health created = new Health();
+            h = health.putIfAbsent(endpoint, created);
+            if (h == null) {
+                h = created;
+            }
+        }
+        return h;
+    }
+
+    private static final class Health {
+        double rttMillis = -1;
+        double errorRate;
+        int consecutiveFailures;
+        long retryAt;
+        long lastContact = -1;
+
+        boolean isCoolingDown(long now) {
+            return consecutiveFailures > 0 && now - retryAt < 0;
+        }
+
+        double score() {
+            double rtt = rttMillis < 0 ? UNKNOWN_RTT_MILLIS : rttMillis;
+            return rtt * (1 + ERROR_PENALTY * errorRate);
+        }
+    }
+
+    private static final class Ranked {
+        final HostEndpoint endpoint;
+        final boolean coolingDown;
+        final double score;
+
+        Ranked(HostEndpoint endpoint, boolean coolingDown, double score) {
+            this.endpoint = endpoint;
+            this.coolingDown = coolingDown;
+            this.score = score;
+        }
+    }
+}
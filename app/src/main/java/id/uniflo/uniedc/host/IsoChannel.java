@@ -0,0 +1,606 @@
+package id.uniflo.uniedc.host;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import id.uniflo.uniedc.iso8583.IsoMessage;
+import id.uniflo.uniedc.iso8583.IsoPacker;
+import id.uniflo.uniedc.iso8583.MessageBuffer;
+import id.uniflo.uniedc.iso8583.TransactionMessages;
+
+/**
+ * One long-lived TCP connection to an ISO 8583 host.
+ * <p>
+ * Messages are framed by a 2-byte big-endian length header. Responses are matched to
+ * their request by STAN and terminal id (fields 11 and 41), so echo tests, advices and
+ * an authorization can be in flight at once. A single thread runs a selector loop that
+ * connects, writes, reads and expires requests; when the connection drops it reconnects
+ * with exponential backoff, and an echo test is sent when the line has been idle.
+ * <p>
+ * Plain TCP only; hosts behind TLS go through {@link HostClient}.
+ */
+public final class IsoChannel {
+
+    // Frames are at most the length header can describe
+    static final int MAX_FRAME = 0xFFFF;
+    private static final int HEADER = 2;
+
+    /**
+     * Source of STANs for the echo tests, normally {@code SettingsManager::getNextTraceNumber}
+     */
+    public interface TraceSource {
+        String nextTraceNumber();
+    }
+
+    public interface Callback {
+        /**
+         * Called on the I/O thread with the matching response; must not block
+         */
+        void onResponse(IsoMessage request, IsoMessage response);
+
+        /**
+         * Called on the I/O thread when the request timed out, the connection was lost
+         * after it was written, or the channel was closed; must not block
+         */
+        void onFailure(IsoMessage request, IOException e);
+    }
+
+    private final HostEndpoint endpoint;
+    private final IsoPacker packer;
+    private final TraceSource traceSource;
+    private final String terminalId;
+    private final long connectTimeoutNanos;
+    private final long idleEchoNanos;
+    private final long echoTimeoutMillis;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Queue<Pending> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile boolean connected;
+    private volatile boolean resetRequested;
+    private volatile Selector selector;
+
+    // I/O thread only
+    private SocketChannel socket;
+    private SelectionKey key;
+    private long connectDeadline;
+    private long reconnectAt;
+    private long backoffNanos;
+    private long lastActivity;
+    private boolean echoInFlight;
+    private Pending writing;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(HEADER + MAX_FRAME);
+
+    private IsoChannel(Builder builder) {
+        if (builder.endpoint.isSsl()) {
+            throw new IllegalArgumentException("TLS is not supported on the ISO 8583 channel: " + builder.endpoint);
+        }
+        this.endpoint = builder.endpoint;
+        this.packer = builder.packer;
+        this.traceSource = builder.traceSource;
+        this.terminalId = builder.terminalId;
+        this.connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.connectTimeoutMillis);
+        this.idleEchoNanos = TimeUnit.MILLISECONDS.toNanos(builder.idleEchoMillis);
+        this.echoTimeoutMillis = builder.echoTimeoutMillis;
+        this.minBackoffNanos = TimeUnit.MILLISECONDS.toNanos(builder.minBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxBackoffMillis);
+        this.backoffNanos = minBackoffNanos;
+    }
+
+    public static Builder builder(HostEndpoint endpoint, IsoPacker packer) {
+        return new Builder(endpoint, packer);
+    }
+
+    public HostEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Start the I/O thread, which connects right away
+     */
+    public void start() throws IOException {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Channel already started");
+        }
+        selector = Selector.open();
+        Thread thread = new Thread(this::run, "iso-channel-" + endpoint);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Send a request. It is packed on the calling thread and written as soon as the
+     * connection is up; the timeout covers the wait for a connection as well.
+     *
+     * @throws IllegalArgumentException if the request has no STAN or terminal id, or a
+     *                                  request with the same ones is in flight
+     */
+    public void send(IsoMessage request, long timeoutMillis, Callback callback) {
+        String stan = request.getString(TransactionMessages.FIELD_STAN);
+        String tid = request.getString(TransactionMessages.FIELD_TERMINAL_ID);
+        if (stan == null || tid == null) {
+            throw new IllegalArgumentException("Request needs STAN and terminal id to be matched");
+        }
+        MessageBuffer buffer = MessageBuffer.obtain();
+        int header = buffer.skip(HEADER);
+        int length = packer.pack(request, buffer);
+        if (length > MAX_FRAME) {
+            throw new IllegalArgumentException("Message of " + length + " bytes does not fit a frame");
+        }
+        buffer.array()[header] = (byte) (length >>> 8);
+        buffer.array()[header + 1] = (byte) length;
+
+        Pending entry = new Pending(key(tid, stan), request, ByteBuffer.wrap(buffer.toByteArray()),
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), callback);
+        if (pending.putIfAbsent(entry.key, entry) != null) {
+            throw new IllegalArgumentException("Request " + entry.key + " is already in flight");
+        }
+        if (closed) {
+            pending.remove(entry.key);
+            entry.fail(new IOException("Channel to " + endpoint + " is closed"));
+            return;
+        }
+        outbound.add(entry);
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    /**
+     * Send a request and wait for its response
+     */
+    public IsoMessage execute(IsoMessage request, long timeoutMillis) throws IOException {
+        final IsoMessage[] response = new IsoMessage[1];
+        final IOException[] failure = new IOException[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        send(request, timeoutMillis, new Callback() {
+            @Override
+            public void onResponse(IsoMessage request, IsoMessage message) {
+                response[0] = message;
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(IsoMessage request, IOException e) {
+                failure[0] = e;
+                done.countDown();
+            }
+        });
+        try {
+            // The I/O thread expires the request; the margin only guards against a dead thread
+            if (!done.await(timeoutMillis + 1000, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("No response from " + endpoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + endpoint);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return response[0];
+    }
+
+    /**
+     * Close the connection and stop the I/O thread; requests in flight fail
+     */
+    public void close() {
+        closed = true;
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    private void run() {
+        reconnectAt = System.nanoTime();
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                if (socket == null && now - reconnectAt >= 0) {
+                    connect(now);
+                }
+                selector.select(waitMillis(now));
+                try {
+                    processKeys();
+                    if (resetRequested) {
+                        resetRequested = false;
+                        throw new IOException("Echo test to " + endpoint + " failed");
+                    }
+                    now = System.nanoTime();
+                    if (socket != null && !connected && now - connectDeadline >= 0) {
+                        throw new SocketTimeoutException("Connect to " + endpoint + " timed out");
+                    }
+                    if (connected) {
+                        write();
+                        sendEchoIfIdle(now);
+                    }
+                } catch (IOException e) {
+                    disconnect(e);
+                }
+                expire(System.nanoTime());
+            }
+        } catch (IOException | RuntimeException e) {
+            // Selector failure, nothing to recover
+            closed = true;
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void connect(long now) {
+        try {
+            socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            socket.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            connectDeadline = now + connectTimeoutNanos;
+            if (socket.connect(new InetSocketAddress(endpoint.getHost(), endpoint.getPort()))) {
+                key = socket.register(selector, SelectionKey.OP_READ);
+                onConnected();
+            } else {
+                key = socket.register(selector, SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException e) {
+            disconnect(e);
+        } catch (UnresolvedAddressException e) {
+            disconnect(new UnknownHostException(endpoint.getHost()));
+        }
+    }
+
+    private void onConnected() {
+        connected = true;
+        backoffNanos = minBackoffNanos;
+        lastActivity = System.nanoTime();
+        readBuffer.clear();
+    }
+
+    private void processKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey selected = keys.next();
+            keys.remove();
+            if (!selected.isValid()) {
+                continue;
+            }
+            if (selected.isConnectable() && socket.finishConnect()) {
+                selected.interestOps(SelectionKey.OP_READ);
+                onConnected();
+            }
+            if (selected.isValid() && selected.isReadable()) {
+                read();
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        int n = socket.read(readBuffer);
+        if (n < 0) {
+            throw new EOFException("Host " + endpoint + " closed the connection");
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= HEADER) {
+            int length = ((readBuffer.get(readBuffer.position()) & 0xFF) << 8)
+                | (readBuffer.get(readBuffer.position() + 1) & 0xFF);
+            if (readBuffer.remaining() < HEADER + length) {
+                break;
+            }
+            readBuffer.position(readBuffer.position() + HEADER);
+            byte[] frame = new byte[length];
+            readBuffer.get(frame);
+            lastActivity = System.nanoTime();
+            onFrame(frame);
+        }
+        readBuffer.compact();
+    }
+
+    private void onFrame(byte[] frame) {
+        IsoMessage message;
+        try {
+            message = packer.unpack(frame, 0, frame.length, new IsoMessage());
+        } catch (IllegalArgumentException e) {
+            // Framing is intact, only this message is lost; its request will time out
+            return;
+        }
+        if (TransactionMessages.MTI_NETWORK_REQUEST.equals(message.getMti())) {
+            answerHost(message);
+            return;
+        }
+        String stan = message.getString(TransactionMessages.FIELD_STAN);
+        String tid = message.getString(TransactionMessages.FIELD_TERMINAL_ID);
+        if (stan == null || tid == null) {
+            return;
+        }
+        Pending entry = pending.remove(key(tid, stan));
+        if (entry != null) {
+            // A late response after the timeout finds nothing and is dropped
+            entry.complete(message);
+        }
+    }
+
+    /**
+     * Answer an echo test of the host; written before any queued request
+     */
+    private void answerHost(IsoMessage request) {
+        MessageBuffer buffer = MessageBuffer.obtain();
+        int header = buffer.skip(HEADER);
+        int length = packer.pack(TransactionMessages.networkResponse(request, new IsoMessage()), buffer);
+        buffer.array()[header] = (byte) (length >>> 8);
+        buffer.array()[header + 1] = (byte) length;
+        Pending answer = new Pending(null, request, ByteBuffer.wrap(buffer.toByteArray()), Long.MAX_VALUE, null);
+        if (writing == null) {
+            writing = answer;
+        } else {
+            outbound.add(answer);
+        }
+    }
+
+    private void write() throws IOException {
+        while (true) {
+            if (writing == null) {
+                writing = outbound.poll();
+                if (writing == null) {
+                    break;
+                }
+                if (writing.isDone()) {
+                    // Timed out while queued
+                    writing = null;
+                    continue;
+                }
+            }
+            socket.write(writing.frame);
+            if (writing.frame.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            writing.written = true;
+            writing = null;
+            lastActivity = System.nanoTime();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void sendEchoIfIdle(long now) {
+        if (idleEchoNanos <= 0 || echoInFlight || traceSource == null || now - lastActivity < idleEchoNanos) {
+            return;
+        }
+        echoInFlight = true;
+        try {
+            IsoMessage echo = TransactionMessages.echo(traceSource.nextTraceNumber(), terminalId, new IsoMessage());
+            send(echo, echoTimeoutMillis, new Callback() {
+                @Override
+                public void onResponse(IsoMessage request, IsoMessage response) {
+                    echoInFlight = false;
+                }
+
+                @Override
+                public void onFailure(IsoMessage request, IOException e) {
+                    echoInFlight = false;
+                    // Lost with the connection needs no reset, a timeout on a live one does
+                    resetRequested = connected && !closed;
+                }
+            });
+        } catch (RuntimeException e) {
+            // No STAN, or one still in flight: skip this echo and try again after the
+            // next idle period, the line itself is fine
+            echoInFlight = false;
+            lastActivity = now;
+        }
+    }
+
+    /**
+     * Fail the requests whose time is up, written or not
+     */
+    private void expire(long now) {
+        for (Pending entry : pending.values()) {
+            if (now - entry.deadline >= 0 && pending.remove(entry.key, entry)) {
+                entry.fail(new SocketTimeoutException("No response from " + endpoint + " to " + entry.key));
+            }
+        }
+    }
+
+    /**
+     * Drop the connection and schedule the next attempt. Requests already written
+     * cannot be resent, the host may have processed them; queued ones wait for the
+     * next connection.
+     */
+    private void disconnect(IOException cause) {
+        connected = false;
+        echoInFlight = false;
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already failing
+            }
+            socket = null;
+        }
+        if (writing != null) {
+            // Partly written, the host may see a truncated frame
+            writing.written = true;
+            writing = null;
+        }
+        List<Pending> lost = new ArrayList<>();
+        for (Pending entry : pending.values()) {
+            if (entry.written && pending.remove(entry.key, entry)) {
+                lost.add(entry);
+            }
+        }
+        for (Pending entry : lost) {
+            entry.fail(new IOException("Connection to " + endpoint + " lost", cause));
+        }
+        reconnectAt = System.nanoTime() + backoffNanos;
+        backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+    }
+
+    private void shutdown() {
+        disconnect(new IOException("Channel closed"));
+        IOException closedException = new IOException("Channel to " + endpoint + " is closed");
+        for (Pending entry : pending.values()) {
+            if (pending.remove(entry.key, entry)) {
+                entry.fail(closedException);
+            }
+        }
+        outbound.clear();
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+    }
+
+    private long waitMillis(long now) {
+        long wake = now + TimeUnit.SECONDS.toNanos(1);
+        if (socket == null) {
+            wake = Math.min(wake, reconnectAt);
+        } else if (!connected) {
+            wake = Math.min(wake, connectDeadline);
+        } else if (idleEchoNanos > 0) {
+            wake = Math.min(wake, lastActivity + idleEchoNanos);
+        }
+        for (Pending entry : pending.values()) {
+            wake = Math.min(wake, entry.deadline);
+        }
+        // select(0) would block forever
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wake - now));
+    }
+
+    private static String key(String terminalId, String stan) {
+        return terminalId + "/" + stan;
+    }
+
+    private static final class Pending {
+        final String key;
+        final IsoMessage request;
+        final ByteBuffer frame;
+        final long deadline;
+        final Callback callback;
+        volatile boolean written;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Pending(String key, IsoMessage request, ByteBuffer frame, long deadline, Callback callback) {
+            this.key = key;
+            this.request = request;
+            this.frame = frame;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+
+        void complete(IsoMessage response) {
+            if (done.compareAndSet(false, true)) {
+                callback.onResponse(request, response);
+            }
+        }
+
+        void fail(IOException e) {
+            if (done.compareAndSet(false, true)) {
+                callback.onFailure(request, e);
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final HostEndpoint endpoint;
+        private final IsoPacker packer;
+        private TraceSource traceSource;
+        private String terminalId;
+        private long connectTimeoutMillis = 10000;
+        private long idleEchoMillis = 60000;
+        private long echoTimeoutMillis = 10000;
+        private long minBackoffMillis = 500;
+        private long maxBackoffMillis = 30000;
+
+        private Builder(HostEndpoint endpoint, IsoPacker packer) {
+            if (endpoint == null || packer == null) {
+                throw new IllegalArgumentException("Endpoint and packer are required");
+            }
+            this.endpoint = endpoint;
+            this.packer = packer;
+        }
+
+        /**
+         * STANs and terminal id for the idle echo tests; without them no echo is sent
+         */
+        public Builder echo(TraceSource traceSource, String terminalId) {
+            if (traceSource == null || terminalId == null) {
+                throw new IllegalArgumentException("Trace source and terminal id are required for echo tests");
+            }
+            this.traceSource = traceSource;
+            this.terminalId = terminalId;
+            return this;
+        }
+
+        public Builder connectTimeoutMillis(long connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Idle time after which an echo test is sent, 0 for none
+         */
+        public Builder idleEchoMillis(long idleEchoMillis) {
+            this.idleEchoMillis = idleEchoMillis;
+            return this;
+        }
+
+        /**
+         * Time an echo test may take before the connection is dropped and reopened
+         */
+        public Builder echoTimeoutMillis(long echoTimeoutMillis) {
+            this.echoTimeoutMillis = echoTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * First and longest wait before reconnecting, doubling after each failure
+         */
+        public Builder reconnectBackoff(long minMillis, long maxMillis) {
+            if (minMillis <= 0 || maxMillis < minMillis) {
+                throw new IllegalArgumentException("Invalid backoff " + minMillis + ".." + maxMillis);
+            }
+            this.minBackoffMillis = minMillis;
+            this.maxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        public IsoChannel build() {
+            return new IsoChannel(this);
+        }
+    }
+}
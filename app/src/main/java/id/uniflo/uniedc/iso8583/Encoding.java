@@ -0,0 +1,22 @@
+package id.uniflo.uniedc.iso8583;
+
+/**
+ * How the content, length prefix, MTI or bitmap of a message is put on the wire
+ */
+public enum Encoding {
+    /**
+     * Two digits per byte. Fixed fields of odd length get a leading 0 nibble, variable
+     * ones a trailing F; the hex digits A to F pass through, e.g. the track 2 separator D
+     */
+    BCD,
+
+    /**
+     * One character per byte, ISO 8859-1
+     */
+    ASCII,
+
+    /**
+     * Raw bytes; lengths count bytes, a binary length prefix is big-endian
+     */
+    BINARY
+}
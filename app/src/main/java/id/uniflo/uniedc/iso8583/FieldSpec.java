@@ -0,0 +1,97 @@
+package id.uniflo.uniedc.iso8583;
+
+/**
+ * Format of one data element: fixed or variable length, its encoding and its length.
+ * Lengths count digits for BCD, characters for ASCII and bytes for BINARY fields.
+ */
+public final class FieldSpec {
+
+    public enum LengthType {
+        FIXED(0, 0),
+        LLVAR(2, 99),
+        LLLVAR(3, 999);
+
+        final int digits;
+        final int maxLength;
+
+        LengthType(int digits, int maxLength) {
+            this.digits = digits;
+            this.maxLength = maxLength;
+        }
+    }
+
+    private final int number;
+    private final LengthType lengthType;
+    private final Encoding encoding;
+    private final int length;
+
+    private FieldSpec(int number, LengthType lengthType, Encoding encoding, int length) {
+        if (number < 2 || number > IsoMessage.MAX_FIELD || number == 65) {
+            throw new IllegalArgumentException("Invalid field number " + number);
+        }
+        if (length <= 0 || (lengthType != LengthType.FIXED && length > lengthType.maxLength)) {
+            throw new IllegalArgumentException("Invalid length " + length + " of field " + number);
+        }
+        this.number = number;
+        this.lengthType = lengthType;
+        this.encoding = encoding;
+        this.length = length;
+    }
+
+    public static FieldSpec fixed(int number, Encoding encoding, int length) {
+        return new FieldSpec(number, LengthType.FIXED, encoding, length);
+    }
+
+    public static FieldSpec llvar(int number, Encoding encoding, int maxLength) {
+        return new FieldSpec(number, LengthType.LLVAR, encoding, maxLength);
+    }
+
+    public static FieldSpec lllvar(int number, Encoding encoding, int maxLength) {
+        return new FieldSpec(number, LengthType.LLLVAR, encoding, maxLength);
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public LengthType getLengthType() {
+        return lengthType;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the length of a fixed field, the maximum length of a variable one
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isBinary() {
+        return encoding == Encoding.BINARY;
+    }
+
+    /**
+     * @return bytes taken by a value of the given length, without the length prefix
+     */
+    int encodedSize(int valueLength) {
+        return encoding == Encoding.BCD ? (valueLength + 1) / 2 : valueLength;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a value of the given length does not fit
+     */
+    void checkLength(int valueLength) {
+        if (lengthType == LengthType.FIXED ? valueLength != length : valueLength > length) {
+            throw new IllegalArgumentException("Field " + number + " is " + valueLength +
+                (lengthType == LengthType.FIXED ? " long, must be " : " long, at most ") + length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "field " + number + " " + encoding + " " + lengthType + " " + length;
+    }
+}
@@ -0,0 +1,258 @@
+package id.uniflo.uniedc.iso8583;
+
+import id.uniflo.uniedc.tlv.TLVWriter;
+
+/**
+ * A mutable ISO 8583 message: MTI and data elements 2 to 128. Which fields are present
+ * is kept in two {@code long} bitmaps, bit 63 of the primary one being field 1.
+ * <p>
+ * Meant to be reused, {@link #clear()} keeps all arrays. Binary values are held by
+ * reference, not copied: the array passed to {@link #setBinary(int, byte[], int, int)}
+ * must not change until the message is packed, and binary fields of an unpacked
+ * message point into the received bytes.
+ */
+public final class IsoMessage {
+
+    public static final int MAX_FIELD = 128;
+
+    // The ICC data element, built in place through iccData()
+    static final int FIELD_ICC_DATA = 55;
+
+    private static final long FIRST_BIT = Long.MIN_VALUE;
+
+    private String mti;
+    // Present fields, without the secondary bitmap flag of field 1
+    private long primaryBitmap;
+    private long secondaryBitmap;
+    private final String[] text = new String[MAX_FIELD + 1];
+    private final byte[][] binary = new byte[MAX_FIELD + 1][];
+    private final int[] binaryOffset = new int[MAX_FIELD + 1];
+    private final int[] binaryLength = new int[MAX_FIELD + 1];
+    private final TLVWriter iccData = new TLVWriter();
+    private boolean iccDataInWriter;
+
+    public String getMti() {
+        return mti;
+    }
+
+    /**
+     * @param mti four digits, e.g. "0200"
+     */
+    public IsoMessage setMti(String mti) {
+        if (mti == null || mti.length() != 4) {
+            throw new IllegalArgumentException("MTI must have 4 digits: " + mti);
+        }
+        this.mti = mti;
+        return this;
+    }
+
+    /**
+     * Set a BCD or ASCII field
+     *
+     * @param value digits or text, null removes the field
+     */
+    public IsoMessage set(int field, String value) {
+        if (value == null) {
+            return remove(field);
+        }
+        clearValue(field);
+        text[field] = value;
+        setBit(field);
+        return this;
+    }
+
+    /**
+     * Set a binary field to a whole array, held by reference
+     */
+    public IsoMessage setBinary(int field, byte[] value) {
+        if (value == null) {
+            return remove(field);
+        }
+        return setBinary(field, value, 0, value.length);
+    }
+
+    /**
+     * Set a binary field to part of an array, held by reference
+     */
+    public IsoMessage setBinary(int field, byte[] value, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > value.length) {
+            throw new IllegalArgumentException("Invalid range of field " + field);
+        }
+        clearValue(field);
+        binary[field] = value;
+        binaryOffset[field] = offset;
+        binaryLength[field] = length;
+        setBit(field);
+        return this;
+    }
+
+    /**
+     * Build the ICC data element (field 55) in place. The returned writer belongs to
+     * this message; everything appended to it becomes the value of the field.
+     *
+     * @return the empty writer of field 55
+     */
+    public TLVWriter iccData() {
+        clearValue(FIELD_ICC_DATA);
+        iccData.reset();
+        iccDataInWriter = true;
+        setBit(FIELD_ICC_DATA);
+        return iccData;
+    }
+
+    public boolean has(int field) {
+        checkField(field);
+        return field <= 64
+            ? (primaryBitmap & bit(field)) != 0
+            : (secondaryBitmap & bit(field)) != 0;
+    }
+
+    public IsoMessage remove(int field) {
+        clearValue(field);
+        if (field <= 64) {
+            primaryBitmap &= ~bit(field);
+        } else {
+            secondaryBitmap &= ~bit(field);
+        }
+        return this;
+    }
+
+    /**
+     * @return the value of a BCD or ASCII field, null if not present
+     */
+    public String getString(int field) {
+        checkField(field);
+        return text[field];
+    }
+
+    /**
+     * @return a copy of the value of a binary field, null if not present
+     */
+    public byte[] getBinary(int field) {
+        byte[] array = binaryArray(field);
+        if (array == null) {
+            return null;
+        }
+        byte[] copy = new byte[binaryLength(field)];
+        System.arraycopy(array, binaryOffset(field), copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * @return the primary bitmap, with bit 63 set when a secondary bitmap follows
+     */
+    public long getPrimaryBitmap() {
+        return secondaryBitmap != 0 ? primaryBitmap | FIRST_BIT : primaryBitmap;
+    }
+
+    public long getSecondaryBitmap() {
+        return secondaryBitmap;
+    }
+
+    /**
+     * Remove the MTI and all fields, keeping the arrays for the next message
+     */
+    public IsoMessage clear() {
+        mti = null;
+        long bits = primaryBitmap;
+        while (bits != 0) {
+            int field = Long.numberOfLeadingZeros(bits) + 1;
+            bits &= ~bit(field);
+            clearValue(field);
+        }
+        bits = secondaryBitmap;
+        while (bits != 0) {
+            int field = Long.numberOfLeadingZeros(bits) + 65;
+            bits &= ~bit(field);
+            clearValue(field);
+        }
+        primaryBitmap = 0;
+        secondaryBitmap = 0;
+        return this;
+    }
+
+    /**
+     * Replace the content of this message with the MTI and fields of another one;
+     * binary values are shared, field 55 is copied
+     */
+    public IsoMessage copyFrom(IsoMessage other) {
+        clear();
+        mti = other.mti;
+        long bits = other.primaryBitmap;
+        while (bits != 0) {
+            int field = Long.numberOfLeadingZeros(bits) + 1;
+            bits &= ~bit(field);
+            copyField(other, field);
+        }
+        bits = other.secondaryBitmap;
+        while (bits != 0) {
+            int field = Long.numberOfLeadingZeros(bits) + 65;
+            bits &= ~bit(field);
+            copyField(other, field);
+        }
+        return this;
+    }
+
+    /**
+     * Present fields of the primary bitmap, without field 1
+     */
+    long presentPrimary() {
+        return primaryBitmap;
+    }
+
+    byte[] binaryArray(int field) {
+        checkField(field);
+        if (field == FIELD_ICC_DATA && iccDataInWriter) {
+            return iccData.array();
+        }
+        return binary[field];
+    }
+
+    int binaryOffset(int field) {
+        return field == FIELD_ICC_DATA && iccDataInWriter ? 0 : binaryOffset[field];
+    }
+
+    int binaryLength(int field) {
+        return field == FIELD_ICC_DATA && iccDataInWriter ? iccData.length() : binaryLength[field];
+    }
+
+    /**
+     * @return the bit of a field in its bitmap
+     */
+    static long bit(int field) {
+        return FIRST_BIT >>> ((field - 1) & 63);
+    }
+
+    private void copyField(IsoMessage other, int field) {
+        if (other.text[field] != null) {
+            set(field, other.text[field]);
+        } else if (field == FIELD_ICC_DATA && other.iccDataInWriter) {
+            iccData().putRaw(other.iccData.array(), 0, other.iccData.length());
+        } else {
+            setBinary(field, other.binary[field], other.binaryOffset[field], other.binaryLength[field]);
+        }
+    }
+
+    private void setBit(int field) {
+        if (field <= 64) {
+            primaryBitmap |= bit(field);
+        } else {
+            secondaryBitmap |= bit(field);
+        }
+    }
+
+    private void clearValue(int field) {
+        checkField(field);
+        text[field] = null;
+        binary[field] = null;
+        if (field == FIELD_ICC_DATA) {
+            iccDataInWriter = false;
+        }
+    }
+
+    private static void checkField(int field) {
+        if (field < 2 || field > MAX_FIELD || field == 65) {
+            throw new IllegalArgumentException("Invalid field number " + field);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package id.uniflo.uniedc.iso8583;
+
+import java.nio.charset.StandardCharsets;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * Packs {@link IsoMessage}s to bytes and back, following a {@link MessageSpec}.
+ * <p>
+ * Packing writes straight into a {@link MessageBuffer}, walking the set bits of the
+ * bitmaps; nothing is allocated per field. Unpacking allocates the strings of text
+ * fields only, binary fields stay views into the received bytes. Malformed input and
+ * fields the spec does not know are rejected with an IllegalArgumentException.
+ * Thread-safe, share one per host.
+ */
+public final class IsoPacker {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final MessageSpec spec;
+
+    public IsoPacker(MessageSpec spec) {
+        if (spec == null) {
+            throw new IllegalArgumentException("Message spec is required");
+        }
+        this.spec = spec;
+    }
+
+    public MessageSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Append a packed message to a buffer. On failure the buffer is left as it was.
+     *
+     * @return the number of bytes appended
+     */
+    public int pack(IsoMessage message, MessageBuffer out) {
+        if (message.getMti() == null) {
+            throw new IllegalArgumentException("MTI is not set");
+        }
+        int start = out.length();
+        try {
+            writeDigits(0, message.getMti(), spec.getMtiEncoding(), true, out);
+            long secondary = message.getSecondaryBitmap();
+            writeBitmap(message.getPrimaryBitmap(), out);
+            if (secondary != 0) {
+                writeBitmap(secondary, out);
+            }
+            long bits = message.presentPrimary();
+            while (bits != 0) {
+                int field = Long.numberOfLeadingZeros(bits) + 1;
+                bits &= ~IsoMessage.bit(field);
+                writeField(message, field, out);
+            }
+            bits = secondary;
+            while (bits != 0) {
+                int field = Long.numberOfLeadingZeros(bits) + 65;
+                bits &= ~IsoMessage.bit(field);
+                writeField(message, field, out);
+            }
+        } catch (RuntimeException e) {
+            out.truncate(start);
+            throw e;
+        }
+        return out.length() - start;
+    }
+
+    /**
+     * @return the packed message in a new array
+     */
+    public byte[] pack(IsoMessage message) {
+        MessageBuffer out = MessageBuffer.obtain();
+        pack(message, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Read one whole message
+     *
+     * @param into message to fill, cleared first
+     * @return into
+     */
+    public IsoMessage unpack(byte[] data, int offset, int length, IsoMessage into) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("invalid range: offset=" + offset + ", length=" + length);
+        }
+        into.clear();
+        int end = offset + length;
+        int pos = offset;
+
+        int mtiSize = spec.getMtiEncoding() == Encoding.BCD ? 2 : 4;
+        require(0, pos, mtiSize, end);
+        into.setMti(readText(data, pos, 4, spec.getMtiEncoding(), true));
+        pos += mtiSize;
+
+        int bitmapSize = spec.getBitmapEncoding() == Encoding.BINARY ? 8 : 16;
+        require(1, pos, bitmapSize, end);
+        long primary = readBitmap(data, pos);
+        pos += bitmapSize;
+        long secondary = 0;
+        if ((primary & IsoMessage.bit(1)) != 0) {
+            require(1, pos, bitmapSize, end);
+            secondary = readBitmap(data, pos);
+            pos += bitmapSize;
+        }
+
+        long bits = primary & ~IsoMessage.bit(1);
+        while (bits != 0) {
+            int field = Long.numberOfLeadingZeros(bits) + 1;
+            bits &= ~IsoMessage.bit(field);
+            pos = readField(data, pos, end, field, into);
+        }
+        bits = secondary;
+        while (bits != 0) {
+            int field = Long.numberOfLeadingZeros(bits) + 65;
+            bits &= ~IsoMessage.bit(field);
+            pos = readField(data, pos, end, field, into);
+        }
+        if (pos != end) {
+            throw new IllegalArgumentException((end - pos) + " bytes after the last field");
+        }
+        return into;
+    }
+
+    public IsoMessage unpack(byte[] data, IsoMessage into) {
+        return unpack(data, 0, data.length, into);
+    }
+
+    private void writeField(IsoMessage message, int number, MessageBuffer out) {
+        FieldSpec field = fieldSpec(number);
+        if (field.isBinary()) {
+            byte[] array = message.binaryArray(number);
+            if (array == null) {
+                throw new IllegalArgumentException("Field " + number + " needs a binary value");
+            }
+            int len = message.binaryLength(number);
+            field.checkLength(len);
+            writeLength(field, len, out);
+            out.put(array, message.binaryOffset(number), len);
+            return;
+        }
+        String value = message.getString(number);
+        if (value == null) {
+            throw new IllegalArgumentException("Field " + number + " needs a text value");
+        }
+        field.checkLength(value.length());
+        writeLength(field, value.length(), out);
+        boolean fixed = field.getLengthType() == FieldSpec.LengthType.FIXED;
+        writeDigits(number, value, field.getEncoding(), fixed, out);
+    }
+
+    private int readField(byte[] data, int pos, int end, int number, IsoMessage into) {
+        FieldSpec field = fieldSpec(number);
+        int len = field.getLength();
+        int digits = field.getLengthType().digits;
+        if (digits > 0) {
+            int prefixSize = prefixSize(digits);
+            require(number, pos, prefixSize, end);
+            len = readLength(data, pos, digits, number);
+            pos += prefixSize;
+            field.checkLength(len);
+        }
+        int size = field.encodedSize(len);
+        require(number, pos, size, end);
+        if (field.isBinary()) {
+            into.setBinary(number, data, pos, len);
+        } else {
+            boolean fixed = field.getLengthType() == FieldSpec.LengthType.FIXED;
+            into.set(number, readText(data, pos, len, field.getEncoding(), fixed));
+        }
+        return pos + size;
+    }
+
+    private FieldSpec fieldSpec(int number) {
+        FieldSpec field = spec.field(number);
+        if (field == null) {
+            throw new IllegalArgumentException("Field " + number + " is not in the message spec");
+        }
+        return field;
+    }
+
+    /**
+     * Write BCD or ASCII content. Odd BCD values are padded with a leading 0 when
+     * right aligned, with a trailing F otherwise.
+     */
+    private static void writeDigits(int field, String value, Encoding encoding, boolean rightAligned,
+                                    MessageBuffer out) {
+        int n = value.length();
+        if (encoding == Encoding.ASCII) {
+            int offset = out.skip(n);
+            byte[] buffer = out.array();
+            for (int i = 0; i < n; i++) {
+                char c = value.charAt(i);
+                if (c > 0xFF) {
+                    throw new IllegalArgumentException("Invalid character in " + name(field));
+                }
+                buffer[offset + i] = (byte) c;
+            }
+            return;
+        }
+        int size = (n + 1) / 2;
+        int offset = out.skip(size);
+        byte[] buffer = out.array();
+        int pad = (n & 1) == 1 && rightAligned ? 1 : 0;
+        int invalid = 0;
+        for (int i = 0; i < size * 2; i++) {
+            int c = i - pad;
+            int nibble = c < 0 ? 0 : c >= n ? 0x0F : HexUtil.digit(value.charAt(c));
+            invalid |= nibble;
+            if ((i & 1) == 0) {
+                buffer[offset + (i >> 1)] = (byte) (nibble << 4);
+            } else {
+                buffer[offset + (i >> 1)] |= (byte) (nibble & 0x0F);
+            }
+        }
+        if (invalid < 0) {
+            throw new IllegalArgumentException("Invalid digit in " + name(field) + ": " + value);
+        }
+    }
+
+    private static String readText(byte[] data, int pos, int len, Encoding encoding, boolean rightAligned) {
+        if (encoding == Encoding.ASCII) {
+            return new String(data, pos, len, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[len];
+        int pad = (len & 1) == 1 && rightAligned ? 1 : 0;
+        for (int i = 0; i < len; i++) {
+            int nibbleIndex = i + pad;
+            int b = data[pos + (nibbleIndex >> 1)];
+            chars[i] = DIGITS[(nibbleIndex & 1) == 0 ? (b >>> 4) & 0x0F : b & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private void writeLength(FieldSpec field, int len, MessageBuffer out) {
+        int digits = field.getLengthType().digits;
+        if (digits == 0) {
+            return;
+        }
+        Encoding encoding = spec.getLengthEncoding();
+        if (encoding == Encoding.BINARY) {
+            if (digits == 3) {
+                out.put(len >>> 8);
+            }
+            out.put(len);
+        } else if (encoding == Encoding.BCD) {
+            if (digits == 3) {
+                out.put(len / 100);
+            }
+            out.put(((len / 10 % 10) << 4) | (len % 10));
+        } else {
+            if (digits == 3) {
+                out.put('0' + len / 100);
+            }
+            out.put('0' + len / 10 % 10);
+            out.put('0' + len % 10);
+        }
+    }
+
+    private int readLength(byte[] data, int pos, int digits, int field) {
+        Encoding encoding = spec.getLengthEncoding();
+        if (encoding == Encoding.BINARY) {
+            return digits == 3
+                ? ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF)
+                : data[pos] & 0xFF;
+        }
+        int len = 0;
+        if (encoding == Encoding.BCD) {
+            for (int i = digits & 1; i < digits + (digits & 1); i++) {
+                int b = data[pos + (i >> 1)];
+                len = len * 10 + checkDigit((i & 1) == 0 ? (b >>> 4) & 0x0F : b & 0x0F, field);
+            }
+        } else {
+            for (int i = 0; i < digits; i++) {
+                len = len * 10 + checkDigit(data[pos + i] - '0', field);
+            }
+        }
+        return len;
+    }
+
+    private int prefixSize(int digits) {
+        switch (spec.getLengthEncoding()) {
+            case BCD:
+            case BINARY:
+                return digits == 3 ? 2 : 1;
+            default:
+                return digits;
+        }
+    }
+
+    private void writeBitmap(long bitmap, MessageBuffer out) {
+        if (spec.getBitmapEncoding() == Encoding.BINARY) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.put((int) (bitmap >>> shift));
+            }
+        } else {
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                out.put(DIGITS[(int) (bitmap >>> shift) & 0x0F]);
+            }
+        }
+    }
+
+    private long readBitmap(byte[] data, int pos) {
+        long bitmap = 0;
+        if (spec.getBitmapEncoding() == Encoding.BINARY) {
+            for (int i = 0; i < 8; i++) {
+                bitmap = (bitmap << 8) | (data[pos + i] & 0xFF);
+            }
+            return bitmap;
+        }
+        for (int i = 0; i < 16; i++) {
+            int nibble = HexUtil.digit((char) (data[pos + i] & 0xFF));
+            if (nibble < 0) {
+                throw new IllegalArgumentException("Invalid bitmap at " + pos);
+            }
+            bitmap = (bitmap << 4) | nibble;
+        }
+        return bitmap;
+    }
+
+    private static int checkDigit(int digit, int field) {
+        if (digit < 0 || digit > 9) {
+            throw new IllegalArgumentException("Invalid length of field " + field);
+        }
+        return digit;
+    }
+
+    private static void require(int field, int pos, int size, int end) {
+        if (pos + size > end) {
+            throw new IllegalArgumentException("Message truncated in " + name(field));
+        }
+    }
+
+    private static String name(int field) {
+        return field == 0 ? "MTI" : field == 1 ? "bitmap" : "field " + field;
+    }
+}
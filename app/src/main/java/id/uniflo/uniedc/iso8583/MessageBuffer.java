@@ -0,0 +1,114 @@
+package id.uniflo.uniedc.iso8583;
+
+/**
+ * Growable byte array that messages are packed into, reused across transactions.
+ * <p>
+ * {@link #obtain()} hands out a per-thread buffer like {@code TLVWriter.obtain()}, so
+ * packing a request allocates nothing once the buffer has grown to message size.
+ */
+public final class MessageBuffer {
+    private static final int DEFAULT_CAPACITY = 512;
+    private static final int MAX_POOLED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<MessageBuffer> POOL = new ThreadLocal<MessageBuffer>() {
+        @Override
+        protected MessageBuffer initialValue() {
+            return new MessageBuffer(DEFAULT_CAPACITY);
+        }
+    };
+
+    private byte[] buffer;
+    private int length;
+
+    public MessageBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MessageBuffer(int capacity) {
+        buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Get the buffer of the current thread, empty. The returned buffer must not be
+     * kept or handed to another thread.
+     */
+    public static MessageBuffer obtain() {
+        MessageBuffer pooled = POOL.get();
+        if (pooled.buffer.length > MAX_POOLED_CAPACITY) {
+            //don't pin an oversized buffer to the thread
+            pooled = new MessageBuffer(DEFAULT_CAPACITY);
+            POOL.set(pooled);
+        }
+        pooled.reset();
+        return pooled;
+    }
+
+    public MessageBuffer reset() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * @return the backing array, valid from 0 to {@link #length()}
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the content
+     */
+    public byte[] toByteArray() {
+        byte[] out = new byte[length];
+        System.arraycopy(buffer, 0, out, 0, length);
+        return out;
+    }
+
+    /**
+     * Append bytes
+     */
+    public MessageBuffer put(byte[] data, int offset, int len) {
+        ensureCapacity(len);
+        System.arraycopy(data, offset, buffer, length, len);
+        length += len;
+        return this;
+    }
+
+    /**
+     * Reserve bytes at the end, to be filled in through {@link #array()}
+     *
+     * @return the offset of the reserved bytes
+     */
+    public int skip(int len) {
+        ensureCapacity(len);
+        int offset = length;
+        length += len;
+        return offset;
+    }
+
+    void truncate(int newLength) {
+        length = newLength;
+    }
+
+    void put(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = length + extra;
+        if (required > buffer.length) {
+            int capacity = buffer.length << 1;
+            while (capacity < required) {
+                capacity <<= 1;
+            }
+            byte[] grown = new byte[capacity];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package id.uniflo.uniedc.iso8583;
+
+/**
+ * The message format of a host: how MTI, bitmaps and length prefixes are encoded and
+ * the format of every data element it uses. Immutable, share one per host.
+ */
+public final class MessageSpec {
+
+    /**
+     * Binary packed format of the acquirer EDC host: BCD MTI and numeric fields,
+     * binary bitmaps, BCD length prefixes, ASCII text fields
+     */
+    public static final MessageSpec STANDARD = builder()
+        .mtiEncoding(Encoding.BCD)
+        .bitmapEncoding(Encoding.BINARY)
+        .lengthEncoding(Encoding.BCD)
+        .field(FieldSpec.llvar(2, Encoding.BCD, 19))       // PAN
+        .field(FieldSpec.fixed(3, Encoding.BCD, 6))        // Processing code
+        .field(FieldSpec.fixed(4, Encoding.BCD, 12))       // Amount
+        .field(FieldSpec.fixed(7, Encoding.BCD, 10))       // Transmission date and time, MMddHHmmss
+        .field(FieldSpec.fixed(11, Encoding.BCD, 6))       // STAN
+        .field(FieldSpec.fixed(12, Encoding.BCD, 6))       // Local time, HHmmss
+        .field(FieldSpec.fixed(13, Encoding.BCD, 4))       // Local date, MMdd
+        .field(FieldSpec.fixed(14, Encoding.BCD, 4))       // Expiry, yyMM
+        .field(FieldSpec.fixed(15, Encoding.BCD, 4))       // Settlement date
+        .field(FieldSpec.fixed(22, Encoding.BCD, 3))       // POS entry mode
+        .field(FieldSpec.fixed(23, Encoding.BCD, 3))       // Card sequence number
+        .field(FieldSpec.fixed(24, Encoding.BCD, 3))       // NII
+        .field(FieldSpec.fixed(25, Encoding.BCD, 2))       // POS condition code
+        .field(FieldSpec.llvar(32, Encoding.BCD, 11))      // Acquiring institution
+        .field(FieldSpec.llvar(35, Encoding.BCD, 37))      // Track 2
+        .field(FieldSpec.fixed(37, Encoding.ASCII, 12))    // Retrieval reference number
+        .field(FieldSpec.fixed(38, Encoding.ASCII, 6))     // Approval code
+        .field(FieldSpec.fixed(39, Encoding.ASCII, 2))     // Response code
+        .field(FieldSpec.fixed(41, Encoding.ASCII, 8))     // Terminal id
+        .field(FieldSpec.fixed(42, Encoding.ASCII, 15))    // Merchant id
+        .field(FieldSpec.lllvar(48, Encoding.ASCII, 999))  // Additional data
+        .field(FieldSpec.fixed(49, Encoding.BCD, 3))       // Currency code
+        .field(FieldSpec.fixed(52, Encoding.BINARY, 8))    // PIN block
+        .field(FieldSpec.lllvar(54, Encoding.ASCII, 120))  // Additional amounts, balances
+        .field(FieldSpec.lllvar(55, Encoding.BINARY, 255)) // ICC data
+        .field(FieldSpec.lllvar(60, Encoding.ASCII, 999))  // Batch number
+        .field(FieldSpec.lllvar(62, Encoding.ASCII, 999))  // Invoice number
+        .field(FieldSpec.lllvar(63, Encoding.ASCII, 999))  // Settlement totals
+        .field(FieldSpec.fixed(64, Encoding.BINARY, 8))    // MAC
+        .field(FieldSpec.fixed(70, Encoding.BCD, 3))       // Network management code
+        .field(FieldSpec.fixed(90, Encoding.BCD, 42))      // Original data elements
+        .field(FieldSpec.llvar(102, Encoding.ASCII, 28))   // From account
+        .field(FieldSpec.llvar(103, Encoding.ASCII, 28))   // To account
+        .field(FieldSpec.fixed(128, Encoding.BINARY, 8))   // MAC
+        .build();
+
+    private final Encoding mtiEncoding;
+    private final Encoding bitmapEncoding;
+    private final Encoding lengthEncoding;
+    private final FieldSpec[] fields;
+
+    private MessageSpec(Builder builder) {
+        this.mtiEncoding = builder.mtiEncoding;
+        this.bitmapEncoding = builder.bitmapEncoding;
+        this.lengthEncoding = builder.lengthEncoding;
+        this.fields = builder.fields.clone();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Encoding getMtiEncoding() {
+        return mtiEncoding;
+    }
+
+    public Encoding getBitmapEncoding() {
+        return bitmapEncoding;
+    }
+
+    public Encoding getLengthEncoding() {
+        return lengthEncoding;
+    }
+
+    /**
+     * @return the format of a field, null if the host does not use it
+     */
+    public FieldSpec field(int number) {
+        return number > 0 && number < fields.length ? fields[number] : null;
+    }
+
+    public static final class Builder {
+        private Encoding mtiEncoding = Encoding.BCD;
+        private Encoding bitmapEncoding = Encoding.BINARY;
+        private Encoding lengthEncoding = Encoding.BCD;
+        private final FieldSpec[] fields = new FieldSpec[IsoMessage.MAX_FIELD + 1];
+
+        private Builder() {
+        }
+
+        /**
+         * BCD (2 bytes) or ASCII (4 characters)
+         */
+        public Builder mtiEncoding(Encoding encoding) {
+            if (encoding == Encoding.BINARY) {
+                throw new IllegalArgumentException("MTI is BCD or ASCII");
+            }
+            this.mtiEncoding = encoding;
+            return this;
+        }
+
+        /**
+         * BINARY (8 bytes per bitmap) or ASCII (16 hex characters)
+         */
+        public Builder bitmapEncoding(Encoding encoding) {
+            if (encoding == Encoding.BCD) {
+                throw new IllegalArgumentException("Bitmap is binary or ASCII hex");
+            }
+            this.bitmapEncoding = encoding;
+            return this;
+        }
+
+        /**
+         * Encoding of the LL and LLL prefixes of all variable fields
+         */
+        public Builder lengthEncoding(Encoding encoding) {
+            this.lengthEncoding = encoding;
+            return this;
+        }
+
+        public Builder field(FieldSpec field) {
+            fields[field.getNumber()] = field;
+            return this;
+        }
+
+        public MessageSpec build() {
+            return new MessageSpec(this);
+        }
+    }
+}
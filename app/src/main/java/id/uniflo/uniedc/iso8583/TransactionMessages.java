@@ -0,0 +1,225 @@
+package id.uniflo.uniedc.iso8583;
+
+import java.util.Locale;
+import java.util.Map;
+
+import id.uniflo.uniedc.utils.EMVDataField;
+
+/**
+ * Requests of the terminal transactions in the {@link MessageSpec#STANDARD} format.
+ * Each builder fills a caller supplied message, so one message can be reused for every
+ * transaction.
+ */
+public final class TransactionMessages {
+
+    public static final String MTI_FINANCIAL_REQUEST = "0200";
+    public static final String MTI_FINANCIAL_RESPONSE = "0210";
+    public static final String MTI_REVERSAL_REQUEST = "0400";
+    public static final String MTI_REVERSAL_RESPONSE = "0410";
+    public static final String MTI_SETTLEMENT_REQUEST = "0500";
+    public static final String MTI_SETTLEMENT_RESPONSE = "0510";
+    public static final String MTI_NETWORK_REQUEST = "0800";
+    public static final String MTI_NETWORK_RESPONSE = "0810";
+
+    public static final String PROC_SALE = "000000";
+    public static final String PROC_CASH_WITHDRAWAL = "010000";
+    public static final String PROC_BALANCE_INQUIRY = "310000";
+    public static final String PROC_TRANSFER = "400000";
+    public static final String PROC_SETTLEMENT = "920000";
+
+    public static final String NETWORK_ECHO = "301";
+
+    public static final String RESPONSE_APPROVED = "00";
+
+    public static final int FIELD_PAN = 2;
+    public static final int FIELD_PROCESSING_CODE = 3;
+    public static final int FIELD_AMOUNT = 4;
+    public static final int FIELD_TRANSMISSION_DATE_TIME = 7;
+    public static final int FIELD_STAN = 11;
+    public static final int FIELD_LOCAL_TIME = 12;
+    public static final int FIELD_LOCAL_DATE = 13;
+    public static final int FIELD_EXPIRY = 14;
+    public static final int FIELD_POS_ENTRY_MODE = 22;
+    public static final int FIELD_CARD_SEQUENCE = 23;
+    public static final int FIELD_NII = 24;
+    public static final int FIELD_POS_CONDITION = 25;
+    public static final int FIELD_ACQUIRER = 32;
+    public static final int FIELD_TRACK2 = 35;
+    public static final int FIELD_RRN = 37;
+    public static final int FIELD_APPROVAL_CODE = 38;
+    public static final int FIELD_RESPONSE_CODE = 39;
+    public static final int FIELD_TERMINAL_ID = 41;
+    public static final int FIELD_MERCHANT_ID = 42;
+    public static final int FIELD_PIN_BLOCK = 52;
+    public static final int FIELD_ADDITIONAL_AMOUNTS = 54;
+    public static final int FIELD_ICC_DATA = IsoMessage.FIELD_ICC_DATA;
+    public static final int FIELD_BATCH_NUMBER = 60;
+    public static final int FIELD_INVOICE_NUMBER = 62;
+    public static final int FIELD_SETTLEMENT_TOTALS = 63;
+    public static final int FIELD_MAC = 64;
+    public static final int FIELD_NETWORK_CODE = 70;
+    public static final int FIELD_TO_ACCOUNT = 103;
+
+    /**
+     * Data of one transaction request. Optional fields are left out of the message when
+     * null.
+     */
+    public static class Request {
+        public String stan;
+        public String transmissionDateTime;  // MMddHHmmss, optional
+        public String localTime;             // HHmmss
+        public String localDate;             // MMdd
+        public String nii = "001";
+        public String posConditionCode = "00";
+        public String acquiringInstitutionCode;
+        public String terminalId;
+        public String merchantId;
+        public String posEntryMode = "051";  // chip, PIN
+        public String pan;
+        public String expiry;                // yyMM
+        public String track2;
+        public String cardSequenceNumber;
+        public long amount;
+        public byte[] pinBlock;
+        public Map<String, String> emvTags;  // tag -> hex value, field 55
+        public String invoiceNumber;
+        public String batchNumber;
+        public String toAccount;             // destination of a transfer
+    }
+
+    private TransactionMessages() {
+    }
+
+    public static IsoMessage sale(Request request, IsoMessage into) {
+        financial(request, PROC_SALE, into);
+        into.set(FIELD_AMOUNT, amount(request.amount));
+        into.set(FIELD_INVOICE_NUMBER, request.invoiceNumber);
+        return into;
+    }
+
+    public static IsoMessage cashWithdrawal(Request request, IsoMessage into) {
+        financial(request, PROC_CASH_WITHDRAWAL, into);
+        into.set(FIELD_AMOUNT, amount(request.amount));
+        return into;
+    }
+
+    /**
+     * The balances come back in field 54 of the response
+     */
+    public static IsoMessage balanceInquiry(Request request, IsoMessage into) {
+        return financial(request, PROC_BALANCE_INQUIRY, into);
+    }
+
+    public static IsoMessage transfer(Request request, IsoMessage into) {
+        if (request.toAccount == null) {
+            throw new IllegalArgumentException("Transfer needs the destination account");
+        }
+        financial(request, PROC_TRANSFER, into);
+        into.set(FIELD_AMOUNT, amount(request.amount));
+        into.set(FIELD_TO_ACCOUNT, request.toAccount);
+        return into;
+    }
+
+    /**
+     * Reversal of a financial request that got no response: the same fields and STAN,
+     * without PIN block and MAC
+     */
+    public static IsoMessage reversal(IsoMessage original, IsoMessage into) {
+        if (!MTI_FINANCIAL_REQUEST.equals(original.getMti())) {
+            throw new IllegalArgumentException("Only financial requests are reversed, not " + original.getMti());
+        }
+        into.copyFrom(original);
+        into.setMti(MTI_REVERSAL_REQUEST);
+        into.remove(FIELD_PIN_BLOCK);
+        into.remove(FIELD_MAC);
+        return into;
+    }
+
+    /**
+     * Settlement of a batch. Field 63 carries the totals as sale count (3), sale amount
+     * (12), refund count (3) and refund amount (12).
+     */
+    public static IsoMessage settlement(Request request, int saleCount, long saleAmount,
+                                        int refundCount, long refundAmount, IsoMessage into) {
+        if (request.batchNumber == null) {
+            throw new IllegalArgumentException("Settlement needs the batch number");
+        }
+        header(request, MTI_SETTLEMENT_REQUEST, PROC_SETTLEMENT, into);
+        into.set(FIELD_BATCH_NUMBER, request.batchNumber);
+        into.set(FIELD_SETTLEMENT_TOTALS, String.format(Locale.US, "%03d%012d%03d%012d",
+            saleCount, saleAmount, refundCount, refundAmount));
+        return into;
+    }
+
+    /**
+     * Echo test, to check that the host answers on an idle connection
+     */
+    public static IsoMessage echo(String stan, String terminalId, IsoMessage into) {
+        into.clear();
+        into.setMti(MTI_NETWORK_REQUEST);
+        into.set(FIELD_STAN, stan);
+        into.set(FIELD_TERMINAL_ID, terminalId);
+        into.set(FIELD_NETWORK_CODE, NETWORK_ECHO);
+        return into;
+    }
+
+    /**
+     * Answer to a network management request of the host
+     */
+    public static IsoMessage networkResponse(IsoMessage request, IsoMessage into) {
+        into.clear();
+        into.setMti(MTI_NETWORK_RESPONSE);
+        into.set(FIELD_STAN, request.getString(FIELD_STAN));
+        into.set(FIELD_RESPONSE_CODE, RESPONSE_APPROVED);
+        into.set(FIELD_TERMINAL_ID, request.getString(FIELD_TERMINAL_ID));
+        into.set(FIELD_NETWORK_CODE, request.getString(FIELD_NETWORK_CODE));
+        return into;
+    }
+
+    /**
+     * @return whether a response approves the request
+     */
+    public static boolean isApproved(IsoMessage response) {
+        return RESPONSE_APPROVED.equals(response.getString(FIELD_RESPONSE_CODE));
+    }
+
+    private static IsoMessage financial(Request request, String processingCode, IsoMessage into) {
+        header(request, MTI_FINANCIAL_REQUEST, processingCode, into);
+        into.set(FIELD_TRANSMISSION_DATE_TIME, request.transmissionDateTime);
+        into.set(FIELD_LOCAL_TIME, request.localTime);
+        into.set(FIELD_LOCAL_DATE, request.localDate);
+        into.set(FIELD_PAN, request.pan);
+        into.set(FIELD_EXPIRY, request.expiry);
+        into.set(FIELD_POS_ENTRY_MODE, request.posEntryMode);
+        into.set(FIELD_CARD_SEQUENCE, request.cardSequenceNumber);
+        into.set(FIELD_POS_CONDITION, request.posConditionCode);
+        into.set(FIELD_ACQUIRER, request.acquiringInstitutionCode);
+        into.set(FIELD_TRACK2, request.track2);
+        into.setBinary(FIELD_PIN_BLOCK, request.pinBlock);
+        if (request.emvTags != null && !request.emvTags.isEmpty()) {
+            EMVDataField.write(request.emvTags, into.iccData());
+        }
+        into.set(FIELD_BATCH_NUMBER, request.batchNumber);
+        return into;
+    }
+
+    private static void header(Request request, String mti, String processingCode, IsoMessage into) {
+        if (request.stan == null || request.terminalId == null || request.merchantId == null) {
+            throw new IllegalArgumentException("STAN, terminal id and merchant id are required");
+        }
+        into.clear();
+        into.setMti(mti);
+        into.set(FIELD_PROCESSING_CODE, processingCode);
+        into.set(FIELD_STAN, request.stan);
+        into.set(FIELD_NII, request.nii);
+        into.set(FIELD_TERMINAL_ID, request.terminalId);
+        into.set(FIELD_MERCHANT_ID, request.merchantId);
+    }
+
+    private static String amount(long amount) {
+        if (amount < 0 || amount > 999999999999L) {
+            throw new IllegalArgumentException("Invalid amount " + amount);
+        }
+        return String.format(Locale.US, "%012d", amount);
+    }
+}
@@ -1,21 +1,19 @@
 package id.uniflo.uniedc.managers;
 
 import android.content.Context;
-import android.database.Cursor;
 
-import net.sqlcipher.database.SQLiteDatabase;
-
-import id.uniflo.uniedc.database.SecureSettingsDatabaseHelper;
+import id.uniflo.uniedc.database.SequenceService;
+import id.uniflo.uniedc.database.SettingsRepository;
 
 public class SettingsManager {
     
     private static SettingsManager instance;
     private final Context context;
-    private final SecureSettingsDatabaseHelper dbHelper;
+    private final SettingsRepository repository;
     
     private SettingsManager(Context context) {
         this.context = context.getApplicationContext();
-        this.dbHelper = SecureSettingsDatabaseHelper.getInstance(context);
+        this.repository = SettingsRepository.getInstance(context);
     }
     
     public static synchronized SettingsManager getInstance(Context context) {
@@ -26,131 +24,48 @@ public class SettingsManager {
     }
     
     /**
-     * Get network settings
+     * Get network settings, from the in-memory settings snapshot
      */
     public NetworkSettings getNetworkSettings() {
         NetworkSettings settings = new NetworkSettings();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        
-        String[] columns = {
-            SecureSettingsDatabaseHelper.COLUMN_PRIMARY_HOST,
-            SecureSettingsDatabaseHelper.COLUMN_PRIMARY_PORT,
-            SecureSettingsDatabaseHelper.COLUMN_SECONDARY_HOST,
-            SecureSettingsDatabaseHelper.COLUMN_SECONDARY_PORT,
-            SecureSettingsDatabaseHelper.COLUMN_TIMEOUT,
-            SecureSettingsDatabaseHelper.COLUMN_USE_SSL,
-            SecureSettingsDatabaseHelper.COLUMN_PROTOCOL
-        };
+        id.uniflo.uniedc.database.NetworkSettings stored = repository.get().getNetworkSettings();
         
-        Cursor cursor = db.query(
-            SecureSettingsDatabaseHelper.TABLE_NETWORK_SETTINGS,
-            columns,
-            null,
-            null,
-            null,
-            null,
-            null,
-            "1"
-        );
-        
-        if (cursor != null && cursor.moveToFirst()) {
-            settings.primaryHost = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_PRIMARY_HOST));
-            settings.primaryPort = cursor.getInt(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_PRIMARY_PORT));
-            settings.secondaryHost = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_SECONDARY_HOST));
-            settings.secondaryPort = cursor.getInt(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_SECONDARY_PORT));
-            settings.timeout = cursor.getInt(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_TIMEOUT));
-            settings.useSSL = cursor.getInt(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_USE_SSL)) == 1;
-            settings.protocol = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_PROTOCOL));
-            cursor.close();
+        if (stored != null) {
+            settings.primaryHost = stored.getPrimaryHost();
+            settings.primaryPort = stored.getPrimaryPort();
+            settings.secondaryHost = stored.getSecondaryHost();
+            settings.secondaryPort = stored.getSecondaryPort();
+            settings.timeout = stored.getTimeout();
+            settings.useSSL = stored.isUseSsl();
+            settings.protocol = stored.getProtocol();
         }
         
         return settings;
     }
     
     /**
-     * Get terminal configuration
+     * Get terminal configuration, from the in-memory settings snapshot
      */
     public TerminalConfig getTerminalConfig() {
         TerminalConfig config = new TerminalConfig();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        
-        String[] columns = {
-            SecureSettingsDatabaseHelper.COLUMN_TERMINAL_ID,
-            SecureSettingsDatabaseHelper.COLUMN_MERCHANT_ID,
-            SecureSettingsDatabaseHelper.COLUMN_MERCHANT_NAME,
-            SecureSettingsDatabaseHelper.COLUMN_TRACE_NUMBER,
-            SecureSettingsDatabaseHelper.COLUMN_ACQUIRING_INSTITUTION_CODE
-        };
+        id.uniflo.uniedc.database.TerminalConfig stored = repository.get().getTerminalConfig();
         
-        Cursor cursor = db.query(
-            SecureSettingsDatabaseHelper.TABLE_TERMINAL_CONFIG,
-            columns,
-            null,
-            null,
-            null,
-            null,
-            null,
-            "1"
-        );
-        
-        if (cursor != null && cursor.moveToFirst()) {
-            config.terminalId = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_TERMINAL_ID));
-            config.merchantId = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_ID));
-            config.merchantName = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_MERCHANT_NAME));
-            config.traceNumber = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_TRACE_NUMBER));
-            config.acquiringInstitutionCode = cursor.getString(cursor.getColumnIndex(SecureSettingsDatabaseHelper.COLUMN_ACQUIRING_INSTITUTION_CODE));
-            cursor.close();
+        if (stored != null) {
+            config.terminalId = stored.getTerminalId();
+            config.merchantId = stored.getMerchantId();
+            config.merchantName = stored.getMerchantName();
+            config.traceNumber = stored.getTraceNumber();
+            config.acquiringInstitutionCode = stored.getAcquiringInstitutionCode();
         }
         
         return config;
     }
     
     /**
-     * Increment and get next trace number
+     * Get next trace number, from the block reserved by the sequence service
      */
-    public synchronized String getNextTraceNumber() {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        String currentTrace = "000001";
-        
-        // Get current trace number
-        Cursor cursor = db.query(
-            SecureSettingsDatabaseHelper.TABLE_TERMINAL_CONFIG,
-            new String[]{SecureSettingsDatabaseHelper.COLUMN_TRACE_NUMBER},
-            null,
-            null,
-            null,
-            null,
-            null,
-            "1"
-        );
-        
-        if (cursor != null && cursor.moveToFirst()) {
-            currentTrace = cursor.getString(0);
-            cursor.close();
-        }
-        
-        // Increment trace number
-        int traceNum = Integer.parseInt(currentTrace);
-        traceNum++;
-        if (traceNum > 999999) {
-            traceNum = 1;
-        }
-        
-        String newTrace = String.format("%06d", traceNum);
-        
-        // Update database
-        android.content.ContentValues values = new android.content.ContentValues();
-        values.put(SecureSettingsDatabaseHelper.COLUMN_TRACE_NUMBER, newTrace);
-        values.put(SecureSettingsDatabaseHelper.COLUMN_UPDATED_AT, System.currentTimeMillis());
-        
-        db.update(
-            SecureSettingsDatabaseHelper.TABLE_TERMINAL_CONFIG,
-            values,
-            null,
-            null
-        );
-        
-        return newTrace;
+    public String getNextTraceNumber() {
+        return SequenceService.getInstance(context).nextTraceNumber();
     }
     
     public static class NetworkSettings {
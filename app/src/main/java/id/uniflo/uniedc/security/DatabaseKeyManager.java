@@ -15,6 +15,8 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 
+import id.uniflo.uniedc.util.HexUtil;
+
 public class DatabaseKeyManager {
     
     private static final String KEYSTORE_ALIAS = "UnifloEDCDatabaseKey";
@@ -23,6 +25,7 @@ public class DatabaseKeyManager {
     private static final String ENCRYPTED_KEY_PREF = "encrypted_db_key";
     private static final String KEY_IV_PREF = "db_key_iv";
     private static final int GCM_TAG_LENGTH = 128;
+    private static final String PAN_TOKEN_KEY_LABEL = "UnifloEDC PAN token v1";
     
     private final Context context;
     private static DatabaseKeyManager instance;
@@ -57,6 +60,55 @@ public class DatabaseKeyManager {
         }
     }
     
+    /**
+     * The database key as a SQLCipher raw key literal, x'&lt;64 hex digits&gt;'. Opening
+     * with it skips the PBKDF2 derivation a passphrase goes through on every open.
+     * It is the 32 random bytes the passphrase encodes, or a SHA-256 of a passphrase
+     * that does not decode to 32 bytes.
+     */
+    public String getRawDatabaseKey() {
+        return toRawKey(getDatabaseKey());
+    }
+    
+    /**
+     * @see #getRawDatabaseKey()
+     */
+    public static String toRawKey(String passphrase) {
+        return "x'" + HexUtil.encode(rawKeyBytes(passphrase)) + "'";
+    }
+    
+    /**
+     * Key of the {@link PanTokenizer}, derived from the database key so it is as well
+     * protected and needs nothing else stored. Separate from the key itself, a token
+     * says nothing about the database key.
+     */
+    public byte[] getPanTokenKey() {
+        try {
+            javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA256");
+            mac.init(new javax.crypto.spec.SecretKeySpec(rawKeyBytes(getDatabaseKey()), "HmacSHA256"));
+            return mac.doFinal(PAN_TOKEN_KEY_LABEL.getBytes("UTF-8"));
+        } catch (Exception e) {
+            throw new IllegalStateException("PAN token key not derived", e);
+        }
+    }
+    
+    private static byte[] rawKeyBytes(String passphrase) {
+        byte[] key = null;
+        try {
+            key = Base64.decode(passphrase, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            // Not Base64, hashed below
+        }
+        if (key == null || key.length != 32) {
+            try {
+                key = java.security.MessageDigest.getInstance("SHA-256").digest(passphrase.getBytes("UTF-8"));
+            } catch (Exception e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        return key;
+    }
+    
     private String getStoredKey() {
         try {
             SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
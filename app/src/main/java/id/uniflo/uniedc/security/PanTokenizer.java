@@ -0,0 +1,119 @@
+package id.uniflo.uniedc.security;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * Card lookup keys that do not reveal the PAN.
+ * <p>
+ * The token is a keyed HMAC-SHA256 of the PAN digits, cut to 128 bits. The same card
+ * always gives the same token on this terminal, so it can be indexed and compared
+ * with {@code =}; without the key, which never leaves the terminal, it cannot be
+ * turned back into a PAN or recomputed from a list of candidate PANs.
+ * <p>
+ * Last four digits and BIN are the parts a receipt already shows, kept for searches
+ * by what is printed. Separators are ignored; a masked card number gets no token but
+ * keeps whichever of the two is not masked.
+ */
+public final class PanTokenizer {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int TOKEN_BYTES = 16;
+    private static final int MIN_PAN_LENGTH = 12;
+    private static final int MAX_PAN_LENGTH = 19;
+    private static final int BIN_LENGTH = 6;
+    private static final int LAST4_LENGTH = 4;
+
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * @param key HMAC key, see {@link DatabaseKeyManager#getPanTokenKey()}
+     */
+    public PanTokenizer(byte[] key) {
+        if (key == null || key.length < 16) {
+            throw new IllegalArgumentException("PAN token key must have at least 16 bytes");
+        }
+        final SecretKeySpec keySpec = new SecretKeySpec(key.clone(), ALGORITHM);
+        this.mac = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac instance = Mac.getInstance(ALGORITHM);
+                    instance.init(keySpec);
+                    return instance;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(ALGORITHM + " not available", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the token of a clear PAN, null for a masked, partial or missing one
+     */
+    public String token(String cardNumber) {
+        String digits = normalize(cardNumber);
+        if (digits == null || digits.length() < MIN_PAN_LENGTH || digits.length() > MAX_PAN_LENGTH
+                || !isDigits(digits, 0, digits.length())) {
+            return null;
+        }
+        byte[] hash = mac.get().doFinal(digits.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        byte[] token = new byte[TOKEN_BYTES];
+        System.arraycopy(hash, 0, token, 0, TOKEN_BYTES);
+        return HexUtil.encode(token);
+    }
+
+    /**
+     * @return the last four digits, null if they are masked or missing
+     */
+    public static String last4(String cardNumber) {
+        String digits = normalize(cardNumber);
+        if (digits == null || digits.length() < LAST4_LENGTH
+                || !isDigits(digits, digits.length() - LAST4_LENGTH, digits.length())) {
+            return null;
+        }
+        return digits.substring(digits.length() - LAST4_LENGTH);
+    }
+
+    /**
+     * @return the first six digits, null if they are masked or missing
+     */
+    public static String bin(String cardNumber) {
+        String digits = normalize(cardNumber);
+        if (digits == null || digits.length() < BIN_LENGTH || !isDigits(digits, 0, BIN_LENGTH)) {
+            return null;
+        }
+        return digits.substring(0, BIN_LENGTH);
+    }
+
+    /**
+     * The card number without the spaces and dashes of its display form
+     */
+    private static String normalize(String cardNumber) {
+        if (cardNumber == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(cardNumber.length());
+        for (int i = 0; i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c != ' ' && c != '-') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    private static boolean isDigits(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
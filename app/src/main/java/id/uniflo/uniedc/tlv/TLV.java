@@ -15,11 +15,9 @@ public class TLV {
      */
     public static TLVList fromBinary(byte[] data) {
         TLVList l = new TLVList();
-        int offset = 0;
-        while (offset < data.length) {
-            TLVElement d = fromRawData(data, offset);
-            l.addTLV(d);
-            offset += d.getRawData().length;
+        TLVReader reader = new TLVReader(data);
+        while (reader.next()) {
+            l.addTLV(reader.toElement());
         }
         return l;
     }
@@ -36,24 +34,20 @@ public class TLV {
 
 
     /**
-     * Extract the valid values from the original data and generate a TLV object
+     * Extract the valid values from the original data and generate a TLV object.
+     * The returned object is a view on {@code data}, nothing is copied until the
+     * raw data, tag or value is read.
      *
      * @param data   the original data
      * @param offset offset
      * @return a TLV object
      */
     public static TLVElement fromRawData(byte[] data, int offset) {
-        int tLen = getTLength(data, offset);
-        int lLen = getLLength(data, offset + tLen);
-        int vLen = calcValueLength(data, offset + tLen, lLen);
-        int len = tLen + lLen + vLen;
-        TLVElement element = new TLVElement();
-        byte[] rawData = BytesUtil.subBytes(data, offset, len);
-        element.setData(rawData);
-        element.setTag(BytesUtil.bytes2HexString(BytesUtil.subBytes(rawData, 0, tLen)));
-        element.setLength(vLen);
-        element.setValue(BytesUtil.subBytes(rawData, rawData.length - vLen, vLen));
-        return element;
+        TLVReader reader = new TLVReader(data, offset, data.length - offset);
+        if (!reader.next()) {
+            throw new IllegalArgumentException("no tlv at offset " + offset);
+        }
+        return reader.toElement();
     }
 
     /**
@@ -64,9 +58,16 @@ public class TLV {
      * @return a TLV object
      */
     public static TLVElement fromData(String tagName, byte[] value) {
-        byte[] tag = BytesUtil.hexString2Bytes(tagName);
+        int tag = TLVReader.packTag(tagName);
+        int tLen = tagName.length() / 2;
+        byte[] rawData = new byte[tLen + TLVWriter.lengthSize(value.length) + value.length];
+        for (int i = 0; i < tLen; i++) {
+            rawData[i] = (byte) (tag >>> ((tLen - 1 - i) << 3));
+        }
+        int offset = TLVWriter.writeLength(rawData, tLen, value.length);
+        System.arraycopy(value, 0, rawData, offset, value.length);
         TLVElement element = new TLVElement();
-        element.setData(BytesUtil.merge(tag, makeLengthData(value.length), value));
+        element.setData(rawData);
         element.setTag(tagName);
         element.setLength(value.length);
         element.setValue(value);
@@ -74,90 +75,6 @@ public class TLV {
     }
 
 
-    /**
-     * Generates an array of bytes of data length
-     *
-     * @param len data length
-     * @return
-     */
-    private static byte[] makeLengthData(int len) {
-        if (len > 127) {
-            byte[] tempLen = BytesUtil.intToBytesByLow(len);
-            int start = 0;
-            for (int i = 0; i < tempLen.length; i++) {
-                if (tempLen[i] != 0X00) {
-                    start = i;
-                    break;
-                }
-            }
-            byte[] lenData = BytesUtil.subBytes(tempLen, start, -1);
-            lenData = BytesUtil.merge(new byte[]{(byte) (0x80 | lenData.length)}, lenData);
-            return lenData;
-        } else {
-            return new byte[]{(byte) len};
-        }
-    }
-
-
-    /**
-     * Get the length of the tag length
-     *
-     * @param data
-     * @param offset
-     * @return
-     */
-    private static int getLLength(byte[] data, int offset) {
-        if ((data[offset] & 0X80) == 0) {
-            return 1;
-        }
-        return (data[offset] & 0X7F) + 1;
-    }
-
-    /**
-     * Get the Tag Length
-     *
-     * @param data   data
-     * @param offset offset
-     * @return length
-     */
-    private static int getTLength(byte[] data, int offset) {
-        //Determine the first byte of the tag
-        if ((data[offset] & 0X1F) == 0X1F) {
-            //Determine the remaining bytes of the tag
-            return parseTLength(data, ++offset, 2);
-        }
-        return 1;
-    }
-
-    private static int parseTLength(byte[] data, int offset, int clen) {
-        if ((data[offset] & 0x80) == 0x80) {
-            return parseTLength(data, ++offset, ++clen);
-        }
-        return clen;
-    }
-
-
-    /**
-     * Calculate the length of the value
-     *
-     * @param l      data
-     * @param offset offset
-     * @param lLen   the length of the tag length
-     * @return the length of the value
-     */
-    private static int calcValueLength(byte[] l, int offset, int lLen) {
-        if (lLen == 1) {
-            return l[offset] & 0Xff;
-        }
-        int vLen = 0;
-        for (int i = 1; i < lLen; i++) {
-            vLen <<= 8;
-            vLen |= (l[offset + i]) & 0Xff;
-        }
-        return vLen;
-    }
-
-
 
     public static boolean paddingData(int flag, byte[] inData, int maxLen, byte pChar, byte[] outData) {
         int wLength;
@@ -193,10 +110,9 @@ public class TLV {
 
         if (((pbTag[0]) & 0x1F) == 0x1F)//Tag?2???
         {
-            if ((pbTag[1] & 0x80) == 0x80) {
-                bTagLen = 3;
-            } else {
-                bTagLen = 2;
+            bTagLen = 2;
+            while ((pbTag[bTagLen - 1] & 0x80) == 0x80 && bTagLen < pbTag.length) {
+                bTagLen++;
             }
         } else {
             bTagLen = 1;
@@ -206,16 +122,7 @@ public class TLV {
         wOffset += bTagLen;
 
 
-        if (wLength >= 256) {
-            tlvBuf[wOffset++] = (byte) 0x82;
-            tlvBuf[wOffset++] = (byte) ((wLength & 0xFF00) >> 8);
-            tlvBuf[wOffset++] = (byte) (wLength & 0x00FF);
-        } else if (wLength >= 128) {
-            tlvBuf[wOffset++] = (byte) 0x81;
-            tlvBuf[wOffset++] = (byte) wLength;
-        } else {
-            tlvBuf[wOffset++] = (byte) wLength;
-        }
+        wOffset = TLVWriter.writeLength(tlvBuf, wOffset, wLength);
 
         if (wLength > 0) {
             System.arraycopy(pbValue, 0, tlvBuf, wOffset, wLength);
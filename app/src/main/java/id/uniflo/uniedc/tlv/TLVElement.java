@@ -13,16 +13,44 @@ public class TLVElement {
     private int length = -1;//length
     private byte[] value;   //value
 
+    //view on the original data, see TLVReader
+    private byte[] source;
+    private int offset;
+    private int tagLength;
+    private int lengthLength;
+    private int tagValue = -1;
+
     public TLVElement() {
 
     }
 
+    /**
+     * Make this element a view on the original data. Raw data, tag and value are
+     * only copied out of {@code source} when they are requested.
+     *
+     * @param source       the original data
+     * @param offset       offset of the first tag byte
+     * @param tag          packed tag
+     * @param tagLength    the length of the tag
+     * @param lengthLength the length of the tag length
+     * @param valueLength  the length of the value
+     */
+    void setView(byte[] source, int offset, int tag, int tagLength, int lengthLength, int valueLength) {
+        this.source = source;
+        this.offset = offset;
+        this.tagValue = tag;
+        this.tagLength = tagLength;
+        this.lengthLength = lengthLength;
+        this.length = valueLength;
+    }
+
     public void setData(byte[] data) {
         this.data = data;
     }
 
     public void setTag(String tag) {
         this.tag = tag;
+        this.tagValue = -1;
     }
 
     public void setLength(int length) {
@@ -39,18 +67,66 @@ public class TLVElement {
      * @return
      */
     public byte[] getRawData() {
+        if (data == null && source != null) {
+            data = new byte[getRawLength()];
+            System.arraycopy(source, offset, data, 0, data.length);
+        }
         return data;
     }
 
+    /**
+     * Get the length of the original TLV data without copying it
+     *
+     * @return tag + length + value size
+     */
+    public int getRawLength() {
+        if (source != null) {
+            return tagLength + lengthLength + length;
+        }
+        return data == null ? 0 : data.length;
+    }
+
+    /**
+     * Copy the original TLV data into {@code dest}
+     *
+     * @param dest       destination array
+     * @param destOffset offset in dest
+     * @return the offset after the copied data
+     */
+    int copyRawData(byte[] dest, int destOffset) {
+        int len = getRawLength();
+        if (data == null && source != null) {
+            System.arraycopy(source, offset, dest, destOffset, len);
+        } else if (len > 0) {
+            System.arraycopy(data, 0, dest, destOffset, len);
+        }
+        return destOffset + len;
+    }
+
     /**
      * Get the tag
      *
      * @return tag
      */
     public String getTag() {
+        if (tag == null && source != null) {
+            tag = TLVReader.tagToString(tagValue);
+        }
         return tag;
     }
 
+    /**
+     * Get the tag packed into an int, e.g. 9F26 -> 0x9F26
+     *
+     * @return packed tag
+     */
+    public int getTagValue() {
+        if (tagValue == -1 && tag != null) {
+            tagValue = TLVReader.packTag(tag);
+        }
+        return tagValue;
+    }
+
     /**
      * Get the length of the value
      *
@@ -66,9 +142,34 @@ public class TLVElement {
      * @return byte array
      */
     public byte[] getBytesValue() {
+        if (value == null && source != null) {
+            value = new byte[length];
+            System.arraycopy(source, offset + tagLength + lengthLength, value, 0, length);
+        }
         return value;
     }
 
+    /**
+     * Determine if the tag is a constructed data object, e.g. 70, 77, A5, BF0C
+     *
+     * @return true, constructed; or false
+     */
+    public boolean isConstructed() {
+        int tag = getTagValue();
+        return ((tag >>> ((TLVReader.tagLength(tag) - 1) << 3)) & 0x20) != 0;
+    }
+
+    /**
+     * @return a reader over the value, without copying it
+     */
+    TLVReader valueReader() {
+        if (source != null) {
+            return new TLVReader(source, offset + tagLength + lengthLength, length);
+        }
+        byte[] temp = getBytesValue();
+        return new TLVReader(temp == null ? new byte[0] : temp);
+    }
+
     /**
      * Gets Value,the hex string
      *
@@ -99,7 +200,7 @@ public class TLVElement {
      * @return true, valid; or false
      */
     public boolean isValid() {
-        return data != null;
+        return data != null || source != null;
     }
 
 
@@ -113,19 +214,19 @@ public class TLVElement {
             return false;
         }
 
-        if (data == null || ((TLVElement) obj).data == null) {
+        if (!isValid() || !((TLVElement) obj).isValid()) {
             return false;
         }
 
-        return Arrays.equals(data, ((TLVElement) obj).data);
+        return Arrays.equals(getRawData(), ((TLVElement) obj).getRawData());
     }
 
     @Override
     public String toString() {
-        if (data == null) {
+        if (!isValid()) {
             return super.toString();
         }
-        return BytesUtil.bytes2HexString(data);
+        return BytesUtil.bytes2HexString(getRawData());
     }
 }
 
@@ -0,0 +1,86 @@
+package id.uniflo.uniedc.tlv;
+
+/**
+ * Open-addressing map from packed tag (see {@link TLVReader#packTag(String)}) to the
+ * slot of the element in its {@link TLVList}. Only the first slot of a tag is kept,
+ * which matches the first-match semantics of the linear lookups it replaces.
+ */
+final class TLVIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] slots;    //slot + 1, 0 means empty
+    private int mask;
+    private int size;
+
+    TLVIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Map tag to slot, unless the tag is already present
+     *
+     * @param tag  packed tag
+     * @param slot slot in the list
+     */
+    void putIfAbsent(int tag, int slot) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int i = hash(tag) & mask;
+        while (slots[i] != 0) {
+            if (keys[i] == tag) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = tag;
+        slots[i] = slot + 1;
+        size++;
+    }
+
+    /**
+     * @param tag packed tag
+     * @return the slot of the first element with this tag, or -1
+     */
+    int get(int tag) {
+        int i = hash(tag) & mask;
+        int s;
+        while ((s = slots[i]) != 0) {
+            if (keys[i] == tag) {
+                return s - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new int[oldKeys.length << 1];
+        slots = new int[oldSlots.length << 1];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != 0) {
+                putIfAbsent(oldKeys[i], oldSlots[i] - 1);
+            }
+        }
+    }
+
+    private static int hash(int tag) {
+        int h = tag * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
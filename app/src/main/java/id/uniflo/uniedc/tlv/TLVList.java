@@ -1,13 +1,18 @@
 package id.uniflo.uniedc.tlv;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 import id.uniflo.uniedc.util.BytesUtil;
 
 public class TLVList {
-    private List<TLVElement> data = new ArrayList<TLVElement>();
+    private final Elements data = new Elements();
+    private TLVIndex index;                 //tag -> slot in data, built on first lookup
+    private int indexedModCount;            //data.modCount() covered by index
+    private List<TLVElement> nestedData;    //data plus the content of constructed templates
+    private TLVIndex nestedIndex;           //tag -> slot in nestedData
 
     public int size() {
         return data.size();
@@ -54,12 +59,96 @@ public class TLVList {
      * @return
      */
     public TLVElement getTLV(String tag) {
-        for (TLVElement d : data) {
-            if (d.getTag().equals(tag)) {
-                return d;
+        return getTLVByTag(TLVReader.packTag(tag));
+    }
+
+    /**
+     * Get TLV according to the packed tag, e.g. 0x9F26
+     *
+     * @param tag packed tag
+     * @return
+     */
+    public TLVElement getTLVByTag(int tag) {
+        int slot = index().get(tag);
+        if (slot < 0) {
+            return null;
+        }
+        return data.get(slot);
+    }
+
+    /**
+     * Get TLV according to tag, also searching inside constructed templates
+     * such as 70, 77, A5 and BF0C, depth first
+     *
+     * @param tag tag
+     * @return
+     */
+    public TLVElement findTLV(String tag) {
+        return findTLVByTag(TLVReader.packTag(tag));
+    }
+
+    /**
+     * Get TLV according to the packed tag, also searching inside constructed templates
+     *
+     * @param tag packed tag
+     * @return
+     */
+    public TLVElement findTLVByTag(int tag) {
+        if (nestedIndex == null || index == null || indexedModCount != data.modCount()) {
+            List<TLVElement> all = new ArrayList<TLVElement>(data.size() * 2);
+            for (TLVElement d : data) {
+                flatten(d, all);
             }
+            TLVIndex nested = new TLVIndex(all.size());
+            for (int i = 0; i < all.size(); i++) {
+                nested.putIfAbsent(all.get(i).getTagValue(), i);
+            }
+            index();
+            nestedData = all;
+            nestedIndex = nested;
+        }
+        int slot = nestedIndex.get(tag);
+        if (slot < 0) {
+            return null;
+        }
+        return nestedData.get(slot);
+    }
+
+    private static void flatten(TLVElement element, List<TLVElement> out) {
+        out.add(element);
+        if (!element.isConstructed()) {
+            return;
+        }
+        TLVReader reader = element.valueReader();
+        List<TLVElement> children = new ArrayList<TLVElement>();
+        try {
+            while (reader.next()) {
+                children.add(reader.toElement());
+            }
+        } catch (IllegalArgumentException e) {
+            //not a valid template, keep it as a primitive value
+            return;
+        }
+        for (TLVElement child : children) {
+            flatten(child, out);
         }
-        return null;
+    }
+
+    /**
+     * Get the tag index, rebuilding it if the list was changed through {@link #data()}
+     */
+    private TLVIndex index() {
+        if (index == null || indexedModCount != data.modCount()) {
+            TLVIndex rebuilt = new TLVIndex(data.size());
+            for (int i = 0; i < data.size(); i++) {
+                rebuilt.putIfAbsent(data.get(i).getTagValue(), i);
+            }
+            index = rebuilt;
+            nestedIndex = null;
+            nestedData = null;
+            indexedModCount = data.modCount();
+        }
+        return index;
     }
 
     /**
@@ -79,7 +168,16 @@ public class TLVList {
      */
     public void addTLV(TLVElement tlv) {
         if (tlv.isValid()) {
+            boolean current = index != null && indexedModCount == data.modCount();
             data.add(tlv);
+            if (current) {
+                index.putIfAbsent(tlv.getTagValue(), data.size() - 1);
+                indexedModCount = data.modCount();
+            } else {
+                index = null;
+            }
+            nestedIndex = null;
+            nestedData = null;
         } else {
             throw new IllegalArgumentException("tlv is not valid!");
         }
@@ -91,14 +189,14 @@ public class TLVList {
      * @param tags tags
      */
     public void retain(String... tags) {
-        List<String> tagList = Arrays.asList(tags);
-        for (int index = 0; index < data.size(); ) {
-            if (!tagList.contains(data.get(index).getTag())) {
-                data.remove(index);
-            } else {
-                index++;
+        TLVIndex tagSet = toTagSet(tags);
+        List<TLVElement> kept = new ArrayList<TLVElement>(data.size());
+        for (TLVElement d : data) {
+            if (tagSet.get(d.getTagValue()) >= 0) {
+                kept.add(d);
             }
         }
+        replaceData(kept);
     }
 
     /**
@@ -107,13 +205,17 @@ public class TLVList {
      * @param tag tag
      */
     public void remove(String tag) {
-        for (int i = 0; i < data.size(); ) {
-            if (tag.equals(data.get(i).getTag())) {
-                data.remove(i);
-            } else {
-                i++;
+        if (getTLV(tag) == null) {
+            return;
+        }
+        int packed = TLVReader.packTag(tag);
+        List<TLVElement> kept = new ArrayList<TLVElement>(data.size());
+        for (TLVElement d : data) {
+            if (d.getTagValue() != packed) {
+                kept.add(d);
             }
         }
+        replaceData(kept);
     }
 
     /**
@@ -122,14 +224,89 @@ public class TLVList {
      * @param tags tags
      */
     public void remove(String... tags) {
-        List<String> tagList = Arrays.asList(tags);
-        for (int i = 0; i < data.size(); ) {
-            if (tagList.contains(data.get(i).getTag())) {
-                data.remove(i);
-            } else {
-                i++;
+        TLVIndex tagSet = toTagSet(tags);
+        List<TLVElement> kept = new ArrayList<TLVElement>(data.size());
+        for (TLVElement d : data) {
+            if (tagSet.get(d.getTagValue()) < 0) {
+                kept.add(d);
             }
         }
+        replaceData(kept);
+    }
+
+    private static TLVIndex toTagSet(String... tags) {
+        TLVIndex tagSet = new TLVIndex(tags.length);
+        for (int i = 0; i < tags.length; i++) {
+            tagSet.putIfAbsent(TLVReader.packTag(tags[i]), i);
+        }
+        return tagSet;
+    }
+
+    /**
+     * Replace the content in place, so lists returned by {@link #data()} stay valid
+     */
+    private void replaceData(List<TLVElement> kept) {
+        if (kept.size() != data.size()) {
+            data.clear();
+            data.addAll(kept);
+        }
+        index = null;
+        nestedIndex = null;
+        nestedData = null;
+    }
+
+    /**
+     * The elements, counting every change, {@code set} included, so the indexes notice
+     * changes made through {@link #data()}
+     */
+    private static final class Elements extends AbstractList<TLVElement> implements RandomAccess {
+        private final ArrayList<TLVElement> elements = new ArrayList<TLVElement>();
+
+        int modCount() {
+            return modCount;
+        }
+
+        @Override
+        public TLVElement get(int index) {
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public TLVElement set(int index, TLVElement element) {
+            TLVElement old = elements.set(index, element);
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void add(int index, TLVElement element) {
+            elements.add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public TLVElement remove(int index) {
+            TLVElement old = elements.remove(index);
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            elements.clear();
+            modCount++;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            elements.subList(fromIndex, toIndex).clear();
+            modCount++;
+        }
     }
 
     @Override
@@ -141,10 +318,15 @@ public class TLVList {
     }
 
     public byte[] toBinary() {
-        byte[][] allData = new byte[data.size()][];
+        int total = 0;
+        for (int i = 0; i < data.size(); i++) {
+            total += data.get(i).getRawLength();
+        }
+        byte[] out = new byte[total];
+        int offset = 0;
         for (int i = 0; i < data.size(); i++) {
-            allData[i] = data.get(i).getRawData();
+            offset = data.get(i).copyRawData(out, offset);
         }
-        return BytesUtil.merge(allData);
+        return out;
     }
 }
@@ -0,0 +1,318 @@
+package id.uniflo.uniedc.tlv;
+
+import java.nio.ByteBuffer;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * Forward-only TLV reader that walks the original byte array in place.
+ * <p>
+ * Tag, length and value are exposed as int offsets into the source array and the
+ * tag itself is packed into an int (e.g. 9F26 -> 0x9F26), so iterating a GENERATE AC
+ * response or a READ RECORD template allocates nothing. Copies are only made when a
+ * caller explicitly asks for one through {@link #copyValue()}, {@link #copyRawData()}
+ * or {@link #toElement()}.
+ * <pre>
+ * TLVReader reader = new TLVReader(data);
+ * while (reader.next()) {
+ *     if (reader.tag() == 0x9F26) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class TLVReader {
+    private final byte[] source;
+    private final int start;
+    private final int end;
+
+    private int position;
+    private int elementOffset = -1;
+    private int tag;
+    private int tagLength;
+    private int lengthLength;
+    private int valueLength;
+
+    public TLVReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * @param data   the original data
+     * @param offset offset of the first TLV
+     * @param length number of bytes to walk
+     */
+    public TLVReader(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("invalid range: offset=" + offset + ", length=" + length);
+        }
+        this.source = data;
+        this.start = offset;
+        this.end = offset + length;
+        this.position = offset;
+    }
+
+    /**
+     * Wrap the remaining bytes of a buffer. Heap buffers are walked in place,
+     * direct buffers are copied once.
+     *
+     * @param buffer the buffer, its position is not modified
+     * @return a reader
+     */
+    public static TLVReader wrap(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new TLVReader(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return new TLVReader(copy);
+    }
+
+    /**
+     * Move to the next TLV
+     *
+     * @return true if an element is available, false at the end of the data
+     * @throws IllegalArgumentException if the element is truncated
+     */
+    public boolean next() {
+        if (position >= end) {
+            elementOffset = -1;
+            return false;
+        }
+        int offset = position;
+
+        // Tag: if the low 5 bits of the first byte are all set, subsequent bytes
+        // follow for as long as bit 8 is set
+        int t = source[offset] & 0xFF;
+        int tLen = 1;
+        if ((t & 0x1F) == 0x1F) {
+            do {
+                if (offset + tLen >= end) {
+                    throw new IllegalArgumentException("truncated tag at " + offset);
+                }
+                t = (t << 8) | (source[offset + tLen] & 0xFF);
+                tLen++;
+            } while ((source[offset + tLen - 1] & 0x80) == 0x80);
+            if (tLen > 4) {
+                throw new IllegalArgumentException("tag longer than 4 bytes at " + offset);
+            }
+        }
+
+        // Length: short form, or 0x8n followed by n length bytes
+        int lOffset = offset + tLen;
+        if (lOffset >= end) {
+            throw new IllegalArgumentException("truncated length at " + offset);
+        }
+        int first = source[lOffset] & 0xFF;
+        int lLen = 1;
+        int vLen = first;
+        if ((first & 0x80) != 0) {
+            lLen = (first & 0x7F) + 1;
+            if (lLen > 5 || lOffset + lLen > end) {
+                throw new IllegalArgumentException("invalid length at " + offset);
+            }
+            vLen = 0;
+            for (int i = 1; i < lLen; i++) {
+                vLen = (vLen << 8) | (source[lOffset + i] & 0xFF);
+            }
+        }
+        if (vLen < 0 || vLen > end - lOffset - lLen) {
+            throw new IllegalArgumentException("truncated value at " + offset);
+        }
+
+        elementOffset = offset;
+        tag = t;
+        tagLength = tLen;
+        lengthLength = lLen;
+        valueLength = vLen;
+        position = lOffset + lLen + vLen;
+        return true;
+    }
+
+    /**
+     * Restart from the first TLV
+     */
+    public void reset() {
+        position = start;
+        elementOffset = -1;
+    }
+
+    /**
+     * Search forward for a tag, without descending into constructed templates
+     *
+     * @param tag packed tag
+     * @return true if found, the reader is then positioned on it
+     */
+    public boolean seek(int tag) {
+        while (next()) {
+            if (this.tag == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the array being walked
+     */
+    public byte[] source() {
+        return source;
+    }
+
+    /**
+     * @return the packed tag of the current element
+     */
+    public int tag() {
+        return tag;
+    }
+
+    public int tagLength() {
+        return tagLength;
+    }
+
+    /**
+     * @return the offset of the current element (first tag byte) in {@link #source()}
+     */
+    public int elementOffset() {
+        return elementOffset;
+    }
+
+    /**
+     * @return tag + length + value size of the current element
+     */
+    public int elementLength() {
+        return tagLength + lengthLength + valueLength;
+    }
+
+    /**
+     * @return the offset of the current value in {@link #source()}
+     */
+    public int valueOffset() {
+        return elementOffset + tagLength + lengthLength;
+    }
+
+    public int valueLength() {
+        return valueLength;
+    }
+
+    /**
+     * @return true if the tag is a constructed data object (bit 6 of the first tag byte)
+     */
+    public boolean isConstructed() {
+        return (source[elementOffset] & 0x20) != 0;
+    }
+
+    /**
+     * @return a reader over the value of the current (constructed) element
+     */
+    public TLVReader children() {
+        return new TLVReader(source, valueOffset(), valueLength);
+    }
+
+    /**
+     * @return a copy of the current value
+     */
+    public byte[] copyValue() {
+        byte[] value = new byte[valueLength];
+        System.arraycopy(source, valueOffset(), value, 0, valueLength);
+        return value;
+    }
+
+    /**
+     * @return a copy of the current tag, length and value bytes
+     */
+    public byte[] copyRawData() {
+        int len = elementLength();
+        byte[] raw = new byte[len];
+        System.arraycopy(source, elementOffset, raw, 0, len);
+        return raw;
+    }
+
+    /**
+     * @return the current value as hex string
+     */
+    public String valueHex() {
+        return HexUtil.encode(source, valueOffset(), valueLength);
+    }
+
+    /**
+     * @return a TLVElement viewing the current element; nothing is copied until it is read
+     */
+    public TLVElement toElement() {
+        TLVElement element = new TLVElement();
+        element.setView(source, elementOffset, tag, tagLength, lengthLength, valueLength);
+        return element;
+    }
+
+    /**
+     * Pack a hex tag name into an int, e.g. "9F26" -> 0x9F26
+     *
+     * @param tagName hex tag, 1 to 4 bytes
+     * @return packed tag
+     */
+    public static int packTag(String tagName) {
+        int len = tagName.length();
+        if (len == 0 || len > 8 || (len & 1) == 1) {
+            throw new IllegalArgumentException("invalid tag: " + tagName);
+        }
+        int tag = 0;
+        for (int i = 0; i < len; i++) {
+            int digit = HexUtil.digit(tagName.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("invalid tag: " + tagName);
+            }
+            tag = (tag << 4) | digit;
+        }
+        return tag;
+    }
+
+    /**
+     * Pack tag bytes into an int
+     *
+     * @param data   data
+     * @param offset offset of the first tag byte
+     * @param length tag length, 1 to 4
+     * @return packed tag
+     */
+    public static int packTag(byte[] data, int offset, int length) {
+        int tag = 0;
+        for (int i = 0; i < length; i++) {
+            tag = (tag << 8) | (data[offset + i] & 0xFF);
+        }
+        return tag;
+    }
+
+    /**
+     * Number of bytes used by a packed tag
+     *
+     * @param tag packed tag
+     * @return 1 to 4
+     */
+    public static int tagLength(int tag) {
+        if ((tag & 0xFF000000) != 0) {
+            return 4;
+        }
+        if ((tag & 0xFF0000) != 0) {
+            return 3;
+        }
+        if ((tag & 0xFF00) != 0) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Convert a packed tag back to its upper case hex name, e.g. 0x9F26 -> "9F26"
+     *
+     * @param tag packed tag
+     * @return hex tag
+     */
+    public static String tagToString(int tag) {
+        int len = tagLength(tag);
+        byte[] tagBytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            tagBytes[i] = (byte) (tag >>> ((len - 1 - i) << 3));
+        }
+        return HexUtil.encode(tagBytes);
+    }
+}
@@ -0,0 +1,285 @@
+package id.uniflo.uniedc.tlv;
+
+import java.nio.ByteBuffer;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * Streaming TLV encoder that appends tag, length and value straight into one growable
+ * byte array.
+ * <p>
+ * Use {@link #obtain()} on hot paths such as building field 55: it hands out a
+ * per-thread writer whose buffer is reused across transactions, so assembling the EMV
+ * data field does not allocate anything but the final result.
+ * <pre>
+ * TLVWriter writer = TLVWriter.obtain();
+ * writer.put(0x9F26, arqc)
+ *       .putHex(0x9F10, iad);
+ * byte[] field55 = writer.toByteArray();
+ * </pre>
+ */
+public class TLVWriter {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAX_POOLED_CAPACITY = 16 * 1024;
+    private static final int MAX_DEPTH = 8;
+
+    private static final ThreadLocal<TLVWriter> POOL = new ThreadLocal<TLVWriter>() {
+        @Override
+        protected TLVWriter initialValue() {
+            return new TLVWriter(DEFAULT_CAPACITY);
+        }
+    };
+
+    private byte[] buffer;
+    private int length;
+    private final int[] templateStarts = new int[MAX_DEPTH];
+    private int depth;
+
+    public TLVWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TLVWriter(int capacity) {
+        buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Get the writer of the current thread, reset and ready for use. The returned
+     * writer must not be kept or handed to another thread.
+     *
+     * @return the pooled writer
+     */
+    public static TLVWriter obtain() {
+        TLVWriter writer = POOL.get();
+        if (writer.buffer.length > MAX_POOLED_CAPACITY) {
+            //don't pin an oversized buffer to the thread
+            writer = new TLVWriter(DEFAULT_CAPACITY);
+            POOL.set(writer);
+        }
+        writer.reset();
+        return writer;
+    }
+
+    /**
+     * Discard the content, keeping the buffer
+     */
+    public TLVWriter reset() {
+        length = 0;
+        depth = 0;
+        return this;
+    }
+
+    /**
+     * Append a TLV
+     *
+     * @param tag   packed tag, e.g. 0x9F26
+     * @param value value
+     */
+    public TLVWriter put(int tag, byte[] value) {
+        return put(tag, value, 0, value.length);
+    }
+
+    /**
+     * Append a TLV
+     *
+     * @param tag    packed tag
+     * @param value  value
+     * @param offset offset of the value
+     * @param len    length of the value
+     */
+    public TLVWriter put(int tag, byte[] value, int offset, int len) {
+        ensureCapacity(TLVReader.tagLength(tag) + lengthSize(len) + len);
+        writeTag(tag);
+        length = writeLength(buffer, length, len);
+        System.arraycopy(value, offset, buffer, length, len);
+        length += len;
+        return this;
+    }
+
+    /**
+     * Append a TLV
+     *
+     * @param tagName hex tag, e.g. "9F26"
+     * @param value   value
+     */
+    public TLVWriter put(String tagName, byte[] value) {
+        return put(TLVReader.packTag(tagName), value);
+    }
+
+    /**
+     * Append a TLV whose value is given as a hex string, decoding it straight into the buffer
+     *
+     * @param tag      packed tag
+     * @param hexValue value as hex string, must have an even length
+     */
+    public TLVWriter putHex(int tag, String hexValue) {
+        int hexLength = hexValue.length();
+        if ((hexLength & 1) == 1) {
+            throw new IllegalArgumentException("odd hex length for tag " + TLVReader.tagToString(tag));
+        }
+        int len = hexLength / 2;
+        ensureCapacity(TLVReader.tagLength(tag) + lengthSize(len) + len);
+        writeTag(tag);
+        length = writeLength(buffer, length, len);
+        length = HexUtil.decode(hexValue, 0, hexLength, buffer, length);
+        return this;
+    }
+
+    /**
+     * Append a TLV whose value is given as a hex string
+     *
+     * @param tagName  hex tag
+     * @param hexValue value as hex string
+     */
+    public TLVWriter putHex(String tagName, String hexValue) {
+        return putHex(TLVReader.packTag(tagName), hexValue);
+    }
+
+    /**
+     * Append already encoded TLV data as is
+     */
+    public TLVWriter putRaw(byte[] data, int offset, int len) {
+        ensureCapacity(len);
+        System.arraycopy(data, offset, buffer, length, len);
+        length += len;
+        return this;
+    }
+
+    /**
+     * Open a constructed template such as 70 or BF0C; everything appended until
+     * {@link #endTemplate()} becomes its value
+     *
+     * @param tag packed tag
+     */
+    public TLVWriter beginTemplate(int tag) {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("templates nested too deep");
+        }
+        ensureCapacity(TLVReader.tagLength(tag) + 1);
+        writeTag(tag);
+        templateStarts[depth++] = length;
+        //reserve the short form length, widened in endTemplate if needed
+        buffer[length++] = 0;
+        return this;
+    }
+
+    /**
+     * Close the innermost template and fill in its length
+     */
+    public TLVWriter endTemplate() {
+        if (depth == 0) {
+            throw new IllegalStateException("no open template");
+        }
+        int lengthOffset = templateStarts[--depth];
+        int valueOffset = lengthOffset + 1;
+        int valueLength = length - valueOffset;
+        int extra = lengthSize(valueLength) - 1;
+        if (extra > 0) {
+            ensureCapacity(extra);
+            System.arraycopy(buffer, valueOffset, buffer, valueOffset + extra, valueLength);
+            length += extra;
+        }
+        writeLength(buffer, lengthOffset, valueLength);
+        return this;
+    }
+
+    /**
+     * @return the backing array, valid from 0 to {@link #length()}
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return a buffer over the encoded data that shares the backing array
+     */
+    public ByteBuffer slice() {
+        return ByteBuffer.wrap(buffer, 0, length).slice();
+    }
+
+    /**
+     * @return a copy of the encoded data
+     */
+    public byte[] toByteArray() {
+        byte[] out = new byte[length];
+        System.arraycopy(buffer, 0, out, 0, length);
+        return out;
+    }
+
+    /**
+     * @return the encoded data as upper case hex string
+     */
+    public String toHexString() {
+        return HexUtil.encode(buffer, 0, length);
+    }
+
+    /**
+     * Number of bytes needed to encode a length
+     *
+     * @param len value length
+     * @return 1 for the short form, 2 to 5 for the 0x81..0x84 long forms
+     */
+    public static int lengthSize(int len) {
+        if (len < 0x80) {
+            return 1;
+        }
+        if (len <= 0xFF) {
+            return 2;
+        }
+        if (len <= 0xFFFF) {
+            return 3;
+        }
+        if (len <= 0xFFFFFF) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * Encode a length in BER-TLV form
+     *
+     * @param dest   destination
+     * @param offset offset in dest
+     * @param len    value length
+     * @return the offset after the length
+     */
+    public static int writeLength(byte[] dest, int offset, int len) {
+        if (len < 0) {
+            throw new IllegalArgumentException("negative length: " + len);
+        }
+        int size = lengthSize(len);
+        if (size == 1) {
+            dest[offset++] = (byte) len;
+            return offset;
+        }
+        int n = size - 1;
+        dest[offset++] = (byte) (0x80 | n);
+        for (int i = n - 1; i >= 0; i--) {
+            dest[offset++] = (byte) (len >>> (i << 3));
+        }
+        return offset;
+    }
+
+    private void writeTag(int tag) {
+        for (int i = TLVReader.tagLength(tag) - 1; i >= 0; i--) {
+            buffer[length++] = (byte) (tag >>> (i << 3));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = length + extra;
+        if (required > buffer.length) {
+            int capacity = buffer.length << 1;
+            while (capacity < required) {
+                capacity <<= 1;
+            }
+            byte[] grown = new byte[capacity];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
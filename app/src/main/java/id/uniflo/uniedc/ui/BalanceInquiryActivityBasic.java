@@ -27,11 +27,8 @@ import com.ftpos.library.smartpos.servicemanager.OnServiceConnectCallback;
 import com.ftpos.library.smartpos.servicemanager.ServiceManager;
 import com.ftpos.library.smartpos.util.BytesUtils;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -39,13 +36,14 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import id.uniflo.uniedc.R;
 import id.uniflo.uniedc.database.SecureSettingsDAO;
 import id.uniflo.uniedc.database.TerminalConfig;
 import id.uniflo.uniedc.database.Transaction;
 import id.uniflo.uniedc.database.TransactionDAO;
+import id.uniflo.uniedc.host.HostCall;
+import id.uniflo.uniedc.host.HostClient;
+import id.uniflo.uniedc.host.HostResponse;
 import id.uniflo.uniedc.managers.SettingsManager;
 import id.uniflo.uniedc.utils.EMVUtil;
 
@@ -64,6 +62,7 @@ public class BalanceInquiryActivityBasic extends AppCompatActivity {
     private boolean isServiceConnected = false;
     private Map<String, String> tlvData = new HashMap<>();
     private SettingsManager settingsManager;
+    private HostCall hostCall;
     private int currentDetectionAttempt = 0;
     private TextView debugLogView;
     private TransactionDAO transactionDAO;
@@ -82,6 +81,7 @@ public class BalanceInquiryActivityBasic extends AppCompatActivity {
         
         // Initialize managers and DAOs
         settingsManager = SettingsManager.getInstance(this);
+        HostClient.getInstance(this).warmUp();
         transactionDAO = new TransactionDAO(this);
         settingsDAO = new SecureSettingsDAO(this);
         
@@ -1070,87 +1070,48 @@ public class BalanceInquiryActivityBasic extends AppCompatActivity {
             }
         });
         
-        // Send in background thread
-        new Thread(() -> {
-            try {
-                SettingsManager.NetworkSettings networkSettings = settingsManager.getNetworkSettings();
-                
-                // Build URL
-                String protocol = networkSettings.useSSL ? "https" : "http";
-                String urlString = String.format("%s://%s:%d/api/balance-inquiry",
-                    protocol, networkSettings.primaryHost, networkSettings.primaryPort);
-                
-                Log.d(TAG, "Sending to: " + urlString);
-                
-                // Convert TLV data to JSON
-                org.json.JSONObject json = new org.json.JSONObject();
-                for (Map.Entry<String, String> entry : tlvData.entrySet()) {
-                    json.put(entry.getKey(), entry.getValue());
-                }
-                
-                String jsonData = json.toString();
-                Log.d(TAG, "Request data: " + jsonData);
-                
-                // Send HTTP request
-                URL url = new URL(urlString);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        // Convert TLV data to JSON
+        org.json.JSONObject json = new org.json.JSONObject();
+        try {
+            for (Map.Entry<String, String> entry : tlvData.entrySet()) {
+                json.put(entry.getKey(), entry.getValue());
+            }
+        } catch (org.json.JSONException e) {
+            handleHostError("Communication error: " + e.getMessage());
+            return;
+        }
+        
+        String jsonData = json.toString();
+        Log.d(TAG, "Request data: " + jsonData);
+        
+        // Primary host first, the secondary when the primary cannot be reached
+        hostCall = HostClient.getInstance(this).post(HostClient.PATH_BALANCE_INQUIRY, jsonData);
+        hostCall.enqueue(new HostCall.Callback() {
+            @Override
+            public void onResponse(HostCall call, HostResponse response) {
+                Log.d(TAG, "Response code: " + response.getCode() + " from " + response.getEndpoint() +
+                    " in " + response.getElapsedMillis() + " ms");
                 
-                try {
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setRequestProperty("Accept", "application/json");
-                    conn.setConnectTimeout(networkSettings.timeout * 1000);
-                    conn.setReadTimeout(networkSettings.timeout * 1000);
-                    conn.setDoOutput(true);
-                    
-                    // Write request body
-                    DataOutputStream os = new DataOutputStream(conn.getOutputStream());
-                    os.writeBytes(jsonData);
-                    os.flush();
-                    os.close();
-                    
-                    // Read response
-                    int responseCode = conn.getResponseCode();
-                    Log.d(TAG, "Response code: " + responseCode);
+                if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                    String body = response.getBodyString();
+                    Log.d(TAG, "Response: " + body);
                     
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        InputStream is = conn.getInputStream();
-                        StringBuilder response = new StringBuilder();
-                        int ch;
-                        while ((ch = is.read()) != -1) {
-                            response.append((char) ch);
-                        }
-                        is.close();
-                        
-                        Log.d(TAG, "Response: " + response.toString());
-                        
-                        // Parse response
-                        handleHostResponse(response.toString());
-                    } else {
-                        handleHostError("Host returned error: " + responseCode);
-                    }
-                    
-                } finally {
-                    conn.disconnect();
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error sending to host", e);
-                
-                // Try secondary host if primary fails
-                if (e instanceof IOException || e instanceof java.net.ConnectException) {
-                    trySecondaryHost();
+                    // Parse response
+                    handleHostResponse(body);
                 } else {
-                    handleHostError("Communication error: " + e.getMessage());
+                    handleHostError("Host returned error: " + response.getCode());
                 }
             }
-        }).start();
-    }
-    
-    private void trySecondaryHost() {
-        Log.d(TAG, "Trying secondary host...");
-        // For demo, just show error
-        handleHostError("Primary host unreachable. Secondary host not implemented in demo.");
+            
+            @Override
+            public void onFailure(HostCall call, IOException e) {
+                if (call.isCanceled()) {
+                    return;
+                }
+                Log.e(TAG, "Error sending to host", e);
+                handleHostError("Communication error: " + e.getMessage());
+            }
+        });
     }
     
     private void handleHostResponse(String response) {
@@ -1213,7 +1174,7 @@ public class BalanceInquiryActivityBasic extends AppCompatActivity {
             transaction.setTerminalId(terminalConfig != null ? terminalConfig.getTerminalId() : "12345678");
             transaction.setMerchantId(terminalConfig != null ? terminalConfig.getMerchantId() : "123456789012345");
             transaction.setBatchNumber(terminalConfig != null ? terminalConfig.getBatchNumber() : "000001");
-            transaction.setTraceNumber(terminalConfig != null ? terminalConfig.getTraceNumber() : tlvData.get("STAN"));
+            transaction.setTraceNumber(tlvData.get("STAN")); // Same STAN as the request
             transaction.setReferenceNumber(generateReferenceNumber());
             transaction.setApprovalCode(tlvData.get("AuthCode") != null ? tlvData.get("AuthCode") : "123456");
             transaction.setResponseCode("00");
@@ -1232,9 +1193,6 @@ public class BalanceInquiryActivityBasic extends AppCompatActivity {
             long transactionId = transactionDAO.insertTransaction(transaction);
             Log.d(TAG, "Transaction saved with ID: " + transactionId);
             
-            // Increment trace number for next transaction
-            settingsDAO.incrementTraceNumber();
-            
             // Navigate to result activity
             Intent intent = new Intent(this, BalanceInquiryResultActivity.class);
             
@@ -1265,6 +1223,9 @@ public class BalanceInquiryActivityBasic extends AppCompatActivity {
         super.onDestroy();
         // Clean up SDK resources
         cancelCardDetection();
+        if (hostCall != null) {
+            hostCall.cancel();
+        }
         
         // Unbind service
         try {
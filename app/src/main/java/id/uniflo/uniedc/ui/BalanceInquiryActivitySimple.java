@@ -23,11 +23,8 @@ import com.ftpos.library.smartpos.servicemanager.OnServiceConnectCallback;
 import com.ftpos.library.smartpos.servicemanager.ServiceManager;
 import com.ftpos.library.smartpos.util.BytesUtils;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -36,6 +33,9 @@ import java.util.Locale;
 import java.util.Map;
 
 import id.uniflo.uniedc.R;
+import id.uniflo.uniedc.host.HostCall;
+import id.uniflo.uniedc.host.HostClient;
+import id.uniflo.uniedc.host.HostResponse;
 import id.uniflo.uniedc.managers.SettingsManager;
 
 public class BalanceInquiryActivitySimple extends AppCompatActivity {
@@ -53,6 +53,7 @@ public class BalanceInquiryActivitySimple extends AppCompatActivity {
     private boolean isServiceConnected = false;
     private Map<String, String> tlvData = new HashMap<>();
     private SettingsManager settingsManager;
+    private HostCall hostCall;
     private int currentDetectionAttempt = 0;
     
     @Override
@@ -68,6 +69,7 @@ public class BalanceInquiryActivitySimple extends AppCompatActivity {
         
         // Initialize managers
         settingsManager = SettingsManager.getInstance(this);
+        HostClient.getInstance(this).warmUp();
         
         // Initialize SDK
         initializeSdk();
@@ -790,87 +792,48 @@ public class BalanceInquiryActivitySimple extends AppCompatActivity {
             }
         });
         
-        // Send in background thread
-        new Thread(() -> {
-            try {
-                SettingsManager.NetworkSettings networkSettings = settingsManager.getNetworkSettings();
-                
-                // Build URL
-                String protocol = networkSettings.useSSL ? "https" : "http";
-                String urlString = String.format("%s://%s:%d/api/balance-inquiry",
-                    protocol, networkSettings.primaryHost, networkSettings.primaryPort);
-                
-                Log.d(TAG, "Sending to: " + urlString);
-                
-                // Convert TLV data to JSON
-                org.json.JSONObject json = new org.json.JSONObject();
-                for (Map.Entry<String, String> entry : tlvData.entrySet()) {
-                    json.put(entry.getKey(), entry.getValue());
-                }
-                
-                String jsonData = json.toString();
-                Log.d(TAG, "Request data: " + jsonData);
-                
-                // Send HTTP request
-                URL url = new URL(urlString);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        // Convert TLV data to JSON
+        org.json.JSONObject json = new org.json.JSONObject();
+        try {
+            for (Map.Entry<String, String> entry : tlvData.entrySet()) {
+                json.put(entry.getKey(), entry.getValue());
+            }
+        } catch (org.json.JSONException e) {
+            handleHostError("Communication error: " + e.getMessage());
+            return;
+        }
+        
+        String jsonData = json.toString();
+        Log.d(TAG, "Request data: " + jsonData);
+        
+        // Primary host first, the secondary when the primary cannot be reached
+        hostCall = HostClient.getInstance(this).post(HostClient.PATH_BALANCE_INQUIRY, jsonData);
+        hostCall.enqueue(new HostCall.Callback() {
+            @Override
+            public void onResponse(HostCall call, HostResponse response) {
+                Log.d(TAG, "Response code: " + response.getCode() + " from " + response.getEndpoint() +
+                    " in " + response.getElapsedMillis() + " ms");
                 
-                try {
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setRequestProperty("Accept", "application/json");
-                    conn.setConnectTimeout(networkSettings.timeout * 1000);
-                    conn.setReadTimeout(networkSettings.timeout * 1000);
-                    conn.setDoOutput(true);
-                    
-                    // Write request body
-                    DataOutputStream os = new DataOutputStream(conn.getOutputStream());
-                    os.writeBytes(jsonData);
-                    os.flush();
-                    os.close();
-                    
-                    // Read response
-                    int responseCode = conn.getResponseCode();
-                    Log.d(TAG, "Response code: " + responseCode);
-                    
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        InputStream is = conn.getInputStream();
-                        StringBuilder response = new StringBuilder();
-                        int ch;
-                        while ((ch = is.read()) != -1) {
-                            response.append((char) ch);
-                        }
-                        is.close();
-                        
-                        Log.d(TAG, "Response: " + response.toString());
-                        
-                        // Parse response
-                        handleHostResponse(response.toString());
-                    } else {
-                        handleHostError("Host returned error: " + responseCode);
-                    }
+                if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                    String body = response.getBodyString();
+                    Log.d(TAG, "Response: " + body);
                     
-                } finally {
-                    conn.disconnect();
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error sending to host", e);
-                
-                // Try secondary host if primary fails
-                if (e instanceof IOException || e instanceof java.net.ConnectException) {
-                    trySecondaryHost();
+                    // Parse response
+                    handleHostResponse(body);
                 } else {
-                    handleHostError("Communication error: " + e.getMessage());
+                    handleHostError("Host returned error: " + response.getCode());
                 }
             }
-        }).start();
-    }
-    
-    private void trySecondaryHost() {
-        Log.d(TAG, "Trying secondary host...");
-        // For demo, just show error
-        handleHostError("Primary host unreachable. Secondary host not implemented in demo.");
+            
+            @Override
+            public void onFailure(HostCall call, IOException e) {
+                if (call.isCanceled()) {
+                    return;
+                }
+                Log.e(TAG, "Error sending to host", e);
+                handleHostError("Communication error: " + e.getMessage());
+            }
+        });
     }
     
     private void handleHostResponse(String response) {
@@ -948,6 +911,9 @@ public class BalanceInquiryActivitySimple extends AppCompatActivity {
         super.onDestroy();
         // Clean up SDK resources
         cancelCardDetection();
+        if (hostCall != null) {
+            hostCall.cancel();
+        }
         
         // Unbind service
         try {
@@ -26,11 +26,8 @@ import com.ftpos.library.smartpos.servicemanager.ServiceManager;
 import com.ftpos.library.smartpos.util.BytesUtils;
 import com.google.android.material.textfield.TextInputLayout;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -38,10 +35,13 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
-import javax.net.ssl.HttpsURLConnection;
 import android.content.Intent;
 
 import id.uniflo.uniedc.R;
+import id.uniflo.uniedc.host.HostCall;
+import id.uniflo.uniedc.host.HostClient;
+import id.uniflo.uniedc.host.HostPreconnect;
+import id.uniflo.uniedc.host.HostResponse;
 import id.uniflo.uniedc.managers.SettingsManager;
 import id.uniflo.uniedc.widget.AmountEditText;
 import id.uniflo.uniedc.utils.EMVUtil;
@@ -66,6 +66,8 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
     private Context mContext;
     private Map<String, String> tlvData = new HashMap<>();
     private SettingsManager settingsManager;
+    private HostCall hostCall;
+    private HostPreconnect hostPreconnect;
     
     private int currentDetectionAttempt = 0;
     private static final int MAX_DETECTION_ATTEMPTS = 5;
@@ -84,6 +86,7 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
         setupListeners();
         
         settingsManager = SettingsManager.getInstance(this);
+        HostClient.getInstance(this).warmUp();
         
         // Initialize card reader service
         initializeService();
@@ -220,6 +223,9 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
         
         cardInsertDialog.show();
         
+        // Connect to the host while the card is read and the PIN entered
+        preconnectHost();
+        
         // Start card detection
         currentDetectionAttempt = 0;
         detectCard();
@@ -681,84 +687,65 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
             progressDialog.setCancelable(false);
             progressDialog.show();
             
-            new Thread(() -> {
-                try {
-                    SettingsManager.NetworkSettings networkSettings = settingsManager.getNetworkSettings();
-                    
-                    // Build URL
-                    String protocol = networkSettings.useSSL ? "https" : "http";
-                    String urlString = String.format("%s://%s:%d/api/purchase",
-                        protocol, networkSettings.primaryHost, networkSettings.primaryPort);
-                    
-                    addDebugLog("🌐 URL: " + urlString);
-                    
-                    // Convert TLV data to JSON
-                    org.json.JSONObject json = new org.json.JSONObject();
-                    for (Map.Entry<String, String> entry : tlvData.entrySet()) {
-                        json.put(entry.getKey(), entry.getValue());
+            // Convert TLV data to JSON
+            org.json.JSONObject json = new org.json.JSONObject();
+            try {
+                for (Map.Entry<String, String> entry : tlvData.entrySet()) {
+                    json.put(entry.getKey(), entry.getValue());
+                }
+            } catch (org.json.JSONException e) {
+                progressDialog.dismiss();
+                handleCardError("Transaction error: " + e.getMessage());
+                return;
+            }
+            
+            addDebugLog("📤 Sending transaction data");
+            HostPreconnect preconnect = hostPreconnect;
+            hostPreconnect = null;
+            if (preconnect != null) {
+                addDebugLog(preconnect.isReady()
+                    ? "🔌 Host connection warmed up, handshake took " + preconnect.getHandshakeMillis() + " ms"
+                    : "🔌 Host connection not ready yet");
+            }
+            hostCall = HostClient.getInstance(this).post(HostClient.PATH_PURCHASE, json.toString())
+                .preconnected(preconnect);
+            hostCall.enqueue(new HostCall.Callback() {
+                @Override
+                public void onResponse(HostCall call, HostResponse response) {
+                    addDebugLog("📥 Response: " + response.getCode() + " from " + response.getEndpoint() +
+                        " in " + response.getElapsedMillis() + " ms, connect " + response.getConnectMillis() + " ms");
+                    if (response.isPreconnected()) {
+                        addDebugLog("⏱ Preconnect saved " + preconnect.getHandshakeMillis() + " ms of handshake");
                     }
                     
-                    String jsonData = json.toString();
-                    addDebugLog("📤 Sending transaction data");
-                    
-                    // Send HTTP request
-                    URL url = new URL(urlString);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    
-                    try {
-                        conn.setRequestMethod("POST");
-                        conn.setRequestProperty("Content-Type", "application/json");
-                        conn.setRequestProperty("Accept", "application/json");
-                        conn.setConnectTimeout(networkSettings.timeout * 1000);
-                        conn.setReadTimeout(networkSettings.timeout * 1000);
-                        conn.setDoOutput(true);
-                        
-                        // Write request body
-                        DataOutputStream os = new DataOutputStream(conn.getOutputStream());
-                        os.writeBytes(jsonData);
-                        os.flush();
-                        os.close();
-                        
-                        // Read response
-                        int responseCode = conn.getResponseCode();
-                        addDebugLog("📥 Response: " + responseCode);
-                        
-                        if (responseCode == HttpURLConnection.HTTP_OK) {
-                            InputStream is = conn.getInputStream();
-                            StringBuilder response = new StringBuilder();
-                            int ch;
-                            while ((ch = is.read()) != -1) {
-                                response.append((char) ch);
-                            }
-                            is.close();
-                            
-                            addDebugLog("✅ Transaction successful");
-                            
-                            runOnUiThread(() -> {
-                                progressDialog.dismiss();
-                                showTransactionSuccess(response.toString());
-                            });
-                            
-                        } else {
-                            addDebugLog("❌ Host error: " + responseCode);
-                            runOnUiThread(() -> {
-                                progressDialog.dismiss();
-                                handleCardError("Transaction failed: " + responseCode);
-                            });
-                        }
-                        
-                    } finally {
-                        conn.disconnect();
+                    if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                        addDebugLog("✅ Transaction successful");
+                        String body = response.getBodyString();
+                        runOnUiThread(() -> {
+                            progressDialog.dismiss();
+                            showTransactionSuccess(body);
+                        });
+                    } else {
+                        addDebugLog("❌ Host error: " + response.getCode());
+                        runOnUiThread(() -> {
+                            progressDialog.dismiss();
+                            handleCardError("Transaction failed: " + response.getCode());
+                        });
+                    }
+                }
+                
+                @Override
+                public void onFailure(HostCall call, IOException e) {
+                    if (call.isCanceled()) {
+                        return;
                     }
-                    
-                } catch (Exception e) {
                     addDebugLog("❌ Host communication error: " + e.getMessage());
                     runOnUiThread(() -> {
                         progressDialog.dismiss();
                         handleCardError("Transaction error: " + e.getMessage());
                     });
                 }
-            }).start();
+            });
         });
     }
     
@@ -847,6 +834,7 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
     }
     
     private void handleDetectionFailure() {
+        releasePreconnect();
         if (cardInsertDialog != null) {
             cardInsertDialog.dismiss();
         }
@@ -856,6 +844,7 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
     
     private void handleCardError(String errorMsg) {
         runOnUiThread(() -> {
+            releasePreconnect();
             if (cardInsertDialog != null) {
                 cardInsertDialog.dismiss();
             }
@@ -868,11 +857,25 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
     }
     
     private void cancelCardDetection() {
+        releasePreconnect();
         if (icReader != null) {
             icReader.close();
         }
     }
     
+    private void preconnectHost() {
+        releasePreconnect();
+        hostPreconnect = HostClient.getInstance(this).preconnect();
+        addDebugLog("🔌 Warming up the connection to " + hostPreconnect.getEndpoint() + " ahead of the authorization");
+    }
+    
+    private void releasePreconnect() {
+        if (hostPreconnect != null) {
+            hostPreconnect.release();
+            hostPreconnect = null;
+        }
+    }
+    
     private void addDebugLog(String message) {
         Log.d(TAG, message);
         
@@ -905,6 +908,9 @@ public class PurchaseActivityEnhanced extends AppCompatActivity {
         
         // Clean up
         cancelCardDetection();
+        if (hostCall != null) {
+            hostCall.cancel();
+        }
         
         // Unbind service
         try {
@@ -17,6 +17,8 @@ import com.google.android.material.textfield.TextInputEditText;
 import id.uniflo.uniedc.R;
 import id.uniflo.uniedc.database.TerminalConfig;
 import id.uniflo.uniedc.database.SecureSettingsDAO;
+import id.uniflo.uniedc.database.SequenceAllocator;
+import id.uniflo.uniedc.database.SequenceService;
 
 public class TerminalConfigActivity extends AppCompatActivity {
     
@@ -214,11 +216,13 @@ public class TerminalConfigActivity extends AppCompatActivity {
         config.setOfflineMode(switchOfflineMode.isChecked());
         
         config.setBatchNumber(etBatchNumber.getText().toString());
-        config.setTraceNumber(etTraceNumber.getText().toString());
-        config.setInvoiceNumber(etInvoiceNumber.getText().toString());
         
         // Save to database
         if (settingsDAO.saveTerminalConfig(config)) {
+            // Sequence numbers only move forward, a lower value entered here is ignored
+            SequenceService sequences = SequenceService.getInstance(this);
+            sequences.raiseTraceNumber(etTraceNumber.getText().toString());
+            sequences.raiseInvoiceNumber(etInvoiceNumber.getText().toString());
             Toast.makeText(this, "Terminal configuration saved successfully", Toast.LENGTH_SHORT).show();
             finish();
         } else {
@@ -272,6 +276,16 @@ public class TerminalConfigActivity extends AppCompatActivity {
             return false;
         }
         
+        if (SequenceAllocator.parse(etTraceNumber.getText().toString()) == 0) {
+            etTraceNumber.setError("Trace number must be 000001 to 999999");
+            return false;
+        }
+        
+        if (SequenceAllocator.parse(etInvoiceNumber.getText().toString()) == 0) {
+            etInvoiceNumber.setError("Invoice number must be 000001 to 999999");
+            return false;
+        }
+        
         return true;
     }
     
@@ -27,22 +27,20 @@ import com.ftpos.library.smartpos.servicemanager.ServiceManager;
 import com.ftpos.library.smartpos.util.BytesUtils;
 import com.google.android.material.textfield.TextInputLayout;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-
-import javax.net.ssl.HttpsURLConnection;
 import android.content.Intent;
 
 import id.uniflo.uniedc.R;
+import id.uniflo.uniedc.host.HostCall;
+import id.uniflo.uniedc.host.HostClient;
+import id.uniflo.uniedc.host.HostResponse;
 import id.uniflo.uniedc.managers.SettingsManager;
 import id.uniflo.uniedc.widget.AmountEditText;
 import id.uniflo.uniedc.utils.EMVUtil;
@@ -67,6 +65,7 @@ public class TransferActivityEnhanced extends AppCompatActivity {
     private Context mContext;
     private Map<String, String> tlvData = new HashMap<>();
     private SettingsManager settingsManager;
+    private HostCall hostCall;
     
     private int currentDetectionAttempt = 0;
     private static final int MAX_DETECTION_ATTEMPTS = 5;
@@ -86,6 +85,7 @@ public class TransferActivityEnhanced extends AppCompatActivity {
         setupListeners();
         
         settingsManager = SettingsManager.getInstance(this);
+        HostClient.getInstance(this).warmUp();
         
         // Initialize card reader service
         initializeService();
@@ -722,84 +722,60 @@ public class TransferActivityEnhanced extends AppCompatActivity {
             progressDialog.setCancelable(false);
             progressDialog.show();
             
-            new Thread(() -> {
-                try {
-                    SettingsManager.NetworkSettings networkSettings = settingsManager.getNetworkSettings();
-                    
-                    // Build URL
-                    String protocol = networkSettings.useSSL ? "https" : "http";
-                    String urlString = String.format("%s://%s:%d/api/transfer",
-                        protocol, networkSettings.primaryHost, networkSettings.primaryPort);
-                    
-                    addDebugLog("🌐 URL: " + urlString);
-                    
-                    // Convert TLV data to JSON
-                    org.json.JSONObject json = new org.json.JSONObject();
-                    for (Map.Entry<String, String> entry : tlvData.entrySet()) {
-                        json.put(entry.getKey(), entry.getValue());
-                    }
-                    
-                    String jsonData = json.toString();
-                    addDebugLog("📤 Sending transaction data");
-                    
-                    // Send HTTP request
-                    URL url = new URL(urlString);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            String jsonData;
+            try {
+                // Convert TLV data to JSON
+                org.json.JSONObject json = new org.json.JSONObject();
+                for (Map.Entry<String, String> entry : tlvData.entrySet()) {
+                    json.put(entry.getKey(), entry.getValue());
+                }
+                jsonData = json.toString();
+            } catch (org.json.JSONException e) {
+                progressDialog.dismiss();
+                handleCardError("Transfer error: " + e.getMessage());
+                return;
+            }
+            
+            addDebugLog("📤 Sending transaction data");
+            // Primary host first, the secondary when the primary cannot be reached
+            hostCall = HostClient.getInstance(this).post(HostClient.PATH_TRANSFER, jsonData);
+            hostCall.enqueue(new HostCall.Callback() {
+                @Override
+                public void onResponse(HostCall call, HostResponse response) {
+                    int responseCode = response.getCode();
+                    addDebugLog("📥 Response: " + responseCode + " from " + response.getEndpoint() +
+                        " in " + response.getElapsedMillis() + " ms");
                     
-                    try {
-                        conn.setRequestMethod("POST");
-                        conn.setRequestProperty("Content-Type", "application/json");
-                        conn.setRequestProperty("Accept", "application/json");
-                        conn.setConnectTimeout(networkSettings.timeout * 1000);
-                        conn.setReadTimeout(networkSettings.timeout * 1000);
-                        conn.setDoOutput(true);
-                        
-                        // Write request body
-                        DataOutputStream os = new DataOutputStream(conn.getOutputStream());
-                        os.writeBytes(jsonData);
-                        os.flush();
-                        os.close();
-                        
-                        // Read response
-                        int responseCode = conn.getResponseCode();
-                        addDebugLog("📥 Response: " + responseCode);
+                    if (responseCode == HttpURLConnection.HTTP_OK) {
+                        String body = response.getBodyString();
+                        addDebugLog("✅ Transfer successful");
                         
-                        if (responseCode == HttpURLConnection.HTTP_OK) {
-                            InputStream is = conn.getInputStream();
-                            StringBuilder response = new StringBuilder();
-                            int ch;
-                            while ((ch = is.read()) != -1) {
-                                response.append((char) ch);
-                            }
-                            is.close();
-                            
-                            addDebugLog("✅ Transfer successful");
-                            
-                            runOnUiThread(() -> {
-                                progressDialog.dismiss();
-                                showTransactionSuccess(response.toString());
-                            });
-                            
-                        } else {
-                            addDebugLog("❌ Host error: " + responseCode);
-                            runOnUiThread(() -> {
-                                progressDialog.dismiss();
-                                handleCardError("Transfer failed: " + responseCode);
-                            });
-                        }
+                        runOnUiThread(() -> {
+                            progressDialog.dismiss();
+                            showTransactionSuccess(body);
+                        });
                         
-                    } finally {
-                        conn.disconnect();
+                    } else {
+                        addDebugLog("❌ Host error: " + responseCode);
+                        runOnUiThread(() -> {
+                            progressDialog.dismiss();
+                            handleCardError("Transfer failed: " + responseCode);
+                        });
+                    }
+                }
+                
+                @Override
+                public void onFailure(HostCall call, IOException e) {
+                    if (call.isCanceled()) {
+                        return;
                     }
-                    
-                } catch (Exception e) {
                     addDebugLog("❌ Host communication error: " + e.getMessage());
                     runOnUiThread(() -> {
                         progressDialog.dismiss();
                         handleCardError("Transfer error: " + e.getMessage());
                     });
                 }
-            }).start();
+            });
         });
     }
     
@@ -947,6 +923,9 @@ public class TransferActivityEnhanced extends AppCompatActivity {
         
         // Clean up
         cancelCardDetection();
+        if (hostCall != null) {
+            hostCall.cancel();
+        }
         
         // Unbind service
         try {
@@ -22,35 +22,31 @@ public class BytesUtil {
         if (isNullEmpty(data)) {
             return EMPTY_STRING;
         }
-        StringBuilder buffer = new StringBuilder();
-        for (byte b : data) {
-            String hex = Integer.toHexString(b & 0xff);
-            if (hex.length() == 1) {
-                buffer.append('0');
-            }
-            buffer.append(hex);
-        }
-        return buffer.toString().toUpperCase();
+        return HexUtil.encode(data);
     }
 
 
     /**
-     * Hex string to byte array
+     * Hex string to byte array, an odd length string is padded with a trailing '0'
      *
      * @param data Hex string
      * @return Byte array
+     * @throws IllegalArgumentException if data contains non hex characters
      */
     public static byte[] hexString2Bytes(String data) {
         if (isNullEmpty(data)) {
             return EMPTY_BYTE_ARRAY;
         }
 
+        int even = data.length() & ~1;
         byte[] result = new byte[(data.length() + 1) / 2];
-        if ((data.length() & 1) == 1) {
-            data += "0";
-        }
-        for (int i = 0; i < result.length; i++) {
-            result[i] = (byte) (hex2byte(data.charAt(i * 2 + 1)) | (hex2byte(data.charAt(i * 2)) << 4));
+        HexUtil.decode(data, 0, even, result, 0);
+        if (even != data.length()) {
+            int last = HexUtil.digit(data.charAt(even));
+            if (last < 0) {
+                throw new IllegalArgumentException("invalid hex: " + data);
+            }
+            result[result.length - 1] = (byte) (last << 4);
         }
         return result;
     }
@@ -138,8 +134,10 @@ public class BytesUtil {
      * Hex char to byte
      *
      * @param hex Hex char
-     * @return Byte
+     * @return Byte, 0 for non hex characters
+     * @deprecated silently maps invalid characters to 0, use {@link HexUtil#digit(char)}
      */
+    @Deprecated
     public static byte hex2byte(char hex) {
         if (hex <= 'f' && hex >= 'a') {
             return (byte) (hex - 'a' + 10);
@@ -164,13 +162,7 @@ public class BytesUtil {
      * @return hex char
      */
     public static String byte2Hex(byte data) {
-        StringBuilder buffer = new StringBuilder();
-        String hex = Integer.toHexString(data & 0xff);
-        if (hex.length() == 1) {
-            buffer.append('0');
-        }
-        buffer.append(hex);
-        return buffer.toString().toUpperCase();
+        return HexUtil.encode(data);
     }
 
 
@@ -5,8 +5,6 @@ package id.uniflo.uniedc.util;
  */
 public class BytesUtils {
     
-    private static final char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
-    
     /**
      * Convert hex string to byte array
      * @param hexString Hex string (e.g., "0123456789ABCDEF")
@@ -25,15 +23,7 @@ public class BytesUtils {
             hexString = "0" + hexString;
         }
         
-        int len = hexString.length();
-        byte[] data = new byte[len / 2];
-        
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(hexString.charAt(i), 16) << 4)
-                                + Character.digit(hexString.charAt(i + 1), 16));
-        }
-        
-        return data;
+        return HexUtil.decode(hexString);
     }
     
     /**
@@ -46,14 +36,7 @@ public class BytesUtils {
             return "";
         }
         
-        char[] hexChars = new char[bytes.length * 2];
-        for (int i = 0; i < bytes.length; i++) {
-            int v = bytes[i] & 0xFF;
-            hexChars[i * 2] = HEX_CHARS[v >>> 4];
-            hexChars[i * 2 + 1] = HEX_CHARS[v & 0x0F];
-        }
-        
-        return new String(hexChars);
+        return HexUtil.encode(bytes);
     }
     
     /**
@@ -66,15 +49,15 @@ public class BytesUtils {
             return "";
         }
         
-        StringBuilder sb = new StringBuilder();
+        char[] hexChars = new char[bytes.length * 3 - 1];
         for (int i = 0; i < bytes.length; i++) {
             if (i > 0) {
-                sb.append(" ");
+                hexChars[i * 3 - 1] = ' ';
             }
-            sb.append(String.format("%02X", bytes[i] & 0xFF));
+            HexUtil.encode(bytes, i, 1, hexChars, i * 3);
         }
         
-        return sb.toString();
+        return new String(hexChars);
     }
     
     /**
@@ -3,6 +3,9 @@ package id.uniflo.uniedc.util;
 import java.util.HashMap;
 import java.util.Map;
 
+import id.uniflo.uniedc.tlv.TLVReader;
+import id.uniflo.uniedc.tlv.TLVWriter;
+
 /**
  * Utility class for EMV (Europay, MasterCard, and Visa) operations
  * This class provides methods to build EMV data structures, extract PAN,
@@ -148,31 +151,13 @@ public class EMVUtil {
      * @return TLV byte array
      */
     private static byte[] buildTLV(Map<String, byte[]> data) {
-        int totalLength = 0;
-        for (Map.Entry<String, byte[]> entry : data.entrySet()) {
-            totalLength += entry.getKey().length() / 2; // Tag length
-            totalLength += 1; // Length byte
-            totalLength += entry.getValue().length; // Value length
-        }
-        
-        byte[] tlv = new byte[totalLength];
-        int offset = 0;
+        TLVWriter writer = TLVWriter.obtain();
         
         for (Map.Entry<String, byte[]> entry : data.entrySet()) {
-            // Add tag
-            byte[] tag = BytesUtils.hexStringToBytes(entry.getKey());
-            System.arraycopy(tag, 0, tlv, offset, tag.length);
-            offset += tag.length;
-            
-            // Add length
-            tlv[offset++] = (byte)entry.getValue().length;
-            
-            // Add value
-            System.arraycopy(entry.getValue(), 0, tlv, offset, entry.getValue().length);
-            offset += entry.getValue().length;
+            writer.put(TLVReader.packTag(entry.getKey()), entry.getValue());
         }
         
-        return tlv;
+        return writer.toByteArray();
     }
     
     /**
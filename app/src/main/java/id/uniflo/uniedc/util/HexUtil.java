@@ -0,0 +1,181 @@
+package id.uniflo.uniedc.util;
+
+/**
+ * Shared hex codec.
+ * <p>
+ * Encoding looks up both characters of a byte in a 256-entry table and writes them
+ * into a char[], decoding maps characters through a 128-entry table and checks the
+ * whole input once at the end instead of branching per character. Malformed input
+ * (odd length, non hex characters) is rejected with an IllegalArgumentException.
+ */
+public final class HexUtil {
+    private static final String EMPTY_STRING = "";
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    //byte -> two chars, high nibble at [b * 2], low nibble at [b * 2 + 1]
+    private static final char[] UPPER = new char[256 * 2];
+    private static final char[] LOWER = new char[256 * 2];
+    //char -> nibble, -1 if not a hex digit
+    private static final byte[] NIBBLE = new byte[128];
+
+    static {
+        char[] upperDigits = "0123456789ABCDEF".toCharArray();
+        char[] lowerDigits = "0123456789abcdef".toCharArray();
+        for (int b = 0; b < 256; b++) {
+            UPPER[b * 2] = upperDigits[b >>> 4];
+            UPPER[b * 2 + 1] = upperDigits[b & 0x0F];
+            LOWER[b * 2] = lowerDigits[b >>> 4];
+            LOWER[b * 2 + 1] = lowerDigits[b & 0x0F];
+        }
+        for (int c = 0; c < NIBBLE.length; c++) {
+            NIBBLE[c] = -1;
+        }
+        for (int i = 0; i < 16; i++) {
+            NIBBLE[upperDigits[i]] = (byte) i;
+            NIBBLE[lowerDigits[i]] = (byte) i;
+        }
+    }
+
+    private HexUtil() {
+    }
+
+    /**
+     * Byte array to upper case hex string
+     *
+     * @param data Byte array
+     * @return Hex string, empty for null or empty input
+     */
+    public static String encode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return EMPTY_STRING;
+        }
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * Part of a byte array to upper case hex string
+     *
+     * @param data   Byte array
+     * @param offset offset
+     * @param len    number of bytes
+     * @return Hex string
+     */
+    public static String encode(byte[] data, int offset, int len) {
+        char[] out = new char[len * 2];
+        encode(data, offset, len, out, 0, UPPER);
+        return new String(out);
+    }
+
+    /**
+     * Byte array to lower case hex string
+     *
+     * @param data Byte array
+     * @return Hex string, empty for null or empty input
+     */
+    public static String encodeLower(byte[] data) {
+        if (data == null || data.length == 0) {
+            return EMPTY_STRING;
+        }
+        char[] out = new char[data.length * 2];
+        encode(data, 0, data.length, out, 0, LOWER);
+        return new String(out);
+    }
+
+    /**
+     * Encode into a caller supplied array as upper case hex
+     *
+     * @param data      Byte array
+     * @param offset    offset in data
+     * @param len       number of bytes
+     * @param dest      destination, needs room for len * 2 chars
+     * @param destOffset offset in dest
+     * @return the offset in dest after the written chars
+     */
+    public static int encode(byte[] data, int offset, int len, char[] dest, int destOffset) {
+        return encode(data, offset, len, dest, destOffset, UPPER);
+    }
+
+    /**
+     * One byte to upper case hex
+     *
+     * @param b byte
+     * @return two char hex string
+     */
+    public static String encode(byte b) {
+        int i = (b & 0xFF) << 1;
+        return new String(UPPER, i, 2);
+    }
+
+    private static int encode(byte[] data, int offset, int len, char[] dest, int destOffset, char[] table) {
+        int end = offset + len;
+        for (int i = offset; i < end; i++) {
+            int t = (data[i] & 0xFF) << 1;
+            dest[destOffset++] = table[t];
+            dest[destOffset++] = table[t + 1];
+        }
+        return destOffset;
+    }
+
+    /**
+     * Hex string to byte array
+     *
+     * @param hex Hex string, upper or lower case, even length
+     * @return Byte array, empty for null or empty input
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static byte[] decode(CharSequence hex) {
+        if (hex == null || hex.length() == 0) {
+            return EMPTY_BYTE_ARRAY;
+        }
+        if ((hex.length() & 1) == 1) {
+            throw new IllegalArgumentException("odd hex length: " + hex.length());
+        }
+        byte[] out = new byte[hex.length() / 2];
+        decode(hex, 0, hex.length(), out, 0);
+        return out;
+    }
+
+    /**
+     * Decode hex characters into a caller supplied array
+     *
+     * @param hex        Hex characters
+     * @param offset     offset of the first char
+     * @param len        number of chars, must be even
+     * @param dest       destination, needs room for len / 2 bytes
+     * @param destOffset offset in dest
+     * @return the offset in dest after the written bytes
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static int decode(CharSequence hex, int offset, int len, byte[] dest, int destOffset) {
+        if ((len & 1) == 1) {
+            throw new IllegalArgumentException("odd hex length: " + len);
+        }
+        int end = offset + len;
+        int invalid = 0;
+        int d = destOffset;
+        for (int i = offset; i < end; i += 2) {
+            char c1 = hex.charAt(i);
+            char c2 = hex.charAt(i + 1);
+            //chars above 0x7F set bits outside 0x7F, table misses give -1
+            int hi = NIBBLE[c1 & 0x7F];
+            int lo = NIBBLE[c2 & 0x7F];
+            invalid |= hi | lo | ((c1 | c2) & 0xFF80);
+            dest[d++] = (byte) ((hi << 4) | (lo & 0x0F));
+        }
+        //valid nibbles only ever set the low four bits
+        if ((invalid & ~0x0F) != 0) {
+            throw new IllegalArgumentException("invalid hex: " + hex.subSequence(offset, end));
+        }
+        return d;
+    }
+
+    /**
+     * Value of one hex digit
+     *
+     * @param c char
+     * @return 0 to 15, or -1 if c is not a hex digit
+     */
+    public static int digit(char c) {
+        return c < 128 ? NIBBLE[c] : -1;
+    }
+}
@@ -0,0 +1,85 @@
+package id.uniflo.uniedc.utils;
+
+import java.util.Map;
+
+import id.uniflo.uniedc.tlv.TLVReader;
+import id.uniflo.uniedc.tlv.TLVWriter;
+
+/**
+ * Encoder for the EMV data field (ISO 8583 field 55) of an authorization message.
+ * <p>
+ * Kept free of SDK and Android dependencies so the same code the terminal runs can
+ * be measured and tested on a plain JVM; {@link EMVUtil#buildEMVDataField(Map)}
+ * delegates here.
+ */
+public final class EMVDataField {
+
+    // Tags of the authorization EMV data field, in message order
+    private static final String[] TAGS = {
+        "9F26", // Application Cryptogram
+        "9F34", // CVM Results
+        "9F10", // Issuer Application Data
+        "9F37", // Unpredictable Number
+        "9F36", // ATC
+        "95",   // TVR
+        "9A",   // Transaction Date
+        "9C",   // Transaction Type
+        "9F02", // Amount, Authorised
+        "5F2A", // Transaction Currency Code
+        "82",   // AIP
+        "9F1A"  // Terminal Country Code
+    };
+    private static final int[] PACKED_TAGS = new int[TAGS.length];
+
+    static {
+        for (int i = 0; i < TAGS.length; i++) {
+            PACKED_TAGS[i] = TLVReader.packTag(TAGS[i]);
+        }
+    }
+
+    private EMVDataField() {
+    }
+
+    /**
+     * @param tlvData tag -> hex value, missing or empty values are skipped
+     * @return EMV data as hex string
+     */
+    public static String build(Map<String, String> tlvData) {
+        return write(tlvData).toHexString();
+    }
+
+    /**
+     * @param tlvData tag -> hex value, missing or empty values are skipped
+     * @return EMV data as binary TLV
+     */
+    public static byte[] buildBytes(Map<String, String> tlvData) {
+        return write(tlvData).toByteArray();
+    }
+
+    /**
+     * Encode the authorization tags into the pooled writer of the calling thread
+     *
+     * @param tlvData tag -> hex value
+     * @return the pooled writer, valid until the next {@link TLVWriter#obtain()} on this thread
+     */
+    public static TLVWriter write(Map<String, String> tlvData) {
+        return write(tlvData, TLVWriter.obtain());
+    }
+
+    /**
+     * Append the authorization tags to a writer, e.g. the field 55 writer of an ISO 8583
+     * message
+     *
+     * @param tlvData tag -> hex value
+     * @return writer
+     */
+    public static TLVWriter write(Map<String, String> tlvData, TLVWriter writer) {
+        for (int i = 0; i < TAGS.length; i++) {
+            String value = tlvData.get(TAGS[i]);
+            if (value != null && !value.isEmpty()) {
+                writer.putHex(PACKED_TAGS[i], value);
+            }
+        }
+        return writer;
+    }
+}
@@ -12,6 +12,7 @@ import java.util.Map;
 import id.uniflo.uniedc.sdk.SDKManager;
 import id.uniflo.uniedc.sdk.interfaces.ICardReader;
 import id.uniflo.uniedc.sdk.interfaces.IPinpad;
+import id.uniflo.uniedc.util.HexUtil;
 
 /**
  * EMV Utility class for handling EMV transactions
@@ -318,24 +319,14 @@ public class EMVUtil {
      * Convert hex string to byte array
      */
     private byte[] hexStringToBytes(String hex) {
-        int len = hex.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
-                    + Character.digit(hex.charAt(i + 1), 16));
-        }
-        return data;
+        return HexUtil.decode(hex);
     }
     
     /**
      * Convert byte array to hex string
      */
     private String bytesToHexString(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X", b));
-        }
-        return sb.toString();
+        return HexUtil.encode(bytes);
     }
     
     /**
@@ -344,33 +335,15 @@ public class EMVUtil {
      * @return Formatted EMV data string
      */
     public String buildEMVDataField(Map<String, String> tlvData) {
-        StringBuilder emvData = new StringBuilder();
-        
-        // Add TLV data in specific order for authorization
-        appendTLV(emvData, TAG_CRYPTOGRAM, tlvData.get(TAG_CRYPTOGRAM));
-        appendTLV(emvData, TAG_CVM_RESULTS, tlvData.get(TAG_CVM_RESULTS));
-        appendTLV(emvData, TAG_ISSUER_APPLICATION_DATA, tlvData.get(TAG_ISSUER_APPLICATION_DATA));
-        appendTLV(emvData, TAG_UNPREDICTABLE_NUMBER, tlvData.get(TAG_UNPREDICTABLE_NUMBER));
-        appendTLV(emvData, TAG_ATC, tlvData.get(TAG_ATC));
-        appendTLV(emvData, TAG_TVR, tlvData.get(TAG_TVR));
-        appendTLV(emvData, TAG_TRANSACTION_DATE, tlvData.get(TAG_TRANSACTION_DATE));
-        appendTLV(emvData, TAG_TRANSACTION_TYPE, tlvData.get(TAG_TRANSACTION_TYPE));
-        appendTLV(emvData, TAG_AMOUNT, tlvData.get(TAG_AMOUNT));
-        appendTLV(emvData, TAG_TRANSACTION_CURRENCY, tlvData.get(TAG_TRANSACTION_CURRENCY));
-        appendTLV(emvData, TAG_AIP, tlvData.get(TAG_AIP));
-        appendTLV(emvData, TAG_TERMINAL_COUNTRY_CODE, tlvData.get(TAG_TERMINAL_COUNTRY_CODE));
-        
-        return emvData.toString();
+        return EMVDataField.build(tlvData);
     }
     
     /**
-     * Append TLV to string builder
+     * Build EMV data field (ISO 8583 field 55) for authorization message
+     * @param tlvData Map of TLV values
+     * @return EMV data as binary TLV
      */
-    private void appendTLV(StringBuilder sb, String tag, String value) {
-        if (value != null && !value.isEmpty()) {
-            sb.append(tag);
-            sb.append(String.format("%02X", value.length() / 2));
-            sb.append(value);
-        }
+    public byte[] buildEMVDataFieldBytes(Map<String, String> tlvData) {
+        return EMVDataField.buildBytes(tlvData);
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package id.uniflo.uniedc.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of the three payload formats and rejection of damaged BLOBs
+ */
+public class PayloadCodecTest {
+
+    // Under 128 bytes, so its length is a one byte varint
+    private static final String RESPONSE = "{\"status\":\"success\",\"data\":{\"approvalCode\":\"123456\"," +
+        "\"message\":\"Approved\",\"responseCode\":\"00\"}}";
+
+    @Test
+    public void nullStaysNull() {
+        assertNull(PayloadCodec.encode(null));
+        assertNull(PayloadCodec.decode(null));
+    }
+
+    @Test
+    public void shortTextIsStoredAsText() {
+        byte[] stored = PayloadCodec.encode("Approved");
+
+        assertEquals(PayloadCodec.FORMAT_TEXT, stored[0]);
+        assertEquals("Approved", PayloadCodec.decode(stored));
+    }
+
+    @Test
+    public void upperHexIsStoredAsItsBytes() {
+        String tlv = "9F2608A1B2C3D4E5F60718";
+        byte[] stored = PayloadCodec.encode(tlv);
+
+        assertEquals(PayloadCodec.FORMAT_BINARY, stored[0]);
+        assertEquals(tlv.length() / 2 + 1, stored.length);
+        assertEquals(tlv, PayloadCodec.decode(stored));
+    }
+
+    @Test
+    public void lowerCaseHexStaysText() {
+        byte[] stored = PayloadCodec.encode("9f2608a1");
+
+        assertEquals(PayloadCodec.FORMAT_TEXT, stored[0]);
+        assertEquals("9f2608a1", PayloadCodec.decode(stored));
+    }
+
+    @Test
+    public void jsonIsDeflated() {
+        byte[] stored = PayloadCodec.encode(RESPONSE);
+
+        assertEquals(PayloadCodec.FORMAT_DEFLATE, stored[0]);
+        assertTrue(stored.length < RESPONSE.length());
+        assertEquals(RESPONSE, PayloadCodec.decode(stored));
+    }
+
+    @Test
+    public void truncatedStreamIsRejected() {
+        byte[] stored = PayloadCodec.encode(RESPONSE);
+
+        assertRejected(Arrays.copyOf(stored, stored.length / 2));
+    }
+
+    @Test
+    public void corruptStreamIsRejected() {
+        byte[] stored = PayloadCodec.encode(RESPONSE);
+        // The zlib header follows the format byte and the length
+        stored[2] = 0;
+
+        assertRejected(stored);
+    }
+
+    @Test
+    public void truncatedLengthIsRejected() {
+        assertRejected(new byte[] {PayloadCodec.FORMAT_DEFLATE});
+        assertRejected(new byte[] {PayloadCodec.FORMAT_DEFLATE, (byte) 0x80});
+    }
+
+    @Test
+    public void negativeLengthIsRejected() {
+        // Five byte varint of 0xFFFFFFFF
+        assertRejected(new byte[] {PayloadCodec.FORMAT_DEFLATE,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0x78, (byte) 0xBB});
+    }
+
+    @Test
+    public void emptyOrUnknownFormatIsRejected() {
+        assertRejected(new byte[0]);
+        assertRejected(new byte[] {9, 1, 2});
+    }
+
+    private static void assertRejected(byte[] stored) {
+        try {
+            PayloadCodec.decode(stored);
+            fail("Decoded a damaged value");
+        } catch (IllegalArgumentException expected) {
+            // damaged BLOBs surface as bad input, nothing else
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package id.uniflo.uniedc.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Block reservation, wraparound and concurrent use of the sequence allocator
+ */
+public class SequenceAllocatorTest {
+
+    @Test
+    public void continuesFromTheStoredNumber() {
+        MemoryStore store = new MemoryStore(41);
+        SequenceAllocator allocator = new SequenceAllocator(store, 10);
+
+        assertEquals("000042", allocator.nextFormatted());
+        assertEquals("000043", allocator.nextFormatted());
+        assertEquals(51, store.last);
+        assertEquals(1, store.reservations.get());
+    }
+
+    @Test
+    public void reservesOncePerBlock() {
+        MemoryStore store = new MemoryStore(0);
+        SequenceAllocator allocator = new SequenceAllocator(store, 10);
+
+        for (int expected = 1; expected <= 25; expected++) {
+            assertEquals(expected, allocator.next());
+        }
+        assertEquals(3, store.reservations.get());
+        assertEquals(30, store.last);
+    }
+
+    @Test
+    public void wrapsAfter999999WithoutZero() {
+        MemoryStore store = new MemoryStore(999995);
+        SequenceAllocator allocator = new SequenceAllocator(store, 3);
+
+        int[] expected = {999996, 999997, 999998, 999999, 1, 2, 3};
+        for (int value : expected) {
+            assertEquals(value, allocator.next());
+        }
+        // Blocks ending at 999998, 2 and 5
+        assertEquals(5, store.last);
+    }
+
+    @Test
+    public void neverReusesNumbersAfterACrash() {
+        MemoryStore store = new MemoryStore(100);
+        SequenceAllocator beforeCrash = new SequenceAllocator(store, 20);
+        int lastIssued = 0;
+        for (int i = 0; i < 5; i++) {
+            lastIssued = beforeCrash.next();
+        }
+
+        // The process dies with 15 numbers of the block unused
+        SequenceAllocator afterCrash = new SequenceAllocator(store, 20);
+        int first = afterCrash.next();
+
+        assertEquals(105, lastIssued);
+        assertEquals(121, first);
+    }
+
+    @Test
+    public void invalidateContinuesFromAValueSetByHand() {
+        MemoryStore store = new MemoryStore(0);
+        SequenceAllocator allocator = new SequenceAllocator(store, 10);
+        allocator.next();
+
+        store.last = 500;
+        allocator.invalidate();
+
+        assertEquals(501, allocator.next());
+    }
+
+    @Test
+    public void raiseMovesTheSequenceForwardOnly() {
+        MemoryStore store = new MemoryStore(0);
+        SequenceAllocator allocator = new SequenceAllocator(store, 10);
+        assertEquals(1, allocator.next());
+
+        allocator.raiseTo(500);
+        assertEquals(501, allocator.next());
+
+        // Below the reserved block, the numbers up to 510 may be in use already
+        allocator.raiseTo(200);
+        assertEquals(510, store.last);
+        assertEquals(511, allocator.next());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRaiseOutOfRange() {
+        new SequenceAllocator(new MemoryStore(0), 10).raiseTo(0);
+    }
+
+    @Test
+    public void parsesStoredValues() {
+        assertEquals(12, SequenceAllocator.parse("000012"));
+        assertEquals(0, SequenceAllocator.parse(null));
+        assertEquals(0, SequenceAllocator.parse("abc"));
+        assertEquals(0, SequenceAllocator.parse("1000000"));
+        assertEquals(1, SequenceAllocator.advance(999999, 1));
+        assertEquals(999999, SequenceAllocator.advance(999998, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBlocks() {
+        new SequenceAllocator(new MemoryStore(0), 0);
+    }
+
+    @Test
+    public void concurrentThreadsAndProcessesGetDistinctNumbers() throws Exception {
+        final int threads = 8;
+        final int perThread = 20000;
+        MemoryStore store = new MemoryStore(0);
+        // Two allocators on one store stand for two processes sharing the database
+        final SequenceAllocator[] processes = {
+            new SequenceAllocator(store, 50),
+            new SequenceAllocator(store, 50)
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final SequenceAllocator allocator = processes[t % processes.length];
+            results.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() throws Exception {
+                    start.await();
+                    int[] issued = new int[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        issued[i] = allocator.next();
+                    }
+                    return issued;
+                }
+            }));
+        }
+        start.countDown();
+
+        BitSet seen = new BitSet(SequenceAllocator.MAX + 1);
+        for (Future<int[]> result : results) {
+            int previous = 0;
+            for (int value : result.get(60, TimeUnit.SECONDS)) {
+                assertTrue("out of range: " + value, value >= SequenceAllocator.MIN && value <= SequenceAllocator.MAX);
+                assertFalse("issued twice: " + value, seen.get(value));
+                // Each thread sees its own numbers increase
+                assertTrue(value > previous);
+                seen.set(value);
+                previous = value;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(threads * perThread, seen.cardinality());
+        // At most one unused block per process
+        assertTrue(store.last - threads * perThread <= 50 * processes.length);
+        assertTrue(store.reservations.get() <= threads * perThread / 50 + processes.length);
+    }
+
+    private static final class MemoryStore implements SequenceAllocator.Store {
+        volatile int last;
+        final AtomicInteger reservations = new AtomicInteger();
+
+        MemoryStore(int last) {
+            this.last = last;
+        }
+
+        @Override
+        public synchronized int reserve(int count) {
+            reservations.incrementAndGet();
+            int previous = last;
+            last = SequenceAllocator.advance(previous, count);
+            return previous;
+        }
+
+        @Override
+        public synchronized void raise(int value) {
+            if (value > last) {
+                last = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package id.uniflo.uniedc.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import id.uniflo.uniedc.database.migration.DeferredTask;
+import id.uniflo.uniedc.database.migration.JdbcSchemaDatabase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Query plans of the transaction database queries on the current schema. A query or
+ * index change that makes one of them scan the table or sort the whole table fails
+ * here; when a plan changes on purpose, update the expected steps.
+ */
+public class TransactionQueryPlanTest {
+
+    private static final String TABLE = TransactionDatabaseHelper.TABLE_TRANSACTIONS;
+
+    private JdbcSchemaDatabase fresh;
+    private JdbcSchemaDatabase upgraded;
+
+    @Before
+    public void setUp() {
+        fresh = new JdbcSchemaDatabase();
+        TransactionSchema.create(fresh);
+        upgraded = new JdbcSchemaDatabase();
+        upgraded.executeScript("schema/transactions_v1.sql");
+        TransactionSchema.createRunner(Collections.<DeferredTask>emptyList(), 0)
+            .migrate(upgraded, 1, TransactionSchema.VERSION);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fresh.close();
+        upgraded.close();
+    }
+
+    @Test
+    public void lookupsById() {
+        assertPlan(select(TransactionQueries.BY_ID, null),
+            "SEARCH transactions USING INTEGER PRIMARY KEY (rowid=?)");
+        assertPlan(TransactionQueries.PAYLOAD_QUERY,
+            "SEARCH t USING INTEGER PRIMARY KEY (rowid=?)",
+            "SEARCH p USING INTEGER PRIMARY KEY (rowid=?)");
+    }
+
+    @Test
+    public void lookupByReferenceNumberUsesTheUniqueIndex() {
+        assertPlan(select(TransactionQueries.BY_REFERENCE_NUMBER, null),
+            "SEARCH transactions USING INDEX sqlite_autoindex_transactions_1 (reference_number=?)");
+    }
+
+    @Test
+    public void historyOfATypeNeedsNoSort() {
+        assertPlan(select(TransactionQueries.BY_TYPE, TransactionQueries.NEWEST_CREATED_FIRST),
+            "SEARCH transactions USING INDEX idx_type_created (transaction_type=?)");
+    }
+
+    @Test
+    public void batchRowsNeedNoSort() {
+        assertPlan(select(TransactionQueries.BY_BATCH, TransactionQueries.NEWEST_CREATED_FIRST),
+            "SEARCH transactions USING INDEX idx_batch_created (batch_number=?)");
+        assertPlan(select(TransactionQueries.BY_BATCH, TransactionQueries.BATCH_ORDER),
+            "SEARCH transactions USING INDEX idx_batch_created (batch_number=?)");
+        assertPlan(TransactionQueries.BATCH_COUNT_QUERY,
+            "SEARCH transactions USING COVERING INDEX idx_batch_created (batch_number=?)");
+    }
+
+    @Test
+    public void dateRangeSortsOnlyTheRange() {
+        assertPlan(select(TransactionQueries.BY_DATE_RANGE, TransactionQueries.NEWEST_CREATED_FIRST),
+            "SEARCH transactions USING INDEX idx_transaction_date (transaction_date>? AND transaction_date<?)",
+            "USE TEMP B-TREE FOR ORDER BY");
+    }
+
+    @Test
+    public void pagesAreRangeScans() {
+        assertPlan(select(null, TransactionQueries.KEY_DESCENDING) + " LIMIT 21",
+            "SCAN transactions USING INDEX idx_transaction_date");
+        assertPlan(select(TransactionQueries.OLDER_THAN_KEY, TransactionQueries.KEY_DESCENDING) + " LIMIT 21",
+            "SEARCH transactions USING INDEX idx_transaction_date (transaction_date<?)");
+        assertPlan(select(TransactionQueries.NEWER_THAN_KEY, TransactionQueries.KEY_ASCENDING) + " LIMIT 21",
+            "SEARCH transactions USING INDEX idx_transaction_date (transaction_date>?)");
+    }
+
+    @Test
+    public void cardLookups() {
+        assertPlan(select(TransactionQueries.BY_PAN_TOKEN, TransactionQueries.NEWEST_FIRST),
+            "SEARCH transactions USING INDEX idx_pan_token (pan_token=?)");
+        assertPlan(select(TransactionQueries.REFUND_CANDIDATES, TransactionQueries.NEWEST_FIRST),
+            "SEARCH transactions USING INDEX idx_pan_token (pan_token=? AND transaction_date>?)");
+        assertPlan(TransactionQueries.VELOCITY_QUERY,
+            "SEARCH transactions USING INDEX idx_pan_token (pan_token=? AND transaction_date>?)");
+        assertPlan(select(TransactionQueries.BY_CARD_LAST4, TransactionQueries.NEWEST_FIRST),
+            "SEARCH transactions USING INDEX idx_card_last4 (card_last4=?)",
+            "USE TEMP B-TREE FOR ORDER BY");
+        assertPlan(select(TransactionQueries.BY_CARD_DIGITS, TransactionQueries.NEWEST_FIRST),
+            "SEARCH transactions USING INDEX idx_card_last4 (card_last4=? AND card_bin=?)",
+            "USE TEMP B-TREE FOR ORDER BY");
+    }
+
+    @Test
+    public void summariesReadTheRollups() {
+        assertPlan(TransactionQueries.SUMMARY_BY_DAY_QUERY,
+            "SEARCH transaction_rollups USING PRIMARY KEY (business_day=?)",
+            "USE TEMP B-TREE FOR GROUP BY");
+        assertPlan(TransactionQueries.SUMMARY_BY_BATCH_QUERY,
+            "SEARCH transaction_rollups USING INDEX idx_rollup_batch (batch_number=?)",
+            "USE TEMP B-TREE FOR GROUP BY");
+    }
+
+    @Test
+    public void retentionFindsSettledBatchesFromTheIndex() {
+        assertPlan(TransactionQueries.SETTLED_BATCHES_QUERY,
+            "SEARCH transactions USING COVERING INDEX idx_type_created (transaction_type=? AND created_at<?)",
+            "USE TEMP B-TREE FOR GROUP BY");
+        assertPlan(TransactionQueries.lastIdOfChunk(TransactionQueries.SETTLED_BATCH_ROWS, 200),
+            "SEARCH transactions USING COVERING INDEX idx_batch_created (batch_number=? AND created_at<?)",
+            "USE TEMP B-TREE FOR ORDER BY");
+        assertPlan(TransactionQueries.lastIdOfChunk(TransactionQueries.UNBATCHED_ROWS, 200),
+            "SEARCH transactions USING COVERING INDEX idx_batch_created (batch_number=? AND created_at<?)",
+            "USE TEMP B-TREE FOR ORDER BY");
+    }
+
+    @Test
+    public void upgradedDatabaseUsesTheSameIndexesOnceBuilt() {
+        String byBatch = select(TransactionQueries.BY_BATCH, TransactionQueries.NEWEST_CREATED_FIRST);
+        // Until the deferred build the old single column index serves the query
+        assertEquals(Arrays.asList("SEARCH transactions USING INDEX idx_batch_number (batch_number=?)",
+            "USE TEMP B-TREE FOR ORDER BY"), upgraded.queryPlan(byBatch, null));
+
+        TransactionSchema.createRunner(Collections.<DeferredTask>emptyList(), 0).runPendingTasks(upgraded, 0);
+
+        assertEquals(fresh.queryPlan(byBatch, null), upgraded.queryPlan(byBatch, null));
+        String byType = select(TransactionQueries.BY_TYPE, TransactionQueries.NEWEST_CREATED_FIRST);
+        assertEquals(fresh.queryPlan(byType, null), upgraded.queryPlan(byType, null));
+        assertTrue(upgraded.stringsForQuery(
+            "SELECT name FROM sqlite_master WHERE name IN ('idx_type', 'idx_batch_number')", null).isEmpty());
+    }
+
+    private void assertPlan(String sql, String... steps) {
+        assertEquals(sql, Arrays.asList(steps), tableSteps(fresh.queryPlan(sql, null)));
+    }
+
+    /**
+     * The table and sort steps of a plan. Subquery steps and the join marker are left
+     * out, their wording differs between SQLite versions.
+     */
+    private static List<String> tableSteps(List<String> plan) {
+        List<String> steps = new ArrayList<>();
+        for (String step : plan) {
+            if (!step.toLowerCase(Locale.ROOT).contains("subquery")) {
+                steps.add(step.replace(" LEFT-JOIN", ""));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * The statement SQLiteDatabase.query builds for a selection and ordering
+     */
+    private static String select(String selection, String orderBy) {
+        return "SELECT * FROM " + TABLE +
+            (selection != null ? " WHERE " + selection : "") +
+            (orderBy != null ? " ORDER BY " + orderBy : "");
+    }
+}
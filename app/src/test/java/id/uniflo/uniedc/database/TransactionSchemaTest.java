@@ -0,0 +1,189 @@
+package id.uniflo.uniedc.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import id.uniflo.uniedc.database.migration.DeferredTask;
+import id.uniflo.uniedc.database.migration.JdbcSchemaDatabase;
+import id.uniflo.uniedc.database.migration.MigrationRunner;
+import id.uniflo.uniedc.database.migration.SchemaDatabase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays the transaction database migrations on fixtures of the released schemas
+ */
+public class TransactionSchemaTest {
+
+    private static final String V1_FIXTURE = "schema/transactions_v1.sql";
+
+    // Columns, types, constraints and indexes of every table
+    private static final String DESCRIBE_TABLES =
+        "SELECT m.name || '.' || p.name || ' ' || p.type || ' notnull=' || p.\"notnull\" || " +
+        "' default=' || IFNULL(p.dflt_value, '') || ' pk=' || p.pk " +
+        "FROM sqlite_master m, pragma_table_info(m.name) p " +
+        "WHERE m.type = 'table' AND m.name NOT LIKE 'sqlite_%' ORDER BY 1";
+
+    private static final String DESCRIBE_INDEXES =
+        "SELECT m.tbl_name || '.' || m.name || ' (' || group_concat(i.name, ', ') || ')' " +
+        "FROM sqlite_master m, pragma_index_info(m.name) i " +
+        "WHERE m.type = 'index' GROUP BY m.name ORDER BY 1";
+
+    private JdbcSchemaDatabase upgraded;
+    private JdbcSchemaDatabase fresh;
+
+    @Before
+    public void setUp() {
+        upgraded = new JdbcSchemaDatabase();
+        upgraded.executeScript(V1_FIXTURE);
+        fresh = new JdbcSchemaDatabase();
+        TransactionSchema.create(fresh);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        upgraded.close();
+        fresh.close();
+    }
+
+    @Test
+    public void everyReleasedVersionHasAPath() {
+        MigrationRunner runner = TransactionSchema.createRunner(Collections.<DeferredTask>emptyList(), 0);
+        for (int version = 1; version < TransactionSchema.VERSION; version++) {
+            assertEquals(TransactionSchema.VERSION - version, runner.getPath(version, TransactionSchema.VERSION).size());
+        }
+    }
+
+    @Test
+    public void upgradeKeepsTheOpenBatch() {
+        long count = upgraded.longForQuery("SELECT COUNT(*) FROM transactions", null);
+        long amount = upgraded.longForQuery("SELECT SUM(amount) FROM transactions", null);
+
+        migrateToLatest();
+
+        assertEquals(5, count);
+        assertEquals(count, upgraded.longForQuery("SELECT COUNT(*) FROM transactions", null));
+        assertEquals(amount, upgraded.longForQuery("SELECT SUM(amount) FROM transactions", null));
+        assertEquals("REF0003", upgraded.stringsForQuery(
+            "SELECT void_reference_number FROM transactions WHERE reference_number = 'REF0002'", null).get(0));
+    }
+
+    @Test
+    public void upgradedSchemaMatchesFreshInstall() {
+        migrateToLatest();
+        // Indexes on new columns are built by deferred tasks
+        runner().runPendingTasks(upgraded, 0);
+
+        assertEquals(describe(fresh, DESCRIBE_TABLES), describe(upgraded, DESCRIBE_TABLES));
+        assertEquals(describe(fresh, DESCRIBE_INDEXES), describe(upgraded, DESCRIBE_INDEXES));
+    }
+
+    @Test
+    public void rollupsAreFilledInTheBackground() {
+        migrateToLatest();
+        assertEquals(0, upgraded.longForQuery("SELECT COUNT(*) FROM transaction_rollups", null));
+        assertEquals(Arrays.asList(TransactionSchema.TASK_REBUILD_ROLLUPS, TransactionSchema.TASK_MOVE_PAYLOADS,
+            TransactionSchema.TASK_CARD_SUFFIX, TransactionSchema.TASK_TOKENIZE_PANS,
+            TransactionSchema.TASK_INDEX_PAN_TOKEN, TransactionSchema.TASK_INDEX_CARD_LAST4,
+            TransactionSchema.TASK_INDEX_TYPE_CREATED, TransactionSchema.TASK_INDEX_BATCH_CREATED),
+            runner().getPendingTasks(upgraded));
+
+        final int[] runs = new int[1];
+        MigrationRunner runner = TransactionSchema.createRunner(Collections.singletonList(
+            new DeferredTask(TransactionSchema.TASK_REBUILD_ROLLUPS) {
+                @Override
+                protected long runChunk(SchemaDatabase db, long position) {
+                    runs[0]++;
+                    return DONE;
+                }
+            }), 0);
+        assertTrue(runner.runPendingTasks(upgraded, 0));
+        assertTrue(runner.runPendingTasks(upgraded, 0));
+
+        assertEquals(1, runs[0]);
+        // Only the task needing the token key is left
+        assertEquals(Collections.singletonList(TransactionSchema.TASK_TOKENIZE_PANS),
+            runner.getPendingTasks(upgraded));
+    }
+
+    @Test
+    public void payloadsMoveOutOfTheTransactionRows() {
+        migrateToLatest();
+        String inline = "SELECT COUNT(*) FROM transactions WHERE raw_request IS NOT NULL " +
+            "OR raw_response IS NOT NULL OR emv_data IS NOT NULL OR pin_block IS NOT NULL";
+        assertEquals(1, upgraded.longForQuery(inline, null));
+
+        // Written by the new code before the move reached the row
+        upgraded.execSQL("INSERT INTO transaction_payloads (transaction_id, raw_response) VALUES (1, 'NEWER')");
+
+        runner().runPendingTasks(upgraded, 0);
+
+        assertEquals(0, upgraded.longForQuery(inline, null));
+        assertEquals(Collections.singletonList("NEWER"), upgraded.stringsForQuery(
+            "SELECT IFNULL(raw_response, '') FROM transaction_payloads", null));
+        assertEquals(Arrays.asList(TransactionSchema.TASK_REBUILD_ROLLUPS, TransactionSchema.TASK_TOKENIZE_PANS),
+            runner().getPendingTasks(upgraded));
+    }
+
+    @Test
+    public void cardDigitsAreFilledInTheBackground() {
+        migrateToLatest();
+        upgraded.execSQL("INSERT INTO transactions (transaction_type, status, amount, card_number, " +
+            "transaction_date, created_at, updated_at) VALUES ('SALE', 'SUCCESS', 1000, '4111 1111-1111 1111', 1, 1, 1)");
+        upgraded.execSQL("INSERT INTO transactions (transaction_type, status, amount, card_number, " +
+            "transaction_date, created_at, updated_at) VALUES ('SALE', 'SUCCESS', 1000, '****1234', 1, 1, 1)");
+
+        runner().runPendingTasks(upgraded, 0);
+
+        assertEquals(Arrays.asList("0119 476173", "0119 476173", "0119 476173", "1111 411111", "1234 -",
+                "4444 522222", "4444 522222"),
+            upgraded.stringsForQuery("SELECT card_last4 || ' ' || IFNULL(card_bin, '-') FROM transactions " +
+                "WHERE card_number IS NOT NULL ORDER BY 1", null));
+        assertEquals(2, upgraded.longForQuery(
+            "SELECT COUNT(*) FROM transactions WHERE card_last4 = '4444' AND card_bin = '522222'", null));
+    }
+
+    @Test
+    public void payloadMoveResumes() {
+        migrateToLatest();
+        upgraded.execSQL("DELETE FROM schema_tasks WHERE name = ?", new Object[]{TransactionSchema.TASK_REBUILD_ROLLUPS});
+        for (int i = 0; i < 500; i++) {
+            upgraded.execSQL("INSERT INTO transactions (transaction_type, status, amount, emv_data, " +
+                "transaction_date, created_at, updated_at) VALUES ('SALE', 'SUCCESS', 1000, '9F2701', 1, 1, 1)");
+        }
+
+        assertFalse(runner().runPendingTasks(upgraded, 1));
+        assertTrue(runner().runPendingTasks(upgraded, 0));
+
+        assertEquals(501, upgraded.longForQuery("SELECT COUNT(*) FROM transaction_payloads", null));
+        assertEquals(500, upgraded.longForQuery(
+            "SELECT COUNT(*) FROM transaction_payloads WHERE emv_data = '9F2701'", null));
+    }
+
+    @Test
+    public void freshInstallHasNoPendingTasks() {
+        assertTrue(runner().getPendingTasks(fresh).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void downgradeIsRejected() {
+        runner().migrate(upgraded, TransactionSchema.VERSION, 1);
+    }
+
+    private void migrateToLatest() {
+        runner().migrate(upgraded, 1, TransactionSchema.VERSION);
+    }
+
+    private static MigrationRunner runner() {
+        return TransactionSchema.createRunner(Collections.<DeferredTask>emptyList(), 0);
+    }
+
+    private static List<String> describe(JdbcSchemaDatabase db, String query) {
+        return db.stringsForQuery(query, null);
+    }
+}
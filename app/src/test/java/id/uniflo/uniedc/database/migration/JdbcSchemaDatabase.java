@@ -0,0 +1,178 @@
+package id.uniflo.uniedc.database.migration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SchemaDatabase} on an in-memory SQLite database through JDBC, for running
+ * migrations on the JVM. Nested transactions behave like Android's: only the outer
+ * call commits, and it rolls back if any nested call did not mark itself successful.
+ */
+public class JdbcSchemaDatabase implements SchemaDatabase, AutoCloseable {
+
+    private final Connection connection;
+    private int depth;
+    private boolean successful;
+    private boolean failed;
+
+    public JdbcSchemaDatabase() {
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Run a fixture script from the test resources, statements end with ';' at the end
+     * of a line and lines starting with "--" are comments
+     */
+    public void executeScript(String resource) {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalArgumentException("Fixture not found: " + resource);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            StringBuilder statement = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().startsWith("--")) {
+                    continue;
+                }
+                statement.append(line).append('\n');
+                if (line.trim().endsWith(";")) {
+                    execSQL(statement.toString().trim());
+                    statement.setLength(0);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                statement.setObject(i + 1, bindArgs[i]);
+            }
+            statement.execute();
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public long longForQuery(String sql, String[] selectionArgs) {
+        try (PreparedStatement statement = prepare(sql, selectionArgs);
+             ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+    }
+
+    @Override
+    public List<String> stringsForQuery(String sql, String[] selectionArgs) {
+        List<String> values = new ArrayList<>();
+        try (PreparedStatement statement = prepare(sql, selectionArgs);
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                values.add(result.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+        return values;
+    }
+
+    /**
+     * @return the detail lines of EXPLAIN QUERY PLAN, in the order SQLite reports them
+     */
+    public List<String> queryPlan(String sql, String[] selectionArgs) {
+        List<String> steps = new ArrayList<>();
+        try (PreparedStatement statement = prepare("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                steps.add(result.getString("detail"));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(sql, e);
+        }
+        return steps;
+    }
+
+    @Override
+    public void beginTransaction() {
+        if (depth++ == 0) {
+            try {
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            failed = false;
+        }
+        successful = false;
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        successful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        if (!successful) {
+            failed = true;
+        }
+        successful = false;
+        if (--depth > 0) {
+            return;
+        }
+        try {
+            if (failed) {
+                connection.rollback();
+            } else {
+                connection.commit();
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    private PreparedStatement prepare(String sql, String[] selectionArgs) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        if (selectionArgs != null) {
+            for (int i = 0; i < selectionArgs.length; i++) {
+                statement.setString(i + 1, selectionArgs[i]);
+            }
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,160 @@
+package id.uniflo.uniedc.database.migration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MigrationRunnerTest {
+
+    private static final String BACKFILL = "backfill_last4";
+
+    private JdbcSchemaDatabase db;
+
+    @Before
+    public void setUp() {
+        db = new JdbcSchemaDatabase();
+        db.execSQL("CREATE TABLE cards (_id INTEGER PRIMARY KEY AUTOINCREMENT, card_number TEXT)");
+        for (int i = 0; i < 1000; i++) {
+            db.execSQL("INSERT INTO cards (card_number) VALUES (?)", new Object[]{"476173900101" + (1000 + i)});
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void migrateRunsStepsInOrder() {
+        MigrationRunner runner = new MigrationRunner(Arrays.asList(
+            new AddColumn(2, "last4"), new AddColumn(1, "bin")), Collections.<DeferredTask>emptyList());
+
+        List<Migration> path = runner.getPath(1, 3);
+        assertEquals(1, path.get(0).getStartVersion());
+        assertEquals(2, path.get(1).getStartVersion());
+
+        runner.migrate(db, 1, 3);
+        assertTrue(Migration.hasColumn(db, "cards", "bin"));
+        assertTrue(Migration.hasColumn(db, "cards", "last4"));
+        assertEquals(1000, db.longForQuery("SELECT COUNT(*) FROM cards", null));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingStepIsRejected() {
+        new MigrationRunner(Collections.singletonList(new AddColumn(1, "bin")), Collections.<DeferredTask>emptyList())
+            .migrate(db, 1, 3);
+    }
+
+    @Test
+    public void failedStepRollsBackThePath() {
+        Migration failing = new Migration(2) {
+            @Override
+            public void migrate(SchemaDatabase db) {
+                throw new IllegalStateException("step failed");
+            }
+        };
+        MigrationRunner runner = new MigrationRunner(Arrays.asList(new AddColumn(1, "bin"), failing),
+            Collections.<DeferredTask>emptyList());
+        try {
+            runner.migrate(db, 1, 3);
+            fail();
+        } catch (IllegalStateException expected) {
+            // the first step is rolled back with the second
+        }
+        assertFalse(Migration.hasColumn(db, "cards", "bin"));
+    }
+
+    @Test
+    public void addColumnCanRunTwice() {
+        AddColumn step = new AddColumn(1, "last4");
+        step.migrate(db);
+        step.migrate(db);
+        assertTrue(Migration.hasColumn(db, "cards", "last4"));
+    }
+
+    @Test
+    public void backfillResumesAfterInterruption() {
+        new AddColumn(1, "last4").migrate(db);
+        MigrationRunner.enqueue(db, BACKFILL);
+
+        assertFalse(newRunner().runPendingTasks(db, 3));
+        assertEquals(300, filledRows());
+        assertEquals(Collections.singletonList(BACKFILL), newRunner().getPendingTasks(db));
+
+        // A new process continues from the committed position
+        assertTrue(newRunner().runPendingTasks(db, 0));
+        assertEquals(1000, filledRows());
+        assertTrue(newRunner().getPendingTasks(db).isEmpty());
+        assertEquals("1999", db.stringsForQuery("SELECT last4 FROM cards WHERE _id = 1000", null).get(0));
+    }
+
+    @Test
+    public void backfillReachesRowsInsertedWhileRunning() {
+        new AddColumn(1, "last4").migrate(db);
+        MigrationRunner.enqueue(db, BACKFILL);
+
+        newRunner().runPendingTasks(db, 5);
+        db.execSQL("INSERT INTO cards (card_number) VALUES ('5222220000004444')");
+        newRunner().runPendingTasks(db, 0);
+
+        assertEquals(1001, filledRows());
+    }
+
+    @Test
+    public void indexBuildRunsAfterOpen() {
+        MigrationRunner runner = new MigrationRunner(Collections.<Migration>emptyList(), Collections.singletonList(
+            new IndexBuildTask("idx_card", "CREATE INDEX IF NOT EXISTS idx_cards_number ON cards (card_number)")));
+        MigrationRunner.enqueue(db, "idx_card");
+
+        assertTrue(runner.runPendingTasks(db, 0));
+        assertEquals(1, db.longForQuery(
+            "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = 'idx_cards_number'", null));
+    }
+
+    @Test
+    public void unknownTaskStaysPending() {
+        MigrationRunner.enqueue(db, "from_a_newer_build");
+        assertTrue(newRunner().runPendingTasks(db, 0));
+        assertEquals(Collections.singletonList("from_a_newer_build"), newRunner().getPendingTasks(db));
+    }
+
+    @Test
+    public void noTaskTableMeansNothingPending() {
+        assertTrue(newRunner().getPendingTasks(db).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateStepIsRejected() {
+        new MigrationRunner(Arrays.asList(new AddColumn(1, "bin"), new AddColumn(1, "last4")),
+            Collections.<DeferredTask>emptyList());
+    }
+
+    private MigrationRunner newRunner() {
+        return new MigrationRunner(Collections.<Migration>emptyList(), Collections.singletonList(
+            new BackfillTask(BACKFILL, "cards", "last4 = substr(card_number, -4)", "last4 IS NULL", 100)));
+    }
+
+    private long filledRows() {
+        return db.longForQuery("SELECT COUNT(*) FROM cards WHERE last4 IS NOT NULL", null);
+    }
+
+    private static class AddColumn extends Migration {
+        private final String column;
+
+        AddColumn(int startVersion, String column) {
+            super(startVersion);
+            this.column = column;
+        }
+
+        @Override
+        public void migrate(SchemaDatabase db) {
+            addColumn(db, "cards", column, "TEXT");
+        }
+    }
+}
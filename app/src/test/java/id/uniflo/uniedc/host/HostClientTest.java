@@ -0,0 +1,82 @@
+package id.uniflo.uniedc.host;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * The HTTP exchange of the host client against a loopback host.
+ */
+public class HostClientTest {
+
+    private static final HostClient.Clock CLOCK = () -> System.nanoTime() / 1000000;
+
+    private LoopbackHttpHost host;
+
+    @Before
+    public void setUp() throws IOException {
+        host = new LoopbackHttpHost();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        host.close();
+    }
+
+    @Test
+    public void headReplyHasNoBodyDespiteItsContentLength() throws IOException {
+        HttpURLConnection conn = open("HEAD");
+        int code = conn.getResponseCode();
+
+        byte[] body = HostClient.readBody(conn, "HEAD", code);
+
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        assertEquals(LoopbackHttpHost.BODY.length(), conn.getContentLength());
+        assertEquals(0, body.length);
+    }
+
+    @Test
+    public void headKeepsTheConnectionForTheNextRequest() throws IOException {
+        HttpURLConnection head = open("HEAD");
+        HostClient.readBody(head, "HEAD", head.getResponseCode());
+
+        HttpURLConnection get = open("GET");
+        byte[] body = HostClient.readBody(get, "GET", get.getResponseCode());
+
+        assertEquals(LoopbackHttpHost.BODY, new String(body, StandardCharsets.UTF_8));
+        assertEquals(2, host.requests());
+        assertEquals(1, host.acceptedConnections());
+    }
+
+    @Test
+    public void probedHostIsHealthyAndGoesFirst() {
+        // Never probed, ranked at the assumed round trip
+        HostEndpoint unprobed = new HostEndpoint("10.0.0.1", 9000, false);
+        HostEndpoint probed = host.endpoint();
+        HostClient client = new HostClient(null, CLOCK);
+
+        client.runProbe(probed);
+        long now = CLOCK.elapsedMillis();
+
+        assertEquals(1, host.requests());
+        assertTrue(client.selector.heardFromWithin(probed, HostSelector.PROBE_INTERVAL_MILLIS, now));
+        assertFalse(client.selector.needsProbe(probed, now));
+        assertEquals(Arrays.asList(probed, unprobed), client.selector.order(Arrays.asList(unprobed, probed), now));
+    }
+
+    private HttpURLConnection open(String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) host.endpoint().url("/").openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(5000);
+        conn.setUseCaches(false);
+        return conn;
+    }
+}
@@ -0,0 +1,105 @@
+package id.uniflo.uniedc.host;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HostSelectorTest {
+
+    private static final HostEndpoint PRIMARY = new HostEndpoint("10.0.0.1", 9000, false);
+    private static final HostEndpoint SECONDARY = new HostEndpoint("10.0.0.2", 9000, false);
+    private static final List<HostEndpoint> HOSTS = Arrays.asList(PRIMARY, SECONDARY);
+
+    private final HostSelector selector = new HostSelector();
+
+    @Test
+    public void unknownHostsKeepTheConfiguredOrder() {
+        assertEquals(HOSTS, selector.order(HOSTS, 1000));
+    }
+
+    @Test
+    public void fasterHostGoesFirst() {
+        selector.recordSuccess(PRIMARY, 400, 1000);
+        selector.recordSuccess(SECONDARY, 80, 1000);
+
+        assertEquals(Arrays.asList(SECONDARY, PRIMARY), selector.order(HOSTS, 2000));
+    }
+
+    @Test
+    public void roundTripIsAveraged() {
+        selector.recordSuccess(PRIMARY, 100, 1000);
+        selector.recordSuccess(SECONDARY, 150, 1000);
+        // One slow probe does not outweigh the history
+        selector.recordSuccess(PRIMARY, 300, 2000);
+
+        assertEquals(PRIMARY, selector.order(HOSTS, 3000).get(0));
+    }
+
+    @Test
+    public void failedHostCoolsDownAndComesBack() {
+        selector.recordSuccess(PRIMARY, 50, 1000);
+        selector.recordSuccess(SECONDARY, 200, 1000);
+
+        selector.recordFailure(PRIMARY, 2000);
+        assertEquals(SECONDARY, selector.order(HOSTS, 2500).get(0));
+        assertFalse(selector.needsProbe(PRIMARY, 2500));
+
+        // Due for a probe once cooled down, and back in front when it answers
+        assertTrue(selector.needsProbe(PRIMARY, 3000));
+        selector.recordSuccess(PRIMARY, 50, 3000);
+        assertEquals(PRIMARY, selector.order(HOSTS, 3000).get(0));
+    }
+
+    @Test
+    public void cooldownDoublesWithFailuresInARow() {
+        selector.recordFailure(PRIMARY, 0);
+        selector.recordFailure(PRIMARY, 1000);
+        selector.recordFailure(PRIMARY, 3000);
+
+        assertFalse(selector.needsProbe(PRIMARY, 6999));
+        assertTrue(selector.needsProbe(PRIMARY, 7000));
+    }
+
+    @Test
+    public void errorRatePenalizesAFlakyHost() {
+        selector.recordSuccess(PRIMARY, 100, 1000);
+        selector.recordSuccess(SECONDARY, 150, 1000);
+        selector.recordFailure(PRIMARY, 1000);
+        selector.recordSuccess(PRIMARY, -1, 1100);
+
+        // Out of cooldown, but the error rate still counts
+        assertEquals(SECONDARY, selector.order(HOSTS, 5000).get(0));
+
+        for (int i = 0; i < 10; i++) {
+            selector.recordSuccess(PRIMARY, -1, 6000 + i);
+        }
+        assertEquals(PRIMARY, selector.order(HOSTS, 7000).get(0));
+    }
+
+    @Test
+    public void healthyHostIsProbedAfterTheInterval() {
+        assertTrue(selector.needsProbe(PRIMARY, 1000));
+
+        selector.recordSuccess(PRIMARY, -1, 1000);
+
+        assertFalse(selector.needsProbe(PRIMARY, 1000 + HostSelector.PROBE_INTERVAL_MILLIS - 1));
+        assertTrue(selector.needsProbe(PRIMARY, 1000 + HostSelector.PROBE_INTERVAL_MILLIS));
+    }
+
+    @Test
+    public void hedgeDelayFollowsTheRoundTrip() {
+        assertEquals(HostSelector.MAX_HEDGE_MILLIS / 2, selector.hedgeDelayMillis(PRIMARY, 1000));
+
+        selector.recordSuccess(PRIMARY, 300, 1000);
+        assertEquals(600, selector.hedgeDelayMillis(PRIMARY, 1000));
+
+        selector.recordSuccess(SECONDARY, 10, 1000);
+        assertEquals(HostSelector.MIN_HEDGE_MILLIS, selector.hedgeDelayMillis(SECONDARY, 1000));
+
+        selector.recordFailure(PRIMARY, 2000);
+        assertEquals(HostSelector.MIN_HEDGE_MILLIS, selector.hedgeDelayMillis(PRIMARY, 2500));
+    }
+}
@@ -0,0 +1,300 @@
+package id.uniflo.uniedc.host;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import id.uniflo.uniedc.iso8583.IsoMessage;
+import id.uniflo.uniedc.iso8583.IsoPacker;
+import id.uniflo.uniedc.iso8583.MessageSpec;
+import id.uniflo.uniedc.iso8583.TransactionMessages;
+
+import static org.junit.Assert.*;
+
+/**
+ * The channel against a loopback host: matching by STAN, timeouts, echo tests and
+ * reconnects.
+ */
+public class IsoChannelTest {
+
+    private static final String TERMINAL_ID = "12345678";
+    private static final long TIMEOUT = 5000;
+
+    private final IsoPacker packer = new IsoPacker(MessageSpec.STANDARD);
+    private final AtomicInteger trace = new AtomicInteger(900000);
+    private LoopbackIsoHost host;
+    private IsoChannel channel;
+
+    @Before
+    public void setUp() throws IOException {
+        host = new LoopbackIsoHost(packer);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        host.close();
+    }
+
+    @Test
+    public void saleGetsItsResponse() throws IOException {
+        channel = start(IsoChannel.builder(host.endpoint(), packer).idleEchoMillis(0));
+
+        IsoMessage response = channel.execute(sale("000123"), TIMEOUT);
+
+        assertEquals(TransactionMessages.MTI_FINANCIAL_RESPONSE, response.getMti());
+        assertEquals("000123", response.getString(TransactionMessages.FIELD_STAN));
+        assertTrue(TransactionMessages.isApproved(response));
+        assertTrue(channel.isConnected());
+    }
+
+    @Test
+    public void responsesOutOfOrderAreMatchedByStan() throws Exception {
+        channel = start(IsoChannel.builder(host.endpoint(), packer).idleEchoMillis(0));
+        host.setHandler(request -> null);
+
+        String[] stans = {"000001", "000002", "000003"};
+        Map<String, String> matched = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(stans.length);
+        for (String stan : stans) {
+            channel.send(sale(stan), TIMEOUT, new IsoChannel.Callback() {
+                @Override
+                public void onResponse(IsoMessage request, IsoMessage response) {
+                    matched.put(request.getString(TransactionMessages.FIELD_STAN),
+                        response.getString(TransactionMessages.FIELD_STAN));
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(IsoMessage request, IOException e) {
+                    done.countDown();
+                }
+            });
+        }
+        IsoMessage[] received = new IsoMessage[stans.length];
+        for (int i = 0; i < stans.length; i++) {
+            received[i] = host.nextReceived(TIMEOUT);
+            assertNotNull(received[i]);
+        }
+        for (int i = stans.length - 1; i >= 0; i--) {
+            host.send(LoopbackIsoHost.approve(received[i]));
+        }
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        for (String stan : stans) {
+            assertEquals(stan, matched.get(stan));
+        }
+        assertEquals(1, host.acceptedConnections());
+    }
+
+    @Test
+    public void unansweredRequestTimesOut() throws Exception {
+        channel = start(IsoChannel.builder(host.endpoint(), packer).idleEchoMillis(0));
+        host.setHandler(request -> null);
+
+        try {
+            channel.execute(sale("000007"), 300);
+            fail("Expected a timeout");
+        } catch (SocketTimeoutException expected) {
+            // no response
+        }
+
+        // The late response is dropped and the connection stays usable
+        host.send(LoopbackIsoHost.approve(host.nextReceived(TIMEOUT)));
+        host.setHandler(LoopbackIsoHost::approve);
+        assertEquals("000008", channel.execute(sale("000008"), TIMEOUT).getString(TransactionMessages.FIELD_STAN));
+        assertEquals(1, host.acceptedConnections());
+    }
+
+    @Test
+    public void idleConnectionIsEchoTested() throws Exception {
+        channel = start(IsoChannel.builder(host.endpoint(), packer)
+            .echo(() -> String.valueOf(trace.incrementAndGet()), TERMINAL_ID)
+            .idleEchoMillis(200));
+
+        IsoMessage echo = host.nextReceived(TIMEOUT);
+
+        assertNotNull(echo);
+        assertEquals(TransactionMessages.MTI_NETWORK_REQUEST, echo.getMti());
+        assertEquals(TransactionMessages.NETWORK_ECHO, echo.getString(TransactionMessages.FIELD_NETWORK_CODE));
+        assertEquals("900001", echo.getString(TransactionMessages.FIELD_STAN));
+        assertEquals(TERMINAL_ID, echo.getString(TransactionMessages.FIELD_TERMINAL_ID));
+    }
+
+    @Test
+    public void unansweredEchoReopensTheConnection() throws Exception {
+        host.setHandler(request -> null);
+        channel = start(IsoChannel.builder(host.endpoint(), packer)
+            .echo(() -> String.valueOf(trace.incrementAndGet()), TERMINAL_ID)
+            .idleEchoMillis(100)
+            .echoTimeoutMillis(200)
+            .reconnectBackoff(50, 100));
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (host.acceptedConnections() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(host.acceptedConnections() >= 2);
+    }
+
+    @Test
+    public void failingTraceSourceSkipsTheEchoOnly() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        channel = start(IsoChannel.builder(host.endpoint(), packer)
+            .echo(() -> {
+                if (calls.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Sequence store unavailable");
+                }
+                return String.valueOf(trace.incrementAndGet());
+            }, TERMINAL_ID)
+            .idleEchoMillis(100));
+
+        IsoMessage echo = host.nextReceived(TIMEOUT);
+
+        assertNotNull(echo);
+        assertEquals("900001", echo.getString(TransactionMessages.FIELD_STAN));
+        assertTrue(calls.get() >= 2);
+        IsoMessage response = channel.execute(sale("000321"), TIMEOUT);
+        assertEquals("000321", response.getString(TransactionMessages.FIELD_STAN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void echoNeedsATerminalId() {
+        IsoChannel.builder(host.endpoint(), packer).echo(() -> "000001", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void echoNeedsATraceSource() {
+        IsoChannel.builder(host.endpoint(), packer).echo(null, TERMINAL_ID);
+    }
+
+    @Test
+    public void hostEchoIsAnswered() throws Exception {
+        channel = start(IsoChannel.builder(host.endpoint(), packer).idleEchoMillis(0));
+        channel.execute(sale("000001"), TIMEOUT);
+        host.nextReceived(TIMEOUT);
+
+        host.send(TransactionMessages.echo("445566", TERMINAL_ID, new IsoMessage()));
+
+        IsoMessage answer = host.nextReceived(TIMEOUT);
+        assertNotNull(answer);
+        assertEquals(TransactionMessages.MTI_NETWORK_RESPONSE, answer.getMti());
+        assertEquals("445566", answer.getString(TransactionMessages.FIELD_STAN));
+        assertTrue(TransactionMessages.isApproved(answer));
+    }
+
+    @Test
+    public void writtenRequestFailsWhenTheConnectionDropsAndNextOneReconnects() throws Exception {
+        channel = start(IsoChannel.builder(host.endpoint(), packer)
+            .idleEchoMillis(0)
+            .reconnectBackoff(50, 100));
+        host.setHandler(request -> null);
+
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        channel.send(sale("000011"), TIMEOUT, new IsoChannel.Callback() {
+            @Override
+            public void onResponse(IsoMessage request, IsoMessage response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(IsoMessage request, IOException e) {
+                failure.set(e);
+                done.countDown();
+            }
+        });
+        assertNotNull(host.nextReceived(TIMEOUT));
+        host.dropConnections();
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNotNull(failure.get());
+        assertFalse(failure.get() instanceof SocketTimeoutException);
+
+        host.setHandler(LoopbackIsoHost::approve);
+        assertTrue(TransactionMessages.isApproved(channel.execute(sale("000012"), TIMEOUT)));
+        assertEquals(2, host.acceptedConnections());
+    }
+
+    @Test
+    public void sameStanTwiceInFlightIsRejected() throws IOException {
+        channel = start(IsoChannel.builder(host.endpoint(), packer).idleEchoMillis(0));
+        host.setHandler(request -> null);
+        IsoChannel.Callback ignore = new IsoChannel.Callback() {
+            @Override
+            public void onResponse(IsoMessage request, IsoMessage response) {
+            }
+
+            @Override
+            public void onFailure(IsoMessage request, IOException e) {
+            }
+        };
+        channel.send(sale("000021"), TIMEOUT, ignore);
+
+        try {
+            channel.send(sale("000021"), TIMEOUT, ignore);
+            fail("Expected the duplicate to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // already in flight
+        }
+    }
+
+    @Test
+    public void closeFailsRequestsInFlight() throws Exception {
+        channel = start(IsoChannel.builder(host.endpoint(), packer).idleEchoMillis(0));
+        host.setHandler(request -> null);
+        CountDownLatch failed = new CountDownLatch(1);
+        channel.send(sale("000031"), TIMEOUT, new IsoChannel.Callback() {
+            @Override
+            public void onResponse(IsoMessage request, IsoMessage response) {
+            }
+
+            @Override
+            public void onFailure(IsoMessage request, IOException e) {
+                failed.countDown();
+            }
+        });
+        assertNotNull(host.nextReceived(TIMEOUT));
+
+        channel.close();
+
+        assertTrue(failed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tlsEndpointIsRejected() {
+        IsoChannel.builder(new HostEndpoint("127.0.0.1", 443, true), packer).build();
+    }
+
+    private IsoChannel start(IsoChannel.Builder builder) throws IOException {
+        IsoChannel started = builder.build();
+        started.start();
+        return started;
+    }
+
+    private static IsoMessage sale(String stan) {
+        TransactionMessages.Request request = new TransactionMessages.Request();
+        request.stan = stan;
+        request.localTime = "143015";
+        request.localDate = "1018";
+        request.terminalId = TERMINAL_ID;
+        request.merchantId = "123456789012345";
+        request.pan = "4761739001010119";
+        request.expiry = "2212";
+        request.amount = 1500000;
+        request.invoiceNumber = "000045";
+        return TransactionMessages.sale(request, new IsoMessage());
+    }
+}
@@ -0,0 +1,129 @@
+package id.uniflo.uniedc.host;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/1.1 host on the loopback interface for client tests: answers every request
+ * with a fixed JSON body and keeps the connection open, one thread per connection.
+ * A HEAD reply carries the Content-Length of that body but no body, as real servers
+ * send it.
+ */
+final class LoopbackHttpHost implements Closeable {
+
+    static final String BODY = "{\"status\":\"ok\"}";
+
+    private final ServerSocket server;
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    LoopbackHttpHost() throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "loopback-http-host");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    HostEndpoint endpoint() {
+        return new HostEndpoint(server.getInetAddress().getHostAddress(), server.getLocalPort(), false);
+    }
+
+    int acceptedConnections() {
+        return accepted.get();
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                accepted.incrementAndGet();
+                connections.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "loopback-http-connection");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                int contentLength = 0;
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    if (header.toLowerCase(Locale.US).startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    }
+                }
+                for (int i = 0; i < contentLength; i++) {
+                    if (in.read() < 0) {
+                        return;
+                    }
+                }
+                requests.incrementAndGet();
+
+                String head = "HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: application/json\r\n" +
+                    "Content-Length: " + body.length + "\r\n\r\n";
+                out.write(head.getBytes(StandardCharsets.US_ASCII));
+                if (!requestLine.startsWith("HEAD ")) {
+                    out.write(body);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // connection closed
+        }
+    }
+
+    /**
+     * @return the next CRLF terminated line, null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+        }
+        return null;
+    }
+}
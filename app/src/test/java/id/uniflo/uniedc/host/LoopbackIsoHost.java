@@ -0,0 +1,153 @@
+package id.uniflo.uniedc.host;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import id.uniflo.uniedc.iso8583.IsoMessage;
+import id.uniflo.uniedc.iso8583.IsoPacker;
+import id.uniflo.uniedc.iso8583.TransactionMessages;
+
+/**
+ * ISO 8583 host on the loopback interface for channel tests: reads 2-byte length
+ * framed messages, records them and answers through a handler, one thread per
+ * connection.
+ */
+final class LoopbackIsoHost implements Closeable {
+
+    interface Handler {
+        /**
+         * @return the response, null to leave the request unanswered
+         */
+        IsoMessage respond(IsoMessage request);
+    }
+
+    private final IsoPacker packer;
+    private final ServerSocket server;
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<IsoMessage> received = new LinkedBlockingQueue<>();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private volatile Handler handler = LoopbackIsoHost::approve;
+
+    LoopbackIsoHost(IsoPacker packer) throws IOException {
+        this.packer = packer;
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "loopback-host");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    HostEndpoint endpoint() {
+        return new HostEndpoint(server.getInetAddress().getHostAddress(), server.getLocalPort(), false);
+    }
+
+    void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    int acceptedConnections() {
+        return accepted.get();
+    }
+
+    /**
+     * @return the next message the host received, null if none came in time
+     */
+    IsoMessage nextReceived(long timeoutMillis) throws InterruptedException {
+        return received.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a message on the newest connection, e.g. a late response or a host echo
+     */
+    void send(IsoMessage message) throws IOException {
+        write(connections.get(connections.size() - 1), message);
+    }
+
+    /**
+     * Close all terminal connections, keep listening
+     */
+    void dropConnections() throws IOException {
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        connections.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        dropConnections();
+    }
+
+    /**
+     * The approved response to a request: response MTI, STAN and terminal id, code 00
+     */
+    static IsoMessage approve(IsoMessage request) {
+        String mti = request.getMti();
+        IsoMessage response = new IsoMessage()
+            .setMti(mti.substring(0, 2) + (char) (mti.charAt(2) + 1) + mti.charAt(3))
+            .set(TransactionMessages.FIELD_STAN, request.getString(TransactionMessages.FIELD_STAN))
+            .set(TransactionMessages.FIELD_RESPONSE_CODE, TransactionMessages.RESPONSE_APPROVED)
+            .set(TransactionMessages.FIELD_TERMINAL_ID, request.getString(TransactionMessages.FIELD_TERMINAL_ID));
+        if (request.has(TransactionMessages.FIELD_NETWORK_CODE)) {
+            response.set(TransactionMessages.FIELD_NETWORK_CODE, request.getString(TransactionMessages.FIELD_NETWORK_CODE));
+        }
+        return response;
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                accepted.incrementAndGet();
+                connections.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "loopback-host-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (true) {
+                byte[] frame = new byte[in.readUnsignedShort()];
+                in.readFully(frame);
+                IsoMessage request = packer.unpack(frame, new IsoMessage());
+                received.add(request);
+                IsoMessage response = handler.respond(request);
+                if (response != null) {
+                    write(socket, response);
+                }
+            }
+        } catch (IOException e) {
+            // connection closed
+        }
+    }
+
+    private void write(Socket socket, IsoMessage message) throws IOException {
+        byte[] body = packer.pack(message);
+        byte[] frame = new byte[body.length + 2];
+        frame[0] = (byte) (body.length >>> 8);
+        frame[1] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 2, body.length);
+        synchronized (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write(frame);
+            out.flush();
+        }
+    }
+}
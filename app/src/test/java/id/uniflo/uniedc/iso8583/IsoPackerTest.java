@@ -0,0 +1,346 @@
+package id.uniflo.uniedc.iso8583;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+import static org.junit.Assert.*;
+
+/**
+ * Golden messages of every terminal transaction in the standard host format. The
+ * expected bytes were encoded by hand from the field table, not by the packer; when
+ * the format changes on purpose, re-derive them the same way.
+ */
+public class IsoPackerTest {
+
+    private static final String SALE =
+        "0200723C078100C01214" +
+        "16476173900101011900000000001500000010181430150001231430151018221200510001000100" +
+        "061234563132333435363738313233343536373839303132333435041234FFFFFFFFFF" +
+        "00329F260811223344556677889F36020001950500000000009F02060000150000000006303030303031" +
+        "0006303030303435";
+
+    private static final String BALANCE_INQUIRY =
+        "0200623C078100C01210" +
+        "1647617390010101193100001018143015000123143015101822120051000100010006123456" +
+        "3132333435363738313233343536373839303132333435041234FFFFFFFFFF" +
+        "00329F260811223344556677889F36020001950500000000009F02060000150000000006303030303031";
+
+    // Field 103 puts it in the secondary bitmap
+    private static final String TRANSFER =
+        "0200F23C078100C012100000000002000000" +
+        "164761739001010119400000000000500000101814301500012314301510182212005100010001" +
+        "00061234563132333435363738313233343536373839303132333435041234FFFFFFFFFF" +
+        "00329F260811223344556677889F36020001950500000000009F02060000150000000006303030303031" +
+        "1030313233343536373839";
+
+    // Odd length track 2, padded with a trailing F
+    private static final String CASH_WITHDRAWAL =
+        "02003238078120C01210" +
+        "01000000000100000010181430150001231430151018005100010001000612345629476173900101" +
+        "0119D221220111438F3132333435363738313233343536373839303132333435041234FFFFFFFFFF" +
+        "00329F260811223344556677889F36020001950500000000009F0206000015000000000630303030" +
+        "3031";
+
+    private static final String REVERSAL =
+        "0400723C078100C00214" +
+        "16476173900101011900000000001500000010181430150001231430151018221200510001000100" +
+        "0612345631323334353637383132333435363738393031323334350032" +
+        "9F260811223344556677889F36020001950500000000009F02060000150000000006303030303031" +
+        "0006303030303435";
+
+    private static final String SETTLEMENT =
+        "05002020010000C00012" +
+        "92000000012300013132333435363738313233343536373839303132333435000630303030303100" +
+        "30303035303030303037353030303030303030303030303030303030303030";
+
+    private static final String SALE_RESPONSE =
+        "0210303801000E800200" +
+        "0000000000150000000001231430161018000134323931313830303031323341314232433330" +
+        "3031323334353637380012910A0102030405060708090A";
+
+    private static final String BALANCE_RESPONSE =
+        "0210202001000A800400" +
+        "31000000012400013432393131383030303132343030313233343536373800203130303233" +
+        "363043303030303235373530303030";
+
+    private IsoPacker packer;
+    private MessageBuffer buffer;
+    private IsoMessage message;
+
+    @Before
+    public void setUp() {
+        packer = new IsoPacker(MessageSpec.STANDARD);
+        buffer = new MessageBuffer();
+        message = new IsoMessage();
+    }
+
+    @Test
+    public void sale() {
+        TransactionMessages.sale(request(), message);
+
+        assertPacks(SALE);
+        assertEquals(0x723C078100C01214L, message.getPrimaryBitmap());
+        assertEquals(0, message.getSecondaryBitmap());
+        assertRoundTrip(SALE);
+    }
+
+    @Test
+    public void balanceInquiry() {
+        TransactionMessages.balanceInquiry(request(), message);
+
+        assertPacks(BALANCE_INQUIRY);
+        assertFalse(message.has(TransactionMessages.FIELD_AMOUNT));
+        assertRoundTrip(BALANCE_INQUIRY);
+    }
+
+    @Test
+    public void transferUsesTheSecondaryBitmap() {
+        TransactionMessages.Request request = request();
+        request.amount = 500000;
+        request.toAccount = "0123456789";
+        request.invoiceNumber = null;
+        TransactionMessages.transfer(request, message);
+
+        assertPacks(TRANSFER);
+        assertEquals(0xF23C078100C01210L, message.getPrimaryBitmap());
+        assertEquals(0x0000000002000000L, message.getSecondaryBitmap());
+
+        IsoMessage unpacked = unpack(TRANSFER);
+        assertEquals("0123456789", unpacked.getString(TransactionMessages.FIELD_TO_ACCOUNT));
+        assertRoundTrip(TRANSFER);
+    }
+
+    @Test
+    public void cashWithdrawalWithTrack2() {
+        TransactionMessages.Request request = request();
+        request.amount = 1000000;
+        request.pan = null;
+        request.expiry = null;
+        request.track2 = "4761739001010119D221220111438";
+        TransactionMessages.cashWithdrawal(request, message);
+
+        assertPacks(CASH_WITHDRAWAL);
+        assertEquals("4761739001010119D221220111438", unpack(CASH_WITHDRAWAL).getString(TransactionMessages.FIELD_TRACK2));
+        assertRoundTrip(CASH_WITHDRAWAL);
+    }
+
+    @Test
+    public void reversalDropsThePinBlock() {
+        IsoMessage sale = TransactionMessages.sale(request(), new IsoMessage());
+        TransactionMessages.reversal(sale, message);
+
+        assertPacks(REVERSAL);
+        assertEquals("000123", message.getString(TransactionMessages.FIELD_STAN));
+        assertTrue(sale.has(TransactionMessages.FIELD_PIN_BLOCK));
+        assertArrayEquals(sale.getBinary(TransactionMessages.FIELD_ICC_DATA),
+            message.getBinary(TransactionMessages.FIELD_ICC_DATA));
+        assertRoundTrip(REVERSAL);
+    }
+
+    @Test
+    public void settlement() {
+        TransactionMessages.Request request = request();
+        TransactionMessages.settlement(request, 5, 7500000, 0, 0, message);
+
+        assertPacks(SETTLEMENT);
+        assertRoundTrip(SETTLEMENT);
+    }
+
+    @Test
+    public void unpacksTheSaleResponse() {
+        IsoMessage response = unpack(SALE_RESPONSE);
+
+        assertEquals(TransactionMessages.MTI_FINANCIAL_RESPONSE, response.getMti());
+        assertEquals("000015000000", response.getString(TransactionMessages.FIELD_AMOUNT));
+        assertEquals("000123", response.getString(TransactionMessages.FIELD_STAN));
+        assertEquals("429118000123", response.getString(TransactionMessages.FIELD_RRN));
+        assertEquals("A1B2C3", response.getString(TransactionMessages.FIELD_APPROVAL_CODE));
+        assertTrue(TransactionMessages.isApproved(response));
+        assertArrayEquals(HexUtil.decode("910A0102030405060708090A"),
+            response.getBinary(TransactionMessages.FIELD_ICC_DATA));
+        assertRoundTrip(SALE_RESPONSE);
+    }
+
+    @Test
+    public void unpacksTheBalanceResponse() {
+        IsoMessage response = unpack(BALANCE_RESPONSE);
+
+        assertEquals("1002360C000025750000", response.getString(TransactionMessages.FIELD_ADDITIONAL_AMOUNTS));
+        assertFalse(response.has(TransactionMessages.FIELD_AMOUNT));
+        assertRoundTrip(BALANCE_RESPONSE);
+    }
+
+    @Test
+    public void appendsToTheBuffer() {
+        TransactionMessages.sale(request(), message);
+        int headerOffset = buffer.skip(2);
+
+        int length = packer.pack(message, buffer);
+
+        assertEquals(0, headerOffset);
+        assertEquals(SALE.length() / 2, length);
+        assertEquals(length + 2, buffer.length());
+        assertEquals(SALE, HexUtil.encode(buffer.array(), 2, length));
+    }
+
+    @Test
+    public void reusedMessageKeepsNoOldFields() {
+        TransactionMessages.transfer(transferRequest(), message);
+        TransactionMessages.balanceInquiry(request(), message);
+
+        assertPacks(BALANCE_INQUIRY);
+        assertEquals(0, message.getSecondaryBitmap());
+    }
+
+    @Test
+    public void asciiFormat() {
+        MessageSpec spec = MessageSpec.builder()
+            .mtiEncoding(Encoding.ASCII)
+            .bitmapEncoding(Encoding.ASCII)
+            .lengthEncoding(Encoding.ASCII)
+            .field(FieldSpec.llvar(2, Encoding.ASCII, 19))
+            .field(FieldSpec.fixed(4, Encoding.ASCII, 12))
+            .field(FieldSpec.fixed(11, Encoding.ASCII, 6))
+            .field(FieldSpec.lllvar(55, Encoding.BINARY, 255))
+            .build();
+        IsoPacker asciiPacker = new IsoPacker(spec);
+        message.setMti("0200")
+            .set(2, "4761739001010119")
+            .set(4, "000000010000")
+            .set(11, "000007")
+            .setBinary(55, new byte[] {(byte) 0x9C, 0x01, 0x00});
+
+        asciiPacker.pack(message, buffer);
+
+        assertEquals("0200" + "5020000000000200" + "164761739001010119" + "000000010000" + "000007" + "003",
+            new String(buffer.array(), 0, 59, StandardCharsets.ISO_8859_1));
+        assertEquals("9C0100", HexUtil.encode(buffer.array(), 59, 3));
+        IsoMessage unpacked = asciiPacker.unpack(buffer.toByteArray(), new IsoMessage());
+        assertEquals("4761739001010119", unpacked.getString(2));
+        assertEquals("000007", unpacked.getString(11));
+    }
+
+    @Test
+    public void binaryLengthPrefixes() {
+        MessageSpec spec = MessageSpec.builder()
+            .lengthEncoding(Encoding.BINARY)
+            .field(FieldSpec.llvar(2, Encoding.BCD, 19))
+            .field(FieldSpec.lllvar(55, Encoding.BINARY, 999))
+            .build();
+        IsoPacker binaryPacker = new IsoPacker(spec);
+        byte[] icc = new byte[300];
+        message.setMti("0100").set(2, "476173900101011").setBinary(55, icc);
+
+        byte[] packed = binaryPacker.pack(message);
+
+        assertEquals("0100" + "4000000000000200" + "0F476173900101011F" + "012C", HexUtil.encode(packed, 0, 21));
+        assertEquals(21 + 300, packed.length);
+        assertEquals("476173900101011", binaryPacker.unpack(packed, new IsoMessage()).getString(2));
+    }
+
+    @Test
+    public void rejectsWrongFixedLength() {
+        message.setMti("0200").set(TransactionMessages.FIELD_STAN, "123");
+        buffer.skip(3);
+        try {
+            packer.pack(message, buffer);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field 11 is 3 long, must be 6", e.getMessage());
+        }
+        // Nothing of the failed message is left behind
+        assertEquals(3, buffer.length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFieldsOutsideTheSpec() {
+        message.setMti("0200").set(5, "000000000100");
+        packer.pack(message, buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonDigitsInBcdFields() {
+        message.setMti("0200").set(TransactionMessages.FIELD_STAN, "00012X");
+        packer.pack(message, buffer);
+    }
+
+    @Test
+    public void rejectsTruncatedAndOverlongMessages() {
+        byte[] sale = HexUtil.decode(SALE);
+        for (int length : new int[] {1, 5, 12, sale.length - 1}) {
+            try {
+                packer.unpack(sale, 0, length, message);
+                fail("unpacked " + length + " bytes");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+        byte[] longer = HexUtil.decode(SALE + "00");
+        try {
+            packer.unpack(longer, message);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("1 bytes after the last field", e.getMessage());
+        }
+    }
+
+    private void assertPacks(String expected) {
+        buffer.reset();
+        packer.pack(message, buffer);
+        assertEquals(expected, HexUtil.encode(buffer.array(), 0, buffer.length()));
+    }
+
+    /**
+     * Unpacking the golden message and packing it again gives the same bytes
+     */
+    private void assertRoundTrip(String golden) {
+        IsoMessage unpacked = unpack(golden);
+        MessageBuffer out = new MessageBuffer(16);
+        packer.pack(unpacked, out);
+        assertEquals(golden, HexUtil.encode(out.array(), 0, out.length()));
+    }
+
+    private IsoMessage unpack(String hex) {
+        return packer.unpack(HexUtil.decode(hex), new IsoMessage());
+    }
+
+    private static TransactionMessages.Request transferRequest() {
+        TransactionMessages.Request request = request();
+        request.toAccount = "0123456789";
+        return request;
+    }
+
+    /**
+     * A chip and PIN card of IDR 150.000 on terminal 12345678
+     */
+    private static TransactionMessages.Request request() {
+        TransactionMessages.Request request = new TransactionMessages.Request();
+        request.stan = "000123";
+        request.transmissionDateTime = "1018143015";
+        request.localTime = "143015";
+        request.localDate = "1018";
+        request.acquiringInstitutionCode = "123456";
+        request.terminalId = "12345678";
+        request.merchantId = "123456789012345";
+        request.pan = "4761739001010119";
+        request.expiry = "2212";
+        request.cardSequenceNumber = "001";
+        request.amount = 15000000;
+        request.pinBlock = HexUtil.decode("041234FFFFFFFFFF");
+        Map<String, String> emvTags = new LinkedHashMap<>();
+        emvTags.put("9F02", "000015000000");
+        emvTags.put("95", "0000000000");
+        emvTags.put("9F26", "1122334455667788");
+        emvTags.put("9F36", "0001");
+        request.emvTags = emvTags;
+        request.invoiceNumber = "000045";
+        request.batchNumber = "000001";
+        return request;
+    }
+}
@@ -0,0 +1,48 @@
+package id.uniflo.uniedc.tlv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TLVIndexTest {
+
+    @Test
+    public void keepsTheFirstSlotOfATag() {
+        TLVIndex index = new TLVIndex(4);
+        index.putIfAbsent(0x9F26, 0);
+        index.putIfAbsent(0x9F26, 5);
+
+        assertEquals(0, index.get(0x9F26));
+        assertEquals(1, index.size());
+        assertEquals(-1, index.get(0x9F27));
+    }
+
+    @Test
+    public void growsPastItsCapacity() {
+        TLVIndex index = new TLVIndex(0);
+        for (int i = 0; i < 500; i++) {
+            index.putIfAbsent(0x9F00 + i, i);
+        }
+
+        assertEquals(500, index.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, index.get(0x9F00 + i));
+        }
+        assertEquals(-1, index.get(0x9F00 + 500));
+    }
+
+    @Test
+    public void tagsThatCollideAreKeptApart() {
+        // One-byte, two-byte and four-byte tags sharing low bits
+        TLVIndex index = new TLVIndex(4);
+        index.putIfAbsent(0x5A, 0);
+        index.putIfAbsent(0x5F5A, 1);
+        index.putIfAbsent(0xDF815A, 2);
+        index.putIfAbsent(0x9F81805A, 3);
+
+        assertEquals(0, index.get(0x5A));
+        assertEquals(1, index.get(0x5F5A));
+        assertEquals(2, index.get(0xDF815A));
+        assertEquals(3, index.get(0x9F81805A));
+    }
+}
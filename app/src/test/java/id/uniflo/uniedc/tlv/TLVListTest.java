@@ -0,0 +1,119 @@
+package id.uniflo.uniedc.tlv;
+
+import org.junit.Test;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tag lookups of TLVList, including changes made through data() behind the indexes.
+ */
+public class TLVListTest {
+
+    // 9F26 cryptogram, 9F36 ATC, 70 template holding 5A PAN and 5F24 expiry, 9F26 again
+    private static final String RECORD =
+        "9F26081122334455667788" +
+        "9F36020001" +
+        "70105A0847617390010101195F2403221231" +
+        "9F2608AABBCCDDEEFF0011";
+
+    @Test
+    public void getTLVReturnsTheFirstMatch() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+
+        assertEquals(4, list.size());
+        assertEquals("1122334455667788", list.getTLV("9F26").getValue());
+        assertEquals("0001", list.getTLVByTag(0x9F36).getValue());
+        assertNull(list.getTLV("9F27"));
+        // Not searched inside templates
+        assertNull(list.getTLV("5A"));
+    }
+
+    @Test
+    public void findTLVSearchesTemplates() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+
+        assertEquals("4761739001010119", list.findTLV("5A").getValue());
+        assertEquals("221231", list.findTLVByTag(0x5F24).getValue());
+        assertEquals("1122334455667788", list.findTLV("9F26").getValue());
+        assertNull(list.findTLV("9F27"));
+    }
+
+    @Test
+    public void setThroughDataIsSeenByGetTLV() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+        assertNotNull(list.getTLV("9F36"));
+
+        list.data().set(1, TLV.fromData("9F27", new byte[]{(byte) 0x80}));
+
+        assertEquals("80", list.getTLV("9F27").getValue());
+        assertNull(list.getTLV("9F36"));
+    }
+
+    @Test
+    public void setThroughDataIsSeenByFindTLV() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+        assertNotNull(list.findTLV("5A"));
+
+        list.data().set(2, TLV.fromData("9F10", HexUtil.decode("0110A00003220000")));
+
+        assertNull(list.findTLV("5A"));
+        assertEquals("0110A00003220000", list.findTLV("9F10").getValue());
+    }
+
+    @Test
+    public void setThroughIteratorAndSubListIsSeen() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+        list.getTLV("9F26");
+
+        list.data().listIterator(3).next();
+        list.data().subList(0, 1).set(0, TLV.fromData("82", HexUtil.decode("1980")));
+
+        assertEquals("1980", list.getTLV("82").getValue());
+        assertEquals("AABBCCDDEEFF0011", list.getTLV("9F26").getValue());
+    }
+
+    @Test
+    public void addAndRemoveThroughDataAreSeen() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+        list.getTLV("9F26");
+
+        list.data().add(0, TLV.fromData("95", HexUtil.decode("0000008000")));
+        list.data().remove(1);
+
+        assertEquals("0000008000", list.getTLV("95").getValue());
+        assertEquals("AABBCCDDEEFF0011", list.getTLV("9F26").getValue());
+        assertEquals("221231", list.findTLV("5F24").getValue());
+    }
+
+    @Test
+    public void addTLVKeepsTheIndexCurrent() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+        list.getTLV("9F26");
+
+        list.addTLV(TLV.fromData("9F37", HexUtil.decode("12345678")));
+        list.addTLV(TLV.fromData("9F26", HexUtil.decode("0000000000000000")));
+
+        assertEquals("12345678", list.getTLV("9F37").getValue());
+        assertEquals("1122334455667788", list.getTLV("9F26").getValue());
+    }
+
+    @Test
+    public void removeAndRetainRebuildTheIndex() {
+        TLVList list = TLV.fromBinary(HexUtil.decode(RECORD));
+
+        list.remove("9F26");
+        assertNull(list.getTLV("9F26"));
+        assertEquals(2, list.size());
+
+        list.retain("70");
+        assertNull(list.getTLV("9F36"));
+        assertEquals("4761739001010119", list.findTLV("5A").getValue());
+    }
+
+    @Test
+    public void toBinaryRoundTrips() {
+        assertEquals(RECORD, HexUtil.encode(TLV.fromBinary(HexUtil.decode(RECORD)).toBinary()));
+    }
+}
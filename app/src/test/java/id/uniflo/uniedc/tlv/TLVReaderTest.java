@@ -0,0 +1,175 @@
+package id.uniflo.uniedc.tlv;
+
+import org.junit.Test;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+import static org.junit.Assert.*;
+
+/**
+ * BER-TLV decoding: tag and length forms, nested templates and truncated input.
+ */
+public class TLVReaderTest {
+
+    @Test
+    public void readsShortAndMultiByteTags() {
+        TLVReader reader = new TLVReader(HexUtil.decode("5A0847617390010101199F26081122334455667788DF81010101"));
+
+        assertTrue(reader.next());
+        assertEquals(0x5A, reader.tag());
+        assertEquals(1, reader.tagLength());
+        assertEquals(2, reader.valueOffset());
+        assertEquals("4761739001010119", reader.valueHex());
+
+        assertTrue(reader.next());
+        assertEquals(0x9F26, reader.tag());
+        assertEquals(2, reader.tagLength());
+        assertEquals(10, reader.elementOffset());
+        assertEquals(11, reader.elementLength());
+
+        assertTrue(reader.next());
+        assertEquals(0xDF8101, reader.tag());
+        assertEquals("01", reader.valueHex());
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void readsLongFormLengths() {
+        assertLongForm("81", 0x80);
+        assertLongForm("81", 0xFF);
+        assertLongForm("82", 0x100);
+        assertLongForm("82", 0x1234);
+        assertLongForm("83", 0x10000);
+    }
+
+    @Test
+    public void readsNestedTemplates() {
+        // 77 { 9F27 80, 70 { 57 ... } }
+        TLVReader reader = new TLVReader(HexUtil.decode("770F9F2701807009570747617390010101"));
+
+        assertTrue(reader.next());
+        assertEquals(0x77, reader.tag());
+        assertTrue(reader.isConstructed());
+
+        TLVReader children = reader.children();
+        assertTrue(children.next());
+        assertEquals(0x9F27, children.tag());
+        assertFalse(children.isConstructed());
+        assertTrue(children.next());
+        assertEquals(0x70, children.tag());
+        TLVReader track = children.children();
+        assertTrue(track.next());
+        assertEquals("47617390010101", track.valueHex());
+        assertFalse(children.next());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void seeksAndResets() {
+        TLVReader reader = new TLVReader(HexUtil.decode("9F3602000195050000008000"));
+
+        assertTrue(reader.seek(0x95));
+        assertEquals("0000008000", reader.valueHex());
+        assertFalse(reader.seek(0x9F36));
+
+        reader.reset();
+        assertTrue(reader.seek(0x9F36));
+        assertEquals("0001", reader.valueHex());
+    }
+
+    @Test
+    public void walksASubRange() {
+        byte[] data = HexUtil.decode("FFFF9F360200019F2701FF");
+        TLVReader reader = new TLVReader(data, 2, 5);
+
+        assertTrue(reader.next());
+        assertEquals(0x9F36, reader.tag());
+        assertArrayEquals(HexUtil.decode("9F36020001"), reader.copyRawData());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void truncatedTagIsRejected() {
+        assertInvalid("9F", "truncated tag");
+        assertInvalid("9F81", "truncated tag");
+    }
+
+    @Test
+    public void truncatedLengthIsRejected() {
+        assertInvalid("9F26", "truncated length");
+        assertInvalid("5A8201", "invalid length");
+        assertInvalid("5A85FFFFFFFFFF", "invalid length");
+    }
+
+    @Test
+    public void truncatedValueIsRejected() {
+        assertInvalid("9F2608112233", "truncated value");
+        assertInvalid("5A81FF00", "truncated value");
+        // Length beyond the range of an int
+        assertInvalid("5A84FFFFFFFF00", "truncated value");
+    }
+
+    @Test
+    public void oversizedLongFormLengthIsRejected() {
+        // Largest positive 4-byte length, offset + length overflows an int
+        assertInvalid("5A847FFFFFFF010203", "truncated value");
+        assertInvalid("9F26847FFFFFFA01", "truncated value");
+        try {
+            TLV.fromBinary(HexUtil.decode("5A847FFFFFFF010203"));
+            fail("accepted a value past the end");
+        } catch (IllegalArgumentException expected) {
+            // documented failure, not an index out of bounds
+        }
+    }
+
+    @Test
+    public void tagLongerThanFourBytesIsRejected() {
+        assertInvalid("9F818181810100", "tag longer than 4 bytes");
+    }
+
+    @Test
+    public void packsTags() {
+        assertEquals(0x9F26, TLVReader.packTag("9F26"));
+        assertEquals(0xBF0C, TLVReader.packTag("bf0c"));
+        assertEquals("DF8101", TLVReader.tagToString(0xDF8101));
+        assertEquals(3, TLVReader.tagLength(0xDF8101));
+    }
+
+    private static void assertLongForm(String prefix, int length) {
+        byte[] value = new byte[length];
+        byte[] encoded = HexUtil.decode("5F24" + prefix + lengthBytes(length));
+        byte[] data = new byte[encoded.length + length];
+        System.arraycopy(encoded, 0, data, 0, encoded.length);
+        System.arraycopy(value, 0, data, encoded.length, length);
+
+        TLVReader reader = new TLVReader(data);
+        assertTrue(reader.next());
+        assertEquals(0x5F24, reader.tag());
+        assertEquals(length, reader.valueLength());
+        assertEquals(encoded.length, reader.valueOffset());
+        assertEquals(data.length, reader.elementLength());
+        assertFalse(reader.next());
+    }
+
+    // Big-endian length bytes following a 0x8n prefix
+    private static String lengthBytes(int length) {
+        if (length <= 0xFF) {
+            return String.format("%02X", length);
+        }
+        if (length <= 0xFFFF) {
+            return String.format("%04X", length);
+        }
+        return String.format("%06X", length);
+    }
+
+    private static void assertInvalid(String hex, String message) {
+        TLVReader reader = new TLVReader(HexUtil.decode(hex));
+        try {
+            reader.next();
+            fail("Expected " + hex + " to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package id.uniflo.uniedc.tlv;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import id.uniflo.uniedc.util.HexUtil;
+
+import static org.junit.Assert.*;
+
+/**
+ * BER-TLV encoding. Expected bytes are written out by hand: tag, length form, value.
+ */
+public class TLVWriterTest {
+
+    @Test
+    public void encodesShortAndLongFormLengths() {
+        assertLength(0, "00");
+        assertLength(0x7F, "7F");
+        assertLength(0x80, "8180");
+        assertLength(0xFF, "81FF");
+        assertLength(0x100, "820100");
+        assertLength(0xFFFF, "82FFFF");
+        assertLength(0x10000, "83010000");
+        assertLength(0xFFFFFF, "83FFFFFF");
+        assertLength(0x1000000, "8401000000");
+    }
+
+    @Test
+    public void negativeLengthIsRejected() {
+        try {
+            TLVWriter.writeLength(new byte[5], 0, -1);
+            fail("Expected a negative length to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // rejected
+        }
+    }
+
+    @Test
+    public void writesPrimitiveElements() {
+        TLVWriter writer = new TLVWriter()
+            .put(0x9F26, HexUtil.decode("1122334455667788"))
+            .putHex(0x9F36, "0001")
+            .putHex("DF8101", "01");
+
+        assertEquals("9F260811223344556677889F36020001DF8101" + "0101", writer.toHexString());
+    }
+
+    @Test
+    public void writesLongValues() {
+        byte[] value = filled(200, 0xAB);
+
+        String hex = new TLVWriter().put(0x5F24, value).toHexString();
+
+        assertEquals("5F2481C8" + HexUtil.encode(value), hex);
+    }
+
+    @Test
+    public void shortTemplateKeepsOneLengthByte() {
+        TLVWriter writer = new TLVWriter()
+            .beginTemplate(0x70)
+            .putHex(0x5A, "4761739001010119")
+            .putHex(0x5F24, "221231")
+            .endTemplate();
+
+        assertEquals("70105A0847617390010101195F2403221231", writer.toHexString());
+    }
+
+    @Test
+    public void templatePast127BytesIsWidened() {
+        byte[] value = filled(130, 0xAA);
+
+        TLVWriter writer = new TLVWriter()
+            .beginTemplate(0x70)
+            .put(0x57, value)
+            .endTemplate()
+            .putHex(0x9F36, "0001");
+
+        // 57 81 82 + 130 bytes = 133 = 0x85
+        assertEquals("708185" + "578182" + HexUtil.encode(value) + "9F36020001", writer.toHexString());
+    }
+
+    @Test
+    public void nestedTemplatesPast255BytesAreWidened() {
+        byte[] value = filled(300, 0x5A);
+
+        TLVWriter writer = new TLVWriter()
+            .beginTemplate(0x77)
+            .putHex(0x9F27, "80")
+            .beginTemplate(0x70)
+            .put(0x5A, value)
+            .endTemplate()
+            .putHex(0x9F36, "0001")
+            .endTemplate();
+
+        // 5A 82012C + 300 = 304 = 0x130; 70 820130 + 304 = 308;
+        // 77 value = 4 (9F27) + 308 + 5 (9F36) = 317 = 0x13D
+        String expected = "7782013D" + "9F270180" + "70820130" + "5A82012C" + HexUtil.encode(value) + "9F36020001";
+        assertEquals(expected, writer.toHexString());
+
+        TLVReader reader = new TLVReader(writer.toByteArray());
+        assertTrue(reader.next());
+        assertEquals(317, reader.valueLength());
+        TLVReader children = reader.children();
+        assertTrue(children.seek(0x70));
+        assertTrue(children.children().seek(0x5A));
+        assertTrue(children.next());
+        assertEquals(0x9F36, children.tag());
+    }
+
+    @Test
+    public void innerTemplateWidenedInsideAShortOuterOne() {
+        byte[] value = filled(126, 0x01);
+
+        TLVWriter writer = new TLVWriter()
+            .beginTemplate(0xBF0C)
+            .beginTemplate(0xA5)
+            .put(0x50, value)
+            .endTemplate()
+            .endTemplate();
+
+        // 50 7E + 126 = 128 = 0x80 widens A5; A5 8180 + 128 = 131 = 0x83 widens BF0C
+        assertEquals("BF0C8183" + "A58180" + "507E" + HexUtil.encode(value), writer.toHexString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endWithoutTemplateIsRejected() {
+        new TLVWriter().endTemplate();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void templatesNestedTooDeepAreRejected() {
+        TLVWriter writer = new TLVWriter();
+        for (int i = 0; i < 9; i++) {
+            writer.beginTemplate(0x70);
+        }
+    }
+
+    @Test
+    public void resetKeepsTheWriterReusable() {
+        TLVWriter writer = new TLVWriter(4).put(0x5A, filled(64, 0x11));
+
+        writer.reset().putHex(0x9F36, "0001");
+
+        assertEquals("9F36020001", writer.toHexString());
+        assertEquals(5, writer.length());
+    }
+
+    private static void assertLength(int length, String expected) {
+        byte[] out = new byte[5];
+        int end = TLVWriter.writeLength(out, 0, length);
+        assertEquals(expected, HexUtil.encode(out, 0, end));
+        assertEquals(expected.length() / 2, TLVWriter.lengthSize(length));
+    }
+
+    private static byte[] filled(int length, int b) {
+        byte[] value = new byte[length];
+        Arrays.fill(value, (byte) b);
+        return value;
+    }
+}
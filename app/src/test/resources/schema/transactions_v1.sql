@@ -0,0 +1,65 @@
+-- Transaction database as shipped at schema version 1, with rows of an open batch
+-- Frozen copy; do not edit when the schema changes, add a fixture for the new version instead
+
+CREATE TABLE transactions (
+    _id INTEGER PRIMARY KEY AUTOINCREMENT,
+    transaction_type TEXT NOT NULL,
+    status TEXT NOT NULL,
+    amount INTEGER NOT NULL,
+    card_number TEXT,
+    card_holder_name TEXT,
+    card_type TEXT,
+    entry_mode TEXT,
+    terminal_id TEXT,
+    merchant_id TEXT,
+    batch_number TEXT,
+    trace_number TEXT,
+    reference_number TEXT UNIQUE,
+    approval_code TEXT,
+    response_code TEXT,
+    response_message TEXT,
+    emv_data TEXT,
+    pin_block TEXT,
+    arqc TEXT,
+    atc TEXT,
+    tvr TEXT,
+    tsi TEXT,
+    aid TEXT,
+    application_label TEXT,
+    transaction_date INTEGER NOT NULL,
+    is_voided INTEGER DEFAULT 0,
+    void_reference_number TEXT,
+    void_date INTEGER,
+    raw_request TEXT,
+    raw_response TEXT,
+    created_at INTEGER NOT NULL,
+    updated_at INTEGER NOT NULL
+);
+
+CREATE INDEX idx_transaction_date ON transactions (transaction_date);
+
+CREATE INDEX idx_reference_number ON transactions (reference_number);
+
+CREATE INDEX idx_batch_number ON transactions (batch_number);
+
+CREATE INDEX idx_card_number ON transactions (card_number);
+
+CREATE INDEX idx_status ON transactions (status);
+
+CREATE INDEX idx_type ON transactions (transaction_type);
+
+INSERT INTO transactions (transaction_type, status, amount, card_number, card_holder_name, card_type, entry_mode, terminal_id, merchant_id, batch_number, trace_number, reference_number, approval_code, response_code, response_message, emv_data, pin_block, arqc, atc, tvr, tsi, aid, application_label, transaction_date, is_voided, void_reference_number, void_date, raw_request, raw_response, created_at, updated_at)
+VALUES ('SALE', 'SUCCESS', 150000, '476173******0119', 'CARDHOLDER/VISA', 'VISA', 'CHIP', '12345678', '000000000012345', '000001', '000101', 'REF0001', 'A1B2C3', '00', 'APPROVED', '9F26088E19ED4BC8D2A1F6', NULL, '8E19ED4BC8D2A1F6', '0027', '0080008000', 'E800', 'A0000000031010', 'VISA CREDIT', 1729238400000, 0, NULL, NULL, '0200703D048020C10200', '0210303801000E800004', 1729238400000, 1729238400000);
+
+INSERT INTO transactions (transaction_type, status, amount, card_number, card_holder_name, card_type, entry_mode, terminal_id, merchant_id, batch_number, trace_number, reference_number, approval_code, response_code, response_message, emv_data, pin_block, arqc, atc, tvr, tsi, aid, application_label, transaction_date, is_voided, void_reference_number, void_date, raw_request, raw_response, created_at, updated_at)
+VALUES ('SALE', 'SUCCESS', 250000, '476173******0119', 'CARDHOLDER/VISA', 'VISA', 'CHIP', '12345678', '000000000012345', '000001', '000102', 'REF0002', 'D4E5F6', '00', 'APPROVED', NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, 1729242000000, 1, 'REF0003', 1729245600000, NULL, NULL, 1729242000000, 1729245600000);
+
+INSERT INTO transactions (transaction_type, status, amount, card_number, card_holder_name, card_type, entry_mode, terminal_id, merchant_id, batch_number, trace_number, reference_number, approval_code, response_code, response_message, emv_data, pin_block, arqc, atc, tvr, tsi, aid, application_label, transaction_date, is_voided, void_reference_number, void_date, raw_request, raw_response, created_at, updated_at)
+VALUES ('VOID', 'SUCCESS', 250000, '476173******0119', NULL, 'VISA', 'CHIP', '12345678', '000000000012345', '000001', '000103', 'REF0003', 'G7H8I9', '00', 'APPROVED', NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, 1729245600000, 0, NULL, NULL, NULL, NULL, 1729245600000, 1729245600000);
+
+INSERT INTO transactions (transaction_type, status, amount, card_number, card_holder_name, card_type, entry_mode, terminal_id, merchant_id, batch_number, trace_number, reference_number, approval_code, response_code, response_message, emv_data, pin_block, arqc, atc, tvr, tsi, aid, application_label, transaction_date, is_voided, void_reference_number, void_date, raw_request, raw_response, created_at, updated_at)
+VALUES ('BALANCE_INQUIRY', 'FAILED', 0, '522222******4444', NULL, 'MASTERCARD', 'SWIPE', '12345678', '000000000012345', '000001', '000104', 'REF0004', NULL, '51', 'INSUFFICIENT FUNDS', NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, 1729249200000, 0, NULL, NULL, NULL, NULL, 1729249200000, 1729249200000);
+
+INSERT INTO transactions (transaction_type, status, amount, card_number, card_holder_name, card_type, entry_mode, terminal_id, merchant_id, batch_number, trace_number, reference_number, approval_code, response_code, response_message, emv_data, pin_block, arqc, atc, tvr, tsi, aid, application_label, transaction_date, is_voided, void_reference_number, void_date, raw_request, raw_response, created_at, updated_at)
+VALUES ('TRANSFER', 'SUCCESS', 1000000, '522222******4444', NULL, 'MASTERCARD', 'CHIP', '12345678', '000000000012345', NULL, '000105', 'REF0005', 'J1K2L3', '00', 'APPROVED', NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, 1729252800000, 0, NULL, NULL, NULL, NULL, 1729252800000, 1729252800000);
+
@@ -0,0 +1,75 @@
+package id.uniflo.uniedc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import id.uniflo.uniedc.bean.EMVAppParamsBean;
+import id.uniflo.uniedc.bean.EMVCLAppParamsBean;
+import id.uniflo.uniedc.bean.XmlDataBean;
+
+/**
+ * Loading one AID entry of the EMV parameter file through {@code setTagValue}, the
+ * way the parameter download fills the kernel tables
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BeanLoaderBenchmark {
+    private String[] appNames;
+    private String[][] appValues;
+    private String[] clAppNames;
+    private String[][] clAppValues;
+
+    @Setup
+    public void setUp() {
+        appNames = names(EMVPayloads.APP_PARAMS);
+        appValues = values(EMVPayloads.APP_PARAMS);
+        clAppNames = names(EMVPayloads.CL_APP_PARAMS);
+        clAppValues = values(EMVPayloads.CL_APP_PARAMS);
+    }
+
+    @Benchmark
+    public int emvAppParams() {
+        return load(new EMVAppParamsBean(), appNames, appValues);
+    }
+
+    @Benchmark
+    public int emvCLAppParams() {
+        return load(new EMVCLAppParamsBean(), clAppNames, clAppValues);
+    }
+
+    private static int load(XmlDataBean bean, String[] names, String[][] values) {
+        for (int i = 0; i < names.length; i++) {
+            bean.setTagValue(names[i], values[i]);
+        }
+        return bean.getTlvLens();
+    }
+
+    private static String[] names(String[][] params) {
+        String[] names = new String[params.length];
+        for (int i = 0; i < params.length; i++) {
+            names[i] = params[i][0];
+        }
+        return names;
+    }
+
+    private static String[][] values(String[][] params) {
+        String[][] values = new String[params.length][];
+        for (int i = 0; i < params.length; i++) {
+            values[i] = Arrays.copyOfRange(params[i], 1, params[i].length);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,43 @@
+package id.uniflo.uniedc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import id.uniflo.uniedc.utils.EMVDataField;
+
+/**
+ * Field 55 of the authorization request, as built by {@code EMVUtil.buildEMVDataField}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class EMVDataFieldBenchmark {
+    private Map<String, String> tags;
+
+    @Setup
+    public void setUp() {
+        tags = EMVPayloads.authorizationTags();
+    }
+
+    @Benchmark
+    public String buildEMVDataField() {
+        return EMVDataField.build(tags);
+    }
+
+    @Benchmark
+    public byte[] buildEMVDataFieldBytes() {
+        return EMVDataField.buildBytes(tags);
+    }
+}
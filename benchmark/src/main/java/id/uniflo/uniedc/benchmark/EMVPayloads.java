@@ -0,0 +1,215 @@
+package id.uniflo.uniedc.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import id.uniflo.uniedc.tlv.TLVWriter;
+
+/**
+ * Realistic EMV data used by the benchmarks, modelled on a contact Visa sale of
+ * IDR 150.000 on an Indonesian terminal.
+ */
+final class EMVPayloads {
+
+    private EMVPayloads() {
+    }
+
+    /**
+     * Tag data collected from the kernel after the first GENERATE AC, as handed to
+     * {@code TLV.fromBinary} before building the online request
+     */
+    static byte[] transactionData() {
+        TLVWriter writer = new TLVWriter();
+        writer.putHex(0x4F, "A0000000031010")
+                .putHex(0x50, "5649534120435245444954")
+                .putHex(0x57, "4761739001010119D22122011143804400000F")
+                .putHex(0x5A, "4761739001010119")
+                .putHex(0x5F20, "43415244484F4C4445522F56495341")
+                .putHex(0x5F24, "221231")
+                .putHex(0x5F25, "180101")
+                .putHex(0x5F28, "0360")
+                .putHex(0x5F2A, "0360")
+                .putHex(0x5F34, "01")
+                .putHex(0x82, "3C00")
+                .putHex(0x84, "A0000000031010")
+                .putHex(0x8E, "000000000000000042031E031F03")
+                .putHex(0x95, "0080008000")
+                .putHex(0x9A, "241018")
+                .putHex(0x9B, "E800")
+                .putHex(0x9C, "00")
+                .putHex(0x9F02, "000015000000")
+                .putHex(0x9F03, "000000000000")
+                .putHex(0x9F06, "A0000000031010")
+                .putHex(0x9F07, "FF00")
+                .putHex(0x9F09, "008C")
+                .putHex(0x9F0D, "F040008800")
+                .putHex(0x9F0E, "0010000000")
+                .putHex(0x9F0F, "F040009800")
+                .putHex(0x9F10, "06010A03A4A002")
+                .putHex(0x9F1A, "0360")
+                .putHex(0x9F1E, "3132333435363738")
+                .putHex(0x9F21, "143015")
+                .putHex(0x9F26, "8E19ED4BC8D2A1F6")
+                .putHex(0x9F27, "80")
+                .putHex(0x9F33, "E0F8C8")
+                .putHex(0x9F34, "420300")
+                .putHex(0x9F35, "22")
+                .putHex(0x9F36, "0027")
+                .putHex(0x9F37, "9E5A3C21")
+                .putHex(0x9F41, "00000123")
+                .putHex(0x9F53, "52");
+        return writer.toByteArray();
+    }
+
+    /**
+     * READ RECORD response: a 70 template with track 2, PAN, dates, CDOLs, CVM list
+     * and issuer action codes
+     */
+    static byte[] readRecord() {
+        TLVWriter writer = new TLVWriter();
+        writer.beginTemplate(0x70)
+                .putHex(0x57, "4761739001010119D22122011143804400000F")
+                .putHex(0x5A, "4761739001010119")
+                .putHex(0x5F20, "43415244484F4C4445522F56495341")
+                .putHex(0x5F24, "221231")
+                .putHex(0x5F25, "180101")
+                .putHex(0x5F28, "0360")
+                .putHex(0x5F34, "01")
+                .putHex(0x8C, "9F02069F03069F1A0295055F2A029A039C019F37049F35019F45029F4C089F3403")
+                .putHex(0x8D, "910A8A0295059F37049F4C08")
+                .putHex(0x8E, "000000000000000042031E031F03")
+                .putHex(0x9F07, "FF00")
+                .putHex(0x9F0D, "F040008800")
+                .putHex(0x9F0E, "0010000000")
+                .putHex(0x9F0F, "F040009800")
+                .putHex(0x9F4A, "82")
+                .endTemplate();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Tags looked up when building the online request and the receipt
+     */
+    static final String[] LOOKUP_TAGS = {
+        "9F26", "9F27", "9F10", "9F37", "9F36", "95", "9A", "9C", "9F02", "5F2A",
+        "82", "9F1A", "9F34", "5A", "5F24", "57", "4F", "50"
+    };
+
+    /**
+     * Tag values as returned by {@code EMVUtil.generateARQC}, input of the EMV data field
+     */
+    static Map<String, String> authorizationTags() {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("9F02", "000015000000");
+        tags.put("9F03", "000000000000");
+        tags.put("9F1A", "0360");
+        tags.put("95", "0080008000");
+        tags.put("5F2A", "0360");
+        tags.put("9A", "241018");
+        tags.put("9C", "00");
+        tags.put("9F37", "9E5A3C21");
+        tags.put("82", "3C00");
+        tags.put("9F36", "0027");
+        tags.put("9F26", "8E19ED4BC8D2A1F6");
+        tags.put("9F10", "06010A03A4A002");
+        tags.put("9F34", "420300");
+        tags.put("9F33", "E0F8C8");
+        tags.put("9F35", "22");
+        return tags;
+    }
+
+    /**
+     * Body of the /api/purchase request for the sale, laid out the way
+     * {@code sendToHost} serializes its map. The per-transaction values change with
+     * {@code sequence} so consecutive rows do not repeat each other.
+     */
+    static String purchaseRequest(int sequence) {
+        String stan = String.format("%06d", sequence % 1000000);
+        String random = String.format("%08X", sequence * 0x9E3779B1);
+        String arqc = String.format("%016X", sequence * 0x9E3779B97F4A7C15L);
+        String atc = String.format("%04X", sequence & 0xFFFF);
+        return "{\"9F1E\":\"3132333435363738\",\"9F16\":\"000000000012345\",\"9F1C\":\"12345678\"," +
+            "\"9F03\":\"000000000000\",\"9F35\":\"22\",\"9F33\":\"E0F8C8\",\"9F34\":\"420300\"," +
+            "\"9F10\":\"06010A03A4A002\",\"9F27\":\"80\",\"9F37\":\"" + random + "\"," +
+            "\"9F36\":\"" + atc + "\",\"9F26\":\"" + arqc + "\",\"95\":\"0080008000\",\"82\":\"3C00\"," +
+            "\"9A\":\"241018\",\"9C\":\"00\",\"5F2A\":\"0360\",\"9F1A\":\"0360\"," +
+            "\"9F02\":\"000015000000\",\"CardType\":\"CHIP\",\"AcquiringInstitutionCode\":\"123456\"," +
+            "\"TransmissionDateTime\":\"1018143015\",\"LocalDate\":\"1018\",\"LocalTime\":\"143015\"," +
+            "\"PINBlock\":\"041234FEDCBA9876\",\"IAD\":\"06010A03A4A002\",\"AIP\":\"3C00\"," +
+            "\"TVR\":\"0080008000\",\"ATC\":\"" + atc + "\",\"ARQC\":\"" + arqc + "\"," +
+            "\"STAN\":\"" + stan + "\",\"TerminalID\":\"12345678\",\"MerchantID\":\"000000000012345\"," +
+            "\"ProcessingCode\":\"000000\",\"Amount\":\"000015000000\",\"MTI\":\"0200\"}";
+    }
+
+    /**
+     * Host response to {@link #purchaseRequest(int)}
+     */
+    static String purchaseResponse(int sequence) {
+        return "{\"status\":\"success\",\"data\":{\"transactionId\":\"TRX" + (1000000 + sequence) + "\"," +
+            "\"timestamp\":\"2024-10-18T14:30:16\",\"referenceNumber\":\"" +
+            String.format("%012d", 429100000000L + sequence) + "\",\"approvalCode\":\"" +
+            String.format("%06d", (sequence * 7919) % 1000000) + "\",\"message\":\"Approved\"," +
+            "\"responseCode\":\"00\"}}";
+    }
+
+    /**
+     * One contact AID entry of the EMV parameter file, name -> value
+     */
+    static final String[][] APP_PARAMS = {
+        {"Parameters", "A0000000031010"},
+        {"ASI", "00"},
+        {"TerminalActionCodeDefault", "DC4000A800"},
+        {"TerminalActionCodeDenial", "0010000000"},
+        {"TerminalActionCodeOnline", "DC4004F800"},
+        {"TransCurrencyCode", "0360"},
+        {"TerminalCountryCode", "0360"},
+        {"TerminalCapabilities", "E0F8C8"},
+        {"AdditionalTerminalCapabilities", "6000F0A001"},
+        {"MaxTargetPercentBiasedRandSelection", "00"},
+        {"TargetPercentBiasedRandSelection", "00"},
+        {"ThresholdValueBiasedRandSelection", "00000000"},
+        {"TerminalFloorLimit", "00000000"},
+        {"TransCurrencyExponent", "02"},
+        {"AcquirerID", "000000123456"},
+        {"AppVersionNumber", "008C"},
+        {"MerchantCategoryCode", "5999"},
+        {"MerchantID", "000000000012345"},
+        {"TerminalID", "12345678"},
+        {"IFDSerial", "12345678"},
+        {"MerchantNameLocation", "UNIFLO JAKARTA"},
+        {"DefaultDDOL", "9F3704"},
+        {"DefaultTDOL", "9F0802"},
+        {"TransSupportFloorlimitCheck", "01"},
+        {"TransSupportRandomTransSelection", "01"},
+        {"TransSupportVelocityCheck", "01"}
+    };
+
+    /**
+     * One contactless (kernel 2) AID entry of the EMV parameter file; the Parameters
+     * entry carries AID, kernel id and transaction types
+     */
+    static final String[][] CL_APP_PARAMS = {
+        {"Parameters", "A0000000041010", "02", "00,01,09,20"},
+        {"TerminalActionCodeDefault", "F45084800C"},
+        {"TerminalActionCodeDenial", "0000000000"},
+        {"TerminalActionCodeOnline", "F45084800C"},
+        {"TransCurrencyCode", "0360"},
+        {"TerminalCountryCode", "0360"},
+        {"TerminalCapabilities", "E068C8"},
+        {"AdditionalTerminalCapabilities", "6000F0A001"},
+        {"TransCurrencyExponent", "02"},
+        {"AppVersionNumber", "0002"},
+        {"MerchantCategoryCode", "5999"},
+        {"TerminalID", "12345678"},
+        {"IFDSerial", "12345678"},
+        {"CardDataInputCapability", "E0"},
+        {"CVMCapability_Required", "60"},
+        {"CVMCapability_NotRequired", "08"},
+        {"KernelConfiguration", "30"},
+        {"SecurityCapability", "08"},
+        {"ReaderContactlessFloorLimit", "000000050000"},
+        {"CVMRequiredLimit", "000000050000"},
+        {"NoOndeviceCVMTransactionLimit", "000000500000"},
+        {"OndeviceCVMTransactionLimit", "000001000000"}
+    };
+}
@@ -0,0 +1,51 @@
+package id.uniflo.uniedc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import id.uniflo.uniedc.util.BytesUtil;
+
+/**
+ * Hex conversion at the sizes seen on the transaction path: an ARQC (8), a track 2
+ * equivalent (19) and a full EMV data field (256)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class HexBenchmark {
+    @Param({"8", "19", "256"})
+    public int size;
+
+    private byte[] bytes;
+    private String hex;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        hex = BytesUtil.bytes2HexString(bytes);
+    }
+
+    @Benchmark
+    public String bytes2HexString() {
+        return BytesUtil.bytes2HexString(bytes);
+    }
+
+    @Benchmark
+    public byte[] hexString2Bytes() {
+        return BytesUtil.hexString2Bytes(hex);
+    }
+}
@@ -0,0 +1,104 @@
+package id.uniflo.uniedc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import id.uniflo.uniedc.iso8583.IsoMessage;
+import id.uniflo.uniedc.iso8583.IsoPacker;
+import id.uniflo.uniedc.iso8583.MessageBuffer;
+import id.uniflo.uniedc.iso8583.MessageSpec;
+import id.uniflo.uniedc.iso8583.TransactionMessages;
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * ISO 8583 pack and unpack of a chip sale and its response in the standard host
+ * format, with the message and buffer reused the way the terminal does.
+ * {@code buildAndPackSale} includes filling the message and its field 55.
+ * <pre>
+ * ./gradlew :benchmark:jmh -PjmhIncludes=IsoPackerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class IsoPackerBenchmark {
+    private final IsoPacker packer = new IsoPacker(MessageSpec.STANDARD);
+    private final MessageBuffer buffer = new MessageBuffer();
+    private final IsoMessage message = new IsoMessage();
+    private final IsoMessage unpacked = new IsoMessage();
+    private TransactionMessages.Request request;
+    private IsoMessage sale;
+    private byte[] saleBytes;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setUp() {
+        request = new TransactionMessages.Request();
+        request.stan = "000123";
+        request.transmissionDateTime = "1018143015";
+        request.localTime = "143015";
+        request.localDate = "1018";
+        request.acquiringInstitutionCode = "123456";
+        request.terminalId = "12345678";
+        request.merchantId = "123456789012345";
+        request.track2 = "4761739001010119D22122011143804400000";
+        request.cardSequenceNumber = "001";
+        request.amount = 15000000;
+        request.pinBlock = HexUtil.decode("041234FEDCBA9876");
+        request.emvTags = EMVPayloads.authorizationTags();
+        request.invoiceNumber = "000045";
+        request.batchNumber = "000001";
+
+        sale = TransactionMessages.sale(request, new IsoMessage());
+        saleBytes = packer.pack(sale);
+
+        IsoMessage response = new IsoMessage()
+            .setMti(TransactionMessages.MTI_FINANCIAL_RESPONSE)
+            .set(TransactionMessages.FIELD_PROCESSING_CODE, TransactionMessages.PROC_SALE)
+            .set(TransactionMessages.FIELD_AMOUNT, "000015000000")
+            .set(TransactionMessages.FIELD_STAN, "000123")
+            .set(TransactionMessages.FIELD_LOCAL_TIME, "143016")
+            .set(TransactionMessages.FIELD_LOCAL_DATE, "1018")
+            .set(TransactionMessages.FIELD_NII, "001")
+            .set(TransactionMessages.FIELD_RRN, "429118000123")
+            .set(TransactionMessages.FIELD_APPROVAL_CODE, "A1B2C3")
+            .set(TransactionMessages.FIELD_RESPONSE_CODE, TransactionMessages.RESPONSE_APPROVED)
+            .set(TransactionMessages.FIELD_TERMINAL_ID, "12345678")
+            .setBinary(TransactionMessages.FIELD_ICC_DATA, HexUtil.decode("910A0102030405060708090A"));
+        responseBytes = packer.pack(response);
+    }
+
+    @Benchmark
+    public int packSale() {
+        buffer.reset();
+        return packer.pack(sale, buffer);
+    }
+
+    @Benchmark
+    public int buildAndPackSale() {
+        TransactionMessages.sale(request, message);
+        buffer.reset();
+        return packer.pack(message, buffer);
+    }
+
+    @Benchmark
+    public IsoMessage unpackSale() {
+        return packer.unpack(saleBytes, unpacked);
+    }
+
+    @Benchmark
+    public IsoMessage unpackSaleResponse() {
+        return packer.unpack(responseBytes, unpacked);
+    }
+}
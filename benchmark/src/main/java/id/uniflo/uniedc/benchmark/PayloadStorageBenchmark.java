@@ -0,0 +1,147 @@
+package id.uniflo.uniedc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import id.uniflo.uniedc.database.PayloadCodec;
+import id.uniflo.uniedc.util.HexUtil;
+
+/**
+ * Storing the payload of one sale - request and response JSON, EMV data and PIN block -
+ * as text (before) and in the {@link PayloadCodec} form (after).
+ * <p>
+ * {@code insert} is one committed row per call, the way a sale is stored, against a
+ * plain SQLite file; SQLCipher adds its page encryption on top, which scales with the
+ * pages written and so favours the smaller rows further. {@code encodeRequest} and
+ * {@code decodeRequest} are the conversion of the largest value alone. The stored
+ * size per row is printed at the end of each trial:
+ * <pre>
+ * ./gradlew :benchmark:jmh -PjmhIncludes=PayloadStorageBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class PayloadStorageBenchmark {
+    private static final int ROWS = 1024;
+
+    @Param({"text", "codec"})
+    public String format;
+
+    private boolean codec;
+    private String[][] payloads;
+    private byte[][][] encoded;
+    private File file;
+    private Connection connection;
+    private PreparedStatement insert;
+    private long nextId;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        codec = "codec".equals(format);
+        String emvData = HexUtil.encode(EMVPayloads.transactionData());
+        payloads = new String[ROWS][];
+        encoded = new byte[ROWS][][];
+        for (int i = 0; i < ROWS; i++) {
+            payloads[i] = new String[]{
+                EMVPayloads.purchaseRequest(i), EMVPayloads.purchaseResponse(i), emvData, "041234FEDCBA9876"
+            };
+            encoded[i] = new byte[4][];
+            for (int j = 0; j < 4; j++) {
+                encoded[i][j] = encode(payloads[i][j]);
+            }
+        }
+
+        file = File.createTempFile("payloads", ".db");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        try (Statement statement = connection.createStatement()) {
+            // Same declaration as the app, the codec stores BLOBs in the TEXT columns
+            statement.execute("CREATE TABLE transaction_payloads (transaction_id INTEGER PRIMARY KEY, " +
+                "raw_request TEXT, raw_response TEXT, emv_data TEXT, pin_block TEXT)");
+        }
+        insert = connection.prepareStatement("INSERT INTO transaction_payloads VALUES (?, ?, ?, ?, ?)");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        long rows;
+        long bytes;
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM transaction_payloads")) {
+                rows = result.getLong(1);
+            }
+            try (ResultSet result = statement.executeQuery(
+                    "SELECT SUM(LENGTH(raw_request) + LENGTH(raw_response) + LENGTH(emv_data) + LENGTH(pin_block)) " +
+                    "FROM transaction_payloads")) {
+                bytes = result.getLong(1);
+            }
+        }
+        insert.close();
+        connection.close();
+        long fileBytes = file.length();
+        file.delete();
+        if (rows > 0) {
+            System.out.println();
+            System.out.println(format + ": " + (bytes / rows) + " value bytes/row, "
+                + (fileBytes / rows) + " file bytes/row over " + rows + " rows");
+        }
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        int i = next++ & (ROWS - 1);
+        insert.setLong(1, ++nextId);
+        for (int j = 0; j < 4; j++) {
+            if (codec) {
+                insert.setBytes(j + 2, PayloadCodec.encode(payloads[i][j]));
+            } else {
+                insert.setString(j + 2, payloads[i][j]);
+            }
+        }
+        return insert.executeUpdate();
+    }
+
+    /**
+     * The request JSON to its stored bytes
+     */
+    @Benchmark
+    public byte[] encodeRequest() {
+        return encode(payloads[next++ & (ROWS - 1)][0]);
+    }
+
+    @Benchmark
+    public String decodeRequest() {
+        byte[] stored = encoded[next++ & (ROWS - 1)][0];
+        return codec ? PayloadCodec.decode(stored) : new String(stored, StandardCharsets.UTF_8);
+    }
+
+    private byte[] encode(String value) {
+        return codec ? PayloadCodec.encode(value) : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package id.uniflo.uniedc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import id.uniflo.uniedc.tlv.TLV;
+import id.uniflo.uniedc.tlv.TLVList;
+import id.uniflo.uniedc.tlv.TLVReader;
+
+/**
+ * TLV parsing and lookup on the kernel data of a sale and on a READ RECORD template
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class TLVBenchmark {
+    private byte[] transactionData;
+    private byte[] readRecord;
+    private TLVList list;
+    private int[] packedTags;
+
+    @Setup
+    public void setUp() {
+        transactionData = EMVPayloads.transactionData();
+        readRecord = EMVPayloads.readRecord();
+        list = TLV.fromBinary(transactionData);
+        packedTags = new int[EMVPayloads.LOOKUP_TAGS.length];
+        for (int i = 0; i < packedTags.length; i++) {
+            packedTags[i] = TLVReader.packTag(EMVPayloads.LOOKUP_TAGS[i]);
+        }
+    }
+
+    @Benchmark
+    public TLVList fromBinary() {
+        return TLV.fromBinary(transactionData);
+    }
+
+    /**
+     * Parse and read every value, the way the online request is filled in
+     */
+    @Benchmark
+    public void fromBinaryAndRead(Blackhole bh) {
+        TLVList parsed = TLV.fromBinary(transactionData);
+        for (String tag : EMVPayloads.LOOKUP_TAGS) {
+            bh.consume(parsed.getTLV(tag).getBytesValue());
+        }
+    }
+
+    @Benchmark
+    public void getTLV(Blackhole bh) {
+        for (String tag : EMVPayloads.LOOKUP_TAGS) {
+            bh.consume(list.getTLV(tag));
+        }
+    }
+
+    @Benchmark
+    public void getTLVByTag(Blackhole bh) {
+        for (int tag : packedTags) {
+            bh.consume(list.getTLVByTag(tag));
+        }
+    }
+
+    /**
+     * PAN out of a READ RECORD response, through the 70 template
+     */
+    @Benchmark
+    public Object findInReadRecord() {
+        return TLV.fromBinary(readRecord).findTLV("5A");
+    }
+
+    @Benchmark
+    public int readerWalk() {
+        TLVReader reader = new TLVReader(transactionData);
+        int sum = 0;
+        while (reader.next()) {
+            sum += reader.valueLength();
+        }
+        return sum;
+    }
+}
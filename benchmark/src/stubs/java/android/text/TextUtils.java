@@ -0,0 +1,10 @@
+package android.text;
+
+/**
+ * The part of android.text.TextUtils used by the benchmarked classes
+ */
+public class TextUtils {
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+}